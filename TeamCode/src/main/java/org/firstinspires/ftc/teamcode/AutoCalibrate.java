@@ -0,0 +1,302 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
+import org.firstinspires.ftc.teamcode.GamepadEvents.Button;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Measure the TrainerbotV2 drive kinematics, instead of tweaking constants by hand in Calibrate.
+ *
+ * Put the robot on a long clear stretch of floor, with a tape measure along its path. For each
+ * power in POWERS, RUNS_PER_POWER times, the robot:
+ *  - if it has an IMU, spins one full turn on its axis, logging both encoders and the IMU;
+ *  - drives RUN_INCHES straight ahead, logging both encoders;
+ *  - stops, and asks how far it really went. Dial in the tape measure reading with the dpad,
+ *    up and down by an inch, right and left by a tenth, starting from what the encoders think.
+ *    A accepts it, B leaves this run out of the fit;
+ *  - drives back.
+ *
+ * Then it fits, by least squares through the origin:
+ *  - counts per inch, from the encoder counts and real distances of the runs at the lowest power,
+ *    where the wheels slip least;
+ *  - a slip factor for each power, real distance over encoder distance;
+ *  - track width, from the difference between the wheels' travel and the IMU turn.
+ * Encoders and IMU alone can't tell a small wheel from a slipping one, hence the tape measure.
+ *
+ * A saves the result to DriveCalibration.FILE_NAME in the FIRST folder, where TrainerbotV2 loads
+ * it at init; B discards it. Either way, every run is appended to RUNS_FILE.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    says so, and drives nothing, if the configuration has no drivetrain.
+ * v 0.3    shuts the robot down however the opmode ends.
+ */
+
+@TeleOp(name = "Auto Calibrate", group = "TrainerbotV2")
+//@Disabled
+public class AutoCalibrate extends LinearOpMode {
+    public static final String RUNS_FILE = "trainerbotv2_calibration_runs.csv";
+
+    static final double[] POWERS = {0.2, 0.4, 0.6};
+    static final int RUNS_PER_POWER = 2;
+    static final double RUN_INCHES = 48.0;
+    static final double TURN_SPEED = 0.3;
+    // Time for the robot to come to rest before the encoders and IMU are read.
+    static final double SETTLE_SECONDS = 0.5;
+
+    private static final int RUNS = POWERS.length * RUNS_PER_POWER;
+
+    TrainerbotV2 robot = new TrainerbotV2(this);
+    private final GamepadEvents buttons = new GamepadEvents();
+
+    // One entry per run. Straight counts are the mean of both wheels; turn counts are right
+    // minus left. measuredInches is NaN for a skipped run, and turn values are zero without IMU.
+    private final double[] powers = new double[RUNS];
+    private final double[] straightCounts = new double[RUNS];
+    private final double[] measuredInches = new double[RUNS];
+    private final double[] turnCounts = new double[RUNS];
+    private final double[] turnRadians = new double[RUNS];
+    private int runCount = 0;
+
+    @Override
+    public void runOpMode() {
+        try {
+            robot.initHardware(hardwareMap);
+            if (!robot.getDrivetrain().canDrive()) {
+                // Nothing to measure, and leftDrive and rightDrive are null.
+                telemetry.addData("Drivetrain", "none in the configuration: nothing to calibrate");
+                telemetry.update();
+                waitForStart();
+                return;
+            }
+            // Drive by the nominal geometry only; what was saved before is what is being
+            // replaced.
+            DriveCalibration before = robot.getCalibration();
+            robot.setCalibration(new DriveCalibration(before.countsPerInch, before.trackWidth));
+
+            telemetry.addData("Calibration", before.toString());
+            telemetry.addData("IMU",
+                    robot.hasImu() ? "found" : "none: track width won't be fitted");
+            telemetry.addData(">", "Press Play to drive %d runs of %.0f inches.", RUNS, RUN_INCHES);
+            telemetry.update();
+            waitForStart();
+
+            for (int p = 0; p < POWERS.length && opModeIsActive(); p++) {
+                for (int r = 0; r < RUNS_PER_POWER && opModeIsActive(); r++) {
+                    run(POWERS[p]);
+                }
+            }
+
+            if (opModeIsActive()) {
+                File runsFile = new File(AppUtil.FIRST_FOLDER, RUNS_FILE);
+                String logged = appendRuns(runsFile) ? runsFile.getPath()
+                        : "could not write " + runsFile.getPath();
+                DriveCalibration result = fit(before);
+                if (result == null) {
+                    telemetry.addData("Result", "too few runs at %.2f power to fit", POWERS[0]);
+                    telemetry.addData("Runs", logged);
+                    telemetry.update();
+                    robot.setCalibration(before);
+                } else if (askYesNo("A saves, B discards.", "Result", result.toString(),
+                        "Runs", logged)) {
+                    File file = new File(AppUtil.FIRST_FOLDER, DriveCalibration.FILE_NAME);
+                    robot.setCalibration(result);
+                    telemetry.addData("Saved", result.save(file) ? file.getPath()
+                            : "could not write " + file.getPath());
+                    telemetry.update();
+                } else {
+                    robot.setCalibration(before);
+                }
+            }
+
+            while (opModeIsActive()) {
+                sleep(100);
+            }
+        } finally {
+            robot.shutdown();
+        }
+    }
+
+    //  One run: a turn if there is an IMU, then out, measure, and back.
+    private void run(double power) {
+        int i = runCount;
+        powers[i] = power;
+
+        if (robot.hasImu()) {
+            settle();
+            int left = robot.leftDrive.getCurrentPosition();
+            int right = robot.rightDrive.getCurrentPosition();
+            double heading = robot.getImuHeading();
+            robot.awaitMotion(robot.turnAngle(power, 2 * Math.PI));
+            settle();
+            turnCounts[i] = (robot.rightDrive.getCurrentPosition() - right)
+                    - (robot.leftDrive.getCurrentPosition() - left);
+            turnRadians[i] = robot.getImuHeading() - heading;
+        }
+
+        int left = robot.leftDrive.getCurrentPosition();
+        int right = robot.rightDrive.getCurrentPosition();
+        robot.awaitMotion(robot.driveStraight(power, RUN_INCHES));
+        settle();
+        straightCounts[i] = ((robot.leftDrive.getCurrentPosition() - left)
+                + (robot.rightDrive.getCurrentPosition() - right)) / 2.0;
+        if (!opModeIsActive()) {
+            return;
+        }
+        measuredInches[i] = askDistance(power,
+                straightCounts[i] / robot.getCalibration().countsPerInch);
+        runCount++;
+
+        robot.awaitMotion(robot.driveStraight(power, -RUN_INCHES));
+    }
+
+    //  Keep reading sensors while the robot comes to rest.
+    private void settle() {
+        long end = RobotClock.nanoTime() + (long) (SETTLE_SECONDS * 1e9);
+        while (opModeIsActive() && RobotClock.nanoTime() - end < 0) {
+            robot.updateMotion();
+            sleep(10);
+        }
+    }
+
+    //  The distance the operator measured, starting from estimate. NaN if they skipped it.
+    private double askDistance(double power, double estimate) {
+        double inches = Math.round(estimate * 10) / 10.0;
+        buttons.clear();
+        while (opModeIsActive()) {
+            buttons.update(gamepad1);
+            while (buttons.next()) {
+                if (!buttons.isPress()) {
+                    continue;
+                }
+                switch (buttons.getButton()) {
+                    case DPAD_UP: inches += 1.0; break;
+                    case DPAD_DOWN: inches -= 1.0; break;
+                    case DPAD_RIGHT: inches += 0.1; break;
+                    case DPAD_LEFT: inches -= 0.1; break;
+                    case A: return inches;
+                    case B: return Double.NaN;
+                    default: break;
+                }
+            }
+            telemetry.addData("Run", "%d of %d at %.2f power", runCount + 1, RUNS, power);
+            telemetry.addData("Encoders say", "%.1f in", estimate);
+            telemetry.addData("Measured", "%.1f in", inches);
+            telemetry.addData(">", "Dpad to adjust, A to accept, B to skip this run.");
+            telemetry.update();
+            sleep(20);
+        }
+        return Double.NaN;
+    }
+
+    //  Show the captions and values, with a prompt, until A (true) or B (false) is pressed.
+    private boolean askYesNo(String prompt, String... captionsAndValues) {
+        buttons.clear();
+        while (opModeIsActive()) {
+            buttons.update(gamepad1);
+            while (buttons.next()) {
+                if (buttons.isPress(Button.A)) {
+                    return true;
+                } else if (buttons.isPress(Button.B)) {
+                    return false;
+                }
+            }
+            for (int i = 0; i + 1 < captionsAndValues.length; i += 2) {
+                telemetry.addData(captionsAndValues[i], captionsAndValues[i + 1]);
+            }
+            telemetry.addData(">", prompt);
+            telemetry.update();
+            sleep(20);
+        }
+        return false;
+    }
+
+    //  Fit the runs. Null if no run at the lowest power was measured. Without turns, the
+    // track width of previous is kept.
+    DriveCalibration fit(DriveCalibration previous) {
+        double[] x = new double[runCount];
+        double[] y = new double[runCount];
+
+        // Counts per inch, at the lowest power.
+        int n = 0;
+        for (int i = 0; i < runCount; i++) {
+            if (powers[i] == POWERS[0] && !Double.isNaN(measuredInches[i])) {
+                x[n] = measuredInches[i];
+                y[n] = straightCounts[i];
+                n++;
+            }
+        }
+        double countsPerInch = DriveCalibration.fitSlope(x, y, n);
+        if (countsPerInch <= 0) {
+            return null;
+        }
+
+        // Slip at each power, relative to the lowest.
+        double[] slipFactors = new double[POWERS.length];
+        for (int p = 0; p < POWERS.length; p++) {
+            n = 0;
+            for (int i = 0; i < runCount; i++) {
+                if (powers[i] == POWERS[p] && !Double.isNaN(measuredInches[i])) {
+                    x[n] = straightCounts[i] / countsPerInch;
+                    y[n] = measuredInches[i];
+                    n++;
+                }
+            }
+            slipFactors[p] = n > 0 ? DriveCalibration.fitSlope(x, y, n) : 1.0;
+        }
+
+        // Track width: the wheels' difference in travel, inches, is track width times the turn.
+        n = 0;
+        for (int i = 0; i < runCount; i++) {
+            if (turnRadians[i] != 0) {
+                x[n] = turnRadians[i];
+                y[n] = turnCounts[i] / countsPerInch;
+                n++;
+            }
+        }
+        double trackWidth = DriveCalibration.fitSlope(x, y, n);
+        if (trackWidth <= 0) {
+            trackWidth = previous.trackWidth;
+        }
+        return new DriveCalibration(countsPerInch, trackWidth, POWERS, slipFactors);
+    }
+
+    //  Append every run to file, with a header if the file is new. Returns false on failure.
+    boolean appendRuns(File file) {
+        boolean isNew = !file.exists();
+        String date = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).format(new Date());
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(file, true);
+            if (isNew) {
+                writer.write("date,power,straight_counts,measured_in,turn_counts,turn_rad\n");
+            }
+            for (int i = 0; i < runCount; i++) {
+                writer.write(String.format(Locale.US, "%s,%.2f,%.1f,%.2f,%.1f,%.4f%n", date,
+                        powers[i], straightCounts[i], measuredInches[i], turnCounts[i],
+                        turnRadians[i]));
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // Nothing more to do.
+                }
+            }
+        }
+    }
+}
@@ -32,13 +32,19 @@ package org.firstinspires.ftc.teamcode;
 import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
 import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
 
+import org.firstinspires.ftc.teamcode.GamepadEvents.Button;
+
 /*
  * Drive a robot around, and put it on a convenient starting place like a tile corner. The gamepad
- * buttons will run macros. Each macro is one or more TrainerbotV2 movements. Look below to the gamepad button handlers to see what they claim to do. To calibrate:
+ * buttons will run macros. Each macro is one or more TrainerbotV2 movements. Look below to the gamepad button handlers to see what they claim to do.
+ * Presses are queued: press y twice and the robot drives two tiles. Any stick movement, or the
+ * back button, cancels the running macro and everything queued behind it. To calibrate:
  *  - Predict ending place for a macro.
  *  - Run it.
  *  - See if ending place agrees with prediction.
- *  - Tweak TrainerbotV2 properties WHEEL_SEPARATION and WHEEL_DIAMETER_INCHES.
+ *  - Tweak wheelDiameterInches and driveWheelSeparation in the RobotConstants file in the FIRST
+ *    folder, and press start to reload it; or better, run AutoCalibrate, which measures them.
+ *    If there is no such file yet, start writes one with the values in use, to edit.
  *  Repeat as necessary to get desired agreement between prediction and actual performance.
  *  CAUTION: wheel slippage can reduce actual movement from that predicted. Try to minimize it.
  */
@@ -48,42 +54,153 @@ import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
 public class Calibrate extends LinearOpMode {
   TrainerbotV2 robot = new TrainerbotV2(this);
 
-  private static final double DRIVE_SPEED = 0.30;  // was 0.6
-  private static final double TURN_SPEED =  0.15;  // was 0.2
+  private static final double TELEMETRY_RATE_HZ = 4;
+
+  // Sticks pushed further than this take over from the macros.
+  private static final double STICK_DEADBAND = 0.1;
+  // Presses that would queue more movements than this are ignored, so a burst of presses
+  // can't commit the robot to minutes of driving.
+  private static final int MAX_QUEUED_SEGMENTS = 4;
+  // One tile square, counterclockwise, from the robot: x forward, y left, inches.
+  private static final WaypointPath TILE_SQUARE =
+      WaypointPath.of(0, 0, 24, 0, 24, 24, 0, 24, 0, 0);
+
+  private final ControlLoop controlLoop = new ControlLoop();
+  private final GamepadEvents buttons = new GamepadEvents();
+  private long ignoredPresses = 0;
 
   @Override
   public void runOpMode() {
-    robot.initHardware(hardwareMap);
-    telemetry.addData("Hardware", " mapped.");
-    telemetry.update();
+    try {
+      robot.initHardware(hardwareMap);
+      telemetry.addData("Hardware", " mapped.");
+      telemetry.addData("Settings", robot.getSettingsStatus());
+      telemetry.update();
+
+      /* Wait for calibration session to begin */
+      telemetry.addData(">", "Press Play to activate calibration button macros.");
+      telemetry.update();
+      waitForStart();
+
+      controlLoop.addTask("drive", TrainerbotV2.MOTION_RATE_HZ, new ControlLoop.Task() {
+        @Override
+        public void run() {
+          driveStep();
+        }
+      });
+      controlLoop.addTask("telemetry", TELEMETRY_RATE_HZ, new ControlLoop.Task() {
+        @Override
+        public void run() {
+          controlLoop.addTelemetry(telemetry);
+          telemetry.addData("Macros", "%d queued, %d presses ignored",
+              robot.motion.getPendingCount(), ignoredPresses);
+          telemetry.addData("Settings", robot.getSettingsStatus());
+          telemetry.update();
+        }
+      });
+
+      while (opModeIsActive()) {
+        controlLoop.runOnce();
+      }
+      robot.motion.cancelAll();
+      robot.updateMotion();
+    } finally {
+      robot.shutdown();
+    }
+  }
 
-    /* Wait for calibration session to begin */
-    telemetry.addData(">", "Press Play to activate calibration button macros.");
-    telemetry.update();
-    waitForStart();
+  //  One drive tick: advance the running macro, queue macros for new button presses, and
+  // drive by sticks when no macro is running. Sticks preempt macros within this same tick.
+  private void driveStep() {
+    robot.updateMotion();
+    buttons.update(gamepad1);
 
-    while (opModeIsActive()) {
+    if (GamepadEvents.sticksActive(gamepad1, STICK_DEADBAND)) {
+      // The driver has taken over. Presses made meanwhile are dropped with the macros.
+      cancelMacros();
+      buttons.clear();
       robot.justDrive();
+      return;
+    }
 
-      if (gamepad1.y) {
-        //Forward one tile. ** Is there a straight drive robot member?
-        robot.driveStraight(DRIVE_SPEED, 24.0);
-        //robot.encoderDrive(DRIVE_SPEED, DRIVE_SPEED, 24.0, 24.0);
+    while (buttons.next()) {
+      if (!buttons.isPress()) {
+        continue;
       }
-      if (gamepad1.x) {
-        // Run curving CCW, 90 degrees. From corner of one tile to opposite corner.
-        robot.turnAngleRadiusDrive(TURN_SPEED, Math.PI / 2, 24.0);
+      Button button = buttons.getButton();
+      if (button == Button.BACK) {
+        cancelMacros();
+      } else if (button == Button.START) {
+        // Pick up an edited constants file, or write one to edit if there is none. Not
+        // mid-macro: queued movements would mix values.
+        if (robot.motion.isIdle()) {
+          robot.loadSettings();
+          robot.writeSettings();
+        } else {
+          ignoredPresses++;
+        }
+      } else if (!startMacro(button)) {
+        ignoredPresses++;
       }
-      if (gamepad1.b) {
+    }
+
+    if (robot.motion.isIdle()) {
+      robot.justDrive();
+    }
+  }
+
+  //  Queue the macro for button behind any already queued. False if the button has no macro
+  // or the queue is full.
+  private boolean startMacro(Button button) {
+    int segments = (button == Button.RIGHT_BUMPER) ? 4 : 1;
+    if (!robot.motion.isIdle()
+        && robot.motion.getPendingCount() + segments > MAX_QUEUED_SEGMENTS) {
+      return false;
+    }
+    double driveSpeed = robot.getConstants().driveSpeed;
+    double turnSpeed = robot.getConstants().turnSpeed;
+    switch (button) {
+      case Y:
+        //Forward one tile.
+        robot.driveStraight(driveSpeed, 24.0);
+        return true;
+      case X:
+        // Run curving CCW, 90 degrees. From corner of one tile to opposite corner.
+        robot.turnAngleRadiusDrive(turnSpeed, Math.PI / 2, 24.0);
+        return true;
+      case B:
         // run forward curving CW, 90 degrees, corner of one tile to opposite
         // corner.
-        robot.turnAngleRadiusDrive(TURN_SPEED, -Math.PI / 2, -24.0);
-      }
-      if (gamepad1.a) {
+        robot.turnAngleRadiusDrive(turnSpeed, -Math.PI / 2, -24.0);
+        return true;
+      case A:
         // Turn on axis, as though joysticks pushed equal amounts, opposite
         // directions.
-        robot.turnAngle (TURN_SPEED, -Math.PI/2);
-      }
+        robot.turnAngle (turnSpeed, -Math.PI/2);
+        return true;
+      case RIGHT_BUMPER:
+        // Out one tile and back, turning on axis at each end. It should end where it
+        // started, facing the same way.
+        robot.driveStraight(driveSpeed, 24.0);
+        robot.turnAngle(turnSpeed, Math.PI);
+        robot.driveStraight(driveSpeed, 24.0);
+        robot.turnAngle(turnSpeed, Math.PI);
+        return true;
+      case LEFT_BUMPER:
+        // Around a one tile square, CCW, rounding the corners without stopping. It should end
+        // near where it started, facing right, in less time than the right bumper takes.
+        robot.followRelativePath(TILE_SQUARE);
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  //  Stop the running macro and drop the queued ones, before this tick's motor commands.
+  private void cancelMacros() {
+    if (!robot.motion.isIdle()) {
+      robot.motion.cancelAll();
+      robot.motion.update();
     }
   }
 }
@@ -0,0 +1,256 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is NOT an opmode.
+ *
+ * A fixed-rate scheduler for an opmode's main loop. Register tasks, each with its own rate,
+ * then call runOnce() from the opmode's while loop:
+ *
+ *     ControlLoop loop = new ControlLoop();
+ *     loop.addTask("drive", 100, driveTask);
+ *     loop.addTask("vision", 30, visionTask);
+ *     loop.addTask("telemetry", 4, telemetryTask);
+ *     while (opModeIsActive()) {
+ *         loop.runOnce();
+ *     }
+ *
+ * runOnce() sleeps until the next task is due, then runs every task that is due. Deadlines are
+ * kept on the RobotClock, and advance by exactly one period each time, so the rate doesn't
+ * drift with whatever a task happens to cost. A task that falls more than a whole period
+ * behind counts an overrun and skips the ticks it missed, rather than running them back to back.
+ * With no tasks at all, runOnce() sleeps IDLE_PERIOD_NANOS, so the loop around it still doesn't
+ * spin.
+ *
+ * For each task the loop keeps: execution time (last, mean, max), how late each tick started
+ * (a jitter histogram), overrun counts, and the most recent RING_SIZE samples of both in a ring
+ * buffer. addTelemetry() summarizes them for the Driver Station; attachTelemetry() and
+ * updateTelemetry() do the same through TelemetryLines, without allocating.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    added allocation-free TelemetryLines reporting.
+ * v 0.3    reads time from RobotClock, so it can run in simulation.
+ * v 0.4    sleeps, rather than returning at once, when there are no tasks.
+ */
+
+public class ControlLoop {
+
+    //  Work done on one tick. Must not block.
+    public interface Task {
+        void run();
+    }
+
+    // Upper bounds of the jitter histogram buckets, microseconds late. The last bucket is
+    // everything later than the last bound.
+    public static final long[] JITTER_BUCKET_US = {250, 500, 1000, 2000, 5000, 10000, 20000};
+    public static final int RING_SIZE = 128;
+    // How long runOnce() sleeps when there are no tasks: the period of a 100 Hz task.
+    public static final long IDLE_PERIOD_NANOS = 10000000;
+
+    //  Timing for one registered task.
+    public static class TaskStats {
+        private final String name;
+        private final double rateHz;
+        private long ticks = 0;
+        private long overruns = 0;
+        private long lastExecNanos = 0;
+        private long maxExecNanos = 0;
+        private long totalExecNanos = 0;
+        private final long[] jitterCounts = new long[JITTER_BUCKET_US.length + 1];
+        private final long[] ringLateNanos = new long[RING_SIZE];
+        private final long[] ringExecNanos = new long[RING_SIZE];
+
+        TaskStats(String name, double rateHz) {
+            this.name = name;
+            this.rateHz = rateHz;
+        }
+
+        void record(long lateNanos, long execNanos) {
+            int slot = (int) (ticks % RING_SIZE);
+            ringLateNanos[slot] = lateNanos;
+            ringExecNanos[slot] = execNanos;
+            ticks++;
+            lastExecNanos = execNanos;
+            totalExecNanos += execNanos;
+            if (execNanos > maxExecNanos) {
+                maxExecNanos = execNanos;
+            }
+            long lateUs = lateNanos / 1000;
+            int bucket = 0;
+            while (bucket < JITTER_BUCKET_US.length && lateUs > JITTER_BUCKET_US[bucket]) {
+                bucket++;
+            }
+            jitterCounts[bucket]++;
+        }
+
+        public String getName() { return name; }
+        public double getRateHz() { return rateHz; }
+        public long getTicks() { return ticks; }
+        public long getOverruns() { return overruns; }
+        public long getLastExecNanos() { return lastExecNanos; }
+        public long getMaxExecNanos() { return maxExecNanos; }
+        public long getMeanExecNanos() { return ticks == 0 ? 0 : totalExecNanos / ticks; }
+
+        //  Count of ticks in jitter bucket i; see JITTER_BUCKET_US.
+        public long getJitterCount(int bucket) { return jitterCounts[bucket]; }
+
+        //  Copy the newest samples, oldest first, into the arrays given. Either may be null.
+        // Returns the number of samples copied.
+        public int copyRecent(long[] lateNanos, long[] execNanos) {
+            int count = (int) Math.min(ticks, RING_SIZE);
+            if (lateNanos != null) {
+                count = Math.min(count, lateNanos.length);
+            }
+            if (execNanos != null) {
+                count = Math.min(count, execNanos.length);
+            }
+            for (int i = 0; i < count; i++) {
+                int slot = (int) ((ticks - count + i) % RING_SIZE);
+                if (lateNanos != null) {
+                    lateNanos[i] = ringLateNanos[slot];
+                }
+                if (execNanos != null) {
+                    execNanos[i] = ringExecNanos[slot];
+                }
+            }
+            return count;
+        }
+    }
+
+    private static class ScheduledTask {
+        final Task task;
+        final long periodNanos;
+        final TaskStats stats;
+        long nextDeadline;
+
+        ScheduledTask(Task task, long periodNanos, TaskStats stats) {
+            this.task = task;
+            this.periodNanos = periodNanos;
+            this.stats = stats;
+        }
+    }
+
+    private final List<ScheduledTask> tasks = new ArrayList<ScheduledTask>();
+    private boolean started = false;
+    private TelemetryLines.Line[] statLines = new TelemetryLines.Line[0];
+
+    //  Register a task to run rateHz times a second. Returns its statistics.
+    public TaskStats addTask(String name, double rateHz, Task task) {
+        if (rateHz <= 0) {
+            throw new IllegalArgumentException("rate must be positive: " + rateHz);
+        }
+        TaskStats stats = new TaskStats(name, rateHz);
+        ScheduledTask scheduled = new ScheduledTask(task, (long) (1e9 / rateHz), stats);
+        scheduled.nextDeadline = RobotClock.nanoTime();
+        tasks.add(scheduled);
+        return stats;
+    }
+
+    //  Wait for the next deadline, then run every task that is due. With no tasks, just wait
+    // IDLE_PERIOD_NANOS. Returns false, without running anything, if the thread was interrupted
+    // while waiting, as it is when the opmode is stopped.
+    public boolean runOnce() {
+        long now = RobotClock.nanoTime();
+        if (!started) {
+            // First call: everything is due now, whenever the tasks were added.
+            for (ScheduledTask scheduled : tasks) {
+                scheduled.nextDeadline = now;
+            }
+            started = true;
+        }
+        long waitNanos = tasks.isEmpty() ? IDLE_PERIOD_NANOS : nextDeadline() - now;
+        if (waitNanos > 0) {
+            try {
+                RobotClock.sleepNanos(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        // Indexed loops here and below: no Iterator garbage on every tick.
+        for (int i = 0; i < tasks.size(); i++) {
+            ScheduledTask scheduled = tasks.get(i);
+            long start = RobotClock.nanoTime();
+            if (start - scheduled.nextDeadline < 0) {
+                continue;
+            }
+            scheduled.task.run();
+            long end = RobotClock.nanoTime();
+            scheduled.stats.record(start - scheduled.nextDeadline, end - start);
+
+            scheduled.nextDeadline += scheduled.periodNanos;
+            if (end - scheduled.nextDeadline >= scheduled.periodNanos) {
+                // Fell more than a whole period behind. Skip the missed ticks.
+                long missed = (end - scheduled.nextDeadline) / scheduled.periodNanos;
+                scheduled.stats.overruns += missed;
+                scheduled.nextDeadline += missed * scheduled.periodNanos;
+            }
+        }
+        return true;
+    }
+
+    private long nextDeadline() {
+        long earliest = tasks.get(0).nextDeadline;
+        for (int i = 1; i < tasks.size(); i++) {
+            long deadline = tasks.get(i).nextDeadline;
+            if (deadline - earliest < 0) {
+                earliest = deadline;
+            }
+        }
+        return earliest;
+    }
+
+    public int getTaskCount() {
+        return tasks.size();
+    }
+
+    public TaskStats getStats(int task) {
+        return tasks.get(task).stats;
+    }
+
+    //  Give each task a line in lines, for updateTelemetry() to fill in. Call once, after
+    // all tasks are added.
+    public void attachTelemetry(TelemetryLines lines) {
+        statLines = new TelemetryLines.Line[tasks.size()];
+        for (int i = 0; i < statLines.length; i++) {
+            statLines[i] = lines.add(tasks.get(i).stats.name);
+        }
+    }
+
+    //  Refill the lines given to attachTelemetry(), without allocating. Same content as
+    // addTelemetry().
+    public void updateTelemetry() {
+        for (int i = 0; i < statLines.length; i++) {
+            TaskStats stats = tasks.get(i).stats;
+            statLines[i].clear()
+                    .append(stats.rateHz, 3, 0).append(" Hz  exec ")
+                    .append(stats.getMeanExecNanos() / 1e6, 5, 2).append('/')
+                    .append(stats.maxExecNanos / 1e6, 5, 2).append(" ms  <1ms ")
+                    .append(onTimePercent(stats), 3, 0).append("%  over ")
+                    .append(stats.overruns);
+        }
+    }
+
+    //  Share of ticks started within a millisecond of their deadline.
+    private static double onTimePercent(TaskStats stats) {
+        long onTime = stats.getJitterCount(0) + stats.getJitterCount(1) + stats.getJitterCount(2);
+        return stats.ticks == 0 ? 0 : 100.0 * onTime / stats.ticks;
+    }
+
+    //  One line per task: rate, mean and max execution time, share of ticks started within
+    // a millisecond of the deadline, and overruns.
+    public void addTelemetry(Telemetry telemetry) {
+        for (ScheduledTask scheduled : tasks) {
+            TaskStats stats = scheduled.stats;
+            telemetry.addData(stats.name, "%3.0f Hz  exec %5.2f/%5.2f ms  <1ms %3.0f%%  over %d",
+                    stats.rateHz, stats.getMeanExecNanos() / 1e6, stats.maxExecNanos / 1e6,
+                    onTimePercent(stats), stats.overruns);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * This is NOT an opmode.
+ *
+ * The measured kinematic constants of a differential drive: encoder counts per inch of travel,
+ * the effective distance between the drive wheels, and how much the wheels slip at each drive
+ * power. AutoCalibrate fits them on the robot and saves them; TrainerbotV2 loads them at init in
+ * place of the geometry in its RobotConstants.
+ *
+ * The slip factor at a power is the distance the robot really covers divided by the distance
+ * its encoders report, so 0.95 means 5% slip. Between the powers measured it is interpolated;
+ * outside them the nearest one is used. With none measured it is 1.
+ *
+ * The file is a Java properties file, so it can be read, and edited by hand, on the Robot
+ * Controller phone:
+ *
+ *     countsPerInch=122.9
+ *     trackWidth=14.1
+ *     slipPowers=0.2,0.4,0.6
+ *     slipFactors=1.0,0.985,0.96
+ *
+ * fitSlope is the least squares fit behind each of these, kept here so it can be run on a
+ * desktop JVM against logged runs. Nothing here uses FTC SDK classes.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class DriveCalibration {
+    public static final String FILE_NAME = "trainerbotv2_calibration.properties";
+
+    public final double countsPerInch;
+    public final double trackWidth;              // inches
+    private final double[] slipPowers;           // ascending
+    private final double[] slipFactors;
+
+    /* Constructor. slipPowers must be ascending, and the same length as slipFactors. */
+    public DriveCalibration(double countsPerInch, double trackWidth,
+                            double[] slipPowers, double[] slipFactors) {
+        if (slipPowers.length != slipFactors.length) {
+            throw new IllegalArgumentException("slip powers and factors differ in length");
+        }
+        this.countsPerInch = countsPerInch;
+        this.trackWidth = trackWidth;
+        this.slipPowers = slipPowers.clone();
+        this.slipFactors = slipFactors.clone();
+    }
+
+    //  No slip measured.
+    public DriveCalibration(double countsPerInch, double trackWidth) {
+        this(countsPerInch, trackWidth, new double[0], new double[0]);
+    }
+
+    //  Real distance over encoder distance at a drive power, by either sign.
+    public double getSlipFactor(double power) {
+        double p = Math.abs(power);
+        int n = slipPowers.length;
+        if (n == 0) {
+            return 1.0;
+        }
+        if (p <= slipPowers[0]) {
+            return slipFactors[0];
+        }
+        for (int i = 1; i < n; i++) {
+            if (p <= slipPowers[i]) {
+                double fraction = (p - slipPowers[i - 1]) / (slipPowers[i] - slipPowers[i - 1]);
+                return slipFactors[i - 1] + fraction * (slipFactors[i] - slipFactors[i - 1]);
+            }
+        }
+        return slipFactors[n - 1];
+    }
+
+    public int getSlipCount() {
+        return slipPowers.length;
+    }
+
+    public double getSlipPower(int i) { return slipPowers[i]; }
+    public double getSlipFactor(int i) { return slipFactors[i]; }
+
+    //  The drive wheel diameter these counts imply, inches, given counts per wheel turn.
+    public double getWheelDiameter(double countsPerWheelRev) {
+        return countsPerWheelRev / (countsPerInch * Math.PI);
+    }
+
+    //  Write to file. Returns false if it couldn't be written.
+    public boolean save(File file) {
+        Properties properties = new Properties();
+        properties.setProperty("countsPerInch", Double.toString(countsPerInch));
+        properties.setProperty("trackWidth", Double.toString(trackWidth));
+        properties.setProperty("slipPowers", join(slipPowers));
+        properties.setProperty("slipFactors", join(slipFactors));
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            properties.store(out, "TrainerbotV2 drive calibration, from AutoCalibrate");
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            close(out);
+        }
+    }
+
+    //  Read from file. If it is missing or can't be parsed, fallback is returned instead.
+    public static DriveCalibration load(File file, DriveCalibration fallback) {
+        if (!file.exists()) {
+            return fallback;
+        }
+        Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            properties.load(in);
+            return new DriveCalibration(
+                    Double.parseDouble(properties.getProperty("countsPerInch")),
+                    Double.parseDouble(properties.getProperty("trackWidth")),
+                    split(properties.getProperty("slipPowers", "")),
+                    split(properties.getProperty("slipFactors", "")));
+        } catch (IOException e) {
+            return fallback;
+        } catch (RuntimeException e) {
+            // Missing or malformed values.
+            return fallback;
+        } finally {
+            close(in);
+        }
+    }
+
+    //  Least squares k for y = k * x, over the first n points. Zero if every x is zero.
+    public static double fitSlope(double[] x, double[] y, int n) {
+        double sxy = 0;
+        double sxx = 0;
+        for (int i = 0; i < n; i++) {
+            sxy += x[i] * y[i];
+            sxx += x[i] * x[i];
+        }
+        return sxx > 0 ? sxy / sxx : 0;
+    }
+
+    //  Root mean square of y - k * x over the first n points: how well a slope fits.
+    public static double rmsResidual(double[] x, double[] y, int n, double k) {
+        if (n == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            double r = y[i] - k * x[i];
+            sum += r * r;
+        }
+        return Math.sqrt(sum / n);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(String.format(Locale.US,
+                "%.2f counts/in, track %.2f in", countsPerInch, trackWidth));
+        for (int i = 0; i < slipPowers.length; i++) {
+            out.append(String.format(Locale.US, ", slip %.2f at %.2f", slipFactors[i],
+                    slipPowers[i]));
+        }
+        return out.toString();
+    }
+
+    private static String join(double[] values) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(values[i]);
+        }
+        return out.toString();
+    }
+
+    private static double[] split(String text) {
+        if (text.trim().length() == 0) {
+            return new double[0];
+        }
+        String[] parts = text.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+        }
+        return values;
+    }
+
+    private static void close(Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Nothing more to do.
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * This is NOT an opmode.
+ *
+ * One drive train movement, run as a small state machine by a MotionExecutor. Movement methods
+ * like TrainerbotV2.encoderDrive hand one of these back to the caller right away, instead of
+ * holding the caller hostage until the motors stop. The caller can poll it, cancel it, or wait
+ * for it with TrainerbotV2.awaitMotion.
+ *
+ * A segment goes PENDING -> RUNNING -> one of DONE, CANCELLED or TIMED_OUT. Subclasses say how
+ * to start, how to tell when they're finished, and how to clean up. Each of those is called on
+ * the control loop thread, once per tick at most, so none of them may block.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    replaces the busy-wait in TrainerbotV2.encoderDrive.
+ * v 0.2    added getRunSeconds for time-based segments.
+ * v 0.3    added getElapsedSeconds, for reporting.
+ */
+
+public abstract class DriveSegment {
+
+    public enum State { PENDING, RUNNING, DONE, CANCELLED, TIMED_OUT }
+
+    private volatile State state = State.PENDING;
+    private volatile boolean cancelRequested = false;
+    private final long timeoutNanos;
+    private long startNanos;
+    private long tickNanos;
+    private long endNanos;
+
+    /* Constructor. A timeout of zero or less means the segment never times out. */
+    protected DriveSegment(double timeoutSeconds) {
+        timeoutNanos = (long) (timeoutSeconds * 1e9);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    //  True once the segment has stopped for any reason.
+    public boolean isDone() {
+        State s = state;
+        return s != State.PENDING && s != State.RUNNING;
+    }
+
+    //  True only if the segment got where it was going.
+    public boolean isCompleted() {
+        return state == State.DONE;
+    }
+
+    //  Safe to call from any thread. The motors are stopped on the next tick.
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    /*  Advance the state machine by one tick. Returns true when the segment is finished. */
+    final boolean tick(long nowNanos) {
+        tickNanos = nowNanos;
+        if (state == State.PENDING) {
+            if (cancelRequested) {
+                startNanos = nowNanos;
+                endNanos = nowNanos;
+                state = State.CANCELLED;
+                return true;
+            }
+            startNanos = nowNanos;
+            start();
+            state = State.RUNNING;
+            return false;
+        }
+        if (state != State.RUNNING) {
+            return true;
+        }
+        if (cancelRequested) {
+            finish(State.CANCELLED);
+        } else if (timeoutNanos > 0 && nowNanos - startNanos > timeoutNanos) {
+            finish(State.TIMED_OUT);
+        } else if (update()) {
+            finish(State.DONE);
+        }
+        return state != State.RUNNING;
+    }
+
+    //  Seconds since the segment started, as of the current tick.
+    protected double getRunSeconds() {
+        return (tickNanos - startNanos) / 1e9;
+    }
+
+    //  Seconds from the first tick to the last: how long the movement took, once it is done.
+    public double getElapsedSeconds() {
+        State s = state;
+        if (s == State.PENDING) {
+            return 0;
+        }
+        return ((s == State.RUNNING ? tickNanos : endNanos) - startNanos) / 1e9;
+    }
+
+    private void finish(State endState) {
+        endNanos = tickNanos;
+        stop();
+        state = endState;
+    }
+
+    //  Command the motors. Called once, on the first tick.
+    protected abstract void start();
+
+    //  Check progress. Return true when the movement is complete.
+    protected abstract boolean update();
+
+    //  Remove power and restore motor modes. Called once, however the segment ended.
+    protected abstract void stop();
+}
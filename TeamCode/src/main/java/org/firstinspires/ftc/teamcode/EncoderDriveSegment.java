@@ -0,0 +1,127 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.util.Range;
+
+/**
+ * This is NOT an opmode.
+ *
+ * A RUN_TO_POSITION movement of a TrainerbotV2's drive motors: the non-blocking form of the
+ * old TrainerbotV2.encoderDrive loop. Encoder counts and busy flags come from the robot's
+ * current RobotSnapshot. Targets are taken relative to where the encoders are when
+ * the segment starts, so the encoders are never reset and keep counting across segments.
+ *
+ * The segment is finished when either motor reaches its target, as before.
+ *
+ * If the robot has an IMU and a heading change is given, the heading is held each tick: it
+ * should have turned by that change times the share of the distance covered so far, and a
+ * HeadingController's correction speeds one wheel up and slows the other, as gyroDrive does in
+ * PushbotAutoDriveByGyro_Linear. Both wheels still stop at their encoder targets, so this
+ * straightens the path along the way rather than adding a turn at the end.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    reads the RobotSnapshot instead of the motors.
+ * v 0.3    IMU heading hold.
+ * v 0.4    powers go through the robot's Drivetrain, which remembers them.
+ */
+
+public class EncoderDriveSegment extends DriveSegment {
+    private final TrainerbotV2 robot;
+    private final double leftSpeed;
+    private final double rightSpeed;
+    private final int leftCounts;
+    private final int rightCounts;
+    private final double headingChange;        // radians, or NaN for no heading hold
+    private final HeadingController headingHold;
+    private int leftStart;
+    private int rightStart;
+    private double startHeading;
+
+    public EncoderDriveSegment(TrainerbotV2 robot,
+                               double leftSpeed, double rightSpeed,
+                               int leftCounts, int rightCounts, double timeoutSeconds) {
+        this(robot, leftSpeed, rightSpeed, leftCounts, rightCounts, Double.NaN, timeoutSeconds);
+    }
+
+    public EncoderDriveSegment(TrainerbotV2 robot,
+                               double leftSpeed, double rightSpeed,
+                               int leftCounts, int rightCounts, double headingChange,
+                               double timeoutSeconds) {
+        super(timeoutSeconds);
+        this.robot = robot;
+        this.leftSpeed = leftSpeed;
+        this.rightSpeed = rightSpeed;
+        this.leftCounts = leftCounts;
+        this.rightCounts = rightCounts;
+        this.headingChange = headingChange;
+        this.headingHold = robot.hasImu() && !Double.isNaN(headingChange)
+                ? robot.newHeadingHold() : null;
+    }
+
+    @Override
+    protected void start() {
+        DcMotor leftDrive = robot.leftDrive;
+        DcMotor rightDrive = robot.rightDrive;
+        RobotSnapshot now = robot.getSnapshot();
+        robot.setDriveStopBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
+        leftStart = now.getPosition(TrainerbotV2.LEFT_DRIVE);
+        rightStart = now.getPosition(TrainerbotV2.RIGHT_DRIVE);
+        startHeading = robot.getImuHeading();
+
+        // Determine new target positions, and pass to motor controller.
+        leftDrive.setTargetPosition(leftStart + leftCounts);
+        rightDrive.setTargetPosition(rightStart + rightCounts);
+
+        // Turn On RUN_TO_POSITION
+        leftDrive.setMode(DcMotor.RunMode.RUN_TO_POSITION);
+        rightDrive.setMode(DcMotor.RunMode.RUN_TO_POSITION);
+
+        // Go!
+        robot.getDrivetrain().setPower(Math.abs(leftSpeed), Math.abs(rightSpeed));
+    }
+
+    @Override
+    protected boolean update() {
+        // Done as soon as either motor gets there. The busy flags came with this cycle's
+        // bulk read, so this costs no hub traffic.
+        RobotSnapshot now = robot.getSnapshot();
+        if (!(now.isBusy(TrainerbotV2.LEFT_DRIVE) && now.isBusy(TrainerbotV2.RIGHT_DRIVE))) {
+            return true;
+        }
+        if (headingHold != null) {
+            holdHeading(now);
+        }
+        return false;
+    }
+
+    private void holdHeading(RobotSnapshot now) {
+        // Progress is the share of the longer wheel path covered so far.
+        double progress = 1.0;
+        if (leftCounts != 0 && Math.abs(leftCounts) >= Math.abs(rightCounts)) {
+            progress = (double) (now.getPosition(TrainerbotV2.LEFT_DRIVE) - leftStart) / leftCounts;
+        } else if (rightCounts != 0) {
+            progress = (double) (now.getPosition(TrainerbotV2.RIGHT_DRIVE) - rightStart)
+                    / rightCounts;
+        }
+        double target = startHeading + headingChange * Range.clip(progress, 0.0, 1.0);
+        double steer = headingHold.update(target, robot.getImuHeading(),
+                now.getTimestampNanos());
+
+        // In RUN_TO_POSITION power is only a speed limit; the target sets the direction. So the
+        // correction is flipped for a wheel that is driving backward.
+        robot.getDrivetrain().setPower(
+                Range.clip(Math.abs(leftSpeed) - steer * Math.signum(leftCounts), 0.0, 1.0),
+                Range.clip(Math.abs(rightSpeed) + steer * Math.signum(rightCounts), 0.0, 1.0));
+    }
+
+    @Override
+    protected void stop() {
+        // Clean up, prepare for next segment.
+        robot.stopDriveMotors();
+
+        // Turn off RUN_TO_POSITION
+        robot.setDriveRunMode(DcMotor.RunMode.RUN_USING_ENCODER);
+    }
+}
@@ -0,0 +1,86 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.firstinspires.ftc.robotcore.external.navigation.VuforiaLocalizer;
+import org.firstinspires.ftc.robotcore.external.navigation.VuforiaTrackables;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Where one season's Vuforia target images are on the Field. A subclass names the trackables
+ * asset and lists its targets in the asset's order, each with a name and a location, from its
+ * constructor. The locations are worked out there, once, when the subclass's single instance is
+ * made at class load; setting up trackables afterward copies them without any trig.
+ *
+ *     VuforiaTrackables targets = SkyStoneField.INSTANCE.load(vuforia);
+ *
+ * loads the asset, then names and places every target in it. Use apply() for trackables that
+ * are already loaded. A new season needs only a new subclass, such as SkyStoneField.
+ *
+ * Locations are in mm, in the FTC Field coordinate system, as in the FIRST samples: X toward
+ * the right from the Red Alliance Station, Y toward the Blue Alliance Station, Z up from the
+ * floor. Before it is placed, each image lies at the center of the Field, facing up. The
+ * layout never changes once made, so a single instance may be shared by all opmodes.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public abstract class FieldLayout {
+    private final String assetName;
+    private final List<String> names = new ArrayList<String>();
+    private final List<Transform3> locations = new ArrayList<Transform3>();
+
+    /* Constructor. assetName is the trackables asset the targets are in. */
+    protected FieldLayout(String assetName) {
+        this.assetName = assetName;
+    }
+
+    //  Add the next target in the asset: translate by (x, y, z) mm, then rotate by extrinsic
+    // XYZ angles in degrees. For subclass constructors only.
+    protected void addTarget(String name, float x, float y, float z,
+                             double xDegrees, double yDegrees, double zDegrees) {
+        names.add(name);
+        locations.add(new Transform3().setLocation(x, y, z, xDegrees, yDegrees, zDegrees));
+    }
+
+    public String getAssetName() {
+        return assetName;
+    }
+
+    public int getTargetCount() {
+        return names.size();
+    }
+
+    public String getTargetName(int index) {
+        return names.get(index);
+    }
+
+    //  Copy a target's location into out, and return it.
+    public Transform3 getTargetLocation(int index, Transform3 out) {
+        return out.set(locations.get(index));
+    }
+
+    //  Load this layout's trackables asset, and name and place each target in it.
+    public VuforiaTrackables load(VuforiaLocalizer vuforia) {
+        VuforiaTrackables trackables = vuforia.loadTrackablesFromAsset(assetName);
+        apply(trackables);
+        return trackables;
+    }
+
+    //  Name and place each target in trackables, which must be from this layout's asset.
+    // Each gets its own copy of the location, so nothing Vuforia does can change the layout.
+    public void apply(VuforiaTrackables trackables) {
+        if (trackables.size() != names.size()) {
+            throw new IllegalArgumentException("expected " + names.size() + " targets in "
+                    + assetName + ", got " + trackables.size());
+        }
+        for (int i = 0; i < names.size(); i++) {
+            trackables.get(i).setName(names.get(i));
+            trackables.get(i).setLocation(locations.get(i).toOpenGLMatrix());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Reads a file written by FlightRecorder, one FlightRecord at a time, in any order:
+ *
+ *     FlightLog log = FlightLog.open(file);
+ *     FlightRecord record = new FlightRecord();
+ *     for (int i = 0; i < log.getRecordCount(); i++) {
+ *         log.read(i, record);
+ *         ...
+ *     }
+ *
+ * Run it on a desktop JVM to turn logs pulled off the Robot Controller into CSV:
+ *
+ *     java -cp ... org.firstinspires.ftc.teamcode.FlightLog match1.bin [match1.csv]
+ *
+ * The file is memory mapped read only, so even a long log costs no heap. Nothing here uses
+ * FTC SDK classes.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class FlightLog {
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int recordCount;
+    private final long startMillis;
+
+    private FlightLog(File file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < FlightRecorder.HEADER_SIZE
+                || buffer.getInt(FlightRecorder.HEADER_MAGIC) != FlightRecorder.MAGIC) {
+            throw new IllegalArgumentException(file.getName() + " is not a flight log");
+        }
+        int version = buffer.getInt(FlightRecorder.HEADER_VERSION);
+        int size = buffer.getInt(FlightRecorder.HEADER_RECORD_SIZE);
+        if (version != FlightRecord.VERSION || size != FlightRecord.SIZE) {
+            throw new IllegalArgumentException(file.getName() + " is version " + version
+                    + "; this reads version " + FlightRecord.VERSION);
+        }
+        long count = buffer.getLong(FlightRecorder.HEADER_COUNT);
+        long fits = (buffer.limit() - FlightRecorder.HEADER_SIZE) / FlightRecord.SIZE;
+        recordCount = (int) Math.max(0, Math.min(count, fits));
+        startMillis = buffer.getLong(FlightRecorder.HEADER_START_MILLIS);
+    }
+
+    //  Open a log. Throws IllegalArgumentException if it isn't one this can read.
+    public static FlightLog open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            MappedByteBuffer buffer =
+                    raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            return new FlightLog(file, buffer);
+        } finally {
+            // The mapping stays valid after the file is closed.
+            raf.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    //  Wall clock time recording started, milliseconds since 1970.
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    //  Fill out with record i, counting from zero.
+    public void read(int i, FlightRecord out) {
+        if (i < 0 || i >= recordCount) {
+            throw new IllegalArgumentException("no record " + i);
+        }
+        out.read(buffer, FlightRecorder.HEADER_SIZE + i * FlightRecord.SIZE);
+    }
+
+    //  Write every record as CSV, with a header line.
+    public void writeCsv(Writer out) throws IOException {
+        FlightRecord record = new FlightRecord();
+        out.write(FlightRecord.csvHeader());
+        out.write('\n');
+        for (int i = 0; i < recordCount; i++) {
+            read(i, record);
+            out.write(record.toCsv());
+            out.write('\n');
+        }
+    }
+
+    //  Decode a log to CSV, next to it unless a CSV file is named.
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: FlightLog log.bin [out.csv]");
+            System.exit(2);
+        }
+        File in = new File(args[0]);
+        File out = args.length > 1 ? new File(args[1])
+                : new File(in.getPath().replaceFirst("(\\.bin)?$", ".csv"));
+        FlightLog log = open(in);
+        FileWriter writer = new FileWriter(out);
+        try {
+            log.writeCsv(writer);
+        } finally {
+            writer.close();
+        }
+        System.out.println(log.getRecordCount() + " records to " + out.getPath());
+    }
+}
@@ -0,0 +1,205 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * This is NOT an opmode.
+ *
+ * One control loop cycle, as the FlightRecorder keeps it: what the sensors read, what the
+ * motors were told, where the robot thought it was, what the driver was doing, and what the
+ * opmode was up to. The fields are public and reused: fill one in each cycle, and hand it to
+ * FlightRecorder.record; or read one back from a FlightLog.
+ *
+ * On file, a record is SIZE bytes, little endian, at fixed offsets, so that a log can be read
+ * at any record without parsing what is before it:
+ *
+ *      0  long   cycle               48  float  heading           84  float  leftStickX
+ *      8  long   nanos               52  float  roll              88  float  leftStickY
+ *     16  int    loopNanos           56  float  pitch             92  float  rightStickX
+ *     20  byte   opModeState         60  float  poseX             96  float  rightStickY
+ *     21  byte   segmentState        64  float  poseY            100  float  leftTrigger
+ *     22  short  pendingSegments     68  float  poseHeading      104  float  rightTrigger
+ *     24  int    leftPosition        72  float  fixX             108  int    buttons
+ *     28  int    rightPosition       76  float  fixY             112  int    argb
+ *     32  float  leftVelocity        80  float  fixHeading       116  byte   flags
+ *     36  float  rightVelocity                                   117  reserved, zero
+ *     40  float  leftPower
+ *     44  float  rightPower
+ *
+ * Floats are plenty for a record: a sixteenth of a millimeter over the field, a millionth
+ * of a radian. Times and counts stay whole. The OFFSET_ constants are the format; change
+ * VERSION with them.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class FlightRecord {
+    public static final int VERSION = 1;
+    public static final int SIZE = 128;
+
+    // opModeState values.
+    public static final byte OPMODE_NONE = 0;
+    public static final byte OPMODE_INIT = 1;
+    public static final byte OPMODE_RUNNING = 2;
+    public static final byte OPMODE_STOPPING = 3;
+    // segmentState when the motion executor is idle; otherwise a DriveSegment.State ordinal.
+    public static final byte SEGMENT_IDLE = -1;
+
+    // flags bits.
+    public static final int HAS_IMU = 1;
+    public static final int HAS_FIX = 2;
+    public static final int HAS_COLOR = 4;
+    public static final int HAS_GAMEPAD = 8;
+
+    static final int OFFSET_CYCLE = 0;
+    static final int OFFSET_NANOS = 8;
+    static final int OFFSET_LOOP_NANOS = 16;
+    static final int OFFSET_OPMODE_STATE = 20;
+    static final int OFFSET_SEGMENT_STATE = 21;
+    static final int OFFSET_PENDING_SEGMENTS = 22;
+    static final int OFFSET_LEFT_POSITION = 24;
+    static final int OFFSET_RIGHT_POSITION = 28;
+    static final int OFFSET_LEFT_VELOCITY = 32;
+    static final int OFFSET_RIGHT_VELOCITY = 36;
+    static final int OFFSET_LEFT_POWER = 40;
+    static final int OFFSET_RIGHT_POWER = 44;
+    static final int OFFSET_HEADING = 48;
+    static final int OFFSET_ROLL = 52;
+    static final int OFFSET_PITCH = 56;
+    static final int OFFSET_POSE_X = 60;
+    static final int OFFSET_POSE_Y = 64;
+    static final int OFFSET_POSE_HEADING = 68;
+    static final int OFFSET_FIX_X = 72;
+    static final int OFFSET_FIX_Y = 76;
+    static final int OFFSET_FIX_HEADING = 80;
+    static final int OFFSET_LEFT_STICK_X = 84;
+    static final int OFFSET_LEFT_STICK_Y = 88;
+    static final int OFFSET_RIGHT_STICK_X = 92;
+    static final int OFFSET_RIGHT_STICK_Y = 96;
+    static final int OFFSET_LEFT_TRIGGER = 100;
+    static final int OFFSET_RIGHT_TRIGGER = 104;
+    static final int OFFSET_BUTTONS = 108;
+    static final int OFFSET_ARGB = 112;
+    static final int OFFSET_FLAGS = 116;
+    // 117 to SIZE are reserved, and written as zero.
+
+    public long cycle;                 // RobotSnapshot cycle
+    public long nanos;                 // RobotClock time of the snapshot
+    public int loopNanos;              // since the previous record's snapshot
+    public byte opModeState;
+    public byte segmentState;
+    public short pendingSegments;      // queued behind the current segment
+    public int leftPosition, rightPosition;       // encoder counts
+    public float leftVelocity, rightVelocity;     // counts per second
+    public float leftPower, rightPower;           // as last commanded
+    public float heading, roll, pitch;            // IMU, radians
+    public float poseX, poseY, poseHeading;       // PoseEstimator, inches and radians
+    public float fixX, fixY, fixHeading;          // vision fix this cycle, if HAS_FIX
+    public float leftStickX, leftStickY, rightStickX, rightStickY;
+    public float leftTrigger, rightTrigger;
+    public int buttons;                // GamepadEvents.getButtonBits of gamepad1
+    public int argb;                   // color sensor
+    public int flags;
+
+    public boolean has(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    //  Write SIZE bytes at offset. The buffer must be little endian.
+    public void write(ByteBuffer out, int offset) {
+        out.putLong(offset + OFFSET_CYCLE, cycle);
+        out.putLong(offset + OFFSET_NANOS, nanos);
+        out.putInt(offset + OFFSET_LOOP_NANOS, loopNanos);
+        out.put(offset + OFFSET_OPMODE_STATE, opModeState);
+        out.put(offset + OFFSET_SEGMENT_STATE, segmentState);
+        out.putShort(offset + OFFSET_PENDING_SEGMENTS, pendingSegments);
+        out.putInt(offset + OFFSET_LEFT_POSITION, leftPosition);
+        out.putInt(offset + OFFSET_RIGHT_POSITION, rightPosition);
+        out.putFloat(offset + OFFSET_LEFT_VELOCITY, leftVelocity);
+        out.putFloat(offset + OFFSET_RIGHT_VELOCITY, rightVelocity);
+        out.putFloat(offset + OFFSET_LEFT_POWER, leftPower);
+        out.putFloat(offset + OFFSET_RIGHT_POWER, rightPower);
+        out.putFloat(offset + OFFSET_HEADING, heading);
+        out.putFloat(offset + OFFSET_ROLL, roll);
+        out.putFloat(offset + OFFSET_PITCH, pitch);
+        out.putFloat(offset + OFFSET_POSE_X, poseX);
+        out.putFloat(offset + OFFSET_POSE_Y, poseY);
+        out.putFloat(offset + OFFSET_POSE_HEADING, poseHeading);
+        out.putFloat(offset + OFFSET_FIX_X, fixX);
+        out.putFloat(offset + OFFSET_FIX_Y, fixY);
+        out.putFloat(offset + OFFSET_FIX_HEADING, fixHeading);
+        out.putFloat(offset + OFFSET_LEFT_STICK_X, leftStickX);
+        out.putFloat(offset + OFFSET_LEFT_STICK_Y, leftStickY);
+        out.putFloat(offset + OFFSET_RIGHT_STICK_X, rightStickX);
+        out.putFloat(offset + OFFSET_RIGHT_STICK_Y, rightStickY);
+        out.putFloat(offset + OFFSET_LEFT_TRIGGER, leftTrigger);
+        out.putFloat(offset + OFFSET_RIGHT_TRIGGER, rightTrigger);
+        out.putInt(offset + OFFSET_BUTTONS, buttons);
+        out.putInt(offset + OFFSET_ARGB, argb);
+        out.put(offset + OFFSET_FLAGS, (byte) flags);
+        for (int i = OFFSET_FLAGS + 1; i < SIZE; i++) {
+            out.put(offset + i, (byte) 0);
+        }
+    }
+
+    //  Read SIZE bytes at offset. The buffer must be little endian.
+    public void read(ByteBuffer in, int offset) {
+        cycle = in.getLong(offset + OFFSET_CYCLE);
+        nanos = in.getLong(offset + OFFSET_NANOS);
+        loopNanos = in.getInt(offset + OFFSET_LOOP_NANOS);
+        opModeState = in.get(offset + OFFSET_OPMODE_STATE);
+        segmentState = in.get(offset + OFFSET_SEGMENT_STATE);
+        pendingSegments = in.getShort(offset + OFFSET_PENDING_SEGMENTS);
+        leftPosition = in.getInt(offset + OFFSET_LEFT_POSITION);
+        rightPosition = in.getInt(offset + OFFSET_RIGHT_POSITION);
+        leftVelocity = in.getFloat(offset + OFFSET_LEFT_VELOCITY);
+        rightVelocity = in.getFloat(offset + OFFSET_RIGHT_VELOCITY);
+        leftPower = in.getFloat(offset + OFFSET_LEFT_POWER);
+        rightPower = in.getFloat(offset + OFFSET_RIGHT_POWER);
+        heading = in.getFloat(offset + OFFSET_HEADING);
+        roll = in.getFloat(offset + OFFSET_ROLL);
+        pitch = in.getFloat(offset + OFFSET_PITCH);
+        poseX = in.getFloat(offset + OFFSET_POSE_X);
+        poseY = in.getFloat(offset + OFFSET_POSE_Y);
+        poseHeading = in.getFloat(offset + OFFSET_POSE_HEADING);
+        fixX = in.getFloat(offset + OFFSET_FIX_X);
+        fixY = in.getFloat(offset + OFFSET_FIX_Y);
+        fixHeading = in.getFloat(offset + OFFSET_FIX_HEADING);
+        leftStickX = in.getFloat(offset + OFFSET_LEFT_STICK_X);
+        leftStickY = in.getFloat(offset + OFFSET_LEFT_STICK_Y);
+        rightStickX = in.getFloat(offset + OFFSET_RIGHT_STICK_X);
+        rightStickY = in.getFloat(offset + OFFSET_RIGHT_STICK_Y);
+        leftTrigger = in.getFloat(offset + OFFSET_LEFT_TRIGGER);
+        rightTrigger = in.getFloat(offset + OFFSET_RIGHT_TRIGGER);
+        buttons = in.getInt(offset + OFFSET_BUTTONS);
+        argb = in.getInt(offset + OFFSET_ARGB);
+        flags = in.get(offset + OFFSET_FLAGS) & 0xFF;
+    }
+
+    //  Column names for toCsv, without a line end.
+    public static String csvHeader() {
+        return "cycle,nanos,loop_ns,opmode,segment,pending,left_pos,right_pos,left_vel,right_vel,"
+                + "left_power,right_power,imu,heading,roll,pitch,pose_x,pose_y,pose_heading,"
+                + "fix,fix_x,fix_y,fix_heading,gamepad,lx,ly,rx,ry,lt,rt,buttons,color,argb";
+    }
+
+    //  This record as a CSV line, without a line end.
+    public String toCsv() {
+        return String.format(Locale.US, "%d,%d,%d,%d,%d,%d,%d,%d,%.1f,%.1f,%.3f,%.3f,"
+                        + "%d,%.5f,%.5f,%.5f,%.3f,%.3f,%.5f,%d,%.3f,%.3f,%.5f,"
+                        + "%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%d,%d,%08x",
+                cycle, nanos, loopNanos, opModeState, segmentState, pendingSegments,
+                leftPosition, rightPosition, leftVelocity, rightVelocity, leftPower, rightPower,
+                bit(HAS_IMU), heading, roll, pitch, poseX, poseY, poseHeading,
+                bit(HAS_FIX), fixX, fixY, fixHeading,
+                bit(HAS_GAMEPAD), leftStickX, leftStickY, rightStickX, rightStickY,
+                leftTrigger, rightTrigger, buttons, bit(HAS_COLOR), argb);
+    }
+
+    private int bit(int flag) {
+        return has(flag) ? 1 : 0;
+    }
+}
@@ -0,0 +1,234 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Keeps a FlightRecord of every control loop cycle in a file, for looking at after a match:
+ * decode it to CSV with FlightLog, or play it back with a replay.
+ *
+ *     FlightRecorder recorder = new FlightRecorder(file, FlightRecorder.DEFAULT_CAPACITY);
+ *     if (recorder.start()) { ... }
+ *     ...
+ *     recorder.record(cycleRecord);      // every cycle
+ *     ...
+ *     recorder.stop();
+ *
+ * start() makes the file its full size up front and memory maps it, so recording never grows
+ * a file. record() only copies the record into a ring buffer in memory, RING_RECORDS deep,
+ * and returns; it never touches the file, and never waits. A flusher thread moves records from
+ * the ring into the mapped file every FLUSH_PERIOD_NANOS, and asks for them to be written out
+ * to flash every FORCE_PERIOD_NANOS. If the flusher falls a whole ring behind, new records are
+ * dropped and counted; once the file is full, recording stops and later records are counted
+ * too.
+ *
+ * The file starts with a HEADER_SIZE header, then the records:
+ *
+ *      0  int   MAGIC, "FLT1"
+ *      4  int   FlightRecord.VERSION
+ *      8  int   FlightRecord.SIZE
+ *     12  int   capacity, in records
+ *     16  long  records in the file, updated at each flush
+ *     24  long  wall clock milliseconds at start()
+ *     32  reserved, zero
+ *
+ * So a log from a robot that lost power mid-match is good up to its last flush. There is one
+ * writer, the control loop, and one reader, the flusher; they share only the ring and two
+ * volatile counts.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class FlightRecorder implements Runnable {
+    public static final int MAGIC = 0x31544C46;    // "FLT1", little endian
+    public static final int HEADER_SIZE = 64;
+    // A four minute match, with time to spare, at 100 cycles a second: about 4.6 MB.
+    public static final int DEFAULT_CAPACITY = 36000;
+    // A power of two. A second and a quarter at 100 Hz.
+    public static final int RING_RECORDS = 128;
+    public static final long FLUSH_PERIOD_NANOS = 20000000;      // 20 ms
+    public static final long FORCE_PERIOD_NANOS = 1000000000;    // 1 s
+
+    static final int HEADER_MAGIC = 0;
+    static final int HEADER_VERSION = 4;
+    static final int HEADER_RECORD_SIZE = 8;
+    static final int HEADER_CAPACITY = 12;
+    static final int HEADER_COUNT = 16;
+    static final int HEADER_START_MILLIS = 24;
+
+    private static final int MASK = RING_RECORDS - 1;
+
+    private final File file;
+    private final int capacity;
+    private final ByteBuffer ring =
+            ByteBuffer.allocate(RING_RECORDS * FlightRecord.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] ringBytes = ring.array();
+    // Records put in the ring, and records taken out of it. Record n is in slot n & MASK.
+    private volatile long written = 0;
+    private volatile long flushed = 0;
+    private volatile long dropped = 0;       // control loop thread only
+    private volatile long overflowed = 0;    // flusher thread only
+    private volatile boolean running = false;
+    private RandomAccessFile raf = null;
+    private MappedByteBuffer mapped = null;
+    private long stored = 0;                 // records in the file; flusher thread only
+    private Thread thread = null;
+
+    /* Constructor. Nothing is opened until start(). */
+    public FlightRecorder(File file, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.file = file;
+        this.capacity = capacity;
+    }
+
+    //  Create and map the file, and start the flusher. False if the file couldn't be made.
+    public synchronized boolean start() {
+        if (thread != null) {
+            return true;
+        }
+        try {
+            File folder = file.getParentFile();
+            if (folder != null && !folder.isDirectory() && !folder.mkdirs()) {
+                return false;
+            }
+            raf = new RandomAccessFile(file, "rw");
+            long length = HEADER_SIZE + (long) capacity * FlightRecord.SIZE;
+            raf.setLength(length);
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        } catch (IOException e) {
+            closeFile();
+            return false;
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        mapped.putInt(HEADER_MAGIC, MAGIC);
+        mapped.putInt(HEADER_VERSION, FlightRecord.VERSION);
+        mapped.putInt(HEADER_RECORD_SIZE, FlightRecord.SIZE);
+        mapped.putInt(HEADER_CAPACITY, capacity);
+        mapped.putLong(HEADER_COUNT, 0);
+        mapped.putLong(HEADER_START_MILLIS, System.currentTimeMillis());
+        stored = 0;
+        running = true;
+        thread = new Thread(this, "FlightRecorder");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    //  Flush what is in the ring, write the file out, and close it.
+    public synchronized void stop() {
+        running = false;
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    //  Copy record into the ring. Never blocks. False if it was dropped: the ring is full,
+    // the file is full, or the recorder isn't running. Control loop thread only.
+    public boolean record(FlightRecord record) {
+        long n = written;
+        if (!running || n - flushed >= RING_RECORDS) {
+            dropped++;
+            return false;
+        }
+        record.write(ring, (int) (n & MASK) * FlightRecord.SIZE);
+        written = n + 1;
+        return true;
+    }
+
+    //  Records given to record() but not kept.
+    public long getDroppedCount() {
+        return dropped + overflowed;
+    }
+
+    //  Records moved to the file so far.
+    public long getFlushedCount() {
+        return flushed;
+    }
+
+    //  The flusher keeps real time, not RobotClock's: it is no part of a control cycle, and a
+    // simulated clock belongs to the opmode's thread.
+    @Override
+    public void run() {
+        long lastForce = System.nanoTime();
+        try {
+            while (running) {
+                flush();
+                long now = System.nanoTime();
+                if (now - lastForce >= FORCE_PERIOD_NANOS) {
+                    mapped.force();
+                    lastForce = now;
+                }
+                try {
+                    Thread.sleep(FLUSH_PERIOD_NANOS / 1000000);
+                } catch (InterruptedException e) {
+                    // stop() wants the last records.
+                    break;
+                }
+            }
+            flush();
+            mapped.force();
+        } finally {
+            running = false;
+            closeFile();
+        }
+    }
+
+    //  Move everything in the ring to the file. Flusher thread only.
+    private void flush() {
+        long n = written;
+        long i = flushed;
+        while (i < n) {
+            if (stored == capacity) {
+                // The file is full. Stop taking records.
+                overflowed += n - i;
+                running = false;
+                i = n;
+                break;
+            }
+            mapped.position((int) (HEADER_SIZE + stored * FlightRecord.SIZE));
+            mapped.put(ringBytes, (int) (i & MASK) * FlightRecord.SIZE, FlightRecord.SIZE);
+            stored++;
+            i++;
+        }
+        flushed = i;
+        mapped.putLong(HEADER_COUNT, stored);
+    }
+
+    private void closeFile() {
+        mapped = null;
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                // Nothing more to do.
+            }
+            raf = null;
+        }
+    }
+}
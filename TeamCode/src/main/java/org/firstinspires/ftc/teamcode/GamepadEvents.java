@@ -0,0 +1,186 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.Gamepad;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Turns a gamepad's buttons into a queue of press and release events. Call update() once per
+ * control loop cycle; it compares every button with the last cycle and queues an event for each
+ * one that changed, stamped with RobotClock time. Then take the events in order:
+ *
+ *     events.update(gamepad1);
+ *     while (events.next()) {
+ *         if (events.isPress(GamepadEvents.Button.Y)) { ... }
+ *     }
+ *
+ * Unlike polling gamepad1.y, a press is seen once however long the button is held, and a press
+ * made while the opmode is busy waits in the queue instead of being missed. The queue holds
+ * CAPACITY events; if the reader falls that far behind, newer events are dropped and counted,
+ * so what is queued stays in order.
+ *
+ * The queue lives in primitive arrays, and Button values are shared constants, so nothing here
+ * allocates after construction. One thread only.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    added getButtonBits, for the FlightRecorder.
+ * v 0.3    added setButtonBits, for the ReplayHarness.
+ */
+
+public class GamepadEvents {
+
+    public enum Button {
+        A, B, X, Y, DPAD_UP, DPAD_DOWN, DPAD_LEFT, DPAD_RIGHT, LEFT_BUMPER, RIGHT_BUMPER,
+        LEFT_STICK_BUTTON, RIGHT_STICK_BUTTON, START, BACK
+    }
+
+    public static final int CAPACITY = 32;
+    private static final Button[] BUTTONS = Button.values();
+
+    private final boolean[] down = new boolean[BUTTONS.length];
+    private final int[] queueButtons = new int[CAPACITY];
+    private final boolean[] queuePresses = new boolean[CAPACITY];
+    private final long[] queueNanos = new long[CAPACITY];
+    private int head = 0;
+    private int size = 0;
+    private long dropped = 0;
+
+    // The event next() moved to.
+    private Button button = null;
+    private boolean press = false;
+    private long nanos = 0;
+
+    //  Queue an event for every button that changed since the last call.
+    public void update(Gamepad gamepad) {
+        long now = RobotClock.nanoTime();
+        for (int i = 0; i < BUTTONS.length; i++) {
+            boolean isDown = read(gamepad, BUTTONS[i]);
+            if (isDown != down[i]) {
+                down[i] = isDown;
+                if (size == CAPACITY) {
+                    dropped++;
+                } else {
+                    int slot = (head + size) % CAPACITY;
+                    queueButtons[slot] = i;
+                    queuePresses[slot] = isDown;
+                    queueNanos[slot] = now;
+                    size++;
+                }
+            }
+        }
+    }
+
+    //  Move to the oldest queued event, taking it off the queue. False if there is none.
+    public boolean next() {
+        if (size == 0) {
+            button = null;
+            return false;
+        }
+        button = BUTTONS[queueButtons[head]];
+        press = queuePresses[head];
+        nanos = queueNanos[head];
+        head = (head + 1) % CAPACITY;
+        size--;
+        return true;
+    }
+
+    //  The current event: which button, whether it went down or up, and when it was seen.
+    public Button getButton() { return button; }
+    public boolean isPress() { return press; }
+    public long getNanos() { return nanos; }
+
+    //  True if the current event is a press of b.
+    public boolean isPress(Button b) {
+        return button == b && press;
+    }
+
+    //  Whether b was down at the last update().
+    public boolean isDown(Button b) {
+        return down[b.ordinal()];
+    }
+
+    //  Throw away every queued event. Buttons held now won't be reported until released.
+    public void clear() {
+        head = 0;
+        size = 0;
+        button = null;
+    }
+
+    public int getQueuedCount() {
+        return size;
+    }
+
+    //  Events lost because the queue was full.
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    //  True if either stick is pushed past deadband, as a fraction of full travel.
+    public static boolean sticksActive(Gamepad gamepad, double deadband) {
+        return Math.abs(gamepad.left_stick_x) > deadband
+                || Math.abs(gamepad.left_stick_y) > deadband
+                || Math.abs(gamepad.right_stick_x) > deadband
+                || Math.abs(gamepad.right_stick_y) > deadband;
+    }
+
+    //  Every button of gamepad that is down, as bit (1 << Button.ordinal()).
+    public static int getButtonBits(Gamepad gamepad) {
+        int bits = 0;
+        for (int i = 0; i < BUTTONS.length; i++) {
+            if (read(gamepad, BUTTONS[i])) {
+                bits |= 1 << i;
+            }
+        }
+        return bits;
+    }
+
+    //  Press every button whose bit is set in bits, as getButtonBits makes them, and release
+    // the rest.
+    public static void setButtonBits(Gamepad gamepad, int bits) {
+        for (int i = 0; i < BUTTONS.length; i++) {
+            write(gamepad, BUTTONS[i], (bits & (1 << i)) != 0);
+        }
+    }
+
+    private static boolean read(Gamepad gamepad, Button b) {
+        switch (b) {
+            case A: return gamepad.a;
+            case B: return gamepad.b;
+            case X: return gamepad.x;
+            case Y: return gamepad.y;
+            case DPAD_UP: return gamepad.dpad_up;
+            case DPAD_DOWN: return gamepad.dpad_down;
+            case DPAD_LEFT: return gamepad.dpad_left;
+            case DPAD_RIGHT: return gamepad.dpad_right;
+            case LEFT_BUMPER: return gamepad.left_bumper;
+            case RIGHT_BUMPER: return gamepad.right_bumper;
+            case LEFT_STICK_BUTTON: return gamepad.left_stick_button;
+            case RIGHT_STICK_BUTTON: return gamepad.right_stick_button;
+            case START: return gamepad.start;
+            case BACK: return gamepad.back;
+            default: return false;
+        }
+    }
+
+    private static void write(Gamepad gamepad, Button b, boolean isDown) {
+        switch (b) {
+            case A: gamepad.a = isDown; break;
+            case B: gamepad.b = isDown; break;
+            case X: gamepad.x = isDown; break;
+            case Y: gamepad.y = isDown; break;
+            case DPAD_UP: gamepad.dpad_up = isDown; break;
+            case DPAD_DOWN: gamepad.dpad_down = isDown; break;
+            case DPAD_LEFT: gamepad.dpad_left = isDown; break;
+            case DPAD_RIGHT: gamepad.dpad_right = isDown; break;
+            case LEFT_BUMPER: gamepad.left_bumper = isDown; break;
+            case RIGHT_BUMPER: gamepad.right_bumper = isDown; break;
+            case LEFT_STICK_BUTTON: gamepad.left_stick_button = isDown; break;
+            case RIGHT_STICK_BUTTON: gamepad.right_stick_button = isDown; break;
+            case START: gamepad.start = isDown; break;
+            case BACK: gamepad.back = isDown; break;
+            default: break;
+        }
+    }
+}
@@ -3,9 +3,14 @@ package org.firstinspires.ftc.teamcode;
 import android.graphics.Bitmap;
 //import android.support.annotation.NonNull;
 //import android.support.annotation.Nullable;
+import com.qualcomm.hardware.lynx.LynxModule;
 import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
 import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
 import com.qualcomm.robotcore.eventloop.opmode.Disabled;
+import com.qualcomm.robotcore.hardware.ColorSensor;
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
+import com.qualcomm.robotcore.hardware.HardwareMap;
 
 import org.firstinspires.ftc.robotcore.external.ClassFactory;
 import org.firstinspires.ftc.robotcore.external.matrices.OpenGLMatrix;
@@ -49,6 +54,14 @@ import java.util.concurrent.BlockingQueue;
  *          7/4/19 Coach Rasor added this to CSEE 331 code. TrainerbotV2 and Lookeebot will inherit
  *          from this.
  * v 0.11   7/6/19 Coach Rasor moved some common opmode members into here.
+ * v 0.12   added the per-cycle RobotSnapshot, filled by one bulk read per hub.
+ * v 0.13   snapshot timestamps come from RobotClock.
+ * v 0.14   snapshot IMU values come from an ImuSampler, off the I2C bus.
+ * v 0.15   added the Drivetrain, bound from the hardware configuration file.
+ * v 0.16   the configuration file is parsed once, and kept in the RobotContext.
+ * v 0.17   snapshots are reused, not made each cycle; the color sensor is read on request.
+ * v 0.18   snapshots belong to the control loop thread; none is published to other threads.
+ * v 0.19   a snapshot has no IMU values once the IMU has failed.
  */
 
 public abstract class GenericFTCRobot {
@@ -57,6 +70,172 @@ public abstract class GenericFTCRobot {
         runTime = new ElapsedTime();
     }
 
+    /*                      Sensor snapshot members.                          */
+    // Each control loop cycle, updateSnapshot() clears the hub bulk caches, and the first motor
+    // read after that fetches every encoder, velocity and busy flag on the hub in one transaction.
+    // Everything else in the cycle reads the resulting RobotSnapshot, never the hardware.
+    // In MANUAL caching mode the hubs never refresh on their own, so an opmode that reads
+    // motors must call updateSnapshot() (or something that calls it) every cycle.
+    // The color sensor is I2C, a blocking transaction nothing in the loop needs, so it is read
+    // only when readColor() is called. Two snapshots are refilled in turn: none is made per cycle.
+    // A snapshot is refilled in place, so snapshots are for the control loop thread only.
+    protected List<LynxModule> allHubs = new ArrayList<LynxModule>();
+    private DcMotor[] snapshotMotors = new DcMotor[0];
+    private ImuSampler snapshotImu = null;
+    private final ImuSampler.Sample imuSample = new ImuSampler.Sample();
+    private ColorSensor snapshotColor = null;
+    private boolean colorPending = false;
+    private int colorArgb = 0;
+    private long snapshotCycle = 0;
+    private RobotSnapshot[] snapshotBuffers = {new RobotSnapshot(0), new RobotSnapshot(0)};
+    private RobotSnapshot snapshot = RobotSnapshot.EMPTY;
+
+    //  Put every hub in the map into MANUAL bulk caching mode.
+    protected void initBulkReads(HardwareMap someMap) {
+        allHubs = new ArrayList<LynxModule>(someMap.getAll(LynxModule.class));
+        for (LynxModule hub : allHubs) {
+            hub.setBulkCachingMode(LynxModule.BulkCachingMode.MANUAL);
+        }
+    }
+
+    //  Drop every hub's cached bulk data, so the next motor read on each hub fetches it all
+    // again in one transaction. Indexed, so no Iterator is made every cycle.
+    protected void clearBulkCaches() {
+        for (int i = 0; i < allHubs.size(); i++) {
+            allHubs.get(i).clearBulkCache();
+        }
+    }
+
+    //  Name the devices a snapshot covers. Motor order sets the snapshot motor index.
+    // The IMU and color sensor may be null.
+    protected void setSnapshotDevices(DcMotor[] motors, ImuSampler imu, ColorSensor color) {
+        snapshotMotors = motors.clone();
+        snapshotImu = imu;
+        snapshotColor = color;
+        snapshotBuffers = new RobotSnapshot[] {
+                new RobotSnapshot(motors.length), new RobotSnapshot(motors.length)};
+    }
+
+    //  Read the color sensor now, on this thread: an I2C transaction, so not every cycle. The
+    // reading also goes into the next snapshot. Zero if there is no color sensor.
+    public int readColor() {
+        if (snapshotColor == null) {
+            return 0;
+        }
+        colorArgb = snapshotColor.argb();
+        colorPending = true;
+        return colorArgb;
+    }
+
+    //  Read all sensors once, into the next snapshot. Call once per control loop cycle, on the
+    // control loop thread.
+    public RobotSnapshot updateSnapshot() {
+        clearBulkCaches();
+        long now = RobotClock.nanoTime();
+        RobotSnapshot next = snapshotBuffers[(int) (snapshotCycle & 1)];
+        int count = snapshotMotors.length;
+        for (int i = 0; i < count; i++) {
+            DcMotor motor = snapshotMotors[i];
+            next.setMotor(i, motor.getCurrentPosition(),
+                    motor instanceof DcMotorEx ? ((DcMotorEx) motor).getVelocity() : 0,
+                    motor.isBusy());
+        }
+        // The IMU is an I2C device, not part of the bulk read. It is normally read by its
+        // sampler thread; take its newest sample. If the thread isn't running, read it here.
+        // An IMU that has failed has no samples worth taking.
+        boolean hasImu = false;
+        long imuNanos = 0;
+        double heading = 0, roll = 0, pitch = 0;
+        if (snapshotImu != null && (snapshotImu.isRunning() || snapshotImu.sample())) {
+            hasImu = !snapshotImu.hasFailed() && snapshotImu.getLatest(imuSample);
+            if (hasImu) {
+                imuNanos = imuSample.nanos;
+                heading = imuSample.heading;
+                roll = imuSample.roll;
+                pitch = imuSample.pitch;
+            }
+        }
+        boolean hasColor = colorPending;
+        colorPending = false;
+
+        next.set(snapshotCycle++, now, hasImu, imuNanos, heading, roll, pitch, hasColor,
+                hasColor ? colorArgb : 0);
+        snapshot = next;
+        return next;
+    }
+
+    //  The most recent snapshot. Never null. Control loop thread only: another thread could
+    // see it half refilled.
+    public RobotSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /*                      Drivetrain members.                               */
+    // What drives the robot, whatever its configuration. bindDrivetrain looks up the motors
+    // once, at init; after that, commands go straight to cached handles.
+    public interface Drivetrain {
+        //  False for a robot with no drive; commands are then ignored.
+        boolean canDrive();
+        int getMotorCount();
+        DcMotor getMotor(int i);
+        //  Power for the left and right sides, -1 to 1, positive forward.
+        void setPower(double left, double right);
+        //  The power last given to setPower for a side, 0 left or 1 right. Read from memory,
+        // not the hub.
+        double getPower(int side);
+        void setMode(DcMotor.RunMode mode);
+        void setZeroPowerBehavior(DcMotor.ZeroPowerBehavior behavior);
+        //  Set motor directions so positive power drives forward. mirrored is for a robot
+        // built with its motors the other way round.
+        void setDirections(boolean mirrored);
+    }
+
+    protected Drivetrain drivetrain = TankDrivetrain.NONE;
+    private RobotConfiguration configuration = null;
+    private boolean configurationSet = false;
+
+    //  The hardware configuration to bind to. Null means none: bind by default device names.
+    // Unless this is called, it is the configuration active on the Robot Controller, as the
+    // RobotContext keeps it.
+    public void setConfiguration(RobotConfiguration newConfiguration) {
+        configuration = newConfiguration;
+        configurationSet = true;
+    }
+
+    //  Null if there is none.
+    public RobotConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    public Drivetrain getDrivetrain() {
+        return drivetrain;
+    }
+
+    //  Bind the drivetrain to the configuration's motors, in file order. Without a
+    // configuration, to those of defaultMotorNames that are in the map.
+    protected Drivetrain bindDrivetrain(HardwareMap someMap, String... defaultMotorNames) {
+        if (!configurationSet) {
+            setConfiguration(RobotContext.get(someMap).getConfiguration());
+        }
+        String[] names;
+        if (configuration != null) {
+            names = new String[configuration.getMotorCount()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = configuration.getMotorName(i);
+            }
+        } else {
+            List<String> found = new ArrayList<String>();
+            for (String name : defaultMotorNames) {
+                if (someMap.tryGet(DcMotor.class, name) != null) {
+                    found.add(name);
+                }
+            }
+            names = found.toArray(new String[found.size()]);
+        }
+        drivetrain = TankDrivetrain.bind(someMap, names);
+        return drivetrain;
+    }
+
     /*                      Robot independent measurements.                   */
     // Since ImageTarget trackables use mm to specify their dimensions, we must
     // use mm for all the physical dimensions.
@@ -0,0 +1,80 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.util.Range;
+
+/**
+ * This is NOT an opmode.
+ *
+ * A PID controller on robot heading, for the IMU: the non-blocking, PID form of the P-only
+ * getSteer() in PushbotAutoDriveByGyro_Linear. Each control loop cycle, update() takes the
+ * heading wanted and the heading measured, in radians, and returns a turn power: positive turns
+ * the robot counterclockwise, so add it to the right wheel and subtract it from the left.
+ *
+ * The derivative is taken on the measured heading, not the error, so a step in the target
+ * doesn't kick the output. The integral only builds up while the error is inside integralZone,
+ * so a big turn doesn't wind it up, and it is cleared when the error changes sign.
+ *
+ * Angles are continuous, not wrapped: a target of 2 pi from a heading of 0 is a full turn.
+ * Nothing allocates, and it uses no FTC SDK classes but Range.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class HeadingController {
+    private final double kP;
+    private final double kI;
+    private final double kD;
+    private final double integralZone;       // radians
+    private final double maxOutput;
+
+    private double integral = 0;
+    private double lastError = 0;
+    private double lastHeading = 0;
+    private long lastNanos = 0;
+    private boolean started = false;
+
+    /* Constructor. Gains are power per radian, per radian second, and per radian/second. */
+    public HeadingController(double kP, double kI, double kD, double integralZone,
+                             double maxOutput) {
+        this.kP = kP;
+        this.kI = kI;
+        this.kD = kD;
+        this.integralZone = integralZone;
+        this.maxOutput = maxOutput;
+    }
+
+    //  Forget the past. The next update() has no derivative or integral term.
+    public void reset() {
+        integral = 0;
+        started = false;
+    }
+
+    //  Turn power, within +-maxOutput, to bring heading to target. nowNanos is RobotClock time.
+    public double update(double target, double heading, long nowNanos) {
+        double error = target - heading;
+        double derivative = 0;
+        if (started) {
+            double dt = (nowNanos - lastNanos) / 1e9;
+            if (dt > 0) {
+                derivative = -(heading - lastHeading) / dt;
+                if (Math.abs(error) < integralZone && error * lastError > 0) {
+                    integral += error * dt;
+                } else {
+                    integral = 0;
+                }
+            }
+        }
+        started = true;
+        lastError = error;
+        lastHeading = heading;
+        lastNanos = nowNanos;
+        return Range.clip(kP * error + kI * integral + kD * derivative, -maxOutput, maxOutput);
+    }
+
+    //  Target minus heading, as of the last update().
+    public double getError() {
+        return lastError;
+    }
+}
@@ -0,0 +1,240 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.hardware.bosch.BNO055IMU;
+
+import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
+
+import static org.firstinspires.ftc.robotcore.external.navigation.AngleUnit.RADIANS;
+import static org.firstinspires.ftc.robotcore.external.navigation.AxesOrder.ZYX;
+import static org.firstinspires.ftc.robotcore.external.navigation.AxesReference.INTRINSIC;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Reads a BNO055 IMU on a thread of its own, at the rate its fusion output updates, so that an
+ * I2C transaction of a few milliseconds never sits in the control loop. Each reading goes into
+ * a ring buffer of the last CAPACITY samples: timestamp, heading, roll and pitch, in parallel
+ * arrays of primitives. Readers get the newest sample, or the heading interpolated to any
+ * moment the buffer covers, without touching I2C and without waiting on the sampler.
+ *
+ *     ImuSampler sampler = new ImuSampler(imu);
+ *     sampler.start();
+ *     ImuSampler.Sample sample = new ImuSampler.Sample();    // once
+ *     ...
+ *     if (sampler.getLatest(sample)) { ... sample.heading ... }
+ *     ...
+ *     sampler.stop();
+ *
+ * There is one writer, the sampler thread, and no locks. The writer fills a slot, then bumps a
+ * volatile sample count, which publishes it. A reader reads the count, copies the slot, and
+ * checks the count again; if the writer has lapped it meanwhile, it tries again.
+ *
+ * Without start(), nothing reads the IMU but sample(): call it once per cycle to sample on the
+ * caller's thread. SimHarness runs this way, so that virtual time stays on one thread.
+ *
+ * If a read throws, e.g. the opmode ended and its hardware was closed, the IMU is taken to be
+ * gone: the thread ends, and sample() returns false at once from then on, without trying it
+ * again. start() tries it again.
+ *
+ * Angles are radians, intrinsic ZYX as GenericFTCRobot has always read them, heading in
+ * (-pi, pi]. Timestamps are RobotClock.nanoTime() when the read began.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    a dead IMU fails once, not every read; start() works after the thread has ended.
+ */
+
+public class ImuSampler implements Runnable {
+    // The BNO055 fuses at 100 Hz; reading more often only repeats samples.
+    public static final long SAMPLE_PERIOD_NANOS = 10000000;    // 10 ms
+    // A power of two. A bit over a second at 100 Hz.
+    public static final int CAPACITY = 128;
+    private static final int MASK = CAPACITY - 1;
+
+    //  One reading. Reused by readers: getLatest fills one in.
+    public static final class Sample {
+        public long nanos;
+        public double heading;
+        public double roll;
+        public double pitch;
+    }
+
+    private final BNO055IMU imu;
+    private final long[] nanos = new long[CAPACITY];
+    private final double[] headings = new double[CAPACITY];
+    private final double[] rolls = new double[CAPACITY];
+    private final double[] pitches = new double[CAPACITY];
+    // Samples written so far. Sample n is in slot n & MASK. While sample n is being written,
+    // sample n - CAPACITY is being overwritten, so a reader may trust sample i only if the
+    // count is still less than i + CAPACITY after reading it.
+    private volatile long count = 0;
+    private volatile boolean running = false;
+    private volatile boolean failed = false;
+    // The sampler thread, until it ends or is stopped.
+    private volatile Thread thread = null;
+
+    /* Constructor. The IMU must already be initialized. */
+    public ImuSampler(BNO055IMU imu) {
+        this.imu = imu;
+    }
+
+    //  Start the sampler thread, unless it is running. Tries a failed IMU again.
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        failed = false;
+        running = true;
+        thread = new Thread(this, "ImuSampler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //  Stop sampling, and wait for the thread to finish.
+    public void stop() {
+        Thread stopping;
+        // Not holding the lock while joining: the thread takes it as it ends.
+        synchronized (this) {
+            running = false;
+            stopping = thread;
+            thread = null;
+        }
+        if (stopping == null) {
+            return;
+        }
+        stopping.interrupt();
+        try {
+            stopping.join(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //  True while the sampler thread is running.
+    public boolean isRunning() {
+        return running;
+    }
+
+    //  True once a read has thrown: the IMU is gone, and isn't read again until start().
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    @Override
+    public void run() {
+        Thread self = Thread.currentThread();
+        try {
+            long next = RobotClock.nanoTime();
+            while (running && thread == self) {
+                if (!sample()) {
+                    return;
+                }
+                next += SAMPLE_PERIOD_NANOS;
+                long now = RobotClock.nanoTime();
+                if (next - now < 0) {
+                    // Fell behind, e.g. a slow I2C read. Don't try to catch up.
+                    next = now;
+                }
+                try {
+                    RobotClock.sleepNanos(next - now);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        } finally {
+            // However it ended, start() may start another. Unless stop() already let this
+            // thread go, and a new one has started since.
+            synchronized (this) {
+                if (thread == self) {
+                    thread = null;
+                    running = false;
+                }
+            }
+        }
+    }
+
+    //  Read the IMU once and publish the result. False if it can't be read: it threw, now or
+    // before, and isn't tried again. Only one thread may call this: the sampler thread once
+    // started, otherwise the control loop.
+    public boolean sample() {
+        if (failed) {
+            return false;
+        }
+        long now = RobotClock.nanoTime();
+        Orientation angles;
+        try {
+            angles = imu.getAngularOrientation(INTRINSIC, ZYX, RADIANS);
+        } catch (RuntimeException e) {
+            // The IMU has gone away, e.g. the opmode ended and its hardware was closed.
+            failed = true;
+            return false;
+        }
+        long n = count;
+        int slot = (int) (n & MASK);
+        nanos[slot] = now;
+        headings[slot] = angles.firstAngle;
+        rolls[slot] = angles.secondAngle;
+        pitches[slot] = angles.thirdAngle;
+        count = n + 1;
+        return true;
+    }
+
+    //  Samples taken so far.
+    public long getSampleCount() {
+        return count;
+    }
+
+    //  Copy the newest sample into out. False, and out untouched, if there is none yet.
+    public boolean getLatest(Sample out) {
+        while (true) {
+            long n = count;
+            if (n == 0) {
+                return false;
+            }
+            int slot = (int) ((n - 1) & MASK);
+            long t = nanos[slot];
+            double heading = headings[slot];
+            double roll = rolls[slot];
+            double pitch = pitches[slot];
+            if (count - (n - 1) < CAPACITY) {
+                out.nanos = t;
+                out.heading = heading;
+                out.roll = roll;
+                out.pitch = pitch;
+                return true;
+            }
+        }
+    }
+
+    //  Heading at time atNanos, interpolated between the samples either side of it. Before
+    // the oldest sample kept or after the newest, the nearest one is used. NaN if there are no
+    // samples.
+    public double getHeadingAt(long atNanos) {
+        while (true) {
+            long n = count;
+            if (n == 0) {
+                return Double.NaN;
+            }
+            long oldest = Math.max(0, n - (CAPACITY - 1));
+            // Walk back from the newest to the first sample at or before atNanos.
+            long i = n - 1;
+            while (i > oldest && nanos[(int) (i & MASK)] - atNanos > 0) {
+                i--;
+            }
+            int slot = (int) (i & MASK);
+            double heading = headings[slot];
+            long t0 = nanos[slot];
+            if (i < n - 1 && atNanos - t0 > 0) {
+                int nextSlot = (int) ((i + 1) & MASK);
+                long t1 = nanos[nextSlot];
+                double fraction = (double) (atNanos - t0) / (t1 - t0);
+                heading += fraction * PoseEstimator.normalize(headings[nextSlot] - heading);
+                heading = PoseEstimator.normalize(heading);
+            }
+            if (count - i < CAPACITY) {
+                return heading;
+            }
+        }
+    }
+}
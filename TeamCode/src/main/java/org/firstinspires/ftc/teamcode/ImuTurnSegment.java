@@ -0,0 +1,86 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Turns a TrainerbotV2 in place through an angle, closed on the IMU heading: the non-blocking,
+ * PID form of gyroTurn in PushbotAutoDriveByGyro_Linear. Each tick a HeadingController with the
+ * turn gains sets the turn power, up to the given speed, and never less than turnMinPower
+ * while the robot is outside headingTolerance, so it doesn't stall just short. The wheels run
+ * in RUN_USING_ENCODER, in opposite directions. These are the robot's RobotConstants as of
+ * construction.
+ *
+ * The segment is done once the heading has stayed within headingTolerance for
+ * turnSettleSeconds. The angle is measured from the heading when the segment starts, so
+ * turns of more than half a circle go the long way round, as asked.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    gains and tolerances from RobotConstants.
+ * v 0.3    powers go through the robot's Drivetrain.
+ */
+
+public class ImuTurnSegment extends DriveSegment {
+    private final TrainerbotV2 robot;
+    private final RobotConstants constants;
+    private final double angle;               // radians, counterclockwise
+    private final HeadingController controller;
+    private double targetHeading;
+    private double settledSince = -1;         // run seconds, or -1 while outside tolerance
+
+    public ImuTurnSegment(TrainerbotV2 robot, double speed, double angle,
+                          double timeoutSeconds) {
+        super(timeoutSeconds);
+        this.robot = robot;
+        this.angle = angle;
+        constants = robot.getConstants();
+        controller = new HeadingController(constants.turnKp, constants.turnKi, constants.turnKd,
+                constants.headingIZone, Math.abs(speed));
+    }
+
+    @Override
+    protected void start() {
+        targetHeading = robot.getImuHeading() + angle;
+        robot.setDriveStopBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
+        robot.setDriveRunMode(DcMotor.RunMode.RUN_USING_ENCODER);
+    }
+
+    @Override
+    protected boolean update() {
+        double heading = robot.getImuHeading();
+        double error = targetHeading - heading;
+        double t = getRunSeconds();
+        if (Math.abs(error) < constants.headingTolerance) {
+            if (settledSince < 0) {
+                settledSince = t;
+            }
+            if (t - settledSince >= constants.turnSettleSeconds) {
+                return true;
+            }
+        } else {
+            settledSince = -1;
+        }
+
+        double power = controller.update(targetHeading, heading,
+                robot.getSnapshot().getTimestampNanos());
+        if (Math.abs(error) >= constants.headingTolerance
+                && Math.abs(power) < constants.turnMinPower) {
+            power = Math.signum(error) * constants.turnMinPower;
+        }
+        robot.getDrivetrain().setPower(-power, power);
+        return false;
+    }
+
+    //  Target heading minus heading, radians, as of the last tick.
+    public double getHeadingError() {
+        return controller.getError();
+    }
+
+    @Override
+    protected void stop() {
+        robot.stopDriveMotors();
+    }
+}
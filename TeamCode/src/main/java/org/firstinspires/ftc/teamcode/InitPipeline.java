@@ -0,0 +1,334 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Runs an opmode's init as steps on a few threads, each step as soon as the steps it needs are
+ * done, so steps that don't need each other overlap. Init then takes about as long as its
+ * slowest chain of steps, not the sum of them all:
+ *
+ *     InitPipeline init = new InitPipeline();
+ *     init.add("hardware", hardwareStep);
+ *     init.add("camera", cameraStep);
+ *     init.add("targets", targetsStep, "camera");          // after camera
+ *     init.attachTelemetry(lines);
+ *     init.start();
+ *     while (!init.isDone() && !isStopRequested()) {
+ *         init.updateTelemetry();
+ *         lines.update();
+ *         init.await(TELEMETRY_INTERVAL_MS);
+ *     }
+ *     init.throwIfFailed();
+ *
+ * A step is added after every step it needs, so there can be no cycles. If a step throws, the
+ * steps that need it are skipped, and throwIfFailed() throws on the opmode thread, as if init
+ * had run there. cancel() skips whatever hasn't started; steps already running finish.
+ *
+ * Each step's state and time, waiting, running for so long, or ready after so long, are shown
+ * through TelemetryLines, one line a step, and a total. Steps run on the pipeline's threads,
+ * so they must not touch telemetry or the gamepads, and anything they share with the opmode
+ * thread must be safe to share. Times are System.nanoTime(), since RobotClock is for the
+ * opmode thread.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class InitPipeline {
+    public static final int THREADS = 3;
+
+    //  Init work. May block, and throw.
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    public enum State { WAITING, RUNNING, READY, FAILED, SKIPPED }
+
+    //  One step, and how it went. Guarded by the pipeline.
+    private static class Entry {
+        final String name;
+        final Step step;
+        final List<Entry> needs = new ArrayList<Entry>();
+        final List<Entry> neededBy = new ArrayList<Entry>();
+        int unfinished;
+        State state = State.WAITING;
+        long startNanos;
+        long endNanos;
+        Throwable error;
+        TelemetryLines.Line line;
+
+        Entry(String name, Step step) {
+            this.name = name;
+            this.step = step;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private ExecutorService executor = null;
+    private int finished = 0;
+    private long startNanos;
+    private long endNanos;
+    private TelemetryLines.Line totalLine = null;
+
+    //  Add a step, to run after the steps named in needs, which must have been added already.
+    // Returns this.
+    public synchronized InitPipeline add(String name, Step step, String... needs) {
+        if (executor != null) {
+            throw new IllegalArgumentException("pipeline already started");
+        }
+        if (find(name) != null) {
+            throw new IllegalArgumentException("duplicate step: " + name);
+        }
+        Entry entry = new Entry(name, step);
+        for (String need : needs) {
+            Entry needed = find(need);
+            if (needed == null) {
+                throw new IllegalArgumentException(name + " needs unknown step: " + need);
+            }
+            entry.needs.add(needed);
+            needed.neededBy.add(entry);
+        }
+        entry.unfinished = entry.needs.size();
+        entries.add(entry);
+        return this;
+    }
+
+    //  Start every step that needs nothing. Returns at once.
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        startNanos = System.nanoTime();
+        executor = Executors.newFixedThreadPool(Math.max(1, Math.min(THREADS, entries.size())),
+                new ThreadFactory() {
+                    private int count = 0;
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "InitPipeline-" + count++);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        for (Entry entry : entries) {
+            if (entry.unfinished == 0) {
+                submit(entry);
+            }
+        }
+        finishIfDone();
+    }
+
+    //  True once every step is ready, failed or skipped.
+    public synchronized boolean isDone() {
+        return finished == entries.size();
+    }
+
+    //  Wait until the pipeline is done, or up to timeoutMs. Returns isDone(). An interrupt
+    // ends the wait early, and is passed on.
+    public synchronized boolean await(long timeoutMs) {
+        long deadline = System.nanoTime() + timeoutMs * 1000000L;
+        try {
+            while (!isDone()) {
+                long remainingMs = (deadline - System.nanoTime()) / 1000000L;
+                if (remainingMs <= 0) {
+                    break;
+                }
+                wait(remainingMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return isDone();
+    }
+
+    //  True if every step is ready.
+    public synchronized boolean isReady() {
+        for (Entry entry : entries) {
+            if (entry.state != State.READY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized State getState(String name) {
+        return entry(name).state;
+    }
+
+    //  Seconds the step ran, so far if still running. Zero if it hasn't started.
+    public synchronized double getSeconds(String name) {
+        return seconds(entry(name), System.nanoTime());
+    }
+
+    //  Seconds from start() until done, so far if not.
+    public synchronized double getTotalSeconds() {
+        long end = isDone() ? endNanos : System.nanoTime();
+        return executor == null ? 0 : (end - startNanos) / 1e9;
+    }
+
+    //  What the step threw, or null.
+    public synchronized Throwable getError(String name) {
+        return entry(name).error;
+    }
+
+    //  If a step failed, throw on this thread: the step's RuntimeException or Error as it
+    // was, anything else wrapped in an IllegalStateException.
+    public synchronized void throwIfFailed() {
+        for (Entry entry : entries) {
+            if (entry.state == State.FAILED) {
+                if (entry.error instanceof RuntimeException) {
+                    throw (RuntimeException) entry.error;
+                }
+                if (entry.error instanceof Error) {
+                    throw (Error) entry.error;
+                }
+                throw new IllegalStateException("init step " + entry.name + " failed",
+                        entry.error);
+            }
+        }
+    }
+
+    //  Skip every step not yet started. Those running carry on to the end; await() them
+    // before releasing what they set up.
+    public synchronized void cancel() {
+        for (Entry entry : entries) {
+            if (entry.state == State.WAITING) {
+                entry.state = State.SKIPPED;
+                finished++;
+            }
+        }
+        finishIfDone();
+    }
+
+    //  Add a line for each step, and a total, to lines. Do this once, before start().
+    public synchronized void attachTelemetry(TelemetryLines lines) {
+        for (Entry entry : entries) {
+            entry.line = lines.add(entry.name);
+        }
+        totalLine = lines.add("Init");
+    }
+
+    //  Refill the lines attachTelemetry added. Call from the opmode thread, then lines.update().
+    public synchronized void updateTelemetry() {
+        long now = System.nanoTime();
+        for (Entry entry : entries) {
+            if (entry.line == null) {
+                continue;
+            }
+            entry.line.clear();
+            switch (entry.state) {
+                case WAITING:
+                    entry.line.append("waiting");
+                    break;
+                case RUNNING:
+                    entry.line.append("running ").append(seconds(entry, now), 1).append(" s");
+                    break;
+                case READY:
+                    entry.line.append("ready ").append(seconds(entry, now), 2).append(" s");
+                    break;
+                case FAILED:
+                    entry.line.append("FAILED ").append(String.valueOf(entry.error));
+                    break;
+                case SKIPPED:
+                    entry.line.append("skipped");
+                    break;
+            }
+        }
+        if (totalLine != null) {
+            totalLine.clear().append(isDone() ? (isReady() ? "ready " : "stopped ") : "")
+                    .append(getTotalSeconds(), 2).append(" s");
+        }
+    }
+
+    private void submit(final Entry entry) {
+        entry.state = State.RUNNING;
+        entry.startNanos = System.nanoTime();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Throwable error = null;
+                try {
+                    entry.step.run();
+                } catch (Throwable t) {
+                    error = t;
+                }
+                finish(entry, error);
+            }
+        });
+    }
+
+    //  On a pipeline thread, when entry's step returns or throws.
+    private synchronized void finish(Entry entry, Throwable error) {
+        entry.endNanos = System.nanoTime();
+        entry.error = error;
+        entry.state = error == null ? State.READY : State.FAILED;
+        finished++;
+        for (Entry next : entry.neededBy) {
+            next.unfinished--;
+            if (next.state != State.WAITING) {
+                continue;
+            }
+            if (error != null) {
+                skip(next);
+            } else if (next.unfinished == 0) {
+                submit(next);
+            }
+        }
+        finishIfDone();
+    }
+
+    //  Skip entry, and everything waiting on it.
+    private void skip(Entry entry) {
+        entry.state = State.SKIPPED;
+        finished++;
+        for (Entry next : entry.neededBy) {
+            if (next.state == State.WAITING) {
+                skip(next);
+            }
+        }
+    }
+
+    private void finishIfDone() {
+        if (isDone() && executor != null && !executor.isShutdown()) {
+            endNanos = System.nanoTime();
+            executor.shutdown();
+            notifyAll();
+        }
+    }
+
+    private static double seconds(Entry entry, long now) {
+        switch (entry.state) {
+            case RUNNING:
+                return (now - entry.startNanos) / 1e9;
+            case READY:
+            case FAILED:
+                return (entry.endNanos - entry.startNanos) / 1e9;
+            default:
+                return 0;
+        }
+    }
+
+    private Entry find(String name) {
+        for (Entry entry : entries) {
+            if (entry.name.equals(name)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private Entry entry(String name) {
+        Entry entry = find(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("no step: " + name);
+        }
+        return entry;
+    }
+}
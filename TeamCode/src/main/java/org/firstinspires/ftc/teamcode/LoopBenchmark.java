@@ -0,0 +1,299 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.Range;
+
+import org.firstinspires.ftc.robotcore.external.matrices.OpenGLMatrix;
+import org.firstinspires.ftc.robotcore.external.matrices.VectorF;
+import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.firstinspires.ftc.robotcore.external.navigation.AngleUnit.DEGREES;
+import static org.firstinspires.ftc.robotcore.external.navigation.AxesOrder.XYZ;
+import static org.firstinspires.ftc.robotcore.external.navigation.AxesOrder.YZX;
+import static org.firstinspires.ftc.robotcore.external.navigation.AxesReference.EXTRINSIC;
+
+/**
+ * Times the math that runs every control loop cycle, on the Robot Controller phone itself,
+ * and keeps the results so a slower build shows up before competition does.
+ *
+ * Cases:
+ *   turnAngleRadiusDrive  arc arithmetic plus queueing the DriveSegment (then cancelling it)
+ *   target matrix         OpenGLMatrix translation times rotation, as for each field target
+ *   robot location        the inverse and three multiplies behind getUpdatedRobotLocation()
+ *   location decode       getTranslation() plus Orientation.getOrientation, as reportLocation
+ *   Transform3 location   robot location again, in place with Transform3
+ *   Transform3 decode     location decode again, with Transform3
+ *   gyro heading error    getError/getSteer from PushbotAutoDriveByGyro_Linear
+ *   pose update           PoseEstimator.update
+ *   profile sample        MotionProfile position, velocity and acceleration
+ *   telemetry format      reportLocation's position line, through String.format
+ *   TelemetryLines format the same line, refilled in place with TelemetryLines
+ * New implementations of any of these should be added here alongside the old ones.
+ *
+ * No hardware is used, so any configuration will do. Press play and wait about half a minute.
+ * Each run appends a row per case to RESULTS_FILE in the FIRST folder: date, label, case,
+ * median ns/op, fastest ns/op and bytes allocated per op. Bytes are only counted by a desktop
+ * JVM; on the phone the column is empty. The label is the commit the app was built from, as
+ * git describe put it at build time, so pull the file after each run and compare rows by label.
+ *
+ * main() runs the same cases on a desktop JVM, writing the file in the working directory. Its
+ * first argument, if any, is the label.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    added the Transform3 cases.
+ * v 0.3    added the telemetry cases, and bytes allocated per op.
+ * v 0.4    results are labelled with the build's commit, not by hand.
+ */
+
+@TeleOp(name = "Loop Benchmark", group = "TrainerbotV2")
+//@Disabled
+public class LoopBenchmark extends LinearOpMode {
+    public static final String RESULTS_FILE = "loop_benchmarks.csv";
+    // Identifies this build in the results: git describe, when it was built.
+    static final String RUN_LABEL = BuildConfig.GIT_DESCRIBE;
+
+    static final long WARMUP_MS = 500;
+    static final long MEASURE_MS = 2000;
+    static final int BATCHES = 10;
+
+    @Override
+    public void runOpMode() {
+        MicroBenchmark bench = new MicroBenchmark(WARMUP_MS, MEASURE_MS, BATCHES);
+        addCases(bench);
+        telemetry.addData(">", "Press Play to time %d cases.", bench.getCaseCount());
+        telemetry.update();
+        waitForStart();
+
+        StringBuilder results = new StringBuilder();
+        for (int i = 0; i < bench.getCaseCount() && opModeIsActive(); i++) {
+            telemetry.addData("Running", bench.getName(i));
+            telemetry.update();
+            MicroBenchmark.Score score = bench.run(i);
+            results.append(csvRow(RUN_LABEL, score));
+            telemetry.addData(score.name, "%.1f ns/op", score.nanosPerOp);
+        }
+        if (opModeIsActive()) {
+            File file = new File(AppUtil.FIRST_FOLDER, RESULTS_FILE);
+            telemetry.addData("Results", appendResults(file, results) ? file.getPath()
+                    : "could not write " + file.getPath());
+        }
+        telemetry.update();
+        while (opModeIsActive()) {
+            sleep(100);
+        }
+    }
+
+    //  Register every case.
+    static void addCases(MicroBenchmark bench) {
+        final TrainerbotV2 robot = new TrainerbotV2();
+        bench.add("turnAngleRadiusDrive", new MicroBenchmark.Case() {
+            @Override
+            public double run(int i) {
+                DriveSegment segment = robot.turnAngleRadiusDrive(0.15, (i & 3) * 0.5, 24.0);
+                // Cancelled before it starts, so no motor is touched.
+                robot.motion.cancelAll();
+                robot.motion.update();
+                return segment.getElapsedSeconds();
+            }
+        });
+
+        bench.add("target matrix", new MicroBenchmark.Case() {
+            @Override
+            public double run(int i) {
+                OpenGLMatrix location = OpenGLMatrix
+                        .translation(i & 7, 0, 146.05f)
+                        .multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES,
+                                90, 0, -90));
+                return location.get(0, 3);
+            }
+        });
+
+        final OpenGLMatrix fieldFromTarget = OpenGLMatrix.translation(-1828.8f, 0, 152.4f)
+                .multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, 90, 0, 90));
+        final OpenGLMatrix cameraFromTarget = OpenGLMatrix.translation(100, -50, 900)
+                .multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, 5, -10, 3));
+        final OpenGLMatrix vuforiaCameraFromFtcCamera = Orientation.getRotationMatrix(
+                EXTRINSIC, XYZ, DEGREES, 0, 0, 90);
+        final OpenGLMatrix ftcCameraFromRobot = OpenGLMatrix.translation(101.6f, 0, 203.2f)
+                .multiplied(Orientation.getRotationMatrix(EXTRINSIC, YZX, DEGREES, -90, 0, 0))
+                .inverted();
+        bench.add("robot location", new MicroBenchmark.Case() {
+            @Override
+            public double run(int i) {
+                OpenGLMatrix robotLocation = fieldFromTarget
+                        .multiplied(cameraFromTarget.inverted())
+                        .multiplied(vuforiaCameraFromFtcCamera)
+                        .multiplied(ftcCameraFromRobot);
+                return robotLocation.get(0, 3);
+            }
+        });
+
+        final OpenGLMatrix robotLocation = fieldFromTarget
+                .multiplied(cameraFromTarget.inverted())
+                .multiplied(vuforiaCameraFromFtcCamera)
+                .multiplied(ftcCameraFromRobot);
+        bench.add("location decode", new MicroBenchmark.Case() {
+            @Override
+            public double run(int i) {
+                VectorF translation = robotLocation.getTranslation();
+                Orientation rotation = Orientation.getOrientation(robotLocation, EXTRINSIC, XYZ,
+                        DEGREES);
+                return translation.get(0) + rotation.thirdAngle;
+            }
+        });
+
+        // The same two paths with Transform3: nothing allocated.
+        final Transform3 fieldFromTargetT = new Transform3().set(fieldFromTarget);
+        final Transform3 cameraFromTargetT = new Transform3().set(cameraFromTarget);
+        final Transform3 vuforiaCameraFromFtcCameraT = new Transform3()
+                .set(vuforiaCameraFromFtcCamera);
+        final Transform3 ftcCameraFromRobotT = new Transform3().set(ftcCameraFromRobot);
+        final Transform3 result = new Transform3();
+        bench.add("Transform3 location", new MicroBenchmark.Case() {
+            @Override
+            public double run(int i) {
+                result.setInverse(cameraFromTargetT)
+                        .preMultiply(fieldFromTargetT)
+                        .multiply(vuforiaCameraFromFtcCameraT)
+                        .multiply(ftcCameraFromRobotT);
+                return result.getX();
+            }
+        });
+
+        final Transform3 location = new Transform3().set(robotLocation);
+        final float[] angles = new float[3];
+        bench.add("Transform3 decode", new MicroBenchmark.Case() {
+            @Override
+            public double run(int i) {
+                location.getAnglesXYZ(angles);
+                return location.getX() + angles[2];
+            }
+        });
+
+        bench.add("gyro heading error", new MicroBenchmark.Case() {
+            @Override
+            public double run(int i) {
+                // Integrated Z wanders past +-180, as it does on a real gyro.
+                return getSteer(getError(45.0, (i % 1000) - 500), 0.1);
+            }
+        });
+
+        final PoseEstimator pose = new PoseEstimator(TrainerbotV2.COUNTS_PER_INCH,
+                TrainerbotV2.DRIVE_WHEEL_SEPARATION);
+        bench.add("pose update", new MicroBenchmark.Case() {
+            @Override
+            public double run(int i) {
+                pose.update(i * 3, i * 2);
+                return pose.getHeading();
+            }
+        });
+
+        final MotionProfile profile = new MotionProfile(32.0, TrainerbotV2.MAX_DRIVE_VELOCITY,
+                TrainerbotV2.MAX_DRIVE_ACCELERATION, TrainerbotV2.MAX_DRIVE_JERK);
+        bench.add("profile sample", new MicroBenchmark.Case() {
+            @Override
+            public double run(int i) {
+                double t = (i % 300) * 0.01;
+                return profile.getPosition(t) + profile.getVelocity(t)
+                        + profile.getAcceleration(t);
+            }
+        });
+
+        // The numbers change every pass, as they do while the robot moves.
+        bench.add("telemetry format", new MicroBenchmark.Case() {
+            @Override
+            public double run(int i) {
+                double x = (i & 1023) * 0.1;
+                String text = String.format(Locale.US,
+                        "      X % 6.1f           Y % 6.1f             Z % 6.1f",
+                        x, -x, 6.0);
+                return text.length();
+            }
+        });
+
+        // Never sent, so no Telemetry is needed behind it.
+        final TelemetryLines.Line line = new TelemetryLines.Line(null);
+        bench.add("TelemetryLines format", new MicroBenchmark.Case() {
+            @Override
+            public double run(int i) {
+                double x = (i & 1023) * 0.1;
+                line.clear()
+                        .append("      X ").append(x, 6, 1)
+                        .append("           Y ").append(-x, 6, 1)
+                        .append("             Z ").append(6.0, 6, 1);
+                return x;
+            }
+        });
+    }
+
+    //  PushbotAutoDriveByGyro_Linear's heading math, with the gyro reading passed in.
+    static double getError(double targetAngle, double integratedZ) {
+        double robotError = targetAngle - integratedZ;
+        while (robotError > 180) robotError -= 360;
+        while (robotError <= -180) robotError += 360;
+        return robotError;
+    }
+
+    static double getSteer(double error, double PCoeff) {
+        return Range.clip(error * PCoeff, -1, 1);
+    }
+
+    static String csvRow(String label, MicroBenchmark.Score score) {
+        String date = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).format(new Date());
+        String bytes = Double.isNaN(score.bytesPerOp) ? ""
+                : String.format(Locale.US, "%.1f", score.bytesPerOp);
+        return String.format(Locale.US, "%s,%s,%s,%.1f,%.1f,%s%n",
+                date, label, score.name, score.nanosPerOp, score.minNanosPerOp, bytes);
+    }
+
+    //  Append rows to file, with a header if the file is new. Returns false on failure.
+    static boolean appendResults(File file, CharSequence rows) {
+        boolean isNew = !file.exists();
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(file, true);
+            if (isNew) {
+                writer.write("date,label,case,ns_per_op,min_ns_per_op,bytes_per_op\n");
+            }
+            writer.append(rows);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // Nothing more to do.
+                }
+            }
+        }
+    }
+
+    //  Run every case on a desktop JVM, print the scores, and keep them in RESULTS_FILE,
+    // labelled args[0] if given.
+    public static void main(String[] args) {
+        String label = args.length > 0 ? args[0] : RUN_LABEL;
+        MicroBenchmark bench = new MicroBenchmark(WARMUP_MS, MEASURE_MS, BATCHES);
+        addCases(bench);
+        StringBuilder results = new StringBuilder();
+        List<MicroBenchmark.Score> scores = bench.runAll();
+        for (MicroBenchmark.Score score : scores) {
+            System.out.println(score);
+            results.append(csvRow(label, score));
+        }
+        appendResults(new File(RESULTS_FILE), results);
+    }
+}
@@ -0,0 +1,190 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This is NOT an opmode.
+ *
+ * A small timing harness for code that runs every control loop cycle. Each Case is run in
+ * batches: first for a warm-up period, so the runtime has compiled it, then for a number of
+ * timed batches. The score is the median time per call over the batches, which shrugs off the
+ * occasional GC pause or thread switch, with the fastest batch alongside.
+ *
+ * Each call returns a double, and the harness adds them all up, so the work can't be optimized
+ * away as unused.
+ *
+ *     MicroBenchmark bench = new MicroBenchmark(500, 2000, 10);
+ *     bench.add("pose update", poseCase);
+ *     MicroBenchmark.Score score = bench.run(0);
+ *
+ * It uses no FTC SDK classes and reads System.nanoTime() directly, never RobotClock: it measures
+ * real time, even under SimHarness. See LoopBenchmark for the cases and for how results are kept.
+ *
+ * Where the runtime counts each thread's allocations, as a desktop JVM does, the score also has
+ * the bytes allocated per call over the timed batches: garbage per control loop cycle is what
+ * becomes GC pauses on the phone. ART doesn't say, so there it is NaN.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    bytes allocated per call, where the runtime counts them.
+ */
+
+public class MicroBenchmark {
+
+    //  The code to time. i counts calls, for cases that want varying input.
+    public interface Case {
+        double run(int i);
+    }
+
+    //  Result for one case.
+    public static class Score {
+        public final String name;
+        public final double nanosPerOp;       // Median over the batches.
+        public final double minNanosPerOp;    // Fastest batch.
+        public final long ops;                // Calls timed, not counting warm-up.
+        public final double bytesPerOp;       // Allocated, over all batches. NaN if unknown.
+
+        Score(String name, double nanosPerOp, double minNanosPerOp, long ops, double bytesPerOp) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.minNanosPerOp = minNanosPerOp;
+            this.ops = ops;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s %10.1f ns/op  (min %.1f, %d ops)",
+                    name, nanosPerOp, minNanosPerOp, ops)
+                    + (Double.isNaN(bytesPerOp) ? "" : String.format("  %8.1f B/op", bytesPerOp));
+        }
+    }
+
+    private final long warmupNanos;
+    private final long measureNanos;
+    private final int batches;
+    private final List<String> names = new ArrayList<String>();
+    private final List<Case> cases = new ArrayList<Case>();
+    private double sink = 0;
+
+    // com.sun.management.ThreadMXBean.getThreadAllocatedBytes, found by reflection since
+    // Android has no java.lang.management. Null where there is no such thing.
+    private static final Object THREAD_BEAN;
+    private static final Method ALLOCATED_BYTES;
+    static {
+        Object bean = null;
+        Method method = null;
+        try {
+            bean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            method = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+            if ((Long) method.invoke(bean, Thread.currentThread().getId()) < 0) {
+                method = null;
+            }
+        } catch (Exception e) {
+            method = null;
+        }
+        THREAD_BEAN = method == null ? null : bean;
+        ALLOCATED_BYTES = method;
+    }
+
+    /* Constructor. Each case warms up for warmupMillis, then is timed for about measureMillis
+     * in total, split into the given number of batches. */
+    public MicroBenchmark(long warmupMillis, long measureMillis, int batches) {
+        this.warmupNanos = warmupMillis * 1000000L;
+        this.measureNanos = measureMillis * 1000000L;
+        this.batches = Math.max(1, batches);
+    }
+
+    public void add(String name, Case benchmarkCase) {
+        names.add(name);
+        cases.add(benchmarkCase);
+    }
+
+    public int getCaseCount() {
+        return cases.size();
+    }
+
+    public String getName(int index) {
+        return names.get(index);
+    }
+
+    //  Warm up and time one case.
+    public Score run(int index) {
+        Case benchmarkCase = cases.get(index);
+
+        // Warm up, doubling the batch size until one batch is a measurable slice of the
+        // per-batch time. That size is used for the timed batches.
+        long batchTarget = measureNanos / batches;
+        int opsPerBatch = 1;
+        long warmupEnd = System.nanoTime() + warmupNanos;
+        while (true) {
+            long elapsed = timeBatch(benchmarkCase, opsPerBatch);
+            if (System.nanoTime() - warmupEnd >= 0 && elapsed >= batchTarget / 4) {
+                break;
+            }
+            if (elapsed < batchTarget && opsPerBatch < (1 << 30)) {
+                opsPerBatch *= 2;
+            }
+        }
+
+        double[] perOp = new double[batches];
+        // What asking costs is measured and taken off, so a case that allocates nothing
+        // scores zero.
+        long asked = allocatedBytes();
+        long bytesBefore = allocatedBytes();
+        long askCost = bytesBefore - asked;
+        for (int b = 0; b < batches; b++) {
+            perOp[b] = (double) timeBatch(benchmarkCase, opsPerBatch) / opsPerBatch;
+        }
+        long bytes = allocatedBytes() - bytesBefore - askCost;
+        Arrays.sort(perOp);
+        double median = batches % 2 == 1 ? perOp[batches / 2]
+                : (perOp[batches / 2 - 1] + perOp[batches / 2]) / 2;
+        long ops = (long) opsPerBatch * batches;
+        double bytesPerOp = bytesBefore < 0 ? Double.NaN : Math.max(0, bytes) / (double) ops;
+        return new Score(names.get(index), median, perOp[0], ops, bytesPerOp);
+    }
+
+    //  Run every case, in the order added.
+    public List<Score> runAll() {
+        List<Score> scores = new ArrayList<Score>();
+        for (int i = 0; i < cases.size(); i++) {
+            scores.add(run(i));
+        }
+        return scores;
+    }
+
+    //  Bytes this thread has allocated so far, or -1 if the runtime doesn't say.
+    private static long allocatedBytes() {
+        if (ALLOCATED_BYTES == null) {
+            return -1;
+        }
+        try {
+            return (Long) ALLOCATED_BYTES.invoke(THREAD_BEAN, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private long timeBatch(Case benchmarkCase, int ops) {
+        double sum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            sum += benchmarkCase.run(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += sum;
+        return elapsed;
+    }
+
+    //  Everything the cases returned. Only here so their work is used.
+    public double getSink() {
+        return sink;
+    }
+}
@@ -0,0 +1,94 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.util.ArrayDeque;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Runs DriveSegments one after another. Nothing here waits: each call to update() advances the
+ * current segment by one tick and returns, so the opmode's control loop stays free to drive
+ * vision, telemetry and stop requests between ticks.
+ *
+ * Segments submitted while another one is running are queued in order. A Listener, if set, hears
+ * about each segment as it finishes.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    replaces the busy-wait in TrainerbotV2.encoderDrive.
+ * v 0.2    reads time from RobotClock. Added Listener.
+ * v 0.3    added getPendingCount.
+ */
+
+public class MotionExecutor {
+
+    //  Told about every segment when it ends, however it ends. Called on the control loop
+    // thread, so must not block.
+    public interface Listener {
+        void segmentFinished(DriveSegment segment);
+    }
+
+    private final ArrayDeque<DriveSegment> queue = new ArrayDeque<DriveSegment>();
+    private DriveSegment current = null;
+    private Listener listener = null;
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    //  Queue a segment. It starts on the first tick after the segments ahead of it finish.
+    public synchronized DriveSegment submit(DriveSegment segment) {
+        queue.addLast(segment);
+        return segment;
+    }
+
+    //  Advance the current segment by one tick. Call this once per control loop cycle.
+    public synchronized void update() {
+        long now = RobotClock.nanoTime();
+        while (true) {
+            if (current == null) {
+                current = queue.pollFirst();
+                if (current == null) {
+                    return;
+                }
+            }
+            if (!current.tick(now)) {
+                return;
+            }
+            // Finished. Cancelled segments don't use up the tick, so cancelAll() clears the
+            // whole queue at once.
+            boolean cancelled = current.getState() == DriveSegment.State.CANCELLED;
+            if (listener != null) {
+                listener.segmentFinished(current);
+            }
+            current = null;
+            if (!cancelled) {
+                return;
+            }
+        }
+    }
+
+    //  True when nothing is running or waiting to run.
+    public synchronized boolean isIdle() {
+        return current == null && queue.isEmpty();
+    }
+
+    //  Segments waiting behind the current one.
+    public synchronized int getPendingCount() {
+        return queue.size();
+    }
+
+    //  The segment now running, or null.
+    public synchronized DriveSegment getCurrent() {
+        return current;
+    }
+
+    //  Cancel everything. The running segment stops its motors on the next update().
+    public synchronized void cancelAll() {
+        if (current != null) {
+            current.cancel();
+        }
+        for (DriveSegment segment : queue) {
+            segment.cancel();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * This is NOT an opmode.
+ *
+ * A rest-to-rest motion profile: where a wheel should be, how fast it should be going, and how
+ * hard it should be accelerating, at each moment of a move of a given distance. Velocity,
+ * acceleration and jerk are all kept within limits, so the wheels never ask the carpet for more
+ * grip than it has.
+ *
+ * With a jerk limit this is an S-curve: acceleration ramps up and down instead of switching on
+ * and off. With no jerk limit (Double.POSITIVE_INFINITY) it is the familiar trapezoid. Short
+ * moves that can't reach the velocity or acceleration limit use the highest peak that fits.
+ *
+ * The profile is built of up to seven phases of constant jerk:
+ *   1 jerk up    2 hold acceleration    3 jerk down    4 cruise
+ *   5 jerk down  6 hold deceleration    7 jerk up
+ * Sampling it allocates nothing, so it is safe to do every control loop cycle.
+ *
+ * Units are whatever the caller uses; TrainerbotV2 uses inches and seconds. It uses no FTC SDK
+ * classes.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class MotionProfile {
+    private static final int PHASES = 7;
+
+    private final double sign;
+    private final double distance;
+    private final double duration;
+    // Start time, jerk, and starting position, velocity and acceleration of each phase.
+    private final double[] phaseStart = new double[PHASES + 1];
+    private final double[] phaseJerk = new double[PHASES];
+    private final double[] phaseP = new double[PHASES];
+    private final double[] phaseV = new double[PHASES];
+    private final double[] phaseA = new double[PHASES];
+
+    /* Constructor. distance may be negative; the limits must be positive. */
+    public MotionProfile(double distance, double maxVelocity, double maxAcceleration,
+                         double maxJerk) {
+        if (maxVelocity <= 0 || maxAcceleration <= 0 || maxJerk <= 0) {
+            throw new IllegalArgumentException("profile limits must be positive");
+        }
+        this.sign = distance < 0 ? -1 : 1;
+        this.distance = Math.abs(distance);
+
+        // Find the highest peak velocity whose speed-up plus slow-down fits in the distance.
+        double peak = maxVelocity;
+        if (rampDistance(peak, maxAcceleration, maxJerk) > this.distance) {
+            double low = 0;
+            double high = maxVelocity;
+            for (int i = 0; i < 60; i++) {
+                double mid = (low + high) / 2;
+                if (rampDistance(mid, maxAcceleration, maxJerk) > this.distance) {
+                    high = mid;
+                } else {
+                    low = mid;
+                }
+            }
+            peak = low;
+        }
+
+        // Shape of the speed-up (and, mirrored, the slow-down) at that peak.
+        double jerkTime;
+        double peakAcceleration;
+        if (peak * maxJerk >= maxAcceleration * maxAcceleration) {
+            jerkTime = maxAcceleration / maxJerk;
+            peakAcceleration = maxAcceleration;
+        } else {
+            jerkTime = Math.sqrt(peak / maxJerk);
+            peakAcceleration = maxJerk * jerkTime;
+        }
+        double holdTime = peak > 0 ? peak / peakAcceleration - jerkTime : 0;
+        double jerk = jerkTime > 0 ? maxJerk : 0;
+        double cruiseTime = peak > 0 ? (this.distance - rampDistance(peak, maxAcceleration,
+                maxJerk)) / peak : 0;
+
+        double[] durations = {jerkTime, holdTime, jerkTime, Math.max(cruiseTime, 0),
+                jerkTime, holdTime, jerkTime};
+        double[] jerks = {jerk, 0, -jerk, 0, -jerk, 0, jerk};
+        // Acceleration steps at phase boundaries only when there is no jerk limit.
+        double[] startAccelerations = {0, peakAcceleration, peakAcceleration, 0,
+                0, -peakAcceleration, -peakAcceleration};
+
+        double t = 0, p = 0, v = 0;
+        for (int i = 0; i < PHASES; i++) {
+            double a = startAccelerations[i];
+            phaseStart[i] = t;
+            phaseJerk[i] = jerks[i];
+            phaseP[i] = p;
+            phaseV[i] = v;
+            phaseA[i] = a;
+            double dt = durations[i];
+            p += v * dt + a * dt * dt / 2 + jerks[i] * dt * dt * dt / 6;
+            v += a * dt + jerks[i] * dt * dt / 2;
+            t += dt;
+        }
+        phaseStart[PHASES] = t;
+        duration = t;
+    }
+
+    //  Distance covered speeding up from rest to peak and slowing back down to rest.
+    private static double rampDistance(double peak, double maxAcceleration, double maxJerk) {
+        double rampTime;
+        if (peak * maxJerk >= maxAcceleration * maxAcceleration) {
+            rampTime = peak / maxAcceleration + maxAcceleration / maxJerk;
+        } else {
+            rampTime = 2 * Math.sqrt(peak / maxJerk);
+        }
+        // Each ramp is symmetric about its midpoint, so covers peak * rampTime / 2.
+        return peak * rampTime;
+    }
+
+    //  Seconds from start to stop.
+    public double getDuration() {
+        return duration;
+    }
+
+    //  The signed distance of the whole move.
+    public double getDistance() {
+        return sign * distance;
+    }
+
+    //  Distance from the start at time t seconds.
+    public double getPosition(double t) {
+        if (t >= duration) {
+            return sign * distance;
+        }
+        int i = phaseAt(t);
+        double dt = Math.max(t, 0) - phaseStart[i];
+        return sign * (phaseP[i] + phaseV[i] * dt + phaseA[i] * dt * dt / 2
+                + phaseJerk[i] * dt * dt * dt / 6);
+    }
+
+    public double getVelocity(double t) {
+        if (t >= duration || t <= 0) {
+            return 0;
+        }
+        int i = phaseAt(t);
+        double dt = t - phaseStart[i];
+        return sign * (phaseV[i] + phaseA[i] * dt + phaseJerk[i] * dt * dt / 2);
+    }
+
+    public double getAcceleration(double t) {
+        if (t >= duration || t < 0) {
+            return 0;
+        }
+        int i = phaseAt(t);
+        return sign * (phaseA[i] + phaseJerk[i] * (t - phaseStart[i]));
+    }
+
+    private int phaseAt(double t) {
+        int i = 0;
+        while (i < PHASES - 1 && t >= phaseStart[i + 1]) {
+            i++;
+        }
+        return i;
+    }
+}
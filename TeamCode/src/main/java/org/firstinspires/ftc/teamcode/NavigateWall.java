@@ -44,6 +44,11 @@ import com.qualcomm.robotcore.hardware.DcMotor;
  * the Neutral Bridge.
  *
  * It runs on a TrainerbotV2.
+ *
+ * Version history
+ * 0.1      initial version, 0.30 power to avoid wheel slip.
+ * 0.2      drives a motion profiled segment at full available speed.
+ * 0.3      shuts the robot down however the opmode ends.
  */
 
 @Autonomous(name="Navigate along Wall", group="ILT Spring 20")
@@ -51,17 +56,20 @@ import com.qualcomm.robotcore.hardware.DcMotor;
 public class NavigateWall extends LinearOpMode {
 
     TrainerbotV2 robot   = new TrainerbotV2(this);
-    private static final double TURN_SPEED  = 0.20; // Slow: less wheel slippage
-    private static final double DRIVE_SPEED  = 0.30; // Slow: less wheel slippage
 
     @Override
     public void runOpMode() {
-        robot.initHardware(hardwareMap);
-        robot.setDriveRunMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
-        robot.setDriveRunMode(DcMotor.RunMode.RUN_USING_ENCODER);
+        try {
+            robot.initHardware(hardwareMap);
+            robot.setDriveRunMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
+            robot.setDriveRunMode(DcMotor.RunMode.RUN_USING_ENCODER);
 
-        // Wait for the game to start (driver presses PLAY).
-        waitForStart();
-        robot.driveStraight(DRIVE_SPEED, 32.0);
+            // Wait for the game to start (driver presses PLAY).
+            waitForStart();
+            // Profiled: full speed in the middle, gentle enough at the ends not to slip.
+            robot.awaitMotion(robot.profiledStraight(32.0));
+        } finally {
+            robot.shutdown();
+        }
     }
 }
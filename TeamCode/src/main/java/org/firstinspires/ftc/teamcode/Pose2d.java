@@ -0,0 +1,47 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Where a robot is on the Field floor: x and y in inches, heading in radians counterclockwise
+ * from the Field X axis. Mutable, so a loop can keep one and refill it each cycle instead of
+ * making a new one. Transform3.toPose and PoseEstimator.getPose fill one in.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class Pose2d {
+    public double x;
+    public double y;
+    public double heading;
+
+    public Pose2d() {
+    }
+
+    public Pose2d(double x, double y, double heading) {
+        set(x, y, heading);
+    }
+
+    public Pose2d set(double x, double y, double heading) {
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+        return this;
+    }
+
+    public Pose2d set(Pose2d other) {
+        return set(other.x, other.y, other.heading);
+    }
+
+    //  Straight-line distance to another pose, inches.
+    public double distanceTo(Pose2d other) {
+        return Math.hypot(other.x - x, other.y - y);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("(%.1f, %.1f) %.1f deg", x, y, Math.toDegrees(heading));
+    }
+}
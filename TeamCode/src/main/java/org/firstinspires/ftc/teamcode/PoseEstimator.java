@@ -0,0 +1,154 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Keeps track of where a differential drive robot is on the Field, between and during vision
+ * fixes. Each control loop cycle, update() integrates the change in the left and right encoder
+ * counts since the last cycle. Whenever Vuforia reports where the robot is, correct() pulls the
+ * estimate part way toward that fix: a complementary filter, trusting the encoders over short
+ * times and the vision fixes over long ones.
+ *
+ * Positions are in inches, in Field coordinates (see FTC_FieldCoordinateSystemDefinition.pdf).
+ * Heading is in radians, counterclockwise from the +X axis, kept in (-pi, pi].
+ *
+ * Everything is held in primitive doubles, and nothing allocates, so this is safe to run at
+ * control loop rate. It uses no FTC SDK classes, so it can also be run on a desktop JVM against
+ * recorded encoder counts and vision fixes.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    added getPose, to fill a Pose2d.
+ * v 0.3    added setGeometry.
+ * v 0.4    update can take its turn from the IMU.
+ */
+
+public class PoseEstimator {
+    // Default share of the gap between estimate and fix closed by each fix.
+    public static final double DEFAULT_POSITION_GAIN = 0.3;
+    public static final double DEFAULT_HEADING_GAIN = 0.3;
+
+    private double countsPerInch;
+    private double trackWidth;
+    private double positionGain = DEFAULT_POSITION_GAIN;
+    private double headingGain = DEFAULT_HEADING_GAIN;
+
+    private double x = 0;
+    private double y = 0;
+    private double heading = 0;
+    private int lastLeft = 0;
+    private int lastRight = 0;
+    private boolean haveEncoders = false;
+    private long fixCount = 0;
+
+    /* Constructor. trackWidth is the distance between the drive wheels, in inches. */
+    public PoseEstimator(double countsPerInch, double trackWidth) {
+        this.countsPerInch = countsPerInch;
+        this.trackWidth = trackWidth;
+    }
+
+    //  Change the drive geometry, e.g. to calibrated values.
+    public void setGeometry(double countsPerInch, double trackWidth) {
+        this.countsPerInch = countsPerInch;
+        this.trackWidth = trackWidth;
+    }
+
+    //  Set how hard each fix pulls: 0 ignores fixes, 1 jumps straight to them.
+    public void setGains(double positionGain, double headingGain) {
+        this.positionGain = positionGain;
+        this.headingGain = headingGain;
+    }
+
+    //  Put the robot somewhere, e.g. its starting spot.
+    public void setPose(double x, double y, double heading) {
+        this.x = x;
+        this.y = y;
+        this.heading = normalize(heading);
+    }
+
+    //  Forget the last encoder counts. Call after the encoders are reset, so the jump back to
+    // zero isn't taken for motion. The next update() only records a new baseline.
+    public void rebaseEncoders() {
+        haveEncoders = false;
+    }
+
+    //  Integrate encoder motion since the last call. Counts are raw, as the motors report them.
+    // Turn is the difference of the wheels over the track width.
+    public void update(int leftCounts, int rightCounts) {
+        if (!haveEncoders) {
+            rebase(leftCounts, rightCounts);
+            return;
+        }
+        double turn = ((rightCounts - lastRight) - (leftCounts - lastLeft))
+                / countsPerInch / trackWidth;
+        integrate(leftCounts, rightCounts, turn);
+    }
+
+    //  Integrate encoder motion, and headingChange radians of turn, counterclockwise, measured
+    // by the IMU over the same cycle.
+    public void update(int leftCounts, int rightCounts, double headingChange) {
+        if (!haveEncoders) {
+            rebase(leftCounts, rightCounts);
+            heading = normalize(heading + headingChange);
+            return;
+        }
+        integrate(leftCounts, rightCounts, headingChange);
+    }
+
+    private void rebase(int leftCounts, int rightCounts) {
+        lastLeft = leftCounts;
+        lastRight = rightCounts;
+        haveEncoders = true;
+    }
+
+    private void integrate(int leftCounts, int rightCounts, double turn) {
+        double leftInches = (leftCounts - lastLeft) / countsPerInch;
+        double rightInches = (rightCounts - lastRight) / countsPerInch;
+        lastLeft = leftCounts;
+        lastRight = rightCounts;
+
+        double forward = (leftInches + rightInches) / 2.0;
+        // Move along the chord, at the heading halfway through the turn.
+        double midHeading = heading + turn / 2.0;
+        x += forward * Math.cos(midHeading);
+        y += forward * Math.sin(midHeading);
+        heading = normalize(heading + turn);
+    }
+
+    //  Blend in a vision fix: inches and radians, Field coordinates.
+    public void correct(double fixX, double fixY, double fixHeading) {
+        if (fixCount == 0) {
+            // Nothing to blend with yet; the first fix is the best guess there is.
+            setPose(fixX, fixY, fixHeading);
+        } else {
+            x += positionGain * (fixX - x);
+            y += positionGain * (fixY - y);
+            heading = normalize(heading + headingGain * normalize(fixHeading - heading));
+        }
+        fixCount++;
+    }
+
+    public double getX() { return x; }
+    public double getY() { return y; }
+    //  Copy the estimate into pose, and return it.
+    public Pose2d getPose(Pose2d pose) {
+        return pose.set(x, y, heading);
+    }
+
+    public double getHeading() { return heading; }
+
+    //  Number of vision fixes blended in so far.
+    public long getFixCount() { return fixCount; }
+
+    //  Wrap an angle into (-pi, pi].
+    public static double normalize(double angle) {
+        while (angle > Math.PI) {
+            angle -= 2 * Math.PI;
+        }
+        while (angle <= -Math.PI) {
+            angle += 2 * Math.PI;
+        }
+        return angle;
+    }
+}
@@ -0,0 +1,146 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.util.Range;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Drives a TrainerbotV2's wheels along MotionProfiles instead of slamming to a fixed power. Each
+ * tick, each wheel's power is
+ *
+ *     kV * profile velocity  +  kA * profile acceleration  +  kP * (profile position - actual)
+ *
+ * The first two terms say what the wheel ought to need; the last one corrects for what it
+ * actually did. Motors run in RUN_USING_ENCODER, where power is a fraction of top speed, so kV
+ * is 1 / top speed.
+ *
+ * Both wheels finish together: the wheel with farther to go gets the full limits, and the other
+ * wheel's profile is that one scaled down. The segment is done once the profile has run out and
+ * both wheels are within POSITION_TOLERANCE of the end, or SETTLE_SECONDS after that regardless.
+ *
+ * With an IMU and a heading change, a HeadingController also steers the robot onto the heading
+ * it should have at each point of the profile: its correction is added to the right wheel's
+ * power and taken from the left's.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    IMU heading hold.
+ * v 0.3    counts per inch from the robot's calibration.
+ * v 0.4    follower gains from the robot's RobotConstants.
+ * v 0.5    powers go through the robot's Drivetrain.
+ */
+
+public class ProfiledDriveSegment extends DriveSegment {
+    public static final double POSITION_TOLERANCE = 0.25;   // inches
+    public static final double SETTLE_SECONDS = 0.5;
+    public static final double TIMEOUT_MARGIN_SECONDS = 2.0;
+
+    private final TrainerbotV2 robot;
+    private final RobotConstants constants;    // as of construction
+    private final MotionProfile profile;
+    private final double leftScale;
+    private final double rightScale;
+    private final double headingChange;        // radians, or NaN for no heading hold
+    private final HeadingController headingHold;
+    private int leftStart;
+    private int rightStart;
+    private double startHeading;
+
+    public ProfiledDriveSegment(TrainerbotV2 robot, double leftInches, double rightInches,
+                                double maxVelocity, double maxAcceleration, double maxJerk) {
+        this(robot, leftInches, rightInches, maxVelocity, maxAcceleration, maxJerk, Double.NaN);
+    }
+
+    //  headingChange is how far the robot turns, counterclockwise radians, by the end.
+    public ProfiledDriveSegment(TrainerbotV2 robot, double leftInches, double rightInches,
+                                double maxVelocity, double maxAcceleration, double maxJerk,
+                                double headingChange) {
+        // Profile the longer wheel path; the other wheel follows the same shape, scaled.
+        this(robot, leftInches, rightInches,
+                new MotionProfile(Math.max(Math.abs(leftInches), Math.abs(rightInches)),
+                        maxVelocity, maxAcceleration, maxJerk), headingChange);
+    }
+
+    private ProfiledDriveSegment(TrainerbotV2 robot, double leftInches, double rightInches,
+                                 MotionProfile profile, double headingChange) {
+        // Time out well after the profile should have settled.
+        super(profile.getDuration() + SETTLE_SECONDS + TIMEOUT_MARGIN_SECONDS);
+        this.robot = robot;
+        this.constants = robot.getConstants();
+        this.profile = profile;
+        double longer = profile.getDistance();
+        leftScale = longer > 0 ? leftInches / longer : 0;
+        rightScale = longer > 0 ? rightInches / longer : 0;
+        this.headingChange = headingChange;
+        this.headingHold = robot.hasImu() && !Double.isNaN(headingChange)
+                ? robot.newHeadingHold() : null;
+    }
+
+    //  Seconds the profile takes, not counting settling.
+    public double getProfileSeconds() {
+        return profile.getDuration();
+    }
+
+    @Override
+    protected void start() {
+        RobotSnapshot now = robot.getSnapshot();
+        leftStart = now.getPosition(TrainerbotV2.LEFT_DRIVE);
+        rightStart = now.getPosition(TrainerbotV2.RIGHT_DRIVE);
+        startHeading = robot.getImuHeading();
+        robot.setDriveStopBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
+        robot.setDriveRunMode(DcMotor.RunMode.RUN_USING_ENCODER);
+    }
+
+    @Override
+    protected boolean update() {
+        double t = getRunSeconds();
+        RobotSnapshot now = robot.getSnapshot();
+        double countsPerInch = robot.getCountsPerInch();
+        double leftActual = (now.getPosition(TrainerbotV2.LEFT_DRIVE) - leftStart)
+                / countsPerInch;
+        double rightActual = (now.getPosition(TrainerbotV2.RIGHT_DRIVE) - rightStart)
+                / countsPerInch;
+
+        double position = profile.getPosition(t);
+        double velocity = profile.getVelocity(t);
+        double acceleration = profile.getAcceleration(t);
+        double leftError = leftScale * position - leftActual;
+        double rightError = rightScale * position - rightActual;
+
+        if (t >= profile.getDuration()) {
+            boolean settled = Math.abs(leftError) < POSITION_TOLERANCE
+                    && Math.abs(rightError) < POSITION_TOLERANCE;
+            if (settled || t >= profile.getDuration() + SETTLE_SECONDS) {
+                return true;
+            }
+        }
+        double steer = 0;
+        if (headingHold != null) {
+            double longer = profile.getDistance();
+            double target = startHeading
+                    + (longer > 0 ? headingChange * position / longer : headingChange);
+            steer = headingHold.update(target, robot.getImuHeading(), now.getTimestampNanos());
+        }
+        robot.getDrivetrain().setPower(
+                Range.clip(wheelPower(leftScale, velocity, acceleration, leftError) - steer,
+                        -1.0, 1.0),
+                Range.clip(wheelPower(rightScale, velocity, acceleration, rightError) + steer,
+                        -1.0, 1.0));
+        return false;
+    }
+
+    private double wheelPower(double scale, double velocity, double acceleration,
+                              double error) {
+        double power = constants.driveKv * scale * velocity
+                + constants.driveKa * scale * acceleration
+                + constants.driveKp * error;
+        return Range.clip(power, -1.0, 1.0);
+    }
+
+    @Override
+    protected void stop() {
+        robot.stopDriveMotors();
+    }
+}
@@ -0,0 +1,157 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.util.Range;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Follows a WaypointPath with pure pursuit, steering by the robot's live pose estimate, so a
+ * route of several legs is one movement: the robot rounds each waypoint without stopping, and
+ * only slows for the end of the whole path.
+ *
+ * Each tick:
+ *  - find how far along the path the robot is, searching forward from where it was last tick,
+ *    so a path that crosses itself can't send it back;
+ *  - pick the goal point, the lookahead distance further along;
+ *  - steer on the circular arc that passes through the robot and the goal point, tangent to the
+ *    robot's heading. Its curvature is 2 * (goal's offset to the left) / (distance to goal)^2;
+ *  - pick a speed: up to maxVelocity, no faster than maxDriveAcceleration allows from the last
+ *    tick's speed, and slow enough to stop in what is left of the path;
+ *  - split it between the wheels for that curvature, scaling both down if the outer wheel
+ *    would be over maxVelocity, and give each wheel kV * speed + kA * acceleration.
+ *
+ * Past the end of the path, the goal point carries on along the last leg, so the robot drives
+ * through the end rather than circling it. The segment is done within END_TOLERANCE of the end,
+ * or once the end is behind the robot. Reversed, the robot follows the path backing up.
+ *
+ * The lookahead trades smoothness against accuracy: a long one cuts corners wide and steers
+ * gently, a short one tracks closely and oscillates. Tune pursuitLookahead in the constants.
+ * The pose comes from robot.pose, so vision fixes pull the robot back onto the path.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class PurePursuitSegment extends DriveSegment {
+    public static final double END_TOLERANCE = 1.0;         // inches
+    public static final double TIMEOUT_MARGIN_SECONDS = 3.0;
+
+    private final TrainerbotV2 robot;
+    private final RobotConstants constants;    // as of construction
+    private final WaypointPath given;
+    private final boolean relative;
+    private final boolean reversed;
+    private final double maxVelocity;
+    private final double lookahead;
+    private WaypointPath path;
+    private double progress;                   // s of the robot's place on the path
+    private double velocity;                   // commanded last tick, inches per second
+    private double lastSeconds;
+
+    //  Follow path, in the frame of robot.pose, at up to maxVelocity inches per second.
+    public PurePursuitSegment(TrainerbotV2 robot, WaypointPath path, double maxVelocity,
+                              boolean reversed) {
+        this(robot, path, maxVelocity, reversed, false);
+    }
+
+    //  relative: path is in the robot's own frame as of the start of the segment, x forward
+    // and y to the left, rather than robot.pose's frame.
+    public PurePursuitSegment(TrainerbotV2 robot, WaypointPath path, double maxVelocity,
+                              boolean reversed, boolean relative) {
+        // Time out well after even a slow, corner-cutting run should be done.
+        super(2 * path.getLength()
+                / Math.max(1.0, Math.min(maxVelocity, robot.getConstants().maxDriveVelocity))
+                + TIMEOUT_MARGIN_SECONDS);
+        this.robot = robot;
+        this.constants = robot.getConstants();
+        this.given = path;
+        this.relative = relative;
+        this.reversed = reversed;
+        this.maxVelocity = Math.min(maxVelocity, constants.maxDriveVelocity);
+        this.lookahead = constants.pursuitLookahead;
+        this.path = path;
+    }
+
+    //  Inches along the path the robot has got to.
+    public double getProgress() {
+        return progress;
+    }
+
+    @Override
+    protected void start() {
+        PoseEstimator pose = robot.pose;
+        if (relative) {
+            path = given.transformed(pose.getX(), pose.getY(), pose.getHeading());
+        }
+        progress = path.project(pose.getX(), pose.getY(), 0, lookahead);
+        velocity = 0;
+        lastSeconds = 0;
+        robot.setDriveStopBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
+        robot.setDriveRunMode(DcMotor.RunMode.RUN_USING_ENCODER);
+    }
+
+    @Override
+    protected boolean update() {
+        PoseEstimator pose = robot.pose;
+        double x = pose.getX();
+        double y = pose.getY();
+        double heading = reversed ? pose.getHeading() + Math.PI : pose.getHeading();
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+
+        progress = path.project(x, y, progress, progress + lookahead);
+        double remaining = path.getLength() - progress;
+        double length = path.getLength();
+        double toEndX = path.getX(length) - x;
+        double toEndY = path.getY(length) - y;
+        if (remaining < lookahead && (Math.hypot(toEndX, toEndY) < END_TOLERANCE
+                || cos * toEndX + sin * toEndY <= 0)) {
+            return true;
+        }
+
+        // The goal point, in the robot's frame: ahead, and to the left.
+        double goal = progress + lookahead;
+        double dx = path.getX(goal) - x;
+        double dy = path.getY(goal) - y;
+        double ahead = cos * dx + sin * dy;
+        double left = -sin * dx + cos * dy;
+        double squared = ahead * ahead + left * left;
+        double curvature = squared > 0 ? 2 * left / squared : 0;
+
+        double seconds = getRunSeconds();
+        double dt = Math.max(0, seconds - lastSeconds);
+        lastSeconds = seconds;
+        double accelerationLimit = constants.maxDriveAcceleration;
+        double speed = Math.min(maxVelocity, Math.min(velocity + accelerationLimit * dt,
+                Math.sqrt(2 * accelerationLimit * Math.max(remaining, END_TOLERANCE))));
+        double half = curvature * robot.getCalibration().trackWidth / 2;
+        double outer = speed * (1 + Math.abs(half));
+        if (outer > maxVelocity) {
+            speed *= maxVelocity / outer;
+        }
+        double acceleration = dt > 0 ? (speed - velocity) / dt : 0;
+        velocity = speed;
+
+        double leftPower = wheelPower(speed * (1 - half), acceleration);
+        double rightPower = wheelPower(speed * (1 + half), acceleration);
+        if (reversed) {
+            // Backing up, the path's left is the robot's right.
+            robot.getDrivetrain().setPower(-rightPower, -leftPower);
+        } else {
+            robot.getDrivetrain().setPower(leftPower, rightPower);
+        }
+        return false;
+    }
+
+    private double wheelPower(double wheelVelocity, double acceleration) {
+        return Range.clip(constants.driveKv * wheelVelocity + constants.driveKa * acceleration,
+                -1.0, 1.0);
+    }
+
+    @Override
+    protected void stop() {
+        robot.stopDriveMotors();
+    }
+}
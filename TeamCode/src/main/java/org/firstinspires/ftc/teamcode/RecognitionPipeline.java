@@ -0,0 +1,269 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.firstinspires.ftc.robotcore.external.tfod.Recognition;
+import org.firstinspires.ftc.robotcore.external.tfod.TFObjectDetector;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Drains a TFObjectDetector on a thread of its own. Each time TensorFlow finishes a frame, the
+ * pipeline publishes a new, immutable Frame holding that frame's recognitions as primitive
+ * arrays, and replaces whatever was published before: readers always get the newest frame, and
+ * frames nobody got around to reading are simply dropped. getLatest() never waits.
+ *
+ * Labels are numbered by their position in the label list given to the constructor, the same
+ * list given to loadModelFromAsset.
+ *
+ * The pipeline also follows each label across frames. A label seen in STABLE_FRAMES frames in a
+ * row, give or take MAX_MISSED_FRAMES dropouts, is "stable", and its smoothed center is kept.
+ * Autonomous code can ask where the Skystone is without scanning recognitions itself:
+ *
+ *     RecognitionPipeline.Frame frame = pipeline.getLatest();
+ *     if (frame.isStable(SKYSTONE)) {
+ *         float x = frame.getStableCenterX(SKYSTONE);
+ *         ...
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class RecognitionPipeline implements Runnable {
+
+    public static final int STABLE_FRAMES = 3;
+    public static final int MAX_MISSED_FRAMES = 2;
+    // Share of each new center blended into the stable center.
+    public static final float CENTER_SMOOTHING = 0.5f;
+    // TensorFlow runs at several frames a second at best; polling at this rate catches each one
+    // promptly without keeping a core busy.
+    public static final long POLL_PERIOD_MS = 20;
+
+    //  One TensorFlow frame. Never changes once published.
+    public static final class Frame {
+        // Counts up by one with each frame.
+        public final long sequence;
+        // System.nanoTime() when the frame's recognitions were received.
+        public final long timestampNanos;
+        public final int imageWidth;
+        public final int imageHeight;
+        // Recognitions, in parallel arrays of length count. Pixel coordinates.
+        public final int count;
+        private final int[] labels;
+        private final float[] confidence;
+        private final float[] left;
+        private final float[] top;
+        private final float[] right;
+        private final float[] bottom;
+        // Persistence, one entry per label.
+        private final int[] streak;
+        private final float[] stableCenterX;
+        private final float[] stableCenterY;
+        private final float[] stableWidth;
+
+        Frame(long sequence, long timestampNanos, int imageWidth, int imageHeight, int count,
+              int[] labels, float[] confidence,
+              float[] left, float[] top, float[] right, float[] bottom,
+              int[] streak, float[] stableCenterX, float[] stableCenterY, float[] stableWidth) {
+            this.sequence = sequence;
+            this.timestampNanos = timestampNanos;
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+            this.count = count;
+            this.labels = labels;
+            this.confidence = confidence;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            this.streak = streak;
+            this.stableCenterX = stableCenterX;
+            this.stableCenterY = stableCenterY;
+            this.stableWidth = stableWidth;
+        }
+
+        /*  Recognition i of this frame. */
+        public int getLabel(int i) { return labels[i]; }
+        public float getConfidence(int i) { return confidence[i]; }
+        public float getLeft(int i) { return left[i]; }
+        public float getTop(int i) { return top[i]; }
+        public float getRight(int i) { return right[i]; }
+        public float getBottom(int i) { return bottom[i]; }
+
+        /*  Persistence of a label across frames. */
+        //  Frames the label has been seen in since it was last missing for more than
+        // MAX_MISSED_FRAMES in a row.
+        public int getStreak(int label) { return streak[label]; }
+        public boolean isStable(int label) { return streak[label] >= STABLE_FRAMES; }
+        //  Smoothed box center and width of the label's best recognition. Meaningful
+        // only while isStable(label).
+        public float getStableCenterX(int label) { return stableCenterX[label]; }
+        public float getStableCenterY(int label) { return stableCenterY[label]; }
+        public float getStableWidth(int label) { return stableWidth[label]; }
+    }
+
+    private final TFObjectDetector tfod;
+    private final String[] labelNames;
+    private final AtomicReference<Frame> latest;
+    private volatile boolean running = false;
+    private Thread thread = null;
+
+    // Persistence state, touched only by the pipeline thread.
+    private final int[] streak;
+    private final int[] missed;
+    private final float[] centerX;
+    private final float[] centerY;
+    private final float[] width;
+
+    /* Constructor. Give the labels in the order given to loadModelFromAsset. */
+    public RecognitionPipeline(TFObjectDetector tfod, String... labelNames) {
+        this.tfod = tfod;
+        this.labelNames = labelNames.clone();
+        int labelCount = labelNames.length;
+        streak = new int[labelCount];
+        missed = new int[labelCount];
+        centerX = new float[labelCount];
+        centerY = new float[labelCount];
+        width = new float[labelCount];
+        latest = new AtomicReference<Frame>(new Frame(0, 0, 0, 0, 0,
+                new int[0], new float[0], new float[0], new float[0], new float[0], new float[0],
+                new int[labelCount], new float[labelCount], new float[labelCount],
+                new float[labelCount]));
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "RecognitionPipeline");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //  Stop draining, and wait for the thread to finish. Does not shut TensorFlow down.
+    public synchronized void stop() {
+        running = false;
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    //  The newest published frame. Never null; never blocks.
+    public Frame getLatest() {
+        return latest.get();
+    }
+
+    public int getLabelCount() {
+        return labelNames.length;
+    }
+
+    public String getLabelName(int label) {
+        return labelNames[label];
+    }
+
+    //  Label number for a name, or -1 if the pipeline doesn't know it.
+    public int getLabelId(String name) {
+        for (int i = 0; i < labelNames.length; i++) {
+            if (labelNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            // getUpdatedRecognitions() will return null if no new information is available since
+            // the last time that call was made.
+            List<Recognition> recognitions = tfod.getUpdatedRecognitions();
+            if (recognitions != null) {
+                publish(recognitions, System.nanoTime());
+            }
+            try {
+                Thread.sleep(POLL_PERIOD_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    //  Turn one frame's recognitions into a Frame, update persistence, and publish.
+    void publish(List<Recognition> recognitions, long timestampNanos) {
+        int count = recognitions.size();
+        int[] labels = new int[count];
+        float[] confidence = new float[count];
+        float[] left = new float[count];
+        float[] top = new float[count];
+        float[] right = new float[count];
+        float[] bottom = new float[count];
+        int imageWidth = 0;
+        int imageHeight = 0;
+        int labelCount = labelNames.length;
+        // Index of the most confident recognition of each label in this frame, or -1.
+        int[] best = new int[labelCount];
+        for (int label = 0; label < labelCount; label++) {
+            best[label] = -1;
+        }
+
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            Recognition recognition = recognitions.get(i);
+            int label = getLabelId(recognition.getLabel());
+            if (label < 0) {
+                continue;
+            }
+            labels[kept] = label;
+            confidence[kept] = recognition.getConfidence();
+            left[kept] = recognition.getLeft();
+            top[kept] = recognition.getTop();
+            right[kept] = recognition.getRight();
+            bottom[kept] = recognition.getBottom();
+            imageWidth = recognition.getImageWidth();
+            imageHeight = recognition.getImageHeight();
+            if (best[label] < 0 || confidence[kept] > confidence[best[label]]) {
+                best[label] = kept;
+            }
+            kept++;
+        }
+
+        for (int label = 0; label < labelCount; label++) {
+            int b = best[label];
+            if (b < 0) {
+                if (++missed[label] > MAX_MISSED_FRAMES) {
+                    streak[label] = 0;
+                }
+                continue;
+            }
+            float x = (left[b] + right[b]) / 2;
+            float y = (top[b] + bottom[b]) / 2;
+            float w = right[b] - left[b];
+            if (streak[label] == 0) {
+                centerX[label] = x;
+                centerY[label] = y;
+                width[label] = w;
+            } else {
+                centerX[label] += CENTER_SMOOTHING * (x - centerX[label]);
+                centerY[label] += CENTER_SMOOTHING * (y - centerY[label]);
+                width[label] += CENTER_SMOOTHING * (w - width[label]);
+            }
+            streak[label]++;
+            missed[label] = 0;
+        }
+
+        Frame previous = latest.get();
+        latest.set(new Frame(previous.sequence + 1, timestampNanos, imageWidth, imageHeight, kept,
+                labels, confidence, left, top, right, bottom,
+                streak.clone(), centerX.clone(), centerY.clone(), width.clone()));
+    }
+}
@@ -0,0 +1,391 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.hardware.Gamepad;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Plays a FlightLog back into an unmodified TrainerbotV2 LinearOpMode on a desktop JVM, and
+ * compares the motor powers the opmode commands now with the ones it commanded on the robot.
+ * Change a gain, or the heading controller, and a replay of last weekend's matches shows
+ * every cycle where the robot would have done something different:
+ *
+ *     ReplayHarness replay = new ReplayHarness(FlightLog.open(file));
+ *     ReplayHarness.Result result = replay.run(new NavigateWall());
+ *     System.out.println(result);
+ *
+ * or, from the command line, with a CSV of both sets of powers, cycle by cycle:
+ *
+ *     java -cp ... org.firstinspires.ftc.teamcode.ReplayHarness match1.bin NavigateWall [diff.csv]
+ *
+ * The opmode gets the SimHarness CONFIGURATION, but the devices play the log: the ReplayMotors'
+ * encoders, the SimImu's heading and gamepad1 are set from one record at a time. The robot's
+ * CycleListener keeps play in step with the opmode. Each updateMotion cycle plays one record:
+ * as the cycle starts, before the sensors are read, the record is loaded; when it ends, its
+ * powers are compared with the record's. The record's gamepad is recorded as the cycle ends,
+ * and the opmode reads the gamepad after updateMotion, so it must not be loaded any earlier.
+ * A record's vision fix is given to robot.pose before the cycle that reads it, as correctPose
+ * did on the robot.
+ *
+ * Time is virtual, as in SimHarness, and set from the log: as each cycle starts the clock is
+ * moved up to the record's time, so timeouts and motion profiles see the times they saw on the robot.
+ * A replay runs as fast as the desktop can compute it.
+ *
+ * Play starts at the first record after start was pressed. Start is pressed before init, as in
+ * SimHarness, so cycles run during init on the robot are not replayed. The opmode is stopped
+ * where the log shows it was, or when the log runs out. Replays run on the default constants
+ * unless setSettingsFolder names a folder of settings files. Vuforia and TensorFlow can't run
+ * here, so opmodes that need the camera to init can't be replayed; the fixes they made can.
+ *
+ * Only one replay or simulation may run at a time, since RobotClock is shared.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    a record is loaded as its cycle starts, not as the cycle before it ends.
+ * v 0.3    the replayed robot never records, whatever its settings folder's constants say.
+ */
+
+public class ReplayHarness {
+    // Powers closer than this match. The log keeps them as floats.
+    public static final double DEFAULT_TOLERANCE = 1e-4;
+    // If the opmode never runs a cycle, stop it this long after the log's last record.
+    public static final long STOP_GRACE_NANOS = 1000000000;
+
+    //  How the replay's motor powers compared with the log's.
+    public static class Result {
+        public final int cycles;                // records compared
+        public final int mismatches;            // of those, where a power differed
+        public final long firstMismatchCycle;   // recorded cycle number; -1 if none
+        public final double maxError;           // largest power difference
+        public final double rmsError;
+        public final double replaySeconds;      // robot time covered
+        public final double wallSeconds;
+
+        Result(int cycles, int mismatches, long firstMismatchCycle, double maxError,
+               double sumSquares, double replaySeconds, double wallSeconds) {
+            this.cycles = cycles;
+            this.mismatches = mismatches;
+            this.firstMismatchCycle = firstMismatchCycle;
+            this.maxError = maxError;
+            this.rmsError = cycles == 0 ? 0 : Math.sqrt(sumSquares / (2 * cycles));
+            this.replaySeconds = replaySeconds;
+            this.wallSeconds = wallSeconds;
+        }
+
+        public boolean matches() {
+            return mismatches == 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format(Locale.US, "%d cycles, %.2f s replayed in %.3f s (%.0fx)%n",
+                    cycles, replaySeconds, wallSeconds,
+                    wallSeconds > 0 ? replaySeconds / wallSeconds : 0));
+            if (matches()) {
+                out.append("motor powers match");
+            } else {
+                out.append(String.format(Locale.US, "%d cycles differ, first at cycle %d; "
+                        + "power error max %.4f, rms %.4f",
+                        mismatches, firstMismatchCycle, maxError, rmsError));
+            }
+            return out.toString();
+        }
+    }
+
+    //  The recorded heading, for the SimImu.
+    private static class RecordedBody implements SimImu.Body {
+        double heading = 0;
+        double headingRate = 0;
+
+        @Override
+        public double getHeading() {
+            return heading;
+        }
+
+        @Override
+        public double getHeadingRate() {
+            return headingRate;
+        }
+    }
+
+    private final FlightLog log;
+    private final ReplayMotor left = new ReplayMotor("motor0", 0);
+    private final ReplayMotor right = new ReplayMotor("motor1", 1);
+    private final RecordedBody body = new RecordedBody();
+    private final SimImu imu = new SimImu(body);
+    private final Gamepad gamepad1 = new Gamepad();
+    private final Gamepad gamepad2 = new Gamepad();
+    private double tolerance = DEFAULT_TOLERANCE;
+    private File settingsFolder = null;
+    private Writer diff = null;
+
+    // Per run.
+    private LinearOpMode opMode;
+    private TrainerbotV2 robot;
+    private final FlightRecord record = new FlightRecord();
+    private int next;                 // the record the next cycle reads
+    private long now;
+    private long imuNanos;            // of the last record with an IMU reading; 0 if none
+    private long endNanos;
+    private boolean stopped;
+    private int cycles;
+    private int mismatches;
+    private long firstMismatchCycle;
+    private double maxError;
+    private double sumSquares;
+    private IOException diffError;
+
+    public ReplayHarness(FlightLog log) {
+        this.log = log;
+    }
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    //  Where the robot loads its settings files. Null, the default, means the defaults.
+    public void setSettingsFolder(File folder) {
+        settingsFolder = folder;
+    }
+
+    //  Write each compared cycle, recorded and replayed powers, as CSV. Null for none.
+    public void setDiffWriter(Writer writer) {
+        diff = writer;
+    }
+
+    //  Init and start opMode at once, and play the log into it. Not reentrant. Throws
+    // IOException only if the diff couldn't be written.
+    public synchronized Result run(LinearOpMode opMode) throws IOException {
+        this.opMode = opMode;
+        robot = null;
+        cycles = 0;
+        mismatches = 0;
+        firstMismatchCycle = -1;
+        maxError = 0;
+        sumSquares = 0;
+        diffError = null;
+        stopped = false;
+        imuNanos = 0;
+
+        int count = log.getRecordCount();
+        next = 0;
+        while (next < count && readState(next) != FlightRecord.OPMODE_RUNNING) {
+            next++;
+        }
+        if (next == count) {
+            // Never started; play it all.
+            next = 0;
+        }
+        long startNanos = count == 0 ? 0 : recordNanos(next);
+        endNanos = (count == 0 ? 0 : recordNanos(count - 1)) + STOP_GRACE_NANOS;
+        now = startNanos;
+        if (next < count) {
+            // What init sees. The first cycle loads it again, with its fix.
+            load(next);
+        }
+        if (diff != null) {
+            diff.write("cycle,left_power,right_power,replay_left,replay_right,error\n");
+        }
+
+        HardwareMap hardwareMap = new HardwareMap(null);
+        hardwareMap.dcMotor.put("motor0", left);
+        hardwareMap.dcMotor.put("motor1", right);
+        hardwareMap.put("imu", imu);
+        opMode.hardwareMap = hardwareMap;
+        opMode.gamepad1 = gamepad1;
+        opMode.gamepad2 = gamepad2;
+        opMode.telemetry = SimHarness.quietTelemetry();
+
+        robot = SimHarness.findRobot(opMode);
+        if (robot != null) {
+            // Sample the IMU on the opmode's thread, at the record being played.
+            robot.setImuThread(false);
+            robot.setSettingsFolder(settingsFolder);
+            // Never record a replay: it would write, and prune, the logs being replayed.
+            robot.setRecording(false);
+            robot.setConfiguration(SimHarness.CONFIGURATION);
+            robot.setCycleListener(listener);
+        }
+
+        long wallStart = System.nanoTime();
+        RobotClock.setSource(clock);
+        try {
+            opMode.start();
+            opMode.runOpMode();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            RobotClock.setSource(RobotClock.SYSTEM);
+            if (robot != null) {
+                robot.setCycleListener(null);
+                robot.shutdown();
+            }
+        }
+        double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+        if (diffError != null) {
+            throw diffError;
+        }
+        if (diff != null) {
+            diff.flush();
+        }
+        return new Result(cycles, mismatches, firstMismatchCycle, maxError, sumSquares,
+                Math.max(0, Math.min(now, endNanos - STOP_GRACE_NANOS) - startNanos) / 1e9,
+                wallSeconds);
+    }
+
+    //  As each cycle starts, load its record; at the end, compare the cycle with it.
+    private final TrainerbotV2.CycleListener listener = new TrainerbotV2.CycleListener() {
+        @Override
+        public void cycleStarting() {
+            if (next < log.getRecordCount()) {
+                load(next);
+            }
+        }
+
+        @Override
+        public void cycleDone(FlightRecord replayed) {
+            if (next >= log.getRecordCount()) {
+                stop();
+                return;
+            }
+            compare(replayed);
+            next++;
+            if (next >= log.getRecordCount()) {
+                stop();
+            }
+        }
+    };
+
+    //  Virtual time. Reads cost a little, so a loop that never sleeps still ends.
+    private final RobotClock.Source clock = new RobotClock.Source() {
+        @Override
+        public long nanoTime() {
+            advance(SimHarness.READ_COST_NANOS);
+            return now;
+        }
+
+        @Override
+        public void sleepNanos(long nanos) throws InterruptedException {
+            advance(nanos);
+        }
+    };
+
+    private void advance(long nanos) {
+        now += nanos;
+        if (now >= endNanos) {
+            stop();
+        }
+    }
+
+    private void stop() {
+        if (!stopped) {
+            stopped = true;
+            opMode.stop();
+        }
+    }
+
+    //  The powers the opmode just commanded, against those in record, which holds the
+    // record the cycle read.
+    private void compare(FlightRecord replayed) {
+        double leftError = Math.abs(replayed.leftPower - record.leftPower);
+        double rightError = Math.abs(replayed.rightPower - record.rightPower);
+        double error = Math.max(leftError, rightError);
+        cycles++;
+        sumSquares += leftError * leftError + rightError * rightError;
+        maxError = Math.max(maxError, error);
+        if (error > tolerance) {
+            if (mismatches == 0) {
+                firstMismatchCycle = record.cycle;
+            }
+            mismatches++;
+        }
+        if (diff != null && diffError == null) {
+            try {
+                diff.write(String.format(Locale.US, "%d,%.4f,%.4f,%.4f,%.4f,%.4f\n",
+                        record.cycle, record.leftPower, record.rightPower,
+                        replayed.leftPower, replayed.rightPower, error));
+            } catch (IOException e) {
+                // Report it when the run ends; the opmode can't be told.
+                diffError = e;
+            }
+        }
+    }
+
+    //  Set the devices, the clock and the pose fix from record i.
+    private void load(int i) {
+        log.read(i, record);
+        if (record.nanos > now) {
+            now = record.nanos;
+        }
+        left.setPosition(record.leftPosition);
+        right.setPosition(record.rightPosition);
+        if (record.has(FlightRecord.HAS_IMU)) {
+            long dt = record.nanos - imuNanos;
+            body.headingRate = imuNanos != 0 && dt > 0
+                    ? PoseEstimator.normalize(record.heading - body.heading) * 1e9 / dt : 0;
+            body.heading = record.heading;
+            imuNanos = record.nanos;
+        }
+        if (record.has(FlightRecord.HAS_GAMEPAD)) {
+            gamepad1.left_stick_x = record.leftStickX;
+            gamepad1.left_stick_y = record.leftStickY;
+            gamepad1.right_stick_x = record.rightStickX;
+            gamepad1.right_stick_y = record.rightStickY;
+            gamepad1.left_trigger = record.leftTrigger;
+            gamepad1.right_trigger = record.rightTrigger;
+            GamepadEvents.setButtonBits(gamepad1, record.buttons);
+        }
+        if (record.has(FlightRecord.HAS_FIX) && robot != null) {
+            robot.pose.correct(record.fixX, record.fixY, record.fixHeading);
+        }
+        if (record.opModeState == FlightRecord.OPMODE_STOPPING) {
+            stop();
+        }
+    }
+
+    private int readState(int i) {
+        log.read(i, record);
+        return record.opModeState;
+    }
+
+    private long recordNanos(int i) {
+        log.read(i, record);
+        return record.nanos;
+    }
+
+    //  Replay a log into an opmode, named by class, simple or full. Exits with status 1 if
+    // any cycle's powers differ.
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: ReplayHarness log.bin OpModeClass [diff.csv]");
+            System.exit(2);
+        }
+        String name = args[1].indexOf('.') < 0
+                ? ReplayHarness.class.getPackage().getName() + "." + args[1] : args[1];
+        LinearOpMode opMode = (LinearOpMode) Class.forName(name)
+                .getDeclaredConstructor().newInstance();
+        ReplayHarness replay = new ReplayHarness(FlightLog.open(new File(args[0])));
+        FileWriter writer = args.length > 2 ? new FileWriter(args[2]) : null;
+        Result result;
+        try {
+            replay.setDiffWriter(writer);
+            result = replay.run(opMode);
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+        System.out.println(result);
+        System.exit(result.matches() ? 0 : 1);
+    }
+}
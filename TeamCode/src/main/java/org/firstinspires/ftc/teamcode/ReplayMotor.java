@@ -0,0 +1,35 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * This is NOT an opmode.
+ *
+ * A DcMotor for ReplayHarness. Its encoder reads whatever position the harness last set, from
+ * a FlightLog, not anything the motor was told; the powers, modes and targets the opmode sets
+ * are kept, as on a SimMotor, for the harness to compare with the log. isBusy() compares the
+ * target with the recorded position.
+ *
+ * Positions are set as the opmode read them, after direction, so they go straight through.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class ReplayMotor extends SimMotor {
+    private int position = 0;
+
+    public ReplayMotor(String name, int port) {
+        // Never stepped; speed and lag don't matter.
+        super(name, port, 0, 1);
+    }
+
+    //  What getCurrentPosition() returns from now on.
+    public synchronized void setPosition(int position) {
+        this.position = position;
+    }
+
+    @Override
+    public synchronized int getCurrentPosition() {
+        return position;
+    }
+}
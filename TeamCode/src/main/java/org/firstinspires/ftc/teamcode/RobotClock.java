@@ -0,0 +1,63 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * This is NOT an opmode.
+ *
+ * The one clock that the control code reads. On the robot it is System.nanoTime() and
+ * Thread.sleep(), exactly as before. SimHarness swaps in a virtual clock, where sleeping moves
+ * the simulated robot forward instead of waiting, so an opmode runs as fast as the desktop
+ * can compute it.
+ *
+ * ControlLoop, MotionExecutor, the RobotSnapshot timestamp and TelemetryLines all read time
+ * here, never from System directly. Anything that takes part in a control loop cycle should too.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public final class RobotClock {
+
+    //  Where time comes from.
+    public interface Source {
+        long nanoTime();
+        void sleepNanos(long nanos) throws InterruptedException;
+    }
+
+    //  Real time.
+    public static final Source SYSTEM = new Source() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleepNanos(long nanos) throws InterruptedException {
+            Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+        }
+    };
+
+    private static volatile Source source = SYSTEM;
+
+    private RobotClock() {
+    }
+
+    public static long nanoTime() {
+        return source.nanoTime();
+    }
+
+    public static void sleepNanos(long nanos) throws InterruptedException {
+        if (nanos > 0) {
+            source.sleepNanos(nanos);
+        }
+    }
+
+    //  Replace the clock. Pass SYSTEM to go back to real time.
+    public static void setSource(Source newSource) {
+        source = newSource == null ? SYSTEM : newSource;
+    }
+
+    public static Source getSource() {
+        return source;
+    }
+}
@@ -0,0 +1,217 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.ftccommon.configuration.RobotConfigFile;
+import com.qualcomm.ftccommon.configuration.RobotConfigFileManager;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * This is NOT an opmode.
+ *
+ * The devices in a Robot Controller hardware configuration, as read from its XML file: the
+ * files in the FIRST folder, like those kept in "Hardware configurations". Each device has the
+ * configuration editor's type (NeveRest40Gearmotor, LynxEmbeddedIMU, Servo...), its name in the
+ * HardwareMap, and its port. Hubs and other controllers are containers, not devices.
+ *
+ *     RobotConfiguration config = RobotConfiguration.active();    // null if there is none
+ *     for (int i = 0; i < config.getMotorCount(); i++) { ... config.getMotorName(i) ... }
+ *
+ * A robot class reads it once, at init, to decide what its hardware is, e.g. which motors
+ * drive it, and GenericFTCRobot.bindDrivetrain does so for the drive. Motors are listed in the
+ * order the file lists them; the configuration editor writes each hub's devices by port.
+ *
+ * Parsing uses the XML DOM parser, there on both Android and desktop JVMs; only active() needs
+ * the Robot Controller app.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class RobotConfiguration {
+    private final String name;
+    private final String[] types;
+    private final String[] deviceNames;
+    private final int[] ports;
+    private final int[] motors;        // device index of each motor
+
+    /* Constructor. The arrays must be the same length. */
+    public RobotConfiguration(String name, String[] types, String[] deviceNames, int[] ports) {
+        if (types.length != deviceNames.length || types.length != ports.length) {
+            throw new IllegalArgumentException("device arrays differ in length");
+        }
+        this.name = name;
+        this.types = types.clone();
+        this.deviceNames = deviceNames.clone();
+        this.ports = ports.clone();
+        int count = 0;
+        for (String type : types) {
+            if (isMotorType(type)) {
+                count++;
+            }
+        }
+        motors = new int[count];
+        count = 0;
+        for (int i = 0; i < types.length; i++) {
+            if (isMotorType(types[i])) {
+                motors[count++] = i;
+            }
+        }
+    }
+
+    //  The configuration selected on the Robot Controller. Null if there is none, or it is one
+    // of the app's built-in ones rather than a file.
+    public static RobotConfiguration active() {
+        RobotConfigFile file = new RobotConfigFileManager().getActiveConfig();
+        if (file.getLocation() != RobotConfigFile.FileLocation.LOCAL_STORAGE) {
+            return null;
+        }
+        return load(file.getFullPath());
+    }
+
+    //  Read a configuration file. Null if it can't be read or parsed.
+    public static RobotConfiguration load(File file) {
+        String name = file.getName();
+        if (name.endsWith(".xml")) {
+            name = name.substring(0, name.length() - ".xml".length());
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            return parse(in, name);
+        } catch (IOException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing more to do.
+                }
+            }
+        }
+    }
+
+    //  Parse configuration XML. Throws IllegalArgumentException if it isn't any.
+    public static RobotConfiguration parse(InputStream in, String name) throws IOException {
+        Document document;
+        try {
+            document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            // Parser configuration and syntax errors.
+            throw new IllegalArgumentException("not configuration XML: " + e.getMessage());
+        }
+        Element root = document.getDocumentElement();
+        if (!"Robot".equals(root.getTagName())) {
+            throw new IllegalArgumentException("not configuration XML: " + root.getTagName());
+        }
+        List<Element> devices = new ArrayList<Element>();
+        collectDevices(root, devices);
+        int n = devices.size();
+        String[] types = new String[n];
+        String[] deviceNames = new String[n];
+        int[] ports = new int[n];
+        for (int i = 0; i < n; i++) {
+            Element device = devices.get(i);
+            types[i] = device.getTagName();
+            deviceNames[i] = device.getAttribute("name");
+            try {
+                ports[i] = Integer.parseInt(device.getAttribute("port"));
+            } catch (NumberFormatException e) {
+                ports[i] = -1;
+            }
+        }
+        return new RobotConfiguration(name, types, deviceNames, ports);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getDeviceCount() {
+        return types.length;
+    }
+
+    public String getType(int i) { return types[i]; }
+    public String getDeviceName(int i) { return deviceNames[i]; }
+    public int getPort(int i) { return ports[i]; }
+
+    //  Index of the device named deviceName, or -1.
+    public int indexOf(String deviceName) {
+        for (int i = 0; i < deviceNames.length; i++) {
+            if (deviceNames[i].equals(deviceName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getMotorCount() {
+        return motors.length;
+    }
+
+    //  The i'th motor, in file order.
+    public String getMotorName(int i) { return deviceNames[motors[i]]; }
+    public String getMotorType(int i) { return types[motors[i]]; }
+    public int getMotorPort(int i) { return ports[motors[i]]; }
+
+    //  True for the configuration editor's motor types: NeveRest40Gearmotor,
+    // RevRoboticsHDHexMotor, Motor and the like.
+    public static boolean isMotorType(String type) {
+        return type.endsWith("Motor") || type.endsWith("Gearmotor");
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + types.length + " devices, " + motors.length + " motors";
+    }
+
+    //  Depth first, in file order: every element with no elements inside is a device.
+    private static void collectDevices(Element parent, List<Element> devices) {
+        NodeList children = parent.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            if (child.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            Element element = (Element) child;
+            if (hasElements(element)) {
+                collectDevices(element, devices);
+            } else if (element.hasAttribute("name") && !isContainerType(element.getTagName())) {
+                devices.add(element);
+            }
+        }
+    }
+
+    private static boolean hasElements(Element element) {
+        NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            if (children.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //  A hub or controller with nothing configured on it.
+    private static boolean isContainerType(String type) {
+        return type.endsWith("Module") || type.endsWith("UsbDevice")
+                || type.endsWith("Controller");
+    }
+}
@@ -0,0 +1,199 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Properties;
+
+/**
+ * This is NOT an opmode.
+ *
+ * The TrainerbotV2 constants worth tuning at the field: drive geometry, camera placement, speeds,
+ * and the motion profile and heading control gains. Each is a plain public field, initialized
+ * to the compile-time default in TrainerbotV2. load() overwrites them from a Java properties
+ * file on the Robot Controller, so a tune is an edit and a reload, not an APK rebuild:
+ *
+ *     adb pull /sdcard/FIRST/trainerbotv2_constants.properties
+ *     (edit headingKp=1.8)
+ *     adb push trainerbotv2_constants.properties /sdcard/FIRST/
+ *     (press start in Calibrate, or re-init the opmode)
+ *
+ * The file is parsed once, by reflection over these fields, into primitives; after that a
+ * constant costs a field read. Keys are the field names. Keys missing from the file keep their
+ * defaults, and unknown keys are ignored, so an old file still loads after fields are added.
+ * Angles are radians, distances inches, times seconds.
+ *
+ * Don't change the values of an instance in use: load into a new one, and swap it in on the
+ * control loop thread, as TrainerbotV2.loadSettings does. A movement keeps the values it was
+ * queued with. Nothing here uses FTC SDK classes.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    added recordFlights and flightLogsKept.
+ * v 0.3    added pursuitLookahead.
+ * v 0.4    added ramseteB and ramseteZeta.
+ * v 0.5    added the camera's field of view and latency, and the stone servo gains.
+ * v 0.6    recordFlights is off by default.
+ */
+
+public class RobotConstants {
+    public static final String FILE_NAME = "trainerbotv2_constants.properties";
+
+    // Drive geometry. AutoCalibrate measurements, if saved, take the place of these.
+    public double countsPerMotorRev = TrainerbotV2.COUNTS_PER_MOTOR_REV;
+    public double driveGearReduction = TrainerbotV2.DRIVE_GEAR_REDUCTION;
+    public double wheelDiameterInches = TrainerbotV2.WHEEL_DIAMETER_INCHES;
+    public double driveWheelSeparation = TrainerbotV2.DRIVE_WHEEL_SEPARATION;
+
+    // Where the camera lens is, from the robot center: forward, left and above the floor.
+    public double cameraForwardInches = 4.0;
+    public double cameraLeftInches = 0.0;
+    public double cameraVerticalInches = 8.0;
+    // The camera's horizontal field of view, and how long TensorFlow takes to report a frame.
+    public double cameraFieldOfView = TrainerbotV2.CAMERA_FIELD_OF_VIEW;
+    public double visionLatency = TrainerbotV2.VISION_LATENCY;
+
+    // Speeds, as motor power, for opmodes' canned movements.
+    public double driveSpeed = 0.30;
+    public double turnSpeed = 0.15;
+    public double segmentTimeoutSeconds = TrainerbotV2.DEFAULT_SEGMENT_TIMEOUT_S;
+
+    // Motion profile limits and follower gains.
+    public double maxDriveVelocity = TrainerbotV2.MAX_DRIVE_VELOCITY;
+    public double maxDriveAcceleration = TrainerbotV2.MAX_DRIVE_ACCELERATION;
+    public double maxDriveJerk = TrainerbotV2.MAX_DRIVE_JERK;
+    public double driveKv = TrainerbotV2.DRIVE_KV;
+    public double driveKa = TrainerbotV2.DRIVE_KA;
+    public double driveKp = TrainerbotV2.DRIVE_KP;
+    public double pursuitLookahead = TrainerbotV2.PURSUIT_LOOKAHEAD;
+    public double ramseteB = TrainerbotV2.RAMSETE_B;
+    public double ramseteZeta = TrainerbotV2.RAMSETE_ZETA;
+    public double servoRangeGain = TrainerbotV2.SERVO_RANGE_GAIN;
+    public double servoBearingGain = TrainerbotV2.SERVO_BEARING_GAIN;
+
+    // IMU heading hold and turns.
+    public double headingKp = TrainerbotV2.HEADING_KP;
+    public double headingKi = TrainerbotV2.HEADING_KI;
+    public double headingKd = TrainerbotV2.HEADING_KD;
+    public double headingMaxCorrection = TrainerbotV2.HEADING_MAX_CORRECTION;
+    public double turnKp = TrainerbotV2.TURN_KP;
+    public double turnKi = TrainerbotV2.TURN_KI;
+    public double turnKd = TrainerbotV2.TURN_KD;
+    public double turnMinPower = TrainerbotV2.TURN_MIN_POWER;
+    public double headingIZone = TrainerbotV2.HEADING_I_ZONE;
+    public double headingTolerance = TrainerbotV2.HEADING_TOLERANCE;
+    public double turnSettleSeconds = TrainerbotV2.TURN_SETTLE_SECONDS;
+
+    // Keep a FlightRecorder log of every opmode run, and how many logs to keep. Off unless
+    // the constants file turns it on: each log is DEFAULT_CAPACITY records, about 4.6 MB.
+    public boolean recordFlights = false;
+    public int flightLogsKept = 20;
+
+    // Keys of the last load() whose values couldn't be parsed, comma separated.
+    private String rejected = "";
+
+    //  Encoder counts per inch of wheel travel, from the geometry above.
+    public double getCountsPerInch() {
+        return (countsPerMotorRev * driveGearReduction) / (wheelDiameterInches * Math.PI);
+    }
+
+    //  Overwrite fields from file. False if it couldn't be read; then nothing changes. A value
+    // that can't be parsed keeps its field's value, and its key is listed by getRejected().
+    public boolean load(File file) {
+        Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            properties.load(in);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            close(in);
+        }
+        StringBuilder bad = new StringBuilder();
+        for (Field field : getClass().getFields()) {
+            String text = properties.getProperty(field.getName());
+            if (!isConstant(field) || text == null) {
+                continue;
+            }
+            try {
+                setValue(field, text.trim());
+            } catch (NumberFormatException e) {
+                if (bad.length() > 0) {
+                    bad.append(',');
+                }
+                bad.append(field.getName());
+            }
+        }
+        rejected = bad.toString();
+        return true;
+    }
+
+    //  Keys the last load() couldn't parse. Empty if there were none.
+    public String getRejected() {
+        return rejected;
+    }
+
+    //  Write every field to file, one per line. Returns false if it couldn't be written.
+    public boolean save(File file) {
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(file);
+            writer.write("# TrainerbotV2 constants. Radians, inches, seconds.\n");
+            for (Field field : getClass().getFields()) {
+                if (isConstant(field)) {
+                    writer.write(field.getName() + "=" + field.get(this) + "\n");
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        } catch (IllegalAccessException e) {
+            // Public fields only; can't happen.
+            return false;
+        } finally {
+            close(writer);
+        }
+    }
+
+    //  Public instance fields of a type load() can parse.
+    private static boolean isConstant(Field field) {
+        Class<?> type = field.getType();
+        return !Modifier.isStatic(field.getModifiers())
+                && (type == double.class || type == int.class || type == boolean.class);
+    }
+
+    private void setValue(Field field, String text) {
+        Class<?> type = field.getType();
+        try {
+            if (type == double.class) {
+                field.setDouble(this, Double.parseDouble(text));
+            } else if (type == int.class) {
+                field.setInt(this, Integer.parseInt(text));
+            } else if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false")) {
+                field.setBoolean(this, Boolean.parseBoolean(text));
+            } else {
+                throw new NumberFormatException(text);
+            }
+        } catch (IllegalAccessException e) {
+            // Public fields only; can't happen.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void close(Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Nothing more to do.
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.ftccommon.configuration.RobotConfigFile;
+import com.qualcomm.ftccommon.configuration.RobotConfigFileManager;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import org.firstinspires.ftc.robotcore.external.ClassFactory;
+import org.firstinspires.ftc.robotcore.external.navigation.VuforiaLocalizer;
+import org.firstinspires.ftc.robotcore.external.navigation.VuforiaTrackable;
+import org.firstinspires.ftc.robotcore.external.navigation.VuforiaTrackables;
+import org.firstinspires.ftc.robotcore.external.stream.CameraStreamServer;
+import org.firstinspires.ftc.robotcore.external.tfod.TFObjectDetector;
+import org.firstinspires.ftc.robotcore.internal.vuforia.VuforiaLocalizerImpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This is NOT an opmode.
+ *
+ * What every opmode on the Robot Controller would otherwise set up again at each init, set up
+ * once and kept for the life of the app: the parsed hardware configuration, the Vuforia engine,
+ * the SKYSTONE trackables, and the TensorFlow detector with its model loaded. Starting Vuforia
+ * and loading the model take several seconds; after the first opmode has done so, later inits
+ * only look them up:
+ *
+ *     RobotContext context = RobotContext.get(hardwareMap);
+ *     VuforiaTrackables targets = context.getSkyStoneTrackables();
+ *     TFObjectDetector tfod = context.getTfod();     // null if the phone can't run it
+ *
+ * Each is made the first time it is asked for. Opmodes activate() what they use and
+ * deactivate(), not close or shut down, what they are done with, so the next opmode finds it
+ * ready. Trackables and detector are shared, so one opmode at a time; the Robot Controller
+ * runs one opmode at a time anyway.
+ *
+ * The stock Vuforia engine closes itself when the opmode that made it stops. The one kept here
+ * doesn't: it stays open, camera and all, until invalidate(). The Driver Station's Camera Stream
+ * is let go of at every opmode stop, though, so getVuforia() and getTfod() hand it back to what
+ * they return each time: the opmode that asked last is the one streamed.
+ *
+ * Everything is dropped, and made again when next asked for, when the HardwareMap is a new one,
+ * as it is after the Robot Controller restarts, or the active configuration file is another one
+ * or has been edited. Call invalidate() to drop it all by hand.
+ *
+ * The IMU isn't kept: the SDK resets its parameters at the start of every opmode, so each must
+ * initialize it again.
+ *
+ * The configuration and vision each have a lock of their own, so an InitPipeline can bind the
+ * hardware while Vuforia starts.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    the configuration doesn't wait on vision.
+ * v 0.3    the Camera Stream follows the kept engine or detector into each opmode.
+ */
+
+public final class RobotContext {
+    public static final String TFOD_MODEL_ASSET = "Skystone.tflite";
+    public static final String LABEL_STONE = "Stone";
+    public static final String LABEL_SKYSTONE = "Skystone";
+    public static final double TFOD_MIN_CONFIDENCE = 0.8;
+
+    private static RobotContext current = null;
+
+    private final HardwareMap hardwareMap;
+    private final String configurationStamp;
+    // Its own lock, so binding hardware needn't wait on vision being made.
+    private final Object configurationLock = new Object();
+    private RobotConfiguration configuration = null;
+    private boolean configurationRead = false;
+    private KeptVuforiaLocalizer vuforia = null;
+    private VuforiaTrackables skyStoneTrackables = null;
+    private List<VuforiaTrackable> skyStoneTrackableList = null;
+    private TFObjectDetector tfod = null;
+    private boolean tfodTried = false;
+
+    private RobotContext(HardwareMap hardwareMap, String configurationStamp) {
+        this.hardwareMap = hardwareMap;
+        this.configurationStamp = configurationStamp;
+    }
+
+    //  The context for hardwareMap: the one kept, unless the HardwareMap or configuration has
+    // changed since it was made, in which case a new, empty one.
+    public static synchronized RobotContext get(HardwareMap hardwareMap) {
+        String stamp = configurationStamp(hardwareMap);
+        if (current != null && (current.hardwareMap != hardwareMap
+                || !current.configurationStamp.equals(stamp))) {
+            invalidate();
+        }
+        if (current == null) {
+            current = new RobotContext(hardwareMap, stamp);
+        }
+        return current;
+    }
+
+    //  Close and drop everything kept. The next get() starts over.
+    public static synchronized void invalidate() {
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+    }
+
+    //  True if there is a context, and it has a Vuforia engine running. For telemetry.
+    public static synchronized boolean isWarm() {
+        return current != null && current.vuforia != null;
+    }
+
+    //  The active configuration, parsed once. Null if there is none, or this isn't running in
+    // the Robot Controller app.
+    public RobotConfiguration getConfiguration() {
+        synchronized (configurationLock) {
+            if (!configurationRead) {
+                configuration = hardwareMap.appContext != null
+                        ? RobotConfiguration.active() : null;
+                configurationRead = true;
+            }
+            return configuration;
+        }
+    }
+
+    //  The Vuforia engine, on the BACK camera, with the camera monitor showing. It becomes the
+    // Camera Stream source.
+    public synchronized VuforiaLocalizer getVuforia() {
+        CameraStreamServer.getInstance().setSource(vuforia());
+        return vuforia;
+    }
+
+    //  The engine, made if need be, without touching the Camera Stream.
+    private VuforiaLocalizer vuforia() {
+        if (vuforia == null) {
+            int cameraMonitorViewId = hardwareMap.appContext.getResources().getIdentifier(
+                    "cameraMonitorViewId", "id", hardwareMap.appContext.getPackageName());
+            VuforiaLocalizer.Parameters parameters =
+                    new VuforiaLocalizer.Parameters(cameraMonitorViewId);
+            parameters.vuforiaLicenseKey = GenericFTCRobot.VUFORIA_KEY;
+            parameters.cameraDirection = VuforiaLocalizer.CameraDirection.BACK;
+            // Prevent spurious reporting on loss of tracking.
+            parameters.useExtendedTracking = false;
+            vuforia = new KeptVuforiaLocalizer(parameters);
+        }
+        return vuforia;
+    }
+
+    //  The SKYSTONE targets, named and placed by SkyStoneField. Not activated.
+    public synchronized VuforiaTrackables getSkyStoneTrackables() {
+        if (skyStoneTrackables == null) {
+            skyStoneTrackables = SkyStoneField.INSTANCE.load(vuforia());
+            skyStoneTrackableList = Collections.unmodifiableList(
+                    new ArrayList<VuforiaTrackable>(skyStoneTrackables));
+        }
+        return skyStoneTrackables;
+    }
+
+    //  The same targets, as a list, for VuforiaTracker.
+    public synchronized List<VuforiaTrackable> getSkyStoneTrackableList() {
+        getSkyStoneTrackables();
+        return skyStoneTrackableList;
+    }
+
+    //  The TensorFlow detector, with the Skystone model loaded, labels LABEL_STONE then
+    // LABEL_SKYSTONE. Not activated. Null if this phone can't run TensorFlow; otherwise it becomes
+    // the Camera Stream source.
+    public synchronized TFObjectDetector getTfod() {
+        if (!tfodTried) {
+            tfodTried = true;
+            if (ClassFactory.getInstance().canCreateTFObjectDetector()) {
+                int tfodMonitorViewId = hardwareMap.appContext.getResources().getIdentifier(
+                        "tfodMonitorViewId", "id", hardwareMap.appContext.getPackageName());
+                TFObjectDetector.Parameters parameters =
+                        new TFObjectDetector.Parameters(tfodMonitorViewId);
+                parameters.minimumConfidence = TFOD_MIN_CONFIDENCE;
+                tfod = ClassFactory.getInstance().createTFObjectDetector(parameters,
+                        vuforia());
+                tfod.loadModelFromAsset(TFOD_MODEL_ASSET, LABEL_STONE, LABEL_SKYSTONE);
+            }
+        }
+        if (tfod != null) {
+            CameraStreamServer.getInstance().setSource(tfod);
+        }
+        return tfod;
+    }
+
+    //  Detector first, since it takes its frames from Vuforia.
+    private synchronized void release() {
+        if (tfod != null) {
+            tfod.shutdown();
+            tfod = null;
+        }
+        if (skyStoneTrackables != null) {
+            skyStoneTrackables.deactivate();
+            skyStoneTrackables = null;
+            skyStoneTrackableList = null;
+        }
+        if (vuforia != null) {
+            vuforia.release();
+            vuforia = null;
+        }
+    }
+
+    //  Which configuration file is active, and when it was last written. Empty outside the
+    // Robot Controller app.
+    private static String configurationStamp(HardwareMap hardwareMap) {
+        if (hardwareMap.appContext == null) {
+            return "";
+        }
+        RobotConfigFile file = new RobotConfigFileManager().getActiveConfig();
+        if (file.getLocation() != RobotConfigFile.FileLocation.LOCAL_STORAGE) {
+            return file.getName();
+        }
+        return file.getName() + "@" + file.getFullPath().lastModified();
+    }
+
+    //  The stock engine, except that it stays open after the opmode that made it stops.
+    private static class KeptVuforiaLocalizer extends VuforiaLocalizerImpl {
+        KeptVuforiaLocalizer(VuforiaLocalizer.Parameters parameters) {
+            super(parameters);
+        }
+
+        // Called from the constructor. Keep the activity callbacks; stop listening for opmodes.
+        @Override
+        protected void registerLifeCycleCallbacks() {
+            super.registerLifeCycleCallbacks();
+            if (opModeManager != null) {
+                opModeManager.unregisterListener(opModeNotifications);
+                opModeManager = null;
+            }
+        }
+
+        void release() {
+            close();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Everything the robot's sensors said during one control loop cycle, read all at once by
+ * GenericFTCRobot.updateSnapshot. Motor encoder positions, velocities and busy flags come from
+ * a single bulk read per hub. IMU values are included when the robot has one, and a color
+ * sensor value in the cycle after GenericFTCRobot.readColor took one.
+ *
+ * The robot keeps two snapshots and refills them in turn, so updateSnapshot allocates nothing.
+ * A snapshot holds until the second updateSnapshot after it; copy out anything wanted longer.
+ * Snapshots are for the control loop thread only: a snapshot is refilled in place, without
+ * locks, so give other threads copied values, never a snapshot. Motors are indexed in the order the robot registered them;
+ * TrainerbotV2 uses LEFT_DRIVE and RIGHT_DRIVE.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    IMU values come from an ImuSampler, with their own timestamp.
+ * v 0.3    reused, two in turn, not made each cycle. Color only when read on request.
+ * v 0.4    for the control loop thread only.
+ */
+
+public final class RobotSnapshot {
+    public static final RobotSnapshot EMPTY = new RobotSnapshot(0);
+
+    private long cycle;
+    private long timestampNanos;
+    private final int[] positions;
+    private final double[] velocities;
+    private final boolean[] busy;
+    private boolean hasImu;
+    private long imuTimestampNanos;
+    private double heading;
+    private double roll;
+    private double pitch;
+    private boolean hasColor;
+    private int argb;
+
+    /* Constructor. For motorCount motors, all zero. */
+    RobotSnapshot(int motorCount) {
+        positions = new int[motorCount];
+        velocities = new double[motorCount];
+        busy = new boolean[motorCount];
+    }
+
+    //  Refill, for GenericFTCRobot.updateSnapshot. Motors are set one by one with setMotor.
+    void set(long cycle, long timestampNanos,
+             boolean hasImu, long imuTimestampNanos, double heading, double roll, double pitch,
+             boolean hasColor, int argb) {
+        this.cycle = cycle;
+        this.timestampNanos = timestampNanos;
+        this.hasImu = hasImu;
+        this.imuTimestampNanos = imuTimestampNanos;
+        this.heading = heading;
+        this.roll = roll;
+        this.pitch = pitch;
+        this.hasColor = hasColor;
+        this.argb = argb;
+    }
+
+    void setMotor(int motor, int position, double velocity, boolean isBusy) {
+        positions[motor] = position;
+        velocities[motor] = velocity;
+        busy[motor] = isBusy;
+    }
+    //  Count of snapshots taken before this one.
+    public long getCycle() { return cycle; }
+
+    //  RobotClock.nanoTime() when the bulk read was issued.
+    public long getTimestampNanos() { return timestampNanos; }
+
+    /*  Motor values, by registration index. */
+    public int getMotorCount() { return positions.length; }
+    public int getPosition(int motor) { return positions[motor]; }
+    public double getVelocity(int motor) { return velocities[motor]; }   // counts per second
+    public boolean isBusy(int motor) { return busy[motor]; }
+
+    /*  IMU values in radians. Zero if the robot has no initialized IMU. */
+    public boolean hasImu() { return hasImu; }
+    //  RobotClock.nanoTime() when the IMU values were read, which may be before the bulk read.
+    public long getImuTimestampNanos() { return imuTimestampNanos; }
+    public double getHeading() { return heading; }
+    public double getRoll() { return roll; }
+    public double getPitch() { return pitch; }
+
+    /*  Color sensor value as packed Android ARGB. Zero unless readColor took one last cycle. */
+    public boolean hasColor() { return hasColor; }
+    public int getArgb() { return argb; }
+    public int getAlpha() { return (argb >>> 24) & 0xFF; }
+    public int getRed() { return (argb >> 16) & 0xFF; }
+    public int getGreen() { return (argb >> 8) & 0xFF; }
+    public int getBlue() { return argb & 0xFF; }
+}
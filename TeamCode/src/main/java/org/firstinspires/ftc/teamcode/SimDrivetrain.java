@@ -0,0 +1,88 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * This is NOT an opmode.
+ *
+ * The physical robot, for SimHarness: two SimMotors driving the wheels of a differential drive,
+ * and where on the Field that puts the robot. The model is kinematic: the wheels go exactly as
+ * far as the motors turn them, with no slip and no inertia beyond each motor's lag.
+ *
+ * The robot's true dimensions are given here separately from TrainerbotV2's constants, so a
+ * simulation can ask what happens when the code's idea of the robot is wrong. As on the
+ * TrainerbotV2, the left motor is mounted facing the other way, so it must be REVERSEd for
+ * positive power to drive forward.
+ *
+ * Pose is in inches and radians, x forward and heading counterclockwise from the start, like
+ * PoseEstimator.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    is a SimImu.Body.
+ */
+
+public class SimDrivetrain implements SimImu.Body {
+    public final SimMotor left;
+    public final SimMotor right;
+    private final double countsPerInch;
+    private final double trackWidth;
+
+    private double x = 0;
+    private double y = 0;
+    private double heading = 0;
+    private double headingRate = 0;
+    private double distance = 0;
+
+    /* Constructor. The top speed is in inches per second at full power. */
+    public SimDrivetrain(double countsPerInch, double trackWidth, double maxInchesPerSecond,
+                         double timeConstant) {
+        this.countsPerInch = countsPerInch;
+        this.trackWidth = trackWidth;
+        left = new SimMotor("left", 0, maxInchesPerSecond * countsPerInch, timeConstant);
+        right = new SimMotor("right", 1, maxInchesPerSecond * countsPerInch, timeConstant);
+    }
+
+    //  A drivetrain that matches TrainerbotV2's constants exactly.
+    public static SimDrivetrain trainerbotV2() {
+        return new SimDrivetrain(TrainerbotV2.COUNTS_PER_INCH, TrainerbotV2.DRIVE_WHEEL_SEPARATION,
+                1.0 / TrainerbotV2.DRIVE_KV, 0.05);
+    }
+
+    //  Advance motors and pose by dt seconds.
+    public synchronized void step(double dt) {
+        double leftBefore = -left.getShaftCounts();
+        double rightBefore = right.getShaftCounts();
+        left.step(dt);
+        right.step(dt);
+        double leftInches = (-left.getShaftCounts() - leftBefore) / countsPerInch;
+        double rightInches = (right.getShaftCounts() - rightBefore) / countsPerInch;
+
+        double forward = (leftInches + rightInches) / 2;
+        double turn = (rightInches - leftInches) / trackWidth;
+        // Move along the heading halfway through the turn.
+        double mid = heading + turn / 2;
+        x += forward * Math.cos(mid);
+        y += forward * Math.sin(mid);
+        heading = PoseEstimator.normalize(heading + turn);
+        headingRate = dt > 0 ? turn / dt : 0;
+        distance += Math.abs(forward);
+    }
+
+    public synchronized void setPose(double x, double y, double heading) {
+        this.x = x;
+        this.y = y;
+        this.heading = PoseEstimator.normalize(heading);
+    }
+
+    public synchronized double getX() { return x; }
+    public synchronized double getY() { return y; }
+    @Override
+    public synchronized double getHeading() { return heading; }
+
+    //  Radians per second, counterclockwise.
+    @Override
+    public synchronized double getHeadingRate() { return headingRate; }
+
+    //  Total inches driven by the robot's center, either direction.
+    public synchronized double getDistance() { return distance; }
+}
@@ -0,0 +1,318 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.hardware.Gamepad;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Runs a TrainerbotV2 LinearOpMode on a desktop JVM, with no robot and no phone, faster than
+ * real time. The opmode gets a HardwareMap of SimMotors ("motor0", "motor1") and a SimImu
+ * ("imu") on a SimDrivetrain, a scripted gamepad1, and a Telemetry that goes nowhere.
+ *
+ * Time is virtual. The harness installs its own RobotClock, and whenever the opmode sleeps
+ * (ControlLoop does, between ticks) the clock jumps ahead and the drivetrain is stepped
+ * through the skipped time in PHYSICS_STEP_NANOS steps. Each clock read also costs
+ * READ_COST_NANOS, so even a loop that never sleeps makes progress. When the time limit is
+ * reached, the opmode is stopped, just as the Driver Station would stop it.
+ *
+ *     SimHarness sim = new SimHarness(SimDrivetrain.trainerbotV2());
+ *     SimHarness.Result result = sim.run(new NavigateWall(), 30);
+ *     System.out.println(result);
+ *
+ * The Result lists every DriveSegment the robot ran, with how it ended, how long it took and
+ * where the robot really was afterward, then the final true and estimated poses. The opmode's
+ * robot is found by reflection: the first field whose type is a TrainerbotV2.
+ *
+ * Only one simulation may run at a time, since RobotClock is shared. Call it from a unit test,
+ * or from main() here.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    the robot's IMU is sampled on the opmode thread.
+ * v 0.3    the robot runs on default constants, not the settings files.
+ * v 0.4    the robot binds to CONFIGURATION, like Trainerbot0.xml.
+ */
+
+public class SimHarness {
+    public static final long PHYSICS_STEP_NANOS = 1000000;   // 1 ms
+    public static final long READ_COST_NANOS = 1000;
+
+    // The devices run() puts in the HardwareMap, as a Robot Controller configuration file would
+    // list them.
+    public static final RobotConfiguration CONFIGURATION = new RobotConfiguration("SimHarness",
+            new String[] {"NeveRest40Gearmotor", "NeveRest40Gearmotor", "LynxEmbeddedIMU"},
+            new String[] {"motor0", "motor1", "imu"},
+            new int[] {0, 1, 0});
+
+    //  Works gamepad1's controls as the run goes. Called once per physics step.
+    public interface Driver {
+        void drive(double seconds, Gamepad gamepad);
+    }
+
+    //  One finished DriveSegment.
+    public static class SegmentRecord {
+        public final String kind;
+        public final DriveSegment.State state;
+        public final double startSeconds;
+        public final double elapsedSeconds;
+        public final double x, y, heading;         // True pose when it ended.
+
+        SegmentRecord(String kind, DriveSegment.State state, double startSeconds,
+                      double elapsedSeconds, double x, double y, double heading) {
+            this.kind = kind;
+            this.state = state;
+            this.startSeconds = startSeconds;
+            this.elapsedSeconds = elapsedSeconds;
+            this.x = x;
+            this.y = y;
+            this.heading = heading;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-22s %-9s start %6.2f s  took %5.2f s  at (%6.2f, %6.2f) %7.1f",
+                    kind, state, startSeconds, elapsedSeconds, x, y, Math.toDegrees(heading))
+                    + " deg";
+        }
+    }
+
+    //  What happened in one run.
+    public static class Result {
+        public final List<SegmentRecord> segments;
+        public final double simSeconds;
+        public final double wallSeconds;
+        public final double x, y, heading;                         // True final pose.
+        public final double estimatedX, estimatedY, estimatedHeading;  // robot.pose's idea of it.
+        public final double distance;
+
+        Result(List<SegmentRecord> segments, double simSeconds, double wallSeconds,
+               SimDrivetrain drivetrain, PoseEstimator estimate) {
+            this.segments = Collections.unmodifiableList(segments);
+            this.simSeconds = simSeconds;
+            this.wallSeconds = wallSeconds;
+            x = drivetrain.getX();
+            y = drivetrain.getY();
+            heading = drivetrain.getHeading();
+            distance = drivetrain.getDistance();
+            estimatedX = estimate == null ? Double.NaN : estimate.getX();
+            estimatedY = estimate == null ? Double.NaN : estimate.getY();
+            estimatedHeading = estimate == null ? Double.NaN : estimate.getHeading();
+        }
+
+        //  Distance between the true and estimated final positions, inches.
+        public double getPositionError() {
+            return Math.hypot(x - estimatedX, y - estimatedY);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            for (SegmentRecord segment : segments) {
+                out.append(segment).append('\n');
+            }
+            out.append(String.format("%.2f s simulated in %.3f s, %.1f in driven%n",
+                    simSeconds, wallSeconds, distance));
+            out.append(String.format("true pose      (%6.2f, %6.2f) %7.1f deg%n",
+                    x, y, Math.toDegrees(heading)));
+            out.append(String.format("estimated pose (%6.2f, %6.2f) %7.1f deg",
+                    estimatedX, estimatedY, Math.toDegrees(estimatedHeading)));
+            return out.toString();
+        }
+    }
+
+    private final SimDrivetrain drivetrain;
+    private final SimImu imu;
+    private final Gamepad gamepad1 = new Gamepad();
+    private final Gamepad gamepad2 = new Gamepad();
+    private Driver driver = null;
+
+    // Per run.
+    private LinearOpMode opMode;
+    private long limitNanos;
+    private long now;
+    private long simulated;
+    private boolean stopped;
+    private final List<SegmentRecord> segments = new ArrayList<SegmentRecord>();
+
+    public SimHarness(SimDrivetrain drivetrain) {
+        this.drivetrain = drivetrain;
+        this.imu = new SimImu(drivetrain);
+    }
+
+    public void setDriver(Driver driver) {
+        this.driver = driver;
+    }
+
+    public SimDrivetrain getDrivetrain() {
+        return drivetrain;
+    }
+
+    public SimImu getImu() {
+        return imu;
+    }
+
+    //  Init and start opMode at once, and run it until it returns or maxSeconds of simulated
+    // time have passed. Not reentrant.
+    public synchronized Result run(LinearOpMode opMode, double maxSeconds) {
+        this.opMode = opMode;
+        limitNanos = (long) (maxSeconds * 1e9);
+        now = 0;
+        simulated = 0;
+        stopped = false;
+        segments.clear();
+
+        HardwareMap hardwareMap = new HardwareMap(null);
+        hardwareMap.dcMotor.put("motor0", drivetrain.left);
+        hardwareMap.dcMotor.put("motor1", drivetrain.right);
+        hardwareMap.put("imu", imu);
+        opMode.hardwareMap = hardwareMap;
+        opMode.gamepad1 = gamepad1;
+        opMode.gamepad2 = gamepad2;
+        opMode.telemetry = quietTelemetry();
+
+        TrainerbotV2 robot = findRobot(opMode);
+        if (robot != null) {
+            // Sample the IMU on the opmode's thread, the only one that may read the clock.
+            robot.setImuThread(false);
+            // The simulated drivetrain matches the default constants; no settings files.
+            robot.setSettingsFolder(null);
+            robot.setConfiguration(CONFIGURATION);
+            robot.motion.setListener(new MotionExecutor.Listener() {
+                @Override
+                public void segmentFinished(DriveSegment segment) {
+                    double end = now / 1e9;
+                    segments.add(new SegmentRecord(segment.getClass().getSimpleName(),
+                            segment.getState(), end - segment.getElapsedSeconds(),
+                            segment.getElapsedSeconds(), drivetrain.getX(), drivetrain.getY(),
+                            drivetrain.getHeading()));
+                }
+            });
+        }
+
+        long wallStart = System.nanoTime();
+        RobotClock.setSource(clock);
+        try {
+            // Start is pressed before init is done, so waitForStart() returns at once.
+            opMode.start();
+            opMode.runOpMode();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            RobotClock.setSource(RobotClock.SYSTEM);
+            if (robot != null) {
+                robot.motion.setListener(null);
+            }
+        }
+        double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+        return new Result(new ArrayList<SegmentRecord>(segments), now / 1e9, wallSeconds,
+                drivetrain, robot == null ? null : robot.pose);
+    }
+
+    //  Virtual time. Reading it or sleeping on it runs the physics up to the new time.
+    private final RobotClock.Source clock = new RobotClock.Source() {
+        @Override
+        public long nanoTime() {
+            advance(READ_COST_NANOS);
+            return now;
+        }
+
+        @Override
+        public void sleepNanos(long nanos) throws InterruptedException {
+            advance(nanos);
+        }
+    };
+
+    private void advance(long nanos) {
+        now += nanos;
+        while (now - simulated >= PHYSICS_STEP_NANOS) {
+            simulated += PHYSICS_STEP_NANOS;
+            if (driver != null) {
+                driver.drive(simulated / 1e9, gamepad1);
+            }
+            drivetrain.step(PHYSICS_STEP_NANOS / 1e9);
+        }
+        if (!stopped && now >= limitNanos) {
+            stopped = true;
+            opMode.stop();
+        }
+    }
+
+    //  The first TrainerbotV2 field of the opmode, or null.
+    static TrainerbotV2 findRobot(LinearOpMode opMode) {
+        for (Class<?> c = opMode.getClass(); c != LinearOpMode.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (TrainerbotV2.class.isAssignableFrom(field.getType())) {
+                    try {
+                        field.setAccessible(true);
+                        return (TrainerbotV2) field.get(opMode);
+                    } catch (IllegalAccessException e) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    //  A Telemetry that accepts everything and sends nothing. Items, lines and the log are all
+    // the same object.
+    static Telemetry quietTelemetry() {
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                Class<?> type = method.getReturnType();
+                if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                } else if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (type == boolean.class) {
+                    return false;
+                } else if (type == int.class) {
+                    return 0;
+                } else if (type == String.class) {
+                    return "";
+                } else if (type.isInstance(proxy)) {
+                    return proxy;
+                }
+                return null;
+            }
+        };
+        return (Telemetry) Proxy.newProxyInstance(Telemetry.class.getClassLoader(),
+                new Class<?>[] {Telemetry.class, Telemetry.Item.class, Telemetry.Line.class,
+                        Telemetry.Log.class}, handler);
+    }
+
+    //  Run NavigateWall, then a few Calibrate macros, and print what happened.
+    public static void main(String[] args) {
+        SimHarness sim = new SimHarness(SimDrivetrain.trainerbotV2());
+        System.out.println("NavigateWall");
+        System.out.println(sim.run(new NavigateWall(), 30));
+
+        sim = new SimHarness(SimDrivetrain.trainerbotV2());
+        sim.setDriver(new Driver() {
+            @Override
+            public void drive(double seconds, Gamepad gamepad) {
+                // Tap y, then x, then a, each well after the last macro should be done.
+                gamepad.y = seconds >= 0.5 && seconds < 0.6;
+                gamepad.x = seconds >= 5.0 && seconds < 5.1;
+                gamepad.a = seconds >= 15.0 && seconds < 15.1;
+            }
+        });
+        System.out.println();
+        System.out.println("Calibrate: y, x, a");
+        System.out.println(sim.run(new Calibrate(), 20));
+    }
+}
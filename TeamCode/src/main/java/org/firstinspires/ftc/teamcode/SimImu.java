@@ -0,0 +1,146 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.hardware.bosch.BNO055IMU;
+import com.qualcomm.robotcore.hardware.HardwareDevice;
+
+import org.firstinspires.ftc.robotcore.external.navigation.Acceleration;
+import org.firstinspires.ftc.robotcore.external.navigation.AngularVelocity;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesOrder;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesReference;
+import org.firstinspires.ftc.robotcore.external.navigation.MagneticFlux;
+import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
+import org.firstinspires.ftc.robotcore.external.navigation.Position;
+import org.firstinspires.ftc.robotcore.external.navigation.Quaternion;
+import org.firstinspires.ftc.robotcore.external.navigation.Temperature;
+import org.firstinspires.ftc.robotcore.external.navigation.Velocity;
+
+/**
+ * This is NOT an opmode.
+ *
+ * A BNO055IMU for SimHarness that reports the heading of a Body, usually a SimDrivetrain,
+ * plus a steady gyro drift if one is set. ReplayHarness's Body is a recorded heading.
+ * Orientation and angular velocity are the only readings that mean anything: the robot is
+ * always level, and the accelerometer, magnetometer and register methods return zeros. It is always calibrated.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    reads a Body, not only a SimDrivetrain.
+ */
+
+public class SimImu implements BNO055IMU, HardwareDevice {
+    //  Whatever the IMU is bolted to.
+    public interface Body {
+        double getHeading();           // radians, counterclockwise
+        double getHeadingRate();       // radians per second
+    }
+
+    private final Body body;
+    private Parameters parameters = new Parameters();
+    private double driftRadiansPerSecond = 0;
+    private final long startNanos;
+
+    public SimImu(Body body) {
+        this.body = body;
+        startNanos = RobotClock.nanoTime();
+    }
+
+    //  Make the heading wander, as a real gyro's does.
+    public void setDrift(double radiansPerSecond) {
+        driftRadiansPerSecond = radiansPerSecond;
+    }
+
+    private float heading() {
+        double seconds = (RobotClock.nanoTime() - startNanos) / 1e9;
+        return (float) PoseEstimator.normalize(body.getHeading()
+                + driftRadiansPerSecond * seconds);
+    }
+
+    @Override
+    public boolean initialize(Parameters parameters) {
+        this.parameters = parameters.clone();
+        return true;
+    }
+
+    @Override
+    public Parameters getParameters() {
+        return parameters;
+    }
+
+    // AngleUnit here is BNO055IMU.AngleUnit; toAngleUnit() gives the navigation one.
+    @Override
+    public Orientation getAngularOrientation() {
+        return getAngularOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX,
+                parameters.angleUnit.toAngleUnit());
+    }
+
+    @Override
+    public Orientation getAngularOrientation(
+            AxesReference reference, AxesOrder order,
+            org.firstinspires.ftc.robotcore.external.navigation.AngleUnit angleUnit) {
+        // Level, so only the heading is nonzero. Convert from ZYX radians as asked.
+        return new Orientation(AxesReference.INTRINSIC, AxesOrder.ZYX,
+                AngleUnit.RADIANS.toAngleUnit(), heading(), 0, 0, RobotClock.nanoTime())
+                .toAxesReference(reference).toAxesOrder(order).toAngleUnit(angleUnit);
+    }
+
+    @Override
+    public AngularVelocity getAngularVelocity() {
+        float rate = (float) (body.getHeadingRate() + driftRadiansPerSecond);
+        return new AngularVelocity(AngleUnit.RADIANS.toAngleUnit(), 0, 0, rate,
+                RobotClock.nanoTime())
+                .toAngleUnit(parameters.angleUnit.toAngleUnit());
+    }
+
+    @Override
+    public Quaternion getQuaternionOrientation() {
+        double half = heading() / 2.0;
+        return new Quaternion((float) Math.cos(half), 0, 0, (float) Math.sin(half),
+                RobotClock.nanoTime());
+    }
+
+    @Override public Acceleration getOverallAcceleration() { return new Acceleration(); }
+    @Override public Acceleration getLinearAcceleration() { return new Acceleration(); }
+    @Override public Acceleration getGravity() { return new Acceleration(); }
+    @Override public Acceleration getAcceleration() { return new Acceleration(); }
+    @Override public Temperature getTemperature() { return new Temperature(); }
+    @Override public MagneticFlux getMagneticFieldStrength() { return new MagneticFlux(); }
+    @Override public Position getPosition() { return new Position(); }
+    @Override public Velocity getVelocity() { return new Velocity(); }
+
+    @Override
+    public void startAccelerationIntegration(Position initialPosition, Velocity initialVelocity,
+                                             int msPollInterval) {
+    }
+
+    @Override
+    public void stopAccelerationIntegration() {
+    }
+
+    @Override public SystemStatus getSystemStatus() { return SystemStatus.RUNNING_FUSION; }
+    @Override public SystemError getSystemError() { return SystemError.NO_ERROR; }
+    @Override
+    public CalibrationStatus getCalibrationStatus() {
+        return new CalibrationStatus(0xFF);
+    }
+
+    @Override public boolean isSystemCalibrated() { return true; }
+    @Override public boolean isGyroCalibrated() { return true; }
+    @Override public boolean isAccelerometerCalibrated() { return true; }
+    @Override public boolean isMagnetometerCalibrated() { return true; }
+    @Override public CalibrationData readCalibrationData() { return new CalibrationData(); }
+    @Override public void writeCalibrationData(CalibrationData data) { }
+
+    @Override public byte read8(Register register) { return 0; }
+    @Override public byte[] read(Register register, int cb) { return new byte[cb]; }
+    @Override public void write8(Register register, int bVal) { }
+    @Override public void write(Register register, byte[] data) { }
+
+    /*  HardwareDevice. */
+    @Override public Manufacturer getManufacturer() { return Manufacturer.Other; }
+    @Override public String getDeviceName() { return "Simulated BNO055 IMU"; }
+    @Override public String getConnectionInfo() { return "simulated"; }
+    @Override public int getVersion() { return 1; }
+    @Override public void resetDeviceConfigurationForOpMode() { }
+    @Override public void close() { }
+}
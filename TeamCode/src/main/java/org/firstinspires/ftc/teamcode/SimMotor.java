@@ -0,0 +1,226 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.DcMotorController;
+import com.qualcomm.robotcore.hardware.configuration.typecontainers.MotorConfigurationType;
+import com.qualcomm.robotcore.util.Range;
+
+/**
+ * This is NOT an opmode.
+ *
+ * A DcMotor with no motor behind it, for SimHarness. It behaves the way a motor on a REV hub
+ * does, near enough for tuning drive code:
+ *   - power sets a target shaft speed, a fraction of maxCountsPerSecond, and the shaft reaches
+ *     it with a first-order lag of timeConstant seconds;
+ *   - RUN_TO_POSITION drives toward the target at up to |power|, slowing over the last
+ *     SLOWDOWN_COUNTS, and isBusy() until within BUSY_TOLERANCE counts;
+ *   - STOP_AND_RESET_ENCODER stops the shaft and zeroes the encoder;
+ *   - at zero power BRAKE stops quickly, FLOAT coasts;
+ *   - REVERSE flips both power and the encoder reading.
+ * Nothing moves until step() is called; SimDrivetrain does that.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class SimMotor implements DcMotor {
+    public static final int BUSY_TOLERANCE = 5;           // counts, as on the REV hub.
+    public static final double SLOWDOWN_COUNTS = 200;
+    static final double FLOAT_TIME_CONSTANT = 0.5;        // seconds to coast most of the way down.
+
+    private final String name;
+    private final int port;
+    private final double maxCountsPerSecond;
+    private final double timeConstant;
+
+    private Direction direction = Direction.FORWARD;
+    private RunMode mode = RunMode.RUN_WITHOUT_ENCODER;
+    private ZeroPowerBehavior zeroPowerBehavior = ZeroPowerBehavior.FLOAT;
+    private MotorConfigurationType motorType = null;
+    private double power = 0;
+    private int targetPosition = 0;
+    // Shaft state, in the motor's own frame: positive is the FORWARD direction.
+    private double shaftCounts = 0;
+    private double shaftVelocity = 0;
+
+    /* Constructor. maxCountsPerSecond is the encoder rate at full power. */
+    public SimMotor(String name, int port, double maxCountsPerSecond, double timeConstant) {
+        this.name = name;
+        this.port = port;
+        this.maxCountsPerSecond = maxCountsPerSecond;
+        this.timeConstant = timeConstant;
+    }
+
+    //  Advance the shaft by dt seconds.
+    public synchronized void step(double dt) {
+        double sign = direction == Direction.FORWARD ? 1 : -1;
+        double targetVelocity;        // in the direction-adjusted frame the caller sees
+        double lag = timeConstant;
+        switch (mode) {
+            case STOP_AND_RESET_ENCODER:
+                shaftCounts = 0;
+                shaftVelocity = 0;
+                return;
+            case RUN_TO_POSITION:
+                double error = targetPosition - sign * shaftCounts;
+                double speed = Math.abs(power) * maxCountsPerSecond;
+                targetVelocity = Math.signum(error)
+                        * Math.min(speed, speed * Math.abs(error) / SLOWDOWN_COUNTS);
+                break;
+            default:
+                targetVelocity = power * maxCountsPerSecond;
+                if (power == 0 && zeroPowerBehavior == ZeroPowerBehavior.FLOAT) {
+                    lag = FLOAT_TIME_CONSTANT;
+                }
+                break;
+        }
+        shaftVelocity += (sign * targetVelocity - shaftVelocity) * Math.min(1.0, dt / lag);
+        shaftCounts += shaftVelocity * dt;
+    }
+
+    //  Shaft speed, counts per second in the FORWARD direction regardless of setDirection.
+    public synchronized double getShaftVelocity() {
+        return shaftVelocity;
+    }
+
+    //  Shaft position, counts in the FORWARD direction regardless of setDirection.
+    public synchronized double getShaftCounts() {
+        return shaftCounts;
+    }
+
+    /*  DcMotor. */
+    @Override
+    public synchronized void setDirection(Direction direction) {
+        this.direction = direction;
+    }
+
+    @Override
+    public synchronized Direction getDirection() {
+        return direction;
+    }
+
+    @Override
+    public synchronized void setPower(double power) {
+        this.power = Range.clip(power, -1.0, 1.0);
+    }
+
+    @Override
+    public synchronized double getPower() {
+        return power;
+    }
+
+    @Override
+    public synchronized void setMode(RunMode mode) {
+        this.mode = mode;
+        if (mode == RunMode.STOP_AND_RESET_ENCODER) {
+            shaftCounts = 0;
+            shaftVelocity = 0;
+            power = 0;
+        }
+    }
+
+    @Override
+    public synchronized RunMode getMode() {
+        return mode;
+    }
+
+    @Override
+    public synchronized void setZeroPowerBehavior(ZeroPowerBehavior zeroPowerBehavior) {
+        if (zeroPowerBehavior != ZeroPowerBehavior.UNKNOWN) {
+            this.zeroPowerBehavior = zeroPowerBehavior;
+        }
+    }
+
+    @Override
+    public synchronized ZeroPowerBehavior getZeroPowerBehavior() {
+        return zeroPowerBehavior;
+    }
+
+    @Override
+    @Deprecated
+    public synchronized void setPowerFloat() {
+        zeroPowerBehavior = ZeroPowerBehavior.FLOAT;
+        power = 0;
+    }
+
+    @Override
+    public synchronized boolean getPowerFloat() {
+        return zeroPowerBehavior == ZeroPowerBehavior.FLOAT && power == 0;
+    }
+
+    @Override
+    public synchronized void setTargetPosition(int position) {
+        targetPosition = position;
+    }
+
+    @Override
+    public synchronized int getTargetPosition() {
+        return targetPosition;
+    }
+
+    @Override
+    public synchronized boolean isBusy() {
+        return mode == RunMode.RUN_TO_POSITION
+                && Math.abs(targetPosition - getCurrentPosition()) > BUSY_TOLERANCE;
+    }
+
+    @Override
+    public synchronized int getCurrentPosition() {
+        double sign = direction == Direction.FORWARD ? 1 : -1;
+        return (int) Math.round(sign * shaftCounts);
+    }
+
+    @Override
+    public synchronized MotorConfigurationType getMotorType() {
+        return motorType;
+    }
+
+    @Override
+    public synchronized void setMotorType(MotorConfigurationType motorType) {
+        this.motorType = motorType;
+    }
+
+    @Override
+    public DcMotorController getController() {
+        return null;
+    }
+
+    @Override
+    public int getPortNumber() {
+        return port;
+    }
+
+    /*  HardwareDevice. */
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated motor " + name;
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulated port " + port;
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public synchronized void resetDeviceConfigurationForOpMode() {
+        direction = Direction.FORWARD;
+        mode = RunMode.RUN_WITHOUT_ENCODER;
+        power = 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        power = 0;
+    }
+}
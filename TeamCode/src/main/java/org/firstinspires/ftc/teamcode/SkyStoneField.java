@@ -0,0 +1,59 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * This is NOT an opmode.
+ *
+ * The 2019-2020 SKYSTONE Field: the 13 target images in the "Skystone" asset. Eight perimeter
+ * targets are spread evenly around the four perimeter walls, two to a wall, and four are on
+ * the bridge uprights. Refer to the Field Setup manual for more specific location details.
+ *
+ * The Stone Target moves with the stones, so it is placed at the Field origin, turned to face
+ * forward and raised to sit on the floor. It can be used for target-centric approaches.
+ *
+ *     VuforiaTrackables targetsSkyStone = SkyStoneField.INSTANCE.load(vuforia);
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version, from the target setup in the SkyStone samples.
+ */
+
+public final class SkyStoneField extends FieldLayout {
+    private static final float mmPerInch = TrainerbotV2.mmPerInch;
+
+    // The height of the center of a perimeter target image above the floor.
+    private static final float mmTargetHeight = 6 * mmPerInch;
+
+    // Constant for Stone Target
+    private static final float stoneZ = 2.00f * mmPerInch;
+
+    // Constants for the center support targets
+    private static final float bridgeZ = 6.42f * mmPerInch;
+    private static final float bridgeY = 23 * mmPerInch;
+    private static final float bridgeX = 5.18f * mmPerInch;
+    private static final float bridgeRotY = 59;                 // Units are degrees
+    private static final float bridgeRotZ = 180;
+
+    // Constants for perimeter targets
+    private static final float halfField = 72 * mmPerInch;
+    private static final float quadField = 36 * mmPerInch;
+
+    // Made after the constants above, which it uses.
+    public static final SkyStoneField INSTANCE = new SkyStoneField();
+
+    private SkyStoneField() {
+        super("Skystone");
+        addTarget("Stone Target", 0, 0, stoneZ, 90, 0, -90);
+        addTarget("Blue Rear Bridge", -bridgeX, bridgeY, bridgeZ, 0, -bridgeRotY, bridgeRotZ);
+        addTarget("Red Rear Bridge", bridgeX, -bridgeY, bridgeZ, 0, bridgeRotY, 0);
+        addTarget("Red Front Bridge", -bridgeX, -bridgeY, bridgeZ, 0, -bridgeRotY, 0);
+        addTarget("Blue Front Bridge", -bridgeX, bridgeY, bridgeZ, 0, bridgeRotY, bridgeRotZ);
+        addTarget("Red Perimeter 1", quadField, -halfField, mmTargetHeight, 90, 0, 180);
+        addTarget("Red Perimeter 2", -quadField, -halfField, mmTargetHeight, 90, 0, 180);
+        addTarget("Front Perimeter 1", -halfField, -quadField, mmTargetHeight, 90, 0, 90);
+        addTarget("Front Perimeter 2", -halfField, quadField, mmTargetHeight, 90, 0, 90);
+        addTarget("Blue Perimeter 1", -quadField, halfField, mmTargetHeight, 90, 0, 0);
+        addTarget("Blue Perimeter 2", quadField, halfField, mmTargetHeight, 90, 0, 0);
+        addTarget("Rear Perimeter 1", halfField, quadField, mmTargetHeight, 90, 0, -90);
+        addTarget("Rear Perimeter 2", halfField, -quadField, mmTargetHeight, 90, 0, -90);
+    }
+}
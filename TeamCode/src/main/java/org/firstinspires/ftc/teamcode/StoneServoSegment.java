@@ -0,0 +1,257 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.util.Range;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Drives a TrainerbotV2 up to a stone it can see, steering and ranging on TensorFlow bounding
+ * boxes from a RecognitionPipeline, without stopping to look. Each new frame, the most confident
+ * recognition of the label, once the pipeline calls it stable, is turned into a place on the
+ * Field:
+ *  - range, from the box width: the stone is STONE_LENGTH_INCHES long, and the camera's focal
+ *    length in pixels follows from cameraFieldOfView and the image width;
+ *  - bearing, from how far the box center is off the middle of the image;
+ *  - both from where the camera was when the frame was taken. That is visionLatency seconds
+ *    before the pipeline got the recognitions, so the pose then is looked up in a short history
+ *    of robot.pose kept each tick. Turning or driving while TensorFlow thinks doesn't skew the
+ *    stone's place, as it would if the old bearing were applied to the new pose. The history
+ *    is on RobotClock, but frame times are System.nanoTime(), and the two part ways under
+ *    SimHarness. So when a frame is first seen, its age by System.nanoTime() is taken off
+ *    RobotClock's now.
+ * The place is blended into the target, TARGET_SMOOTHING of each new one, since the stone
+ * stays put while the robot moves.
+ *
+ * Every tick, at control loop rate, the robot steers for the target on the live pose estimate:
+ *
+ *     turn rate = servoBearingGain * bearing of the target
+ *     speed     = servoRangeGain * (range - standoff) * cos(bearing)
+ *
+ * speed no faster than maxVelocity, maxDriveAcceleration allows from last tick's, or stopping
+ * in the range left allows; each wheel gets kV * its speed + kA * acceleration, as in
+ * PurePursuitSegment. Between frames, and once the stone is too close to see, the robot keeps
+ * closing on the last target. Until the stone is first seen, it waits, stopped.
+ *
+ * Done when the camera is within END_TOLERANCE of standoff inches from the stone, pointed
+ * within BEARING_TOLERANCE of it. Image x is taken to increase to the robot's right, as it does
+ * with the phone facing forward in landscape.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    frame times are put on RobotClock before the pose history is searched.
+ */
+
+public class StoneServoSegment extends DriveSegment {
+    public static final double STONE_LENGTH_INCHES = 8.0;
+    public static final double TARGET_SMOOTHING = 0.5;
+    public static final double END_TOLERANCE = 1.0;                    // inches
+    public static final double BEARING_TOLERANCE = Math.toRadians(3);
+    // A power of two. Over a second of ticks at MOTION_RATE_HZ, well past any frame's latency.
+    public static final int HISTORY = 128;
+    private static final int MASK = HISTORY - 1;
+
+    private final TrainerbotV2 robot;
+    private final RobotConstants constants;    // as of construction
+    private final RecognitionPipeline pipeline;
+    private final int label;
+    private final double standoff;
+    private final double maxVelocity;
+
+    // Pose each tick, in a ring: RobotClock time, x, y, heading.
+    private final long[] historyNanos = new long[HISTORY];
+    private final double[] historyX = new double[HISTORY];
+    private final double[] historyY = new double[HISTORY];
+    private final double[] historyHeading = new double[HISTORY];
+    private int historyCount = 0;
+    private final double[] capturePose = new double[3];
+
+    private long lastSequence;
+    private boolean haveTarget = false;
+    private double targetX, targetY;           // the stone, in the frame of robot.pose
+    private long sightings = 0;
+    private double range, bearing;             // as of the last tick
+    private double velocity;                   // commanded last tick, inches per second
+    private double lastSeconds;
+
+    //  Close on the stone labelled label, to standoff inches from the camera, at up to
+    // maxVelocity inches per second.
+    public StoneServoSegment(TrainerbotV2 robot, RecognitionPipeline pipeline, int label,
+                             double standoff, double maxVelocity) {
+        super(robot.getConstants().segmentTimeoutSeconds);
+        this.robot = robot;
+        this.constants = robot.getConstants();
+        this.pipeline = pipeline;
+        this.label = label;
+        this.standoff = standoff;
+        this.maxVelocity = Math.min(maxVelocity, constants.maxDriveVelocity);
+    }
+
+    //  True once the stone has been seen.
+    public boolean hasTarget() {
+        return haveTarget;
+    }
+
+    //  Frames the stone has been measured in.
+    public long getSightings() {
+        return sightings;
+    }
+
+    //  Inches from the camera to the target, and radians from the robot's heading to it,
+    // counterclockwise positive, as of the last tick.
+    public double getRange() {
+        return range;
+    }
+
+    public double getBearing() {
+        return bearing;
+    }
+
+    @Override
+    protected void start() {
+        // Only frames from here on.
+        lastSequence = pipeline.getLatest().sequence;
+        historyCount = 0;
+        velocity = 0;
+        lastSeconds = 0;
+        robot.setDriveStopBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
+        robot.setDriveRunMode(DcMotor.RunMode.RUN_USING_ENCODER);
+    }
+
+    @Override
+    protected boolean update() {
+        PoseEstimator pose = robot.pose;
+        double x = pose.getX();
+        double y = pose.getY();
+        double heading = pose.getHeading();
+        long now = RobotClock.nanoTime();
+        remember(now, x, y, heading);
+
+        RecognitionPipeline.Frame frame = pipeline.getLatest();
+        if (frame.sequence != lastSequence) {
+            lastSequence = frame.sequence;
+            measure(frame, now - (System.nanoTime() - frame.timestampNanos));
+        }
+        double seconds = getRunSeconds();
+        double dt = Math.max(0, seconds - lastSeconds);
+        lastSeconds = seconds;
+        if (!haveTarget) {
+            velocity = 0;
+            robot.getDrivetrain().setPower(0, 0);
+            return false;
+        }
+
+        double dx = targetX - x;
+        double dy = targetY - y;
+        bearing = PoseEstimator.normalize(Math.atan2(dy, dx) - heading);
+        range = Math.hypot(dx, dy) * Math.cos(bearing) - constants.cameraForwardInches;
+        double rangeError = range - standoff;
+        if (Math.abs(rangeError) < END_TOLERANCE && Math.abs(bearing) < BEARING_TOLERANCE) {
+            return true;
+        }
+
+        double accelerationLimit = constants.maxDriveAcceleration;
+        double speed = Range.clip(constants.servoRangeGain * rangeError, -maxVelocity,
+                maxVelocity) * Math.max(0, Math.cos(bearing));
+        double stopping = Math.sqrt(2 * accelerationLimit * Math.abs(rangeError));
+        speed = Range.clip(speed, -stopping, stopping);
+        speed = Range.clip(speed, velocity - accelerationLimit * dt,
+                velocity + accelerationLimit * dt);
+        double half = constants.servoBearingGain * bearing * robot.getCalibration().trackWidth / 2;
+        double outer = Math.abs(speed) + Math.abs(half);
+        if (outer > maxVelocity) {
+            speed *= maxVelocity / outer;
+            half *= maxVelocity / outer;
+        }
+        double acceleration = dt > 0 ? (speed - velocity) / dt : 0;
+        velocity = speed;
+        robot.getDrivetrain().setPower(wheelPower(speed - half, acceleration),
+                wheelPower(speed + half, acceleration));
+        return false;
+    }
+
+    //  Place the stone from frame's best recognition of the label, if it has a stable one.
+    // frameNanos is when the pipeline got the recognitions, on RobotClock.
+    private void measure(RecognitionPipeline.Frame frame, long frameNanos) {
+        int best = -1;
+        for (int i = 0; i < frame.count; i++) {
+            if (frame.getLabel(i) == label
+                    && (best < 0 || frame.getConfidence(i) > frame.getConfidence(best))) {
+                best = i;
+            }
+        }
+        if (best < 0 || !frame.isStable(label) || frame.imageWidth <= 0) {
+            return;
+        }
+        double pixelWidth = frame.getRight(best) - frame.getLeft(best);
+        if (pixelWidth < 1) {
+            return;
+        }
+        double focal = frame.imageWidth / 2.0 / Math.tan(constants.cameraFieldOfView / 2);
+        double offset = (frame.getLeft(best) + frame.getRight(best)) / 2 - frame.imageWidth / 2.0;
+        // The stone in the camera's frame as it was: ahead, and to the left.
+        double ahead = STONE_LENGTH_INCHES * focal / pixelWidth;
+        double left = -ahead * offset / focal;
+
+        long captureNanos = frameNanos - (long) (constants.visionLatency * 1e9);
+        poseAt(captureNanos, capturePose);
+        double cos = Math.cos(capturePose[2]);
+        double sin = Math.sin(capturePose[2]);
+        double forward = constants.cameraForwardInches + ahead;
+        double leftward = constants.cameraLeftInches + left;
+        double stoneX = capturePose[0] + cos * forward - sin * leftward;
+        double stoneY = capturePose[1] + sin * forward + cos * leftward;
+        if (haveTarget) {
+            targetX += TARGET_SMOOTHING * (stoneX - targetX);
+            targetY += TARGET_SMOOTHING * (stoneY - targetY);
+        } else {
+            targetX = stoneX;
+            targetY = stoneY;
+            haveTarget = true;
+        }
+        sightings++;
+    }
+
+    private void remember(long nanos, double x, double y, double heading) {
+        int slot = historyCount & MASK;
+        historyNanos[slot] = nanos;
+        historyX[slot] = x;
+        historyY[slot] = y;
+        historyHeading[slot] = heading;
+        historyCount++;
+    }
+
+    //  The pose at nanos, interpolated between ticks; the oldest or newest kept, outside them.
+    private void poseAt(long nanos, double[] out) {
+        int newest = historyCount - 1;
+        int oldest = Math.max(0, historyCount - HISTORY);
+        int i = newest;
+        while (i > oldest && historyNanos[i & MASK] > nanos) {
+            i--;
+        }
+        int a = i & MASK;
+        if (i == newest || historyNanos[a] >= nanos) {
+            out[0] = historyX[a];
+            out[1] = historyY[a];
+            out[2] = historyHeading[a];
+            return;
+        }
+        int b = (i + 1) & MASK;
+        double f = (double) (nanos - historyNanos[a]) / (historyNanos[b] - historyNanos[a]);
+        out[0] = historyX[a] + (historyX[b] - historyX[a]) * f;
+        out[1] = historyY[a] + (historyY[b] - historyY[a]) * f;
+        out[2] = PoseEstimator.normalize(historyHeading[a]
+                + PoseEstimator.normalize(historyHeading[b] - historyHeading[a]) * f);
+    }
+
+    private double wheelPower(double wheelVelocity, double acceleration) {
+        return Range.clip(constants.driveKv * wheelVelocity + constants.driveKa * acceleration,
+                -1.0, 1.0);
+    }
+
+    @Override
+    protected void stop() {
+        robot.stopDriveMotors();
+    }
+}
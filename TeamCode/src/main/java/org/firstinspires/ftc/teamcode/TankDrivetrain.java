@@ -0,0 +1,112 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+/**
+ * This is NOT an opmode.
+ *
+ * A differential (tank) drive: a left motor and a right motor. bind() takes the first two motor
+ * names it is given, left then right. That matches every driving configuration in "Hardware
+ * configurations", where port 0 drives the left wheel and port 1 the right; any motors after
+ * those, like an arm, are not part of the drive.
+ *
+ * The handles are looked up in the HardwareMap once, by bind(), and kept in an array, indexed
+ * as in RobotSnapshot; commands go straight to them, with no name lookups. NONE is the
+ * drivetrain of a robot that can't drive, like Tablebot: it has no motors, and ignores
+ * commands.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    remembers the powers it was last given.
+ */
+
+public class TankDrivetrain implements GenericFTCRobot.Drivetrain {
+    public static final int LEFT = 0;
+    public static final int RIGHT = 1;
+    public static final TankDrivetrain NONE = new TankDrivetrain();
+
+    private final DcMotor[] motors;
+    private final DcMotor left;
+    private final DcMotor right;
+    private double leftPower = 0;
+    private double rightPower = 0;
+
+    /* Constructor. */
+    public TankDrivetrain(DcMotor left, DcMotor right) {
+        this.left = left;
+        this.right = right;
+        motors = new DcMotor[] {left, right};
+    }
+
+    private TankDrivetrain() {
+        left = null;
+        right = null;
+        motors = new DcMotor[0];
+    }
+
+    //  Look up the first two named motors, left and right. With fewer than two, the robot
+    // can't drive: NONE.
+    public static TankDrivetrain bind(HardwareMap map, String[] motorNames) {
+        if (motorNames.length < 2) {
+            return NONE;
+        }
+        return new TankDrivetrain(map.get(DcMotor.class, motorNames[LEFT]),
+                map.get(DcMotor.class, motorNames[RIGHT]));
+    }
+
+    @Override
+    public boolean canDrive() {
+        return motors.length > 0;
+    }
+
+    @Override
+    public int getMotorCount() {
+        return motors.length;
+    }
+
+    @Override
+    public DcMotor getMotor(int i) {
+        return motors[i];
+    }
+
+    @Override
+    public void setPower(double newLeftPower, double newRightPower) {
+        if (left != null) {
+            left.setPower(newLeftPower);
+            right.setPower(newRightPower);
+            leftPower = newLeftPower;
+            rightPower = newRightPower;
+        }
+    }
+
+    @Override
+    public double getPower(int side) {
+        return side == LEFT ? leftPower : rightPower;
+    }
+
+    @Override
+    public void setMode(DcMotor.RunMode mode) {
+        for (DcMotor motor : motors) {
+            motor.setMode(mode);
+        }
+    }
+
+    @Override
+    public void setZeroPowerBehavior(DcMotor.ZeroPowerBehavior behavior) {
+        for (DcMotor motor : motors) {
+            motor.setZeroPowerBehavior(behavior);
+        }
+    }
+
+    //  Left motor reversed, so positive power drives both wheels forward; or, for a robot with
+    // its motors mounted the other way round, the right.
+    @Override
+    public void setDirections(boolean mirrored) {
+        if (left != null) {
+            left.setDirection(mirrored ? DcMotor.Direction.FORWARD : DcMotor.Direction.REVERSE);
+            right.setDirection(mirrored ? DcMotor.Direction.REVERSE : DcMotor.Direction.FORWARD);
+        }
+    }
+}
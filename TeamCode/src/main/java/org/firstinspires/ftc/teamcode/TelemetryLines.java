@@ -0,0 +1,176 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Telemetry for loops that run many times a second. telemetry.addData with a format string
+ * builds new Strings on every pass, and the garbage adds up to GC pauses on the phone. Here each
+ * line owns a StringBuilder that is cleared and refilled in place, with numbers written in fixed
+ * point by hand instead of through String.format. update() only makes a String for a line whose
+ * text actually changed, and only sends when something changed and the transmission interval has
+ * passed. A loop whose numbers hold steady allocates nothing at all.
+ *
+ *     TelemetryLines lines = new TelemetryLines(telemetry, 250);
+ *     TelemetryLines.Line heading = lines.add("Heading");
+ *     ...
+ *     heading.clear().append(degrees, 5, 1).append(" deg");
+ *     lines.update();
+ *
+ * This takes the Telemetry over: it clears whatever was there, and turns auto clear off so the
+ * lines stay put between updates. Don't mix it with telemetry.addData in the same opmode phase.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    reads time from RobotClock.
+ */
+
+public class TelemetryLines {
+
+    //  One caption and its value.
+    public static class Line {
+        private final Telemetry.Item item;
+        private final StringBuilder text = new StringBuilder(64);
+        private final StringBuilder sent = new StringBuilder(64);
+        private boolean everSent = false;
+
+        Line(Telemetry.Item item) {
+            this.item = item;
+        }
+
+        public Line clear() {
+            text.setLength(0);
+            return this;
+        }
+
+        public Line append(CharSequence s) {
+            text.append(s);
+            return this;
+        }
+
+        public Line append(char c) {
+            text.append(c);
+            return this;
+        }
+
+        public Line append(long value) {
+            text.append(value);
+            return this;
+        }
+
+        //  A number with a fixed count of decimals, like String.format("%.2f").
+        public Line append(double value, int decimals) {
+            appendFixed(text, value, decimals);
+            return this;
+        }
+
+        //  A number with a fixed count of decimals, right justified in width characters,
+        // like String.format("%6.2f").
+        public Line append(double value, int width, int decimals) {
+            int start = text.length();
+            appendFixed(text, value, decimals);
+            while (text.length() - start < width) {
+                text.insert(start, ' ');
+            }
+            return this;
+        }
+
+        //  Send the text if it changed since it was last sent. Returns true if it did.
+        boolean push() {
+            if (everSent && sameText()) {
+                return false;
+            }
+            sent.setLength(0);
+            sent.append(text);
+            everSent = true;
+            item.setValue(text.toString());
+            return true;
+        }
+
+        private boolean sameText() {
+            int length = text.length();
+            if (length != sent.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (text.charAt(i) != sent.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L};
+
+    private final Telemetry telemetry;
+    private final long intervalNanos;
+    private final List<Line> lines = new ArrayList<Line>();
+    private long lastSendNanos = 0;
+    private boolean pending = false;
+
+    /* Constructor. Changes are sent no more often than every msInterval milliseconds. */
+    public TelemetryLines(Telemetry telemetry, int msInterval) {
+        this.telemetry = telemetry;
+        this.intervalNanos = msInterval * 1000000L;
+        telemetry.clearAll();
+        telemetry.setAutoClear(false);
+        telemetry.setMsTransmissionInterval(msInterval);
+    }
+
+    //  Add a line, below any added before. Do this once, before the loop.
+    public Line add(String caption) {
+        Telemetry.Item item = telemetry.addData(caption, "");
+        item.setRetained(true);
+        Line line = new Line(item);
+        lines.add(line);
+        return line;
+    }
+
+    //  Push changed lines, and send them if the interval has passed. Call every loop pass;
+    // it does nothing most of the time.
+    public void update() {
+        long now = RobotClock.nanoTime();
+        if (now - lastSendNanos < intervalNanos) {
+            return;
+        }
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).push()) {
+                pending = true;
+            }
+        }
+        if (pending) {
+            telemetry.update();
+            pending = false;
+            lastSendNanos = now;
+        }
+    }
+
+    //  Write value with a fixed count of decimals (at most 9), without allocating.
+    static void appendFixed(StringBuilder out, double value, int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append(value);
+            return;
+        }
+        decimals = Math.max(0, Math.min(decimals, POWERS_OF_TEN.length - 1));
+        long scale = POWERS_OF_TEN[decimals];
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            out.append('-');
+        }
+        out.append(scaled / scale);
+        if (decimals > 0) {
+            out.append('.');
+            long fraction = scaled % scale;
+            for (long place = scale / 10; place > 0; place /= 10) {
+                out.append((char) ('0' + (fraction / place) % 10));
+            }
+        }
+    }
+}
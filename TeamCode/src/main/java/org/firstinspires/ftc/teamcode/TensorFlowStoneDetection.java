@@ -32,14 +32,8 @@ package org.firstinspires.ftc.teamcode;
 import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
 import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
 
-import org.firstinspires.ftc.robotcore.external.ClassFactory;
-import org.firstinspires.ftc.robotcore.external.navigation.VuforiaLocalizer;
-import org.firstinspires.ftc.robotcore.external.navigation.VuforiaLocalizer.CameraDirection;
-import org.firstinspires.ftc.robotcore.external.tfod.Recognition;
 import org.firstinspires.ftc.robotcore.external.tfod.TFObjectDetector;
 
-import java.util.List;
-
 /**
  * This 2019-2020 OpMode illustrates the basics of using the TensorFlow Object Detection API to
  * determine the position of the Skystone game elements.
@@ -52,6 +46,12 @@ import java.util.List;
  *
  * Version history
  *   0.1      9/11/19 JMR copied, minimally modified from ConceptTensorFlowObjectDetect.
+ *   0.2      vision and telemetry run at fixed rates on a ControlLoop.
+ *   0.3      recognitions come from a RecognitionPipeline thread.
+ *   0.4      telemetry goes through TelemetryLines; no String.format per pass.
+ *   0.5      Vuforia and the TFOD model are kept warm by the RobotContext.
+ *   0.6      A closes on the Skystone by its bounding boxes, with a StoneServoSegment.
+ *   0.7      the pipeline, TFOD and robot are released however the opmode ends.
  *
  */
 @TeleOp(name = "TensorFlow Stone Detection", group = "Concept")
@@ -59,103 +59,184 @@ import java.util.List;
 public class TensorFlowStoneDetection extends LinearOpMode {
     TrainerbotV2 robot = new TrainerbotV2(this);
 
-    private static final String TFOD_MODEL_ASSET = "Skystone.tflite";
-    private static final String LABEL_FIRST_ELEMENT = "Stone";
-    private static final String LABEL_SECOND_ELEMENT = "Skystone";
+    private static final String LABEL_FIRST_ELEMENT = RobotContext.LABEL_STONE;
+    private static final String LABEL_SECOND_ELEMENT = RobotContext.LABEL_SKYSTONE;
 
     /**
-     * {@link #vuforia} is the variable we will use to store our instance of the Vuforia
-     * localization engine.
+     * {@link #tfod} is the variable we will use to store our instance of the TensorFlow Object
+     * Detection engine. The RobotContext makes it, and the Vuforia engine it takes its frames
+     * from, for the first opmode that asks, and keeps them for the next.
      */
-    private VuforiaLocalizer vuforia;
+    private TFObjectDetector tfod;
 
     /**
-     * {@link #tfod} is the variable we will use to store our instance of the TensorFlow Object
-     * Detection engine.
+     * {@link #pipeline} drains {@link #tfod} on its own thread, keeping only the newest frame.
      */
-    private TFObjectDetector tfod;
+    private RecognitionPipeline pipeline;
+    // Label numbers in the pipeline; same order as loadModelFromAsset.
+    private static final int STONE = 0;
+    private static final int SKYSTONE = 1;
+
+    // Telemetry runs no faster than the Driver Station can show it.
+    private static final double TELEMETRY_RATE_HZ = 4;
+    private static final int TELEMETRY_INTERVAL_MS = 250;
+    private final ControlLoop controlLoop = new ControlLoop();
+
+    // Telemetry, refilled in place each pass. Boxes beyond MAX_REPORTED are counted, not shown.
+    private static final int MAX_REPORTED = 4;
+    private TelemetryLines lines;
+    private TelemetryLines.Line countLine, skystoneLine;
+    private final TelemetryLines.Line[] labelLines = new TelemetryLines.Line[MAX_REPORTED];
+    private final TelemetryLines.Line[] leftTopLines = new TelemetryLines.Line[MAX_REPORTED];
+    private final TelemetryLines.Line[] rightBottomLines = new TelemetryLines.Line[MAX_REPORTED];
+
+    // Closing on the Skystone: A starts, B or the sticks stop. Until then, tank drive.
+    private static final double STANDOFF_INCHES = 6.0;
+    private static final double STICK_DEADBAND = 0.1;
+    private final GamepadEvents buttons = new GamepadEvents();
+    private StoneServoSegment approach = null;
+    private TelemetryLines.Line approachLine;
 
     @Override
     public void runOpMode() {
-        // The TFObjectDetector uses the camera frames from the VuforiaLocalizer, so we create that
-        // first.
-        initVuforia();
-
-        if (ClassFactory.getInstance().canCreateTFObjectDetector()) {
-            initTfod();
-        } else {
-            telemetry.addData("Sorry!", "This device is not compatible with TFOD");
-        }
+        try {
+            robot.initHardware(hardwareMap);
+
+            // The TFObjectDetector uses the camera frames from the VuforiaLocalizer; the context
+            // creates that first.
+            tfod = RobotContext.get(hardwareMap).getTfod();
+            if (tfod == null) {
+                telemetry.addData("Sorry!", "This device is not compatible with TFOD");
+            }
 
-        /**
-         * Activate TensorFlow Object Detection before we wait for the start command.
-         * Do it here so that the Camera Stream window will have the TensorFlow annotations visible.
-         **/
-        if (tfod != null) {
-            tfod.activate();
-        }
+            /**
+             * Activate TensorFlow Object Detection before we wait for the start command.
+             * Do it here so that the Camera Stream window will have the TensorFlow annotations
+             * visible.
+             **/
+            if (tfod != null) {
+                tfod.activate();
+                pipeline = new RecognitionPipeline(tfod, LABEL_FIRST_ELEMENT, LABEL_SECOND_ELEMENT);
+                pipeline.start();
+            }
 
-        /** Wait for the game to begin */
-        telemetry.addData(">", "Press Play to start op mode");
-        telemetry.update();
-        waitForStart();
-
-        if (opModeIsActive()) {
-            while (opModeIsActive()) {
-                if (tfod != null) {
-                    // getUpdatedRecognitions() will return null if no new information is available since
-                    // the last time that call was made.
-                    List<Recognition> updatedRecognitions = tfod.getUpdatedRecognitions();
-                    if (updatedRecognitions != null) {
-                      telemetry.addData("# Object Detected", updatedRecognitions.size());
-
-                      // step through the list of recognitions and display boundary info.
-                      int i = 0;
-                      for (Recognition recognition : updatedRecognitions) {
-                        telemetry.addData(String.format("label (%d)", i), recognition.getLabel());
-                        telemetry.addData(String.format("  left,top (%d)", i), "%.03f , %.03f",
-                                          recognition.getLeft(), recognition.getTop());
-                        telemetry.addData(String.format("  right,bottom (%d)", i), "%.03f , %.03f",
-                                recognition.getRight(), recognition.getBottom());
-                      }
-                      telemetry.update();
+            /** Wait for the game to begin */
+            telemetry.addData(">", "Press Play to start op mode");
+            telemetry.update();
+            waitForStart();
+
+            if (opModeIsActive()) {
+                controlLoop.addTask("drive", TrainerbotV2.MOTION_RATE_HZ, new ControlLoop.Task() {
+                    @Override
+                    public void run() {
+                        drive();
+                    }
+                });
+                controlLoop.addTask("telemetry", TELEMETRY_RATE_HZ, new ControlLoop.Task() {
+                    @Override
+                    public void run() {
+                        reportRecognitions();
                     }
+                });
+                initTelemetryLines();
+                while (opModeIsActive()) {
+                    controlLoop.runOnce();
                 }
             }
+        } finally {
+            if (pipeline != null) {
+                pipeline.stop();
+            }
+            // Deactivate, not shut down: the RobotContext keeps the model loaded for the next
+            // opmode.
+            if (tfod != null) {
+                tfod.deactivate();
+            }
+            robot.shutdown();
         }
+    }
 
-        if (tfod != null) {
-            tfod.shutdown();
+    /**
+     * Drive with the sticks, or close on the Skystone by its bounding boxes.
+     */
+    private void drive() {
+        robot.updateMotion();
+        buttons.update(gamepad1);
+        boolean approaching = approach != null && !approach.isDone();
+        if (approaching && GamepadEvents.sticksActive(gamepad1, STICK_DEADBAND)) {
+            approach.cancel();
+        }
+        while (buttons.next()) {
+            if (!buttons.isPress()) {
+                continue;
+            }
+            if (buttons.getButton() == GamepadEvents.Button.A && !approaching
+                    && pipeline != null) {
+                approach = robot.approachStone(pipeline, SKYSTONE, STANDOFF_INCHES);
+                approaching = true;
+            } else if (buttons.getButton() == GamepadEvents.Button.B && approaching) {
+                approach.cancel();
+            }
+        }
+        if (!approaching) {
+            robot.justDrive();
         }
     }
 
     /**
-     * Initialize the Vuforia localization engine.
+     * Set up the telemetry lines reportRecognitions fills in.
      */
-    private void initVuforia() {
-        /*
-         * Configure Vuforia by creating a Parameter object, and passing it to the Vuforia engine.
-         */
-        VuforiaLocalizer.Parameters parameters = new VuforiaLocalizer.Parameters();
-
-        parameters.vuforiaLicenseKey = TrainerbotV2.VUFORIA_KEY;
-        parameters.cameraDirection = CameraDirection.BACK;
-
-        //  Instantiate the Vuforia engine
-        vuforia = ClassFactory.getInstance().createVuforia(parameters);
-
-        // Loading trackables is not necessary for the TensorFlow Object Detection engine.
+    private void initTelemetryLines() {
+        lines = new TelemetryLines(telemetry, TELEMETRY_INTERVAL_MS);
+        countLine = lines.add("# Object Detected");
+        for (int i = 0; i < MAX_REPORTED; i++) {
+            labelLines[i] = lines.add("label (" + i + ")");
+            leftTopLines[i] = lines.add("  left,top (" + i + ")");
+            rightBottomLines[i] = lines.add("  right,bottom (" + i + ")");
+        }
+        skystoneLine = lines.add("Skystone at");
+        approachLine = lines.add("Approach (A)");
+        controlLoop.attachTelemetry(lines);
     }
 
     /**
-     * Initialize the TensorFlow Object Detection engine.
+     * Display boundary info of the newest recognitions.
      */
-    private void initTfod() {
-        int tfodMonitorViewId = hardwareMap.appContext.getResources().getIdentifier(
-            "tfodMonitorViewId", "id", hardwareMap.appContext.getPackageName());
-        TFObjectDetector.Parameters tfodParameters = new TFObjectDetector.Parameters(tfodMonitorViewId);
-        tfodParameters.minimumConfidence = 0.8;
-        tfod = ClassFactory.getInstance().createTFObjectDetector(tfodParameters, vuforia);
-        tfod.loadModelFromAsset(TFOD_MODEL_ASSET, LABEL_FIRST_ELEMENT, LABEL_SECOND_ELEMENT);
+    private void reportRecognitions() {
+        if (pipeline != null) {
+          RecognitionPipeline.Frame frame = pipeline.getLatest();
+          countLine.clear().append(frame.count);
+
+          // step through the list of recognitions and display boundary info.
+          for (int i = 0; i < MAX_REPORTED; i++) {
+            if (i < frame.count) {
+              labelLines[i].clear().append(pipeline.getLabelName(frame.getLabel(i)));
+              leftTopLines[i].clear().append(frame.getLeft(i), 3).append(" , ")
+                      .append(frame.getTop(i), 3);
+              rightBottomLines[i].clear().append(frame.getRight(i), 3).append(" , ")
+                      .append(frame.getBottom(i), 3);
+            } else {
+              labelLines[i].clear();
+              leftTopLines[i].clear();
+              rightBottomLines[i].clear();
+            }
+          }
+          skystoneLine.clear();
+          if (frame.isStable(SKYSTONE)) {
+            skystoneLine.append(frame.getStableCenterX(SKYSTONE), 0).append(" , ")
+                    .append(frame.getStableCenterY(SKYSTONE), 0);
+          }
+        }
+        approachLine.clear();
+        if (approach != null) {
+            approachLine.append(approach.getState().name());
+            if (approach.hasTarget()) {
+                approachLine.append(" range ").append(approach.getRange(), 1)
+                        .append(" in, bearing ")
+                        .append(Math.toDegrees(approach.getBearing()), 0).append('°');
+            }
+        }
+        controlLoop.updateTelemetry();
+        lines.update();
     }
 }
@@ -32,10 +32,7 @@ package org.firstinspires.ftc.teamcode;
 import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
 import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
 
-import org.firstinspires.ftc.robotcore.external.ClassFactory;
 import org.firstinspires.ftc.robotcore.external.matrices.OpenGLMatrix;
-import org.firstinspires.ftc.robotcore.external.matrices.VectorF;
-import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
 import org.firstinspires.ftc.robotcore.external.navigation.VuforiaLocalizer;
 import org.firstinspires.ftc.robotcore.external.navigation.VuforiaTrackable;
 import org.firstinspires.ftc.robotcore.external.navigation.VuforiaTrackableDefaultListener;
@@ -44,10 +41,6 @@ import org.firstinspires.ftc.robotcore.external.navigation.VuforiaTrackables;
 import java.util.ArrayList;
 import java.util.List;
 
-import static org.firstinspires.ftc.robotcore.external.navigation.AngleUnit.DEGREES;
-import static org.firstinspires.ftc.robotcore.external.navigation.AxesOrder.XYZ;
-import static org.firstinspires.ftc.robotcore.external.navigation.AxesOrder.YZX;
-import static org.firstinspires.ftc.robotcore.external.navigation.AxesReference.EXTRINSIC;
 import static org.firstinspires.ftc.robotcore.external.navigation.VuforiaLocalizer.CameraDirection.BACK;
 
 /**
@@ -95,6 +88,18 @@ import static org.firstinspires.ftc.robotcore.external.navigation.VuforiaLocaliz
  * 1.0		Summer 2019 JMR: developed for CSEE331 Robotics course on their Trainerbots.
  * 1.1		9/10/19 JMR Added support for Lookeebot and Tablebot. Untested.
  * 1.2		9/11/19 JMR Switched Vuforia and Tensorflow assets over to SkyStone versions.
+ * 1.3		Drive, vision and telemetry run at fixed rates on a ControlLoop.
+ * 1.4		Vuforia fixes correct the robot's odometry pose estimate.
+ * 1.5		Trackables are polled by a VuforiaTracker thread, not the drive loop.
+ * 1.6		Location telemetry goes through TelemetryLines; no String.format per pass.
+ * 1.7		Target setup and fix decoding use Transform3; no matrices per frame.
+ * 1.8		Targets are named and placed by SkyStoneField.
+ * 1.9		Camera placement comes from the robot's RobotConstants.
+ * 1.10		Vuforia and the targets are kept warm by the RobotContext.
+ * 1.11		Init runs as an InitPipeline: hardware, camera and Field at once.
+ * 1.12		The tracker and robot are released however the opmode ends.
+ * 1.13		A stop during init can't leave robot threads running. No Field init step.
+ * 1.14		One TelemetryLines, made at init, carries the location lines too.
  */
 
 @TeleOp(name = "TrainerbotV2 Drive Navigate Paddle SkyStone", group = "TrainerbotV2")
@@ -106,28 +111,10 @@ public class TrainerbotDriveNavSkyStone extends LinearOpMode {
 	final float mmPerInch = TrainerbotV2.mmPerInch;
 	final float mmFTCFieldWidth = TrainerbotV2.mmFTCFieldWidth;
 
-	// FRONT is the camera on the phone's screen side.
+	// FRONT is the camera on the phone's screen side. The RobotContext's Vuforia uses BACK.
 	private static final VuforiaLocalizer.CameraDirection CAMERA_CHOICE = BACK;
 	private static final boolean PHONE_IS_PORTRAIT = false  ;
 
-	// Since ImageTarget trackables use mm to specifiy their dimensions, we must use mm for all the physical dimension.
-	// We will define some constants and conversions here
-	private static final float mmTargetHeight   = (6) * TrainerbotV2.mmPerInch;          // the height of the center of the target image above the floor
-
-	// Constant for Stone Target
-	private static final float stoneZ = 2.00f * TrainerbotV2.mmPerInch;
-
-	// Constants for the center support targets
-	private static final float bridgeZ = 6.42f * TrainerbotV2.mmPerInch;
-	private static final float bridgeY = 23 * TrainerbotV2.mmPerInch;
-	private static final float bridgeX = 5.18f * TrainerbotV2.mmPerInch;
-	private static final float bridgeRotY = 59;                                 // Units are degrees
-	private static final float bridgeRotZ = 180;
-
-	// Constants for perimeter targets
-	private static final float halfField = 72 * TrainerbotV2.mmPerInch;
-	private static final float quadField  = 36 * TrainerbotV2.mmPerInch;
-
 	// Class Members
 	private OpenGLMatrix lastLocation = null;
 	private VuforiaLocalizer vuforia = null;
@@ -135,140 +122,141 @@ public class TrainerbotDriveNavSkyStone extends LinearOpMode {
 	private float phoneXRotate    = 0;
 	private float phoneYRotate    = 0;
 	private float phoneZRotate    = 0;
+	private String visibleTargetName = "";
+	private VuforiaTracker tracker = null;
+	private VuforiaTrackables targetsSkyStone = null;
+	private long lastFixSequence = 0;
+	private final List<VuforiaTrackable> allTrackables = new ArrayList<VuforiaTrackable>();
+
+	// Loop rates. Vision runs near the camera frame rate; telemetry no faster than the
+	// Driver Station can show it.
+	private static final double VISION_RATE_HZ = 30;
+	private static final double TELEMETRY_RATE_HZ = 4;
+	private static final int TELEMETRY_INTERVAL_MS = 250;
+	// Init progress is shown this often; a stop during init waits this long for running steps.
+	private static final long INIT_REPORT_MS = 50;
+	private static final long INIT_STOP_WAIT_MS = 3000;
+	private final ControlLoop controlLoop = new ControlLoop();
+
+	// Telemetry, refilled in place each pass. The last fix, decoded once per fix.
+	private TelemetryLines lines;
+	private TelemetryLines.Line targetLine, positionLine, rotationLine, poseLine;
+	private double locationX, locationY, locationZ;
+	private double locationRoll, locationPitch, locationHeading;
+	private final Transform3 location = new Transform3();
+	private final float[] locationAngles = new float[3];
+
 	@Override
 	public void runOpMode() {
-		robot.initHardware(hardwareMap);
-		telemetry.addData("Hardware", " mapped");
-		telemetry.update();
-		int cameraMonitorViewId = hardwareMap.appContext.getResources().getIdentifier(
-				"cameraMonitorViewId",
-				"id", hardwareMap.appContext.getPackageName());
-
 		/*
-		 * Configure Vuforia by creating a Parameter object, and passing it to the Vuforia engine. We
-		 * can pass Vuforia the handle to a camera preview resource (on the RC phone). If no camera
-		 * monitor is desired, use the parameterless constructor instead (commented out below).
-		 */
-		VuforiaLocalizer vuforia;
-		VuforiaLocalizer.Parameters parameters = new VuforiaLocalizer.Parameters();
-		// VuforiaLocalizer.Parameters parameters = new VuforiaLocalizer.Parameters();
-		parameters.vuforiaLicenseKey = GenericFTCRobot.VUFORIA_KEY;
-		parameters.cameraDirection = CAMERA_CHOICE;
-		// Prevent spurious reporting on loss of tracking.
-		parameters.useExtendedTracking = false;
-		vuforia = ClassFactory.getInstance().createVuforia(parameters);
-
-		// Load the data sets that for the trackable objects. These particular data
-		// sets are stored in the 'assets' part of our application.
-		VuforiaTrackables targetsSkyStone =
-				vuforia.loadTrackablesFromAsset("Skystone");
-		VuforiaTrackable stoneTarget = targetsSkyStone.get(0);
-		stoneTarget.setName("Stone Target");
-		VuforiaTrackable blueRearBridge = targetsSkyStone.get(1);
-		blueRearBridge.setName("Blue Rear Bridge");
-		VuforiaTrackable redRearBridge = targetsSkyStone.get(2);
-		redRearBridge.setName("Red Rear Bridge");
-		VuforiaTrackable redFrontBridge = targetsSkyStone.get(3);
-		redFrontBridge.setName("Red Front Bridge");
-		VuforiaTrackable blueFrontBridge = targetsSkyStone.get(4);
-		blueFrontBridge.setName("Blue Front Bridge");
-		VuforiaTrackable red1 = targetsSkyStone.get(5);
-		red1.setName("Red Perimeter 1");
-		VuforiaTrackable red2 = targetsSkyStone.get(6);
-		red2.setName("Red Perimeter 2");
-		VuforiaTrackable front1 = targetsSkyStone.get(7);
-		front1.setName("Front Perimeter 1");
-		VuforiaTrackable front2 = targetsSkyStone.get(8);
-		front2.setName("Front Perimeter 2");
-		VuforiaTrackable blue1 = targetsSkyStone.get(9);
-		blue1.setName("Blue Perimeter 1");
-		VuforiaTrackable blue2 = targetsSkyStone.get(10);
-		blue2.setName("Blue Perimeter 2");
-		VuforiaTrackable rear1 = targetsSkyStone.get(11);
-		rear1.setName("Rear Perimeter 1");
-		VuforiaTrackable rear2 = targetsSkyStone.get(12);
-		rear2.setName("Rear Perimeter 2");
-
-		// Gather all the trackable objects into a conveniently iterable collection.
-		List<VuforiaTrackable> allTrackables = new ArrayList<VuforiaTrackable>();
-		allTrackables.addAll(targetsSkyStone);
-
-		/**
-		 * In order for localization to work, we need to tell the system where each target is on the field, and
-		 * where the phone resides on the robot.  These specifications are in the form of <em>transformation matrices.</em>
-		 * Transformation matrices are a central, important concept in the math here involved in localization.
-		 * See <a href="https://en.wikipedia.org/wiki/Transformation_matrix">Transformation Matrix</a>
-		 * for detailed information. Commonly, you'll encounter transformation matrices as instances
-		 * of the {@link OpenGLMatrix} class.
-		 *
-		 * If you are standing in the Red Alliance Station looking towards the center of the field,
-		 *     - The X axis runs from your left to the right. (positive from the center to the right)
-		 *     - The Y axis runs from the Red Alliance Station towards the other side of the Field
-		 *       where the Blue Alliance Station is. (Positive is from the center, towards the BlueAlliance station)
-		 *     - The Z axis runs from the floor, upwards towards the ceiling.  (Positive is above the floor)
-		 *
-		 * Before being transformed, each target image is conceptually located at the origin of the field's
-		 *  coordinate system (the center of the field), facing up.
+		 * Init runs as an InitPipeline, each step as soon as what it needs is ready: mapping the
+		 * hardware and starting the camera at once, then loading the targets and placing the
+		 * camera. The Vuforia engine and trackables are made by the first opmode to ask the
+		 * RobotContext for them, and kept for the next, so later inits find them ready.
 		 */
+		try {
+			final RobotContext context = RobotContext.get(hardwareMap);
+			InitPipeline init = new InitPipeline();
+			init.add("Hardware", new InitPipeline.Step() {
+				@Override
+				public void run() {
+					robot.initHardware(hardwareMap);
+				}
+			});
+			init.add("Camera", new InitPipeline.Step() {
+				@Override
+				public void run() {
+					vuforia = context.getVuforia();
+				}
+			});
+			// Load the data sets for the trackable objects. These particular data sets are stored
+			// in the 'assets' part of our application. SkyStoneField names each target and tells
+			// Vuforia where it is on the Field.
+			init.add("Targets", new InitPipeline.Step() {
+				@Override
+				public void run() {
+					targetsSkyStone = context.getSkyStoneTrackables();
+					// Gather all the trackable objects into a conveniently iterable collection.
+					allTrackables.addAll(targetsSkyStone);
+				}
+			}, "Camera");
+			// Camera placement comes from the constants, which the hardware step loads.
+			init.add("Placement", new InitPipeline.Step() {
+				@Override
+				public void run() {
+					placeCamera();
+				}
+			}, "Hardware", "Targets");
+
+			lines = new TelemetryLines(telemetry, TELEMETRY_INTERVAL_MS);
+			init.attachTelemetry(lines);
+			init.start();
+			while (!init.isDone() && !isStopRequested()) {
+				init.updateTelemetry();
+				lines.update();
+				init.await(INIT_REPORT_MS);
+			}
+			if (!init.isDone()) {
+				// Stopped during init. Let running steps finish before releasing the robot. One
+				// that outlasts the wait starts no robot threads once shutdown, below, has run.
+				init.cancel();
+				init.await(INIT_STOP_WAIT_MS);
+				return;
+			}
+			init.updateTelemetry();
+			lines.update();
+			init.throwIfFailed();
+
+			// WARNING:
+			// In this sample, we do not wait for PLAY to be pressed.  Target Tracking is started immediately when INIT is pressed.
+			// This sequence is used to enable the new remote DS Camera Preview feature to be used with this sample.
+			// CONSEQUENTLY do not put any driving commands in this loop.
+			// To restore the normal opmode structure, just un-comment the following line:
+
+			// waitForStart();
+
+			// Note: To use the remote camera preview:
+			// AFTER you hit Init on the Driver Station, use the "options menu" to select "Camera Stream"
+			// Tap the preview window to receive a fresh image.
+
+			targetsSkyStone.activate();
+			tracker = new VuforiaTracker(allTrackables);
+			tracker.start();
+			controlLoop.addTask("drive", TrainerbotV2.MOTION_RATE_HZ, new ControlLoop.Task() {
+				@Override
+				public void run() {
+					robot.updateMotion();
+					robot.justDrive();
+				}
+			});
+			controlLoop.addTask("vision", VISION_RATE_HZ, new ControlLoop.Task() {
+				@Override
+				public void run() {
+					updateLocation();
+				}
+			});
+			controlLoop.addTask("telemetry", TELEMETRY_RATE_HZ, new ControlLoop.Task() {
+				@Override
+				public void run() {
+					reportLocation();
+				}
+			});
+			initTelemetryLines();
+			while (!isStopRequested()) {
+				controlLoop.runOnce();
+			}
+		} finally {
+			if (tracker != null) {
+				tracker.stop();
+				// The RobotContext keeps the trackables loaded, for the next opmode.
+				targetsSkyStone.deactivate();
+			}
+			robot.shutdown();
+		}
+	}
 
-		// Set the position of the Stone Target.  Since it's not fixed in position, assume it's at the field origin.
-		// Rotated it to to face forward, and raised it to sit on the ground correctly.
-		// This can be used for generic target-centric approach algorithms
-		stoneTarget.setLocation(OpenGLMatrix
-				.translation(0, 0, stoneZ)
-				.multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, 90, 0, -90)));
-
-		//Set the position of the bridge support targets with relation to origin (center of field)
-		blueFrontBridge.setLocation(OpenGLMatrix
-				.translation(-bridgeX, bridgeY, bridgeZ)
-				.multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, 0, bridgeRotY, bridgeRotZ)));
-
-		blueRearBridge.setLocation(OpenGLMatrix
-				.translation(-bridgeX, bridgeY, bridgeZ)
-				.multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, 0, -bridgeRotY, bridgeRotZ)));
-
-		redFrontBridge.setLocation(OpenGLMatrix
-				.translation(-bridgeX, -bridgeY, bridgeZ)
-				.multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, 0, -bridgeRotY, 0)));
-
-		redRearBridge.setLocation(OpenGLMatrix
-				.translation(bridgeX, -bridgeY, bridgeZ)
-				.multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, 0, bridgeRotY, 0)));
-
-		//Set the position of the perimeter targets with relation to origin (center of field)
-		red1.setLocation(OpenGLMatrix
-				.translation(quadField, -halfField, mmTargetHeight)
-				.multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, 90, 0, 180)));
-
-		red2.setLocation(OpenGLMatrix
-				.translation(-quadField, -halfField, mmTargetHeight)
-				.multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, 90, 0, 180)));
-
-		front1.setLocation(OpenGLMatrix
-				.translation(-halfField, -quadField, mmTargetHeight)
-				.multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, 90, 0 , 90)));
-
-		front2.setLocation(OpenGLMatrix
-				.translation(-halfField, quadField, mmTargetHeight)
-				.multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, 90, 0, 90)));
-
-		blue1.setLocation(OpenGLMatrix
-				.translation(-quadField, halfField, mmTargetHeight)
-				.multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, 90, 0, 0)));
-
-		blue2.setLocation(OpenGLMatrix
-				.translation(quadField, halfField, mmTargetHeight)
-				.multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, 90, 0, 0)));
-
-		rear1.setLocation(OpenGLMatrix
-				.translation(halfField, quadField, mmTargetHeight)
-				.multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, 90, 0 , -90)));
-
-		rear2.setLocation(OpenGLMatrix
-				.translation(halfField, -quadField, mmTargetHeight)
-				.multiplied(Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, 90, 0, -90)));
-
-
+	//  Tell every trackable's listener where the camera is on the robot.
+	private void placeCamera() {
 		//
 		// Create a transformation matrix describing where the phone is on the robot.
 		//
@@ -297,79 +285,83 @@ public class TrainerbotDriveNavSkyStone extends LinearOpMode {
 
 		// Next, translate the camera lens to where it is on the robot.
 		// In this example, it is centered (left to right), but forward of the middle of the robot, and above ground level.
-		final float CAMERA_FORWARD_DISPLACEMENT  = 4.0f * mmPerInch;   // eg: Camera is 4 Inches in front of robot center
-		final float CAMERA_VERTICAL_DISPLACEMENT = 8.0f * mmPerInch;   // eg: Camera is 8 Inches above ground
-		final float CAMERA_LEFT_DISPLACEMENT     = 0;     // eg: Camera is ON the robot's center line
-
-		OpenGLMatrix robotFromCamera = OpenGLMatrix
-				.translation(CAMERA_FORWARD_DISPLACEMENT, CAMERA_LEFT_DISPLACEMENT, CAMERA_VERTICAL_DISPLACEMENT)
-				.multiplied(Orientation.getRotationMatrix(EXTRINSIC, YZX, DEGREES, phoneYRotate, phoneZRotate, phoneYRotate));
+		// Measure it on the robot, and set it in the constants file; no rebuild needed.
+		RobotConstants constants = robot.getConstants();
+		final float CAMERA_FORWARD_DISPLACEMENT  = (float) constants.cameraForwardInches * mmPerInch;
+		final float CAMERA_VERTICAL_DISPLACEMENT = (float) constants.cameraVerticalInches * mmPerInch;
+		final float CAMERA_LEFT_DISPLACEMENT     = (float) constants.cameraLeftInches * mmPerInch;
+
+		// Extrinsic YZX rotation (phoneYRotate, phoneZRotate, phoneYRotate): Rx * Rz * Ry.
+		OpenGLMatrix robotFromCamera = new Transform3()
+				.setTranslation(CAMERA_FORWARD_DISPLACEMENT, CAMERA_LEFT_DISPLACEMENT, CAMERA_VERTICAL_DISPLACEMENT)
+				.rotateX(phoneYRotate).rotateZ(phoneZRotate).rotateY(phoneYRotate)
+				.toOpenGLMatrix();
 
 		/**  Let all the trackable listeners know where the phone is.  */
 		for (VuforiaTrackable trackable : allTrackables) {
-			((VuforiaTrackableDefaultListener) trackable.getListener()).setPhoneInformation(robotFromCamera, parameters.cameraDirection);
+			((VuforiaTrackableDefaultListener) trackable.getListener()).setPhoneInformation(robotFromCamera, CAMERA_CHOICE);
 		}
+	}
 
-		// WARNING:
-		// In this sample, we do not wait for PLAY to be pressed.  Target Tracking is started immediately when INIT is pressed.
-		// This sequence is used to enable the new remote DS Camera Preview feature to be used with this sample.
-		// CONSEQUENTLY do not put any driving commands in this loop.
-		// To restore the normal opmode structure, just un-comment the following line:
-
-		// waitForStart();
-
-		// Note: To use the remote camera preview:
-		// AFTER you hit Init on the Driver Station, use the "options menu" to select "Camera Stream"
-		// Tap the preview window to receive a fresh image.
-
-		targetsSkyStone.activate();
-		while (!isStopRequested()) {
-			double left;
-			double right;
-
-			robot.justDrive();
-
+	private void updateLocation () {
+		// The tracker thread does the polling; this just picks up what it last published.
+		VuforiaTracker.Fix fix = tracker.getLatest();
+		targetVisible = fix.targetVisible;
+		visibleTargetName = fix.targetName;
+		if (fix.sequence != lastFixSequence && fix.location != null) {
+			lastFixSequence = fix.sequence;
+			lastLocation = fix.location;
+			// Decode the fix once here, not on every telemetry pass, into reused storage.
+			location.set(fix.location);
+			robot.correctPose(location);
 
-			// check all the trackable target to see which one (if any) is visible.
-			targetVisible = false;
-			for (VuforiaTrackable trackable : allTrackables) {
-				if (((VuforiaTrackableDefaultListener) trackable.getListener()).isVisible()) {
-					telemetry.addData("Visible Target", trackable.getName());
-					targetVisible = true;
+			// express position (translation) of robot in inches.
+			locationX = location.getX() / mmPerInch;
+			locationY = location.getY() / mmPerInch;
+			locationZ = location.getZ() / mmPerInch;
 
-					// getUpdatedRobotLocation() will return null if no new information is available since
-					// the last time that call was made, or if the trackable is not currently visible.
-					OpenGLMatrix robotLocationTransform =
-							((VuforiaTrackableDefaultListener) trackable.getListener()).getUpdatedRobotLocation();
-					if (robotLocationTransform != null) {
-						lastLocation = robotLocationTransform;
-					}
-					break;
-				}
-			}
-			reportLocation();
+			// express the rotation of the robot in degrees.
+			location.getAnglesXYZ(locationAngles);
+			locationRoll = locationAngles[0];
+			locationPitch = locationAngles[1];
+			locationHeading = locationAngles[2];
 		}
 	}
 
+	//  Add the telemetry lines reportLocation fills in, below the init steps' lines, which
+	// stay, showing how long each step took.
+	private void initTelemetryLines () {
+		targetLine = lines.add("Visible Target");
+		positionLine = lines.add("Pos (in)");
+		rotationLine = lines.add("Rotation");
+		poseLine = lines.add("Pose (in)");
+		controlLoop.attachTelemetry(lines);
+	}
+
 	private void reportLocation () {
 		// Provide feedback as to where the robot is located (if we know).
-		if (targetVisible) {
-			// express position (translation) of robot in inches.
-			VectorF translation = lastLocation.getTranslation();
-			telemetry.addData("Pos (in)",
-					"      X % 6.1f           Y % 6.1f             Z % 6.1f",
-					translation.get(0) / mmPerInch, translation.get(1) / mmPerInch,
-					translation.get(2) / mmPerInch);
-
-			// express the rotation of the robot in degrees.
-			Orientation rotation = Orientation.getOrientation(
-					lastLocation, EXTRINSIC, XYZ, DEGREES);
-			telemetry.addData("Rotation",
-					" Roll %6.0f°,   Pitch %6.0f°,   Heading %6.0f°",
-					rotation.firstAngle, rotation.secondAngle, rotation.thirdAngle);
+		if (targetVisible && lastLocation != null) {
+			targetLine.clear().append(visibleTargetName);
+			positionLine.clear()
+					.append("      X ").append(locationX, 6, 1)
+					.append("           Y ").append(locationY, 6, 1)
+					.append("             Z ").append(locationZ, 6, 1);
+			rotationLine.clear()
+					.append(" Roll ").append(locationRoll, 6, 0)
+					.append("°,   Pitch ").append(locationPitch, 6, 0)
+					.append("°,   Heading ").append(locationHeading, 6, 0).append('°');
 		} else {
-			telemetry.addData("I see target", "nothing.");
+			targetLine.clear().append("nothing.");
+			positionLine.clear();
+			rotationLine.clear();
 		}
-		telemetry.update();
+		// The estimate carries on between fixes, from the encoders.
+		poseLine.clear()
+				.append("      X ").append(robot.pose.getX(), 6, 1)
+				.append("           Y ").append(robot.pose.getY(), 6, 1)
+				.append("      Heading ").append(Math.toDegrees(robot.pose.getHeading()), 6, 0)
+				.append('°');
+		controlLoop.updateTelemetry();
+		lines.update();
 	}
 }
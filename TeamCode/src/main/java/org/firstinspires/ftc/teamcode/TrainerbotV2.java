@@ -31,16 +31,25 @@ package org.firstinspires.ftc.teamcode;
 
 import android.hardware.Sensor;
 
+import com.qualcomm.hardware.bosch.BNO055IMU;
 import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
 import com.qualcomm.robotcore.hardware.ColorSensor;
 import com.qualcomm.robotcore.hardware.DcMotor;
 import com.qualcomm.robotcore.hardware.DcMotorSimple;
+import com.qualcomm.robotcore.hardware.Gamepad;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 import com.qualcomm.robotcore.hardware.Servo;
 import com.qualcomm.robotcore.util.ElapsedTime;
 import com.qualcomm.robotcore.util.Range;
 
 import org.firstinspires.ftc.robotcore.external.matrices.OpenGLMatrix;
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
 
 /**
  * This is NOT an opmode.
@@ -50,11 +59,16 @@ import org.firstinspires.ftc.robotcore.external.matrices.OpenGLMatrix;
  * See PushbotTeleopTank_Iterative and others classes starting with "Pushbot"
  * for usage examples easily converted to run on a TrainerbotV2.
  * <p>
- * This robot class assumes the following device names have been configured on
- * the robot, meaning they are present in the robot configuration file:
+ * This robot class binds its drive to the first two motors in the active robot
+ * configuration file, left then right. Without a configuration file, it looks for
+ * these names:
  * <p>
  * Motor channel:  Left  drive motor:       "motor0"
  * Motor channel:  Right drive motor:       "motor1"
+ * I2C port 0:     REV Hub IMU:             "imu"       (optional)
+ * <p>
+ * With fewer than two motors, as on Tablebot or nullbot, opmodes still run: movements
+ * are cancelled as soon as they are queued, and stick driving does nothing.
  *
  */
 
@@ -62,6 +76,30 @@ import org.firstinspires.ftc.robotcore.external.matrices.OpenGLMatrix;
 	Version history
 	======= =======
  v 0.1	JMR 2/20/20 initial class for C2 O Interleague Tournament, 2/22/2020.
+ v 0.2	movement methods return a DriveSegment handle instead of blocking.
+ v 0.3	drive encoders are read through the per-cycle RobotSnapshot.
+ v 0.4	awaitMotion ticks on a ControlLoop.
+ v 0.5	added the PoseEstimator, updated by updateMotion.
+ v 0.6	added profiled movement: profiledDrive, profiledStraight.
+ v 0.7	correctPose takes a Transform3, and allocates nothing.
+ v 0.8	IMU heading hold in every drive segment; turnAngle turns by the IMU.
+ v 0.9	the IMU is read by an ImuSampler thread, not the control loop.
+ v 0.10	counts per inch, wheel separation and slip come from a DriveCalibration.
+ v 0.11	tunable constants come from a RobotConstants file, reloadable.
+ v 0.12	motors are bound through a Drivetrain, from the configuration file.
+ v 0.13	every updateMotion cycle goes to a FlightRecorder log. Added shutdown.
+ v 0.14	added a CycleListener, for ReplayHarness.
+ v 0.15	added followPath, pure pursuit along a WaypointPath.
+ v 0.16	added spline trajectories, built once and kept in a TrajectoryCache.
+ v 0.17	added approachStone, closing on a stone by TensorFlow bounding boxes.
+ v 0.18	the pose turns by the IMU, when there is one, not by the encoders.
+ v 0.19	the CycleListener is told when each cycle starts, too.
+ v 0.20	added setRecording, to keep a robot from logging whatever the constants say.
+ v 0.21	hasImu is false once the IMU has failed.
+ v 0.22	init writes no files: a missing constants file is written by writeSettings.
+ v 0.23	opmodes call shutdown from a finally block.
+ v 0.24	no thread starts after shutdown, even from an init step still running.
+ v 0.25	the settings status says if the trajectory cache couldn't be written.
 */
 
 
@@ -69,18 +107,115 @@ public class TrainerbotV2 extends GenericFTCRobot {
 	// TrainerbotV2 specific drive train members.
 	static final double COUNTS_PER_MOTOR_REV = 1120; // REV NeveRest 40 motor.
 	static final double DRIVE_GEAR_REDUCTION = 1.0;
-	public DcMotor leftDrive = null;   // Motor Port 0 on REV motor hub
+	public DcMotor leftDrive = null;   // Motor Port 0 on REV motor hub; null if no drive
 	public DcMotor rightDrive = null;   // Motor Port 1 on REV motor hub
-
-	// TrainerbotV2 specific measurements in inches.
+	// Index of each drive motor in a RobotSnapshot.
+	public static final int LEFT_DRIVE = TankDrivetrain.LEFT;
+	public static final int RIGHT_DRIVE = TankDrivetrain.RIGHT;
+	// Configurations whose drive motors are mounted the other way round.
+	static final String[] MIRRORED_DRIVE_CONFIGURATIONS = {"RunnerBotOnly"};
+
+	// TrainerbotV2 specific measurements in inches. This and the tunable constants below are
+	// only defaults: the robot runs on the RobotConstants that loadSettings reads.
 	static final double WHEEL_DIAMETER_INCHES = 2.9;
 	static final double DRIVE_WHEEL_SEPARATION = 1.6; // was 15.25 on older Trainerbot.
+	// Run AutoCalibrate to measure these two on the real robot; its results are loaded at
+	// init, and used in their place.
 	static final double COUNTS_PER_INCH = (COUNTS_PER_MOTOR_REV * DRIVE_GEAR_REDUCTION) /
 			(WHEEL_DIAMETER_INCHES * Math.PI);
-	// ** To do: adjust for a TrainerbotV2. Start with zero, camera facing center of Blue rover image
-	final int CAMERA_FORWARD_DISPLACEMENT = 0;   // eg: Camera 110 mm in front of robot center
-	final int CAMERA_VERTICAL_DISPLACEMENT = 0;   // eg: Camera 200 mm above Field
-	final int CAMERA_LEFT_DISPLACEMENT = 0;     // eg: Camera right on the robot's center line
+
+	// Movement timing.
+	public static final double MOTION_RATE_HZ = 100;
+	static final double DEFAULT_SEGMENT_TIMEOUT_S = 10.0;
+
+	// Motion profile limits and follower gains, inches and seconds. The top speed is for
+	// 150 RPM at the wheel; the acceleration and jerk limits are where slip begins on tile.
+	// Tune with Calibrate.
+	public static final double MAX_DRIVE_VELOCITY = 20.0;
+	public static final double MAX_DRIVE_ACCELERATION = 30.0;
+	public static final double MAX_DRIVE_JERK = 150.0;
+	static final double DRIVE_KV = 1.0 / 22.8;   // power per inch/second
+	static final double DRIVE_KA = 0.004;        // power per inch/second^2
+	static final double DRIVE_KP = 0.15;         // power per inch of position error
+	// How far ahead along a path followPath steers for, inches.
+	static final double PURSUIT_LOOKAHEAD = 12.0;
+	// Trajectory following: b is 2 per square meter, in inches; zeta damps.
+	static final double RAMSETE_B = 2.0 / (39.37 * 39.37);
+	static final double RAMSETE_ZETA = 0.7;
+	// Closing on a stone by TensorFlow: turn rate per radian of bearing, and speed per inch of
+	// range, both per second. The field of view is the phone's back camera in landscape, and
+	// the latency from frame to recognitions, typical of TensorFlow on the phone; measure both.
+	static final double SERVO_BEARING_GAIN = 3.0;
+	static final double SERVO_RANGE_GAIN = 1.5;
+	static final double CAMERA_FIELD_OF_VIEW = Math.toRadians(60);
+	static final double VISION_LATENCY = 0.15;
+
+	// IMU heading control, radians and seconds. The HEADING_ gains steer drives back onto
+	// their heading; the TURN_ gains spin the robot in place for turnAngle. TURN_MIN_POWER is
+	// just enough to get a stopped robot turning. Tune with Calibrate.
+	static final double HEADING_KP = 1.5;        // power per radian of heading error
+	static final double HEADING_KI = 0.5;        // power per radian second
+	static final double HEADING_KD = 0.05;       // power per radian/second of turn rate
+	static final double HEADING_MAX_CORRECTION = 0.3;
+	static final double TURN_KP = 1.2;
+	static final double TURN_KI = 0.3;
+	static final double TURN_KD = 0.08;
+	static final double TURN_MIN_POWER = 0.06;
+	static final double HEADING_I_ZONE = Math.toRadians(10);
+	static final double HEADING_TOLERANCE = Math.toRadians(1);
+	static final double TURN_SETTLE_SECONDS = 0.1;
+
+	// Runs drive segments without blocking the opmode.
+	public final MotionExecutor motion = new MotionExecutor();
+	private ControlLoop motionLoop = null;    // Used only by awaitMotion.
+
+	// Tunable constants, replaced whole by loadSettings. Measured drive kinematics, or the
+	// geometry from the constants. Both from files in settingsFolder, if there is one.
+	private RobotConstants constants = new RobotConstants();
+	private DriveCalibration calibration =
+			new DriveCalibration(COUNTS_PER_INCH, DRIVE_WHEEL_SEPARATION);
+	private File settingsFolder = null;
+	// Trajectories built for the constants and calibration, kept in settingsFolder.
+	private TrajectoryCache trajectories = TrajectoryCache.open(null);
+	private boolean settingsFolderSet = false;
+	private String settingsStatus = "defaults";
+
+	// Where the robot is on the Field: encoder odometry, corrected by vision fixes.
+	public final PoseEstimator pose = new PoseEstimator(COUNTS_PER_INCH, DRIVE_WHEEL_SEPARATION);
+	// Reused by correctPose, so a fix costs no allocation. Control loop thread only.
+	private final Transform3 fixLocation = new Transform3();
+	private final Pose2d fixPose = new Pose2d();
+
+	// The IMU, if the configuration has one, and its heading unwrapped so that turns past
+	// +-pi don't jump. Control loop thread only.
+	public BNO055IMU imu = null;
+	public ImuSampler imuSampler = null;
+	private boolean imuThread = true;
+	private double imuHeading = 0;
+	private double lastImuReading = 0;
+	private boolean haveImuReading = false;
+
+	// The flight recorder, if recording, and the record it is handed each cycle. The last
+	// vision fix is recorded with the cycle after it. Control loop thread only.
+	public static final String FLIGHT_LOG_FOLDER = "flightlogs";
+	private FlightRecorder recorder = null;
+	private boolean recording = true;
+	// Set by shutdown; no thread is started after it. Init may run on InitPipeline threads,
+	// so starting and stopping threads is guarded by threadLock.
+	private final Object threadLock = new Object();
+	private boolean shutDown = false;
+	private final FlightRecord cycleRecord = new FlightRecord();
+	private long lastRecordNanos = 0;
+	private boolean fixPending = false;
+	private CycleListener cycleListener = null;
+
+	//  Told about every updateMotion cycle, on the control loop thread: once as it starts,
+	// before the sensors are read, and once it is done, with the record the FlightRecorder
+	// gets, after the motors are commanded. The record is reused.
+	public interface CycleListener {
+		void cycleStarting();
+		void cycleDone(FlightRecord record);
+	}
 
 
 
@@ -107,31 +242,257 @@ public class TrainerbotV2 extends GenericFTCRobot {
 		// Save reference to Hardware map
 		hwMap = ahwMap;
 
-		// Define Motors
-		leftDrive= hwMap.get(DcMotor.class, "motor0");
-		rightDrive = hwMap.get(DcMotor.class, "motor1");
+		loadSettings();
+
+		// Define Motors, once, from the configuration.
+		bindDrivetrain(hwMap, "motor0", "motor1");
+		DcMotor[] driveMotors = new DcMotor[drivetrain.getMotorCount()];
+		for (int i = 0; i < driveMotors.length; i++) {
+			driveMotors[i] = drivetrain.getMotor(i);
+		}
+		leftDrive = drivetrain.canDrive() ? drivetrain.getMotor(LEFT_DRIVE) : null;
+		rightDrive = drivetrain.canDrive() ? drivetrain.getMotor(RIGHT_DRIVE) : null;
+
+		// Read both encoders, and the IMU if present, once per cycle; the color sensor, if
+		// present, on readColor().
+		initBulkReads(hwMap);
+		initImu(hwMap);
+		setSnapshotDevices(driveMotors, imuSampler,
+				hwMap.tryGet(ColorSensor.class, "colorSensor"));
 		setDriveDirections();
 		setDriveRunMode (DcMotor.RunMode.RUN_USING_ENCODER);
 		setDrivetrainPower (0.0);
 		setDriveStopBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
+		startRecorder();
+	}
+
+	//  Where loadSettings reads from. Null means nowhere: use the compiled-in defaults. Unless
+	// this is called, it is the FIRST folder.
+	public void setSettingsFolder(File folder) {
+		settingsFolder = folder;
+		settingsFolderSet = true;
+	}
+
+	//  Read the constants file, then the drive calibration file over its geometry. Called by
+	// initMotors; call again, between movements, to pick up an edited file. Reads only:
+	// without a constants file, the defaults are used, and writeSettings makes one.
+	public void loadSettings() {
+		if (!settingsFolderSet) {
+			setSettingsFolder(AppUtil.FIRST_FOLDER);
+		}
+		RobotConstants loaded = new RobotConstants();
+		if (settingsFolder == null) {
+			settingsStatus = "defaults";
+		} else {
+			File file = new File(settingsFolder, RobotConstants.FILE_NAME);
+			if (loaded.load(file)) {
+				settingsStatus = loaded.getRejected().length() == 0 ? file.getName()
+						: file.getName() + ", bad " + loaded.getRejected();
+			} else if (!file.exists()) {
+				settingsStatus = "defaults, no " + file.getName();
+			} else {
+				settingsStatus = "defaults, could not read " + file.getName();
+			}
+		}
+		constants = loaded;
+
+		DriveCalibration geometry = new DriveCalibration(constants.getCountsPerInch(),
+				constants.driveWheelSeparation);
+		if (settingsFolder != null) {
+			File file = new File(settingsFolder, DriveCalibration.FILE_NAME);
+			DriveCalibration measured = DriveCalibration.load(file, geometry);
+			if (measured != geometry) {
+				settingsStatus += ", " + file.getName();
+			}
+			setCalibration(measured);
+		} else {
+			setCalibration(geometry);
+		}
+		trajectories = TrajectoryCache.open(settingsFolder == null ? null
+				: new File(settingsFolder, TrajectoryCache.FILE_NAME));
+	}
+
+	//  Write the constants in use to a constants file, to edit, if the settings folder has
+	// none. Never called at init: an opmode calls it when the driver asks. False if there
+	// is one already, or no folder, or it couldn't be written.
+	public boolean writeSettings() {
+		if (settingsFolder == null) {
+			return false;
+		}
+		File file = new File(settingsFolder, RobotConstants.FILE_NAME);
+		if (file.exists()) {
+			return false;
+		}
+		if (!constants.save(file)) {
+			settingsStatus += ", could not write " + file.getName();
+			return false;
+		}
+		settingsStatus = "defaults, written to " + file.getName();
+		return true;
+	}
+
+	//  The constants in use. Read them through here each time, not kept: loadSettings
+	// replaces them.
+	public RobotConstants getConstants() {
+		return constants;
+	}
+
+	//  Where the constants and calibration in use came from, for telemetry, and whether the
+	// trajectories built could be kept.
+	public String getSettingsStatus() {
+		return trajectories.isSaved() ? settingsStatus
+				: settingsStatus + ", could not write " + TrajectoryCache.FILE_NAME;
+	}
+
+	//  Drive by these kinematics from now on.
+	public void setCalibration(DriveCalibration newCalibration) {
+		calibration = newCalibration;
+		pose.setGeometry(calibration.countsPerInch, calibration.trackWidth);
+	}
+
+	public DriveCalibration getCalibration() {
+		return calibration;
+	}
+
+	public double getCountsPerInch() {
+		return calibration.countsPerInch;
+	}
+
+	//  Whether initImu starts a thread to read the IMU. If not, updateMotion reads it each
+	// cycle on the control loop thread. Call before initializing.
+	public void setImuThread(boolean useThread) {
+		imuThread = useThread;
+	}
+
+	//  Find and start the IMU, reporting in radians, and its sampler. Without one, drive
+	// segments run on encoders alone. Initializing takes about a second, so it is done only
+	// once.
+	public void initImu(HardwareMap someMap) {
+		if (imu != null) {
+			return;
+		}
+		imu = someMap.tryGet(BNO055IMU.class, "imu");
+		if (imu != null) {
+			BNO055IMU.Parameters parameters = new BNO055IMU.Parameters();
+			parameters.angleUnit = BNO055IMU.AngleUnit.RADIANS;
+			imu.initialize(parameters);
+			haveImuReading = false;
+			imuSampler = new ImuSampler(imu);
+			if (imuThread) {
+				synchronized (threadLock) {
+					if (!shutDown) {
+						imuSampler.start();
+					}
+				}
+			}
+		}
+	}
+
+	//  Stop the IMU sampler thread, if there is one. Call when the opmode is done.
+	public void stopImuSampler() {
+		if (imuSampler != null) {
+			imuSampler.stop();
+		}
+	}
+
+	//  Whether startRecorder may log at all. If not, nothing is logged or pruned, whatever the
+	// constants say. Call before initializing.
+	public void setRecording(boolean record) {
+		recording = record;
+	}
+
+	//  Start a flight log in the settings folder, named for the time, if the constants say
+	// to. The oldest logs beyond flightLogsKept are deleted. Called by initMotors.
+	public void startRecorder() {
+		synchronized (threadLock) {
+			if (shutDown || recorder != null || !recording || settingsFolder == null
+					|| !constants.recordFlights) {
+				return;
+			}
+			File folder = new File(settingsFolder, FLIGHT_LOG_FOLDER);
+			pruneFlightLogs(folder, constants.flightLogsKept - 1);
+			String name = "trainerbotv2_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US)
+					.format(new Date()) + ".bin";
+			recorder = new FlightRecorder(new File(folder, name),
+					FlightRecorder.DEFAULT_CAPACITY);
+			if (!recorder.start()) {
+				recorder = null;
+			}
+		}
+	}
+
+	//  Finish the flight log, if there is one.
+	public void stopRecorder() {
+		if (recorder != null) {
+			recorder.stop();
+			recorder = null;
+		}
+	}
+
+	//  The flight recorder, or null if not recording.
+	public FlightRecorder getRecorder() {
+		return recorder;
+	}
+
+	//  Listen to every cycle, recorded or not. Null to stop.
+	public void setCycleListener(CycleListener listener) {
+		cycleListener = listener;
+	}
+
+	//  Stop the robot's background threads: the IMU sampler and flight recorder. Call when
+	// the opmode is done, from a finally block, so an opmode that throws doesn't leave them
+	// running. Neither starts after this, so an init step still running on an InitPipeline
+	// thread when the opmode is stopped can't leave one behind.
+	public void shutdown() {
+		synchronized (threadLock) {
+			shutDown = true;
+			stopImuSampler();
+			stopRecorder();
+		}
+	}
+
+	//  Delete the oldest .bin files in folder, by name, until at most keep are left.
+	private static void pruneFlightLogs(File folder, int keep) {
+		String[] names = folder.list();
+		if (names == null) {
+			return;
+		}
+		Arrays.sort(names);
+		int logs = 0;
+		for (String name : names) {
+			if (name.endsWith(".bin")) {
+				logs++;
+			}
+		}
+		for (int i = 0; i < names.length && logs > Math.max(0, keep); i++) {
+			if (names[i].endsWith(".bin") && new File(folder, names[i]).delete()) {
+				logs--;
+			}
+		}
 	}
 
 	/*  Initialization on various motor properties. */
 	//  Set directions on both drive motors, enabling tank drive.
 	public void setDriveDirections() {
-		leftDrive.setDirection(DcMotor.Direction.REVERSE); // Opposite on Runnerbot
-		rightDrive.setDirection(DcMotor.Direction.FORWARD);
+		// Left reversed; opposite on Runnerbot.
+		boolean mirrored = false;
+		RobotConfiguration configuration = getConfiguration();
+		for (String name : MIRRORED_DRIVE_CONFIGURATIONS) {
+			mirrored |= configuration != null && configuration.getName().equals(name);
+		}
+		drivetrain.setDirections(mirrored);
 	}
 
 	// Initialize both drive motors to some RunMode.
 	public void setDriveRunMode(DcMotor.RunMode someRunMode) {
-		leftDrive.setMode(someRunMode);
-		rightDrive.setMode(someRunMode);
+		drivetrain.setMode(someRunMode);
+		if (someRunMode == DcMotor.RunMode.STOP_AND_RESET_ENCODER) {
+			pose.rebaseEncoders();
+		}
 	}
 	// Set both drive motors to some behavior when they're told to stop.
 	public void setDriveStopBehavior(DcMotor.ZeroPowerBehavior someBehavior) {
-		leftDrive.setZeroPowerBehavior(someBehavior);
-		rightDrive.setZeroPowerBehavior(someBehavior);
+		drivetrain.setZeroPowerBehavior(someBehavior);
 	}
 
 
@@ -187,12 +548,9 @@ public class TrainerbotV2 extends GenericFTCRobot {
 		initMotors(hwMap);
 		// Stop all motors
 		setDriveStopBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
-		leftDrive.setPower(0);
-		rightDrive.setPower(0);
-		leftDrive.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-		rightDrive.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-		leftDrive.setMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
-		rightDrive.setMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
+		drivetrain.setPower(0, 0);
+		drivetrain.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
+		setDriveRunMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
 	}
 
 	public void resetEncoderDrive() {
@@ -212,59 +570,306 @@ public class TrainerbotV2 extends GenericFTCRobot {
 
 	/*  General movement. Most other movement methods will be wrappers for this.
 	 *    Specify speed and end condition for both motor pairs. Move will
-	 *    stop if either of two conditions occur:
+	 *    stop if any of these occur:
 	 *  1) One of the two drive motor pairs gets to the desired position.
-	 *  2) Driver quits the opmode.
+	 *  2) The segment is cancelled, or the opmode stops while awaitMotion is waiting.
+	 *  3) The segment runs longer than its timeout.
+	 *    This returns at once. The movement runs as updateMotion() is called from the
+	 *    opmode's control loop; use awaitMotion to wait for it.
 	 */
 
-	public void encoderDrive(double leftSpeed, double rightSpeed,
+	public DriveSegment encoderDrive(double leftSpeed, double rightSpeed,
 													 double leftInches, double rightInches) {
-		int newLeftTarget;
-		int newRightTarget;
+		return encoderDrive(leftSpeed, rightSpeed, leftInches, rightInches,
+				constants.segmentTimeoutSeconds);
+	}
 
-		//  Discard current encoder positions.
-		setDriveStopBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
-		setDriveRunMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
+	public DriveSegment encoderDrive(double leftSpeed, double rightSpeed,
+													 double leftInches, double rightInches, double timeoutS) {
+		// Only a straight drive has a heading to hold without knowing the wheel separation.
+		double headingChange = (leftInches == rightInches) ? 0 : Double.NaN;
+		return encoderDrive(leftSpeed, rightSpeed, leftInches, rightInches, headingChange,
+				timeoutS);
+	}
+
+	//  As above, turning the robot through headingChange radians, counterclockwise, on the
+	// way. With an IMU, the heading is held to that change, spread over the distance. NaN
+	// turns heading hold off.
+	public DriveSegment encoderDrive(double leftSpeed, double rightSpeed,
+													 double leftInches, double rightInches, double headingChange,
+													 double timeoutS) {
+		// Ask for more counts where the wheels will slip, so the robot covers the distance.
+		int leftCounts =  (int) (leftInches * calibration.countsPerInch
+				/ calibration.getSlipFactor(leftSpeed));
+		int rightCounts = (int) (rightInches * calibration.countsPerInch
+				/ calibration.getSlipFactor(rightSpeed));
+		return submit(new EncoderDriveSegment(this,
+				leftSpeed, rightSpeed, leftCounts, rightCounts, headingChange, timeoutS));
+	}
+
+	/*  Profiled movement. Like encoderDrive, but accelerates and brakes within the
+	 *    constants' maxDrive limits instead of jumping to a fixed speed, and follows the profile
+	 *    with feed-forward plus encoder feedback. Both wheels finish together.
+	 */
+	public DriveSegment profiledDrive(double leftInches, double rightInches) {
+		return profiledDrive(leftInches, rightInches, constants.maxDriveVelocity);
+	}
+
+	public DriveSegment profiledDrive(double leftInches, double rightInches,
+																		double maxVelocity) {
+		double headingChange = (leftInches == rightInches) ? 0 : Double.NaN;
+		return submit(new ProfiledDriveSegment(this, leftInches, rightInches,
+				Math.min(maxVelocity, constants.maxDriveVelocity), constants.maxDriveAcceleration,
+				constants.maxDriveJerk, headingChange));
+	}
+
+	//   Profiled straight drive.
+	public DriveSegment profiledStraight(double inches) {
+		return profiledDrive(inches, inches);
+	}
+
+	/*  Path following. Drives through every point of path, in the frame of pose, without
+	 *    stopping at any of them, by pure pursuit on the pose estimate. Accelerates and
+	 *    brakes within the constants' maxDrive limits, and stops at the last point.
+	 */
+	public DriveSegment followPath(WaypointPath path) {
+		return followPath(path, constants.maxDriveVelocity, false);
+	}
+
+	//  reversed: back along the path.
+	public DriveSegment followPath(WaypointPath path, double maxVelocity, boolean reversed) {
+		return submit(new PurePursuitSegment(this, path, maxVelocity, reversed));
+	}
 
-		// Determine new target positions, and pass to motor controller.
-		newLeftTarget =  (int) (leftInches * COUNTS_PER_INCH);
-		newRightTarget = (int) (rightInches * COUNTS_PER_INCH);
-		leftDrive.setTargetPosition(newLeftTarget);
-		rightDrive.setTargetPosition(newRightTarget);
+	//  As followPath, with path in the robot's own frame when the movement starts: x forward
+	// and y to the left, in inches.
+	public DriveSegment followRelativePath(WaypointPath path) {
+		return submit(new PurePursuitSegment(this, path, constants.maxDriveVelocity, false,
+				true));
+	}
 
-		// Turn On RUN_TO_POSITION
-		setDriveRunMode(DcMotor.RunMode.RUN_TO_POSITION);
+	/*  Trajectories. Build routes at init, and drive them once the match starts:
+	 *
+	 *    Trajectory toBridge = robot.trajectory("toBridge", robot.newTrajectoryBuilder()
+	 *        .to(-36, -63, Math.PI / 2).to(-24, -36, 0).to(0, -36, 0));
+	 *    waitForStart();
+	 *    robot.awaitMotion(robot.followTrajectory(toBridge));
+	 *
+	 *    trajectory() builds a route only the first time it is asked for, or when its waypoints
+	 *    or the limits change; after that it is read from a cache file in the settings folder.
+	 */
+	public TrajectoryBuilder newTrajectoryBuilder() {
+		return new TrajectoryBuilder(constants.maxDriveVelocity, constants.maxDriveAcceleration,
+				calibration.trackWidth);
+	}
 
-		// Go!
-		leftDrive.setPower(Math.abs(leftSpeed));
-		rightDrive.setPower(Math.abs(rightSpeed));
+	public Trajectory trajectory(String name, TrajectoryBuilder builder) {
+		return trajectories.get(name, builder);
+	}
+
+	public TrajectoryCache getTrajectories() {
+		return trajectories;
+	}
+
+	//  Drive a trajectory, in the frame of pose, starting where it starts.
+	public DriveSegment followTrajectory(Trajectory trajectory) {
+		return submit(new TrajectorySegment(this, trajectory));
+	}
+
+	/*  Visual servoing. Close on the stone the pipeline labels label, steering by its bounding
+	 *    box in each new frame, until the camera is standoff inches from it. Waits, stopped,
+	 *    until the stone is seen; times out after the constants' segmentTimeoutSeconds.
+	 */
+	public StoneServoSegment approachStone(RecognitionPipeline pipeline, int label,
+			double standoff) {
+		StoneServoSegment segment = new StoneServoSegment(this, pipeline, label, standoff,
+				constants.maxDriveVelocity);
+		submit(segment);
+		return segment;
+	}
 
-		// keep looping while we are still active, and both motors are running.
-		while (leftDrive.isBusy() && rightDrive.isBusy()) {
-			// Wait until motors done before doing anything else.
+	//  Queue a movement. Without a drive, it is cancelled before it starts.
+	private DriveSegment submit(DriveSegment segment) {
+		if (!drivetrain.canDrive()) {
+			segment.cancel();
 		}
-		// Clean up, prepare for next segment.
-		leftDrive.setPower(0);
-		rightDrive.setPower(0);
+		return motion.submit(segment);
+	}
 
-		// Turn off RUN_TO_POSITION
-		leftDrive.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-		rightDrive.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
+	//  Read sensors once, update the pose estimate, then advance queued movements by
+	// one tick. Call once per control loop cycle.
+	public void updateMotion() {
+		if (cycleListener != null) {
+			cycleListener.cycleStarting();
+		}
+		RobotSnapshot now = updateSnapshot();
+		// The pose turns by the IMU when there is one: the encoders' turn is only as good as
+		// the track width, and that is wrong until AutoCalibrate has run.
+		boolean imuTurn = false;
+		double turn = 0;
+		if (now.hasImu()) {
+			double reading = now.getHeading();
+			if (haveImuReading) {
+				turn = PoseEstimator.normalize(reading - lastImuReading);
+				imuHeading += turn;
+				imuTurn = true;
+			} else {
+				imuHeading = reading;
+				haveImuReading = true;
+			}
+			lastImuReading = reading;
+		}
+		if (drivetrain.canDrive()) {
+			if (imuTurn) {
+				pose.update(now.getPosition(LEFT_DRIVE), now.getPosition(RIGHT_DRIVE), turn);
+			} else {
+				pose.update(now.getPosition(LEFT_DRIVE), now.getPosition(RIGHT_DRIVE));
+			}
+		}
+		motion.update();
+		if (recorder != null || cycleListener != null) {
+			recordCycle(now);
+		}
+	}
+
+	//  Hand the flight recorder and cycle listener this cycle: sensors, the motor powers just
+	// commanded, pose, vision fix, driver and opmode state. Copies into a reused record; no
+	// allocation.
+	private void recordCycle(RobotSnapshot now) {
+		FlightRecord r = cycleRecord;
+		r.cycle = now.getCycle();
+		r.nanos = now.getTimestampNanos();
+		r.loopNanos = lastRecordNanos == 0 ? 0
+				: (int) Math.min(Integer.MAX_VALUE, r.nanos - lastRecordNanos);
+		lastRecordNanos = r.nanos;
+		if (currentOpMode == null) {
+			r.opModeState = FlightRecord.OPMODE_NONE;
+		} else if (currentOpMode.isStopRequested()) {
+			r.opModeState = FlightRecord.OPMODE_STOPPING;
+		} else {
+			r.opModeState = currentOpMode.isStarted() ? FlightRecord.OPMODE_RUNNING
+					: FlightRecord.OPMODE_INIT;
+		}
+		DriveSegment current = motion.getCurrent();
+		r.segmentState = current == null ? FlightRecord.SEGMENT_IDLE
+				: (byte) current.getState().ordinal();
+		r.pendingSegments = (short) motion.getPendingCount();
+		int flags = 0;
+
+		boolean drive = drivetrain.canDrive();
+		r.leftPosition = drive ? now.getPosition(LEFT_DRIVE) : 0;
+		r.rightPosition = drive ? now.getPosition(RIGHT_DRIVE) : 0;
+		r.leftVelocity = drive ? (float) now.getVelocity(LEFT_DRIVE) : 0;
+		r.rightVelocity = drive ? (float) now.getVelocity(RIGHT_DRIVE) : 0;
+		r.leftPower = (float) drivetrain.getPower(LEFT_DRIVE);
+		r.rightPower = (float) drivetrain.getPower(RIGHT_DRIVE);
+
+		if (now.hasImu()) {
+			flags |= FlightRecord.HAS_IMU;
+		}
+		r.heading = (float) now.getHeading();
+		r.roll = (float) now.getRoll();
+		r.pitch = (float) now.getPitch();
+		r.poseX = (float) pose.getX();
+		r.poseY = (float) pose.getY();
+		r.poseHeading = (float) pose.getHeading();
+		if (fixPending) {
+			flags |= FlightRecord.HAS_FIX;
+			fixPending = false;
+		}
+		r.fixX = (float) fixPose.x;
+		r.fixY = (float) fixPose.y;
+		r.fixHeading = (float) fixPose.heading;
+
+		Gamepad gamepad = currentOpMode == null ? null : currentOpMode.gamepad1;
+		if (gamepad != null) {
+			flags |= FlightRecord.HAS_GAMEPAD;
+			r.leftStickX = gamepad.left_stick_x;
+			r.leftStickY = gamepad.left_stick_y;
+			r.rightStickX = gamepad.right_stick_x;
+			r.rightStickY = gamepad.right_stick_y;
+			r.leftTrigger = gamepad.left_trigger;
+			r.rightTrigger = gamepad.right_trigger;
+			r.buttons = GamepadEvents.getButtonBits(gamepad);
+		}
+		if (now.hasColor()) {
+			flags |= FlightRecord.HAS_COLOR;
+		}
+		r.argb = now.getArgb();
+		r.flags = flags;
+		if (recorder != null) {
+			recorder.record(r);
+		}
+		if (cycleListener != null) {
+			cycleListener.cycleDone(r);
+		}
+	}
+
+	//  True if heading comes from an IMU, and it hasn't failed; drive segments hold heading
+	// only then.
+	public boolean hasImu() {
+		return imu != null && !imuSampler.hasFailed();
+	}
+
+	//  IMU heading in radians, counterclockwise, as of the last updateMotion(). Unwrapped: two
+	// full turns to the left read 4 pi. Zero without an IMU.
+	public double getImuHeading() {
+		return imuHeading;
+	}
+
+	//  A controller with the heading hold gains, for a drive segment to steer with.
+	HeadingController newHeadingHold() {
+		return new HeadingController(constants.headingKp, constants.headingKi,
+				constants.headingKd, constants.headingIZone, constants.headingMaxCorrection);
+	}
+
+	//  Blend a Vuforia robot location (getUpdatedRobotLocation) into the pose estimate.
+	public void correctPose(OpenGLMatrix robotLocation) {
+		correctPose(fixLocation.set(robotLocation));
+	}
+
+	//  The same, for a location already copied into a Transform3.
+	public void correctPose(Transform3 robotLocation) {
+		// Heading is the rotation about Field Z, read straight from the rotation part
+		// rather than through an Orientation.
+		robotLocation.toPose(fixPose, mmPerInch);
+		pose.correct(fixPose.x, fixPose.y, fixPose.heading);
+		fixPending = true;
+	}
+
+	//  Wait for a movement to end, ticking the motion executor at MOTION_RATE_HZ
+	// instead of spinning. For linear opmodes with nothing else to do meanwhile. If the
+	// opmode is stopped, all movement is cancelled and the motors are stopped.
+	public void awaitMotion(DriveSegment segment) {
+		if (motionLoop == null) {
+			motionLoop = new ControlLoop();
+			motionLoop.addTask("drive", MOTION_RATE_HZ, new ControlLoop.Task() {
+				@Override
+				public void run() {
+					updateMotion();
+				}
+			});
+		}
+		while (!segment.isDone()) {
+			if ((currentOpMode != null && !currentOpMode.opModeIsActive())
+					|| !motionLoop.runOnce()) {
+				motion.cancelAll();
+				updateMotion();
+				return;
+			}
+		}
 	}
 
 	public void stopDriveMotors(){
-		leftDrive.setPower(0);
-		rightDrive.setPower(0);
+		drivetrain.setPower(0, 0);
 	}
 
 	public void fullPowerDrive () {
-		leftDrive.setPower(1.0);
-		rightDrive.setPower(1.0);
+		drivetrain.setPower(1.0, 1.0);
 	}
 
 	public void setDrivetrainPower(double power){
-		leftDrive.setPower(power);
-		rightDrive.setPower(power);
+		drivetrain.setPower(power, power);
 	}
 	/*                  Robot vision: OpenCV                        */
 	private LinearOpMode currentOpMode;
@@ -278,8 +883,7 @@ public class TrainerbotV2 extends GenericFTCRobot {
 		//  Spin on axis with right sick, x motion.
 		//double rightX = -currentOpMode.gamepad1.right_stick_x;
 		//  Not tempered.
-		leftDrive.setPower(leftSpeed);
-		rightDrive.setPower(rightSpeed);
+		drivetrain.setPower(leftSpeed, rightSpeed);
 	}
 
 	/*
@@ -289,25 +893,30 @@ public class TrainerbotV2 extends GenericFTCRobot {
 	//  This one requires no command layer to hardware layer translation.
 	//  Just continue going straight.
 	public void continueStraight(double speed) {
-		leftDrive.setPower(speed);
-		rightDrive.setPower(speed);
+		drivetrain.setPower(speed, speed);
 	}
 
 	//   Simple wrapper for encoderDrive. Just go straight a number of inches.
-	public void driveStraight(double speed, double inches){
-		encoderDrive(speed, speed, inches, inches);
+	public DriveSegment driveStraight(double speed, double inches){
+		return encoderDrive(speed, speed, inches, inches);
 	}
 
 	//   Turn on axis, as though with left and right tank drive joysticks in equal but
-	// opposite deflection.
-	public void turnAngle (double speed, double angle) { // angle in radians
-		double inches = angle * DRIVE_WHEEL_SEPARATION/2;
-		encoderDrive (speed, speed, -inches, inches);
+	// opposite deflection. With an IMU, the turn is closed on the measured heading; without
+	// one, it is an encoder estimate that is only as good as the calibrated track width.
+	public DriveSegment turnAngle (double speed, double angle) { // angle in radians
+		if (hasImu()) {
+			return submit(new ImuTurnSegment(this, speed, angle,
+					constants.segmentTimeoutSeconds));
+		}
+		double inches = angle * calibration.trackWidth/2;
+		return encoderDrive (speed, speed, -inches, inches, Double.NaN,
+				constants.segmentTimeoutSeconds);
 	}
 
 	/*  Turning movements. All angles are in radians. */
 	//  Turn at speed through an angle, with a given radius.
-	public void turnAngleRadiusDrive(double speed, double angle, double radius) {
+	public DriveSegment turnAngleRadiusDrive(double speed, double angle, double radius) {
 
 		// One or both turning arcs could be negative.
 		// Degenerate cases: angle = 0, R = 0, R = d/2, R = +infinity
@@ -318,8 +927,8 @@ public class TrainerbotV2 extends GenericFTCRobot {
 		// TODO: handle 4 quadrant cases: forward CW, forward CCW, back CW, back CCW
 		// ** Note negative angle enforces backward movement. What would negative
 		// angle and negative radius do?
-		double leftRadius = radius - DRIVE_WHEEL_SEPARATION / 2.0;
-		double rightRadius = radius + DRIVE_WHEEL_SEPARATION / 2.0;
+		double leftRadius = radius - calibration.trackWidth / 2.0;
+		double rightRadius = radius + calibration.trackWidth / 2.0;
 		double cfLeft = leftRadius / radius;
 		double cfRight = rightRadius / radius;
 		double leftArc = leftRadius * angle;
@@ -327,15 +936,15 @@ public class TrainerbotV2 extends GenericFTCRobot {
 		double leftSpeed = speed * cfLeft;
 		double rightSpeed = speed * cfRight;
 
-		encoderDrive(leftSpeed, rightSpeed, leftArc, rightArc);
-		// clean up
+		return encoderDrive(leftSpeed, rightSpeed, leftArc, rightArc, angle,
+				constants.segmentTimeoutSeconds);
 	}
 
 	//    Wrapper for turnAngleRadius
 	// ** make this a wrapper for encoderDrive instead.
-	public void turnArcRadiusDrive(double speed, double arc, double radius) {
+	public DriveSegment turnArcRadiusDrive(double speed, double arc, double radius) {
 		double targetAngle = arc / radius;
-		turnAngleRadiusDrive(speed, targetAngle, radius);
+		return turnAngleRadiusDrive(speed, targetAngle, radius);
 	}
 
 	//  Begin a left turn at speed, sharpness of turn decided by ratio.
@@ -345,30 +954,28 @@ public class TrainerbotV2 extends GenericFTCRobot {
 	//    -1: turn axis is between drive wheels. Robot turns on own axis.
 	public void steerLeft (double speed, double ratio) {
 		Range.clip(ratio, -1.0, 1.0);
-		leftDrive.setPower(speed * ratio);
-		rightDrive.setPower(speed);
+		drivetrain.setPower(speed * ratio, speed);
 	}
 
 	//  Right analog of steerLeft.
 	public void steerRight(double speed, double ratio) {
 		Range.clip(ratio, -1.0, 1.0);
-		leftDrive.setPower(speed);
-		rightDrive.setPower(speed * ratio);
+		drivetrain.setPower(speed, speed * ratio);
 	}
 
 	//  Drive a curved path by making left wheels turn slower and go
 	//    shorter path by a factor of ratio. The right wheels will spin
 	//    at parameter speed, and travel the full arc.
-	public void turnLeft (double speed, double ratio, double arcInches) {
+	public DriveSegment turnLeft (double speed, double ratio, double arcInches) {
 		Range.clip(ratio, -1.0, 1.0);
-		encoderDrive(speed*ratio, speed,
+		return encoderDrive(speed*ratio, speed,
 				arcInches*ratio, arcInches);
 	}
 
 	//  Right analog of turnLeft.
-	public void turnRight (double speed, double ratio, double arcInches) {
+	public DriveSegment turnRight (double speed, double ratio, double arcInches) {
 		Range.clip(ratio, -1.0, 1.0);
-		encoderDrive(speed, speed*ratio,
+		return encoderDrive(speed, speed*ratio,
 				arcInches, arcInches*ratio);
 	}
 }
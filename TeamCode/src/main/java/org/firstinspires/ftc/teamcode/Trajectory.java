@@ -0,0 +1,144 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This is NOT an opmode.
+ *
+ * A path with a speed for every point of it: where a differential drive robot should be, how
+ * fast it should be going, and how sharply it should be turning, at each moment from start to
+ * finish. A TrajectoryBuilder makes one from waypoints; a TrajectoryCache keeps them on file, so
+ * they are built once, not at every init; a TrajectorySegment drives one.
+ *
+ * A trajectory is a list of samples, each SAMPLE_SIZE bytes of little endian floats:
+ *
+ *      0  t             seconds from the start
+ *      4  s             inches along the path
+ *      8  x, 12  y      inches, Field coordinates
+ *     16  heading       radians; the direction of travel, which is backward if reversed
+ *     20  curvature     radians per inch, counterclockwise positive
+ *     24  velocity      inches per second along the path, never negative
+ *     28  acceleration  inches per second^2
+ *
+ * The samples sit in a ByteBuffer, either one of their own or a slice of a memory mapped cache
+ * file, and are read where they are: getSample looks one up by time, and interpolates, without
+ * allocating. A trajectory never changes.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class Trajectory {
+    public static final int SAMPLE_SIZE = 32;
+
+    static final int OFFSET_T = 0;
+    static final int OFFSET_S = 4;
+    static final int OFFSET_X = 8;
+    static final int OFFSET_Y = 12;
+    static final int OFFSET_HEADING = 16;
+    static final int OFFSET_CURVATURE = 20;
+    static final int OFFSET_VELOCITY = 24;
+    static final int OFFSET_ACCELERATION = 28;
+
+    //  One moment of a trajectory. Reused: getSample fills it in.
+    public static class Sample {
+        public double t, s, x, y, heading, curvature, velocity, acceleration;
+    }
+
+    private final ByteBuffer buffer;     // little endian
+    private final int offset;
+    private final int count;
+    private final boolean reversed;
+
+    /* Constructor. Reads count samples at offset in buffer, which must be little endian. */
+    Trajectory(ByteBuffer buffer, int offset, int count, boolean reversed) {
+        if (count < 1) {
+            throw new IllegalArgumentException("a trajectory needs samples");
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        this.count = count;
+        this.reversed = reversed;
+    }
+
+    public int getSampleCount() {
+        return count;
+    }
+
+    //  True if the robot drives this backward, its rear leading.
+    public boolean isReversed() {
+        return reversed;
+    }
+
+    public double getDuration() {
+        return read(count - 1, OFFSET_T);
+    }
+
+    public double getLength() {
+        return read(count - 1, OFFSET_S);
+    }
+
+    //  Fill out with where the robot should be at t seconds, interpolating between samples.
+    // Before the start it is the start, after the end the end. Returns out.
+    public Sample getSample(double t, Sample out) {
+        // Binary search for the last sample at or before t.
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (read(mid, OFFSET_T) <= t) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (low == count - 1 || t <= read(low, OFFSET_T)) {
+            return readSample(low, out);
+        }
+        double t0 = read(low, OFFSET_T);
+        double t1 = read(low + 1, OFFSET_T);
+        double f = t1 > t0 ? (t - t0) / (t1 - t0) : 0;
+        out.t = t;
+        out.s = lerp(low, OFFSET_S, f);
+        out.x = lerp(low, OFFSET_X, f);
+        out.y = lerp(low, OFFSET_Y, f);
+        double h0 = read(low, OFFSET_HEADING);
+        out.heading = PoseEstimator.normalize(h0
+                + PoseEstimator.normalize(read(low + 1, OFFSET_HEADING) - h0) * f);
+        out.curvature = lerp(low, OFFSET_CURVATURE, f);
+        out.velocity = lerp(low, OFFSET_VELOCITY, f);
+        // Constant between samples, as the builder made it.
+        out.acceleration = read(low + 1, OFFSET_ACCELERATION);
+        return out;
+    }
+
+    //  Fill out with sample i, counting from zero. Returns out.
+    public Sample readSample(int i, Sample out) {
+        out.t = read(i, OFFSET_T);
+        out.s = read(i, OFFSET_S);
+        out.x = read(i, OFFSET_X);
+        out.y = read(i, OFFSET_Y);
+        out.heading = read(i, OFFSET_HEADING);
+        out.curvature = read(i, OFFSET_CURVATURE);
+        out.velocity = read(i, OFFSET_VELOCITY);
+        out.acceleration = read(i, OFFSET_ACCELERATION);
+        return out;
+    }
+
+    //  Copy the samples into out at its position, advancing it. For TrajectoryCache.
+    void writeSamples(ByteBuffer out) {
+        for (int i = 0; i < count * SAMPLE_SIZE; i += 4) {
+            out.putFloat(buffer.getFloat(offset + i));
+        }
+    }
+
+    private double read(int i, int field) {
+        return buffer.getFloat(offset + i * SAMPLE_SIZE + field);
+    }
+
+    private double lerp(int i, int field, double f) {
+        double a = read(i, field);
+        return a + (read(i + 1, field) - a) * f;
+    }
+}
@@ -0,0 +1,216 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Makes a Trajectory through waypoints, each a place and the heading the robot should have
+ * there:
+ *
+ *     Trajectory toBridge = new TrajectoryBuilder(maxVelocity, maxAcceleration, trackWidth)
+ *             .to(-36, -63, Math.PI / 2)
+ *             .to(-24, -36, 0)
+ *             .to(0, -36, 0)
+ *             .build();
+ *
+ * Each pair of waypoints is joined by a quintic Hermite spline, leaving each point in the
+ * direction of its heading, with zero second derivative at the ends. So the path is smooth
+ * through every waypoint, and so is its curvature, which a differential drive can follow
+ * without jumps in wheel speed. Each spline is sampled SAMPLES_PER_SPLINE times.
+ *
+ * The speed at each sample is the highest that keeps within the limits:
+ *  - the outer wheel, going v * (1 + |curvature| * trackWidth / 2), under maxVelocity;
+ *  - speeding up from rest at the start, and slowing to rest at the end, no harder than
+ *    maxAcceleration: a pass forward and a pass back over the samples.
+ * Times then follow from the speeds and the distances between samples.
+ *
+ * Building takes a few milliseconds a spline on the phone, which is why TrajectoryCache keeps
+ * what is built. getKey() names what a build would make, for the cache to check against.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class TrajectoryBuilder {
+    public static final int SAMPLES_PER_SPLINE = 64;
+    // Tangent length, as a multiple of the distance between waypoints. Longer makes wider
+    // curves leaving and entering each waypoint.
+    public static final double TANGENT_SCALE = 1.2;
+    // Change with the building method or the sample format, so old cache entries rebuild.
+    static final int VERSION = 1;
+
+    private final double maxVelocity;
+    private final double maxAcceleration;
+    private final double trackWidth;
+    private boolean reversed = false;
+    private double[] xs = new double[4];
+    private double[] ys = new double[4];
+    private double[] headings = new double[4];
+    private int count = 0;
+
+    /* Constructor. Inches, seconds. */
+    public TrajectoryBuilder(double maxVelocity, double maxAcceleration, double trackWidth) {
+        if (maxVelocity <= 0 || maxAcceleration <= 0) {
+            throw new IllegalArgumentException("limits must be positive");
+        }
+        this.maxVelocity = maxVelocity;
+        this.maxAcceleration = maxAcceleration;
+        this.trackWidth = trackWidth;
+    }
+
+    //  Drive the whole trajectory backward. Headings are still where the robot's front
+    // points. Returns this.
+    public TrajectoryBuilder reversed(boolean reversed) {
+        this.reversed = reversed;
+        return this;
+    }
+
+    //  Add a waypoint: inches, and radians counterclockwise from the X axis. Returns this.
+    public TrajectoryBuilder to(double x, double y, double heading) {
+        if (count == xs.length) {
+            xs = grow(xs);
+            ys = grow(ys);
+            headings = grow(headings);
+        }
+        xs[count] = x;
+        ys[count] = y;
+        headings[count] = heading;
+        count++;
+        return this;
+    }
+
+    //  A hash of everything that decides the trajectory: waypoints, limits and method. Equal
+    // keys build the same trajectory.
+    public long getKey() {
+        long hash = 0xcbf29ce484222325L;                // 64 bit FNV-1a, over 64 bit words
+        hash = mix(hash, VERSION);
+        hash = mix(hash, SAMPLES_PER_SPLINE);
+        hash = mix(hash, Double.doubleToLongBits(TANGENT_SCALE));
+        hash = mix(hash, Double.doubleToLongBits(maxVelocity));
+        hash = mix(hash, Double.doubleToLongBits(maxAcceleration));
+        hash = mix(hash, Double.doubleToLongBits(trackWidth));
+        hash = mix(hash, reversed ? 1 : 0);
+        for (int i = 0; i < count; i++) {
+            hash = mix(hash, Double.doubleToLongBits(xs[i]));
+            hash = mix(hash, Double.doubleToLongBits(ys[i]));
+            hash = mix(hash, Double.doubleToLongBits(headings[i]));
+        }
+        return hash;
+    }
+
+    public Trajectory build() {
+        if (count < 2) {
+            throw new IllegalArgumentException("a trajectory needs two waypoints");
+        }
+        int samples = (count - 1) * SAMPLES_PER_SPLINE + 1;
+        double[] x = new double[samples];
+        double[] y = new double[samples];
+        double[] heading = new double[samples];
+        double[] curvature = new double[samples];
+        double[] s = new double[samples];
+        double[] v = new double[samples];
+        double[] t = new double[samples];
+        double[] a = new double[samples];
+
+        // Geometry: sample every spline, sharing the point where two meet.
+        int n = 0;
+        double[] point = new double[6];
+        for (int i = 0; i < count - 1; i++) {
+            double travel0 = reversed ? headings[i] + Math.PI : headings[i];
+            double travel1 = reversed ? headings[i + 1] + Math.PI : headings[i + 1];
+            double tangent = TANGENT_SCALE * Math.hypot(xs[i + 1] - xs[i], ys[i + 1] - ys[i]);
+            double vx0 = tangent * Math.cos(travel0);
+            double vy0 = tangent * Math.sin(travel0);
+            double vx1 = tangent * Math.cos(travel1);
+            double vy1 = tangent * Math.sin(travel1);
+            for (int j = (i == 0 ? 0 : 1); j <= SAMPLES_PER_SPLINE; j++) {
+                double u = (double) j / SAMPLES_PER_SPLINE;
+                hermite(u, xs[i], vx0, vx1, xs[i + 1], point, 0);
+                hermite(u, ys[i], vy0, vy1, ys[i + 1], point, 3);
+                x[n] = point[0];
+                y[n] = point[3];
+                double dx = point[1];
+                double dy = point[4];
+                double speed = Math.hypot(dx, dy);
+                heading[n] = speed > 0 ? Math.atan2(dy, dx) : travel0;
+                curvature[n] = speed > 0
+                        ? (dx * point[5] - dy * point[2]) / (speed * speed * speed) : 0;
+                if (n > 0) {
+                    s[n] = s[n - 1] + Math.hypot(x[n] - x[n - 1], y[n] - y[n - 1]);
+                }
+                n++;
+            }
+        }
+
+        // Speeds: the curvature limit, then acceleration forward from rest and back to rest.
+        for (int i = 0; i < samples; i++) {
+            v[i] = maxVelocity / (1 + Math.abs(curvature[i]) * trackWidth / 2);
+        }
+        v[0] = 0;
+        v[samples - 1] = 0;
+        for (int i = 1; i < samples; i++) {
+            double ds = s[i] - s[i - 1];
+            v[i] = Math.min(v[i], Math.sqrt(v[i - 1] * v[i - 1] + 2 * maxAcceleration * ds));
+        }
+        for (int i = samples - 2; i >= 0; i--) {
+            double ds = s[i + 1] - s[i];
+            v[i] = Math.min(v[i], Math.sqrt(v[i + 1] * v[i + 1] + 2 * maxAcceleration * ds));
+        }
+        for (int i = 1; i < samples; i++) {
+            double ds = s[i] - s[i - 1];
+            double sum = v[i] + v[i - 1];
+            double dt = sum > 0 ? 2 * ds / sum : 0;
+            t[i] = t[i - 1] + dt;
+            a[i] = dt > 0 ? (v[i] - v[i - 1]) / dt : 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(samples * Trajectory.SAMPLE_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < samples; i++) {
+            buffer.putFloat((float) t[i]);
+            buffer.putFloat((float) s[i]);
+            buffer.putFloat((float) x[i]);
+            buffer.putFloat((float) y[i]);
+            buffer.putFloat((float) heading[i]);
+            buffer.putFloat((float) curvature[i]);
+            buffer.putFloat((float) v[i]);
+            buffer.putFloat((float) a[i]);
+        }
+        return new Trajectory(buffer, 0, samples, reversed);
+    }
+
+    //  Position, first and second derivative at u of the quintic Hermite spline from p0 to
+    // p1, leaving with v0 and arriving with v1, with no second derivative at either end.
+    private static void hermite(double u, double p0, double v0, double v1, double p1,
+                                double[] out, int at) {
+        double u2 = u * u;
+        double u3 = u2 * u;
+        double u4 = u3 * u;
+        double u5 = u4 * u;
+        out[at] = (1 - 10 * u3 + 15 * u4 - 6 * u5) * p0
+                + (u - 6 * u3 + 8 * u4 - 3 * u5) * v0
+                + (-4 * u3 + 7 * u4 - 3 * u5) * v1
+                + (10 * u3 - 15 * u4 + 6 * u5) * p1;
+        out[at + 1] = (-30 * u2 + 60 * u3 - 30 * u4) * p0
+                + (1 - 18 * u2 + 32 * u3 - 15 * u4) * v0
+                + (-12 * u2 + 28 * u3 - 15 * u4) * v1
+                + (30 * u2 - 60 * u3 + 30 * u4) * p1;
+        out[at + 2] = (-60 * u + 180 * u2 - 120 * u3) * p0
+                + (-36 * u + 96 * u2 - 60 * u3) * v0
+                + (-24 * u + 84 * u2 - 60 * u3) * v1
+                + (60 * u - 180 * u2 + 120 * u3) * p1;
+    }
+
+    private static long mix(long hash, long word) {
+        return (hash ^ word) * 0x100000001b3L;
+    }
+
+    private static double[] grow(double[] array) {
+        double[] bigger = new double[array.length * 2];
+        System.arraycopy(array, 0, bigger, 0, array.length);
+        return bigger;
+    }
+}
@@ -0,0 +1,245 @@
+package org.firstinspires.ftc.teamcode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Keeps built Trajectories in a file, so an autonomous opmode's routes are built once, the
+ * first time it is run, and afterward only looked up:
+ *
+ *     TrajectoryCache cache = TrajectoryCache.open(file);      // at init
+ *     Trajectory toBridge = cache.get("toBridge", builder);
+ *
+ * get() compares the builder's key with the one the trajectory was stored under. A match is
+ * handed back as it is on file; anything else, a new route or one whose waypoints or limits
+ * have changed, is built, and the file is rewritten with it. So the file never needs clearing
+ * by hand. To have the file ready before the robot first runs, get() the same routes from a
+ * cache opened on a desktop, and adb push its file to the FIRST folder.
+ *
+ * The file is memory mapped read only, and its trajectories read in place, so opening one
+ * costs the index, not the samples. Its layout, little endian:
+ *
+ *      0  int    MAGIC, "TRJ1"
+ *      4  int    TrajectoryBuilder.VERSION
+ *      8  int    entries
+ *     12  int    reserved, zero
+ *     16  entries * ENTRY_SIZE: long key, int sample offset, int sample count,
+ *                int flags (1 = reversed), then the name, UTF-8, zero padded to NAME_SIZE
+ *     ..  the samples, Trajectory.SAMPLE_SIZE bytes each
+ *
+ * A file that can't be read, or was written by another version, is ignored, as if empty.
+ * One thread at a time.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ * v 0.2    save() replaces the file where rename won't, and isSaved() tells if it failed.
+ */
+
+public class TrajectoryCache {
+    public static final String FILE_NAME = "trainerbotv2_trajectories.bin";
+    public static final int MAGIC = 0x314A5254;    // "TRJ1", little endian
+    public static final int HEADER_SIZE = 16;
+    public static final int NAME_SIZE = 44;
+    public static final int ENTRY_SIZE = 20 + NAME_SIZE;
+    private static final int FLAG_REVERSED = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final List<String> names = new ArrayList<String>();
+    private final List<Long> keys = new ArrayList<Long>();
+    private final List<Trajectory> trajectories = new ArrayList<Trajectory>();
+    private int built = 0;
+    private boolean saved = true;
+
+    private TrajectoryCache(File file) {
+        this.file = file;
+    }
+
+    //  The cache kept in file, empty if there is none yet. A null file keeps nothing: every
+    // get() builds, once.
+    public static TrajectoryCache open(File file) {
+        TrajectoryCache cache = new TrajectoryCache(file);
+        if (file != null && file.isFile()) {
+            cache.read();
+        }
+        return cache;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    //  Trajectories get() has built, rather than found on file, since open().
+    public int getBuiltCount() {
+        return built;
+    }
+
+    //  False if the last save() failed, so what has been built since the file was last
+    // written is kept only until the cache is dropped. True if nothing has needed saving.
+    public boolean isSaved() {
+        return saved;
+    }
+
+    //  The trajectory stored as name, if builder would make it; otherwise build it, and
+    // store it. Names are at most NAME_SIZE bytes of UTF-8.
+    public Trajectory get(String name, TrajectoryBuilder builder) {
+        if (name.getBytes(UTF8).length > NAME_SIZE) {
+            throw new IllegalArgumentException("trajectory name too long: " + name);
+        }
+        long key = builder.getKey();
+        int i = names.indexOf(name);
+        if (i >= 0 && keys.get(i) == key) {
+            return trajectories.get(i);
+        }
+        Trajectory trajectory = builder.build();
+        built++;
+        if (i >= 0) {
+            keys.set(i, key);
+            trajectories.set(i, trajectory);
+        } else {
+            names.add(name);
+            keys.add(key);
+            trajectories.add(trajectory);
+        }
+        save();
+        return trajectory;
+    }
+
+    //  Write every trajectory to the file, by way of a temporary file, so the file is never
+    // half written. False if it couldn't be.
+    public boolean save() {
+        if (file == null) {
+            return false;
+        }
+        saved = write();
+        return saved;
+    }
+
+    private boolean write() {
+        int count = names.size();
+        int samples = 0;
+        for (Trajectory trajectory : trajectories) {
+            samples += trajectory.getSampleCount();
+        }
+        int dataStart = HEADER_SIZE + count * ENTRY_SIZE;
+        ByteBuffer out = ByteBuffer.allocate(dataStart + samples * Trajectory.SAMPLE_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(TrajectoryBuilder.VERSION).putInt(count).putInt(0);
+        int offset = dataStart;
+        for (int i = 0; i < count; i++) {
+            Trajectory trajectory = trajectories.get(i);
+            out.putLong(keys.get(i));
+            out.putInt(offset);
+            out.putInt(trajectory.getSampleCount());
+            out.putInt(trajectory.isReversed() ? FLAG_REVERSED : 0);
+            byte[] name = names.get(i).getBytes(UTF8);
+            out.put(name);
+            out.put(new byte[NAME_SIZE - name.length]);
+            offset += trajectory.getSampleCount() * Trajectory.SAMPLE_SIZE;
+        }
+        for (Trajectory trajectory : trajectories) {
+            trajectory.writeSamples(out);
+        }
+
+        File temporary = new File(file.getPath() + ".tmp");
+        RandomAccessFile raf = null;
+        boolean written = false;
+        try {
+            raf = new RandomAccessFile(temporary, "rw");
+            raf.setLength(0);
+            raf.write(out.array());
+            written = true;
+        } catch (IOException e) {
+            // Deleted below, once closed.
+        } finally {
+            close(raf);
+        }
+        if (!written) {
+            temporary.delete();
+            return false;
+        }
+        // The old file stays mapped, and readable, after it is replaced. Not every platform
+        // renames over a file that exists, so failing that, delete it and rename again.
+        if (temporary.renameTo(file)) {
+            return true;
+        }
+        if (file.delete() && temporary.renameTo(file)) {
+            return true;
+        }
+        temporary.delete();
+        return false;
+    }
+
+    //  Map the file and read its index. Leaves the cache empty if the file isn't one.
+    private void read() {
+        RandomAccessFile raf = null;
+        MappedByteBuffer buffer;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } catch (IOException e) {
+            return;
+        } finally {
+            close(raf);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int length = buffer.limit();
+        if (length < HEADER_SIZE || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != TrajectoryBuilder.VERSION) {
+            return;
+        }
+        int count = buffer.getInt(8);
+        if (count < 0 || HEADER_SIZE + (long) count * ENTRY_SIZE > length) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            long key = buffer.getLong(entry);
+            int offset = buffer.getInt(entry + 8);
+            int samples = buffer.getInt(entry + 12);
+            int flags = buffer.getInt(entry + 16);
+            if (offset < 0 || samples < 1
+                    || offset + (long) samples * Trajectory.SAMPLE_SIZE > length) {
+                // Damaged; keep what came before it.
+                return;
+            }
+            byte[] name = new byte[NAME_SIZE];
+            for (int j = 0; j < NAME_SIZE; j++) {
+                name[j] = buffer.get(entry + 20 + j);
+            }
+            int nameLength = 0;
+            while (nameLength < NAME_SIZE && name[nameLength] != 0) {
+                nameLength++;
+            }
+            names.add(new String(name, 0, nameLength, UTF8));
+            keys.add(key);
+            trajectories.add(new Trajectory(buffer, offset, samples,
+                    (flags & FLAG_REVERSED) != 0));
+        }
+    }
+
+    private static void close(RandomAccessFile raf) {
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                // Nothing more to do.
+            }
+        }
+    }
+}
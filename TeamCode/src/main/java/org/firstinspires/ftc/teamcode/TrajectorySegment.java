@@ -0,0 +1,111 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.util.Range;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Drives a TrainerbotV2 along a Trajectory, in the frame of robot.pose, on the trajectory's own
+ * clock: at t seconds into the segment the robot should be at the trajectory's sample for t.
+ * Each tick the speed and turn rate of that sample are corrected for where the pose estimate
+ * says the robot really is, with the Ramsete controller:
+ *
+ *     k     = 2 * zeta * sqrt(turn rate^2 + b * speed^2)
+ *     speed = speed * cos(heading error) + k * error ahead
+ *     turn  = turn rate + k * heading error + b * speed * sinc(heading error) * error left
+ *
+ * b, per square inch, sets how hard position errors are chased; zeta, between 0 and 1, damps
+ * the chase. Both are in the constants, as ramseteB and ramseteZeta. Each wheel then gets
+ * kV * its speed + kA * the trajectory's acceleration, as in ProfiledDriveSegment.
+ *
+ * The segment is done once the trajectory has run out and the robot is within END_TOLERANCE
+ * of its end, or SETTLE_SECONDS after that regardless.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class TrajectorySegment extends DriveSegment {
+    public static final double END_TOLERANCE = 1.0;        // inches
+    public static final double SETTLE_SECONDS = 0.5;
+    public static final double TIMEOUT_MARGIN_SECONDS = 2.0;
+
+    private final TrainerbotV2 robot;
+    private final RobotConstants constants;    // as of construction
+    private final Trajectory trajectory;
+    private final Trajectory.Sample reference = new Trajectory.Sample();
+
+    public TrajectorySegment(TrainerbotV2 robot, Trajectory trajectory) {
+        super(trajectory.getDuration() + SETTLE_SECONDS + TIMEOUT_MARGIN_SECONDS);
+        this.robot = robot;
+        this.constants = robot.getConstants();
+        this.trajectory = trajectory;
+    }
+
+    public Trajectory getTrajectory() {
+        return trajectory;
+    }
+
+    @Override
+    protected void start() {
+        robot.setDriveStopBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
+        robot.setDriveRunMode(DcMotor.RunMode.RUN_USING_ENCODER);
+    }
+
+    @Override
+    protected boolean update() {
+        double t = getRunSeconds();
+        trajectory.getSample(t, reference);
+        PoseEstimator pose = robot.pose;
+        double dx = reference.x - pose.getX();
+        double dy = reference.y - pose.getY();
+        if (t >= trajectory.getDuration()) {
+            if (Math.hypot(dx, dy) < END_TOLERANCE
+                    || t >= trajectory.getDuration() + SETTLE_SECONDS) {
+                return true;
+            }
+        }
+
+        // The reference in the robot's terms: which way its front points, and signed speed.
+        boolean reversed = trajectory.isReversed();
+        double referenceHeading = reversed ? reference.heading + Math.PI : reference.heading;
+        double referenceSpeed = reversed ? -reference.velocity : reference.velocity;
+        double referenceTurn = reference.velocity * reference.curvature;
+        double acceleration = reversed ? -reference.acceleration : reference.acceleration;
+
+        double heading = pose.getHeading();
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        double ahead = cos * dx + sin * dy;
+        double left = -sin * dx + cos * dy;
+        double headingError = PoseEstimator.normalize(referenceHeading - heading);
+
+        double b = constants.ramseteB;
+        double k = 2 * constants.ramseteZeta
+                * Math.sqrt(referenceTurn * referenceTurn + b * referenceSpeed * referenceSpeed);
+        double speed = referenceSpeed * Math.cos(headingError) + k * ahead;
+        double turn = referenceTurn + k * headingError
+                + b * referenceSpeed * sinc(headingError) * left;
+
+        double half = turn * robot.getCalibration().trackWidth / 2;
+        robot.getDrivetrain().setPower(wheelPower(speed - half, acceleration),
+                wheelPower(speed + half, acceleration));
+        return false;
+    }
+
+    private double wheelPower(double wheelVelocity, double acceleration) {
+        return Range.clip(constants.driveKv * wheelVelocity + constants.driveKa * acceleration,
+                -1.0, 1.0);
+    }
+
+    private static double sinc(double x) {
+        return Math.abs(x) < 1e-6 ? 1 - x * x / 6 : Math.sin(x) / x;
+    }
+
+    @Override
+    protected void stop() {
+        robot.stopDriveMotors();
+    }
+}
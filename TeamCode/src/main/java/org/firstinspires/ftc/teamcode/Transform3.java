@@ -0,0 +1,223 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.firstinspires.ftc.robotcore.external.matrices.OpenGLMatrix;
+
+/**
+ * This is NOT an opmode.
+ *
+ * A rigid 3D transform, rotation plus translation, as a 4x4 matrix of floats in the same
+ * column-major layout OpenGLMatrix uses. Unlike OpenGLMatrix, every operation works in place:
+ * multiply, invert, rotate and decode into angles all write into an existing Transform3 or
+ * array, never a new one. Make the transforms a loop needs once, up front, then reuse them
+ * every frame. There is no garbage.
+ *
+ *     Transform3 location = new Transform3();            // once
+ *     float[] angles = new float[3];
+ *     ...
+ *     location.set(fix.location);                        // each frame
+ *     location.getAnglesXYZ(angles);                     // roll, pitch, heading
+ *
+ * The rotate methods multiply on the right, so a chain reads like the OpenGLMatrix one it
+ * replaces. Extrinsic XYZ angles (a, b, c) are the rotation Rz(c) Ry(b) Rx(a), so
+ *
+ *     OpenGLMatrix.translation(x, y, z).multiplied(
+ *             Orientation.getRotationMatrix(EXTRINSIC, XYZ, DEGREES, a, b, c))
+ * is
+ *     new Transform3().setTranslation(x, y, z).rotateZ(c).rotateY(b).rotateX(a)
+ * or, for short, setLocation(x, y, z, a, b, c).
+ *
+ * Angles are in degrees, as in the SkyStone samples. invert() assumes the transform is rigid,
+ * as every camera, target and robot location is; it is not a general matrix inverse.
+ *
+ * A Transform3 is not thread safe. Give each thread its own.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class Transform3 {
+    // Column-major: element (row, col) is at data[col * 4 + row].
+    private final float[] data = new float[16];
+    private final float[] scratch = new float[16];
+
+    /* Constructor. Starts as the identity. */
+    public Transform3() {
+        setIdentity();
+    }
+
+    public Transform3 setIdentity() {
+        for (int i = 0; i < 16; i++) {
+            data[i] = (i % 5 == 0) ? 1 : 0;
+        }
+        return this;
+    }
+
+    //  A pure translation.
+    public Transform3 setTranslation(float x, float y, float z) {
+        setIdentity();
+        data[12] = x;
+        data[13] = y;
+        data[14] = z;
+        return this;
+    }
+
+    //  Translate, then rotate by extrinsic XYZ angles in degrees: how the SkyStone samples
+    // place each target on the Field.
+    public Transform3 setLocation(float x, float y, float z,
+                                  double xDegrees, double yDegrees, double zDegrees) {
+        return setTranslation(x, y, z).rotateZ(zDegrees).rotateY(yDegrees).rotateX(xDegrees);
+    }
+
+    public Transform3 set(Transform3 other) {
+        System.arraycopy(other.data, 0, data, 0, 16);
+        return this;
+    }
+
+    //  Copy an OpenGLMatrix, such as a Vuforia location, without allocating.
+    public Transform3 set(OpenGLMatrix matrix) {
+        System.arraycopy(matrix.getData(), 0, data, 0, 16);
+        return this;
+    }
+
+    //  A new OpenGLMatrix with the same value, for SDK calls such as setLocation.
+    public OpenGLMatrix toOpenGLMatrix() {
+        return new OpenGLMatrix(data.clone());
+    }
+
+    public float get(int row, int col) {
+        return data[col * 4 + row];
+    }
+
+    public float getX() { return data[12]; }
+    public float getY() { return data[13]; }
+    public float getZ() { return data[14]; }
+
+    //  Rotation about Z of the X axis, radians: the heading of a robot location on the Field.
+    public double getHeading() {
+        return Math.atan2(data[1], data[0]);
+    }
+
+    //  this = a * b. Either may be this.
+    public Transform3 multiply(Transform3 a, Transform3 b) {
+        multiply(a.data, b.data, scratch);
+        System.arraycopy(scratch, 0, data, 0, 16);
+        return this;
+    }
+
+    //  this = this * other.
+    public Transform3 multiply(Transform3 other) {
+        return multiply(this, other);
+    }
+
+    //  this = other * this.
+    public Transform3 preMultiply(Transform3 other) {
+        return multiply(other, this);
+    }
+
+    //  Invert in place. For rigid transforms only: R' = transpose(R), t' = -R' t.
+    public Transform3 invert() {
+        float tx = data[12], ty = data[13], tz = data[14];
+        float r01 = data[4], r02 = data[8], r12 = data[9];
+        data[4] = data[1];
+        data[8] = data[2];
+        data[9] = data[6];
+        data[1] = r01;
+        data[2] = r02;
+        data[6] = r12;
+        data[12] = -(data[0] * tx + data[4] * ty + data[8] * tz);
+        data[13] = -(data[1] * tx + data[5] * ty + data[9] * tz);
+        data[14] = -(data[2] * tx + data[6] * ty + data[10] * tz);
+        return this;
+    }
+
+    //  this = inverse(other).
+    public Transform3 setInverse(Transform3 other) {
+        return set(other).invert();
+    }
+
+    //  this = this * (rotation of degrees about X). Likewise rotateY and rotateZ.
+    public Transform3 rotateX(double degrees) {
+        double r = Math.toRadians(degrees);
+        return rotateColumns(1, 2, (float) Math.cos(r), (float) Math.sin(r));
+    }
+
+    public Transform3 rotateY(double degrees) {
+        double r = Math.toRadians(degrees);
+        return rotateColumns(2, 0, (float) Math.cos(r), (float) Math.sin(r));
+    }
+
+    public Transform3 rotateZ(double degrees) {
+        double r = Math.toRadians(degrees);
+        return rotateColumns(0, 1, (float) Math.cos(r), (float) Math.sin(r));
+    }
+
+    // Right-multiplying by a rotation about one axis mixes just two columns, p and q.
+    private Transform3 rotateColumns(int p, int q, float c, float s) {
+        for (int row = 0; row < 3; row++) {
+            float vp = data[p * 4 + row];
+            float vq = data[q * 4 + row];
+            data[p * 4 + row] = vp * c + vq * s;
+            data[q * 4 + row] = vq * c - vp * s;
+        }
+        return this;
+    }
+
+    //  The rotation as extrinsic XYZ angles in degrees, into out[0..2]: about X (roll), Y
+    // (pitch), then Z (heading). The same angles Orientation.getOrientation(m, EXTRINSIC, XYZ,
+    // DEGREES) gives: of the two valid sets, the one with the smaller magnitude.
+    public void getAnglesXYZ(float[] out) {
+        double m20 = data[2], m21 = data[6], m22 = data[10];
+        double m10 = data[1], m00 = data[0];
+        double first, second, third;
+        if (m20 <= -1) {
+            // Gimbal lock; only first - third is known. Take first as zero, as the SDK does.
+            second = Math.PI / 2;
+            first = 0;
+            third = -Math.atan2(data[4], data[8]);
+        } else if (m20 >= 1) {
+            second = -Math.PI / 2;
+            first = 0;
+            third = Math.atan2(-data[4], data[5]);
+        } else {
+            double secondOne = -Math.asin(m20);
+            double cosOne = Math.cos(secondOne);
+            double firstOne = Math.atan2(m21 / cosOne, m22 / cosOne);
+            double thirdOne = Math.atan2(m10 / cosOne, m00 / cosOne);
+            double secondOther = Math.PI + Math.asin(m20);
+            double cosOther = Math.cos(secondOther);
+            double firstOther = Math.atan2(m21 / cosOther, m22 / cosOther);
+            double thirdOther = Math.atan2(m10 / cosOther, m00 / cosOther);
+            // The SDK compares the float angles; so do we, so ties break the same way.
+            float f1 = (float) firstOne, s1 = (float) secondOne, t1 = (float) thirdOne;
+            float f2 = (float) firstOther, s2 = (float) secondOther, t2 = (float) thirdOther;
+            if (f1 * f1 + s1 * s1 + t1 * t1 <= f2 * f2 + s2 * s2 + t2 * t2) {
+                first = firstOne;
+                second = secondOne;
+                third = thirdOne;
+            } else {
+                first = firstOther;
+                second = secondOther;
+                third = thirdOther;
+            }
+        }
+        out[0] = (float) Math.toDegrees(first);
+        out[1] = (float) Math.toDegrees(second);
+        out[2] = (float) Math.toDegrees(third);
+    }
+
+    //  The Field pose this transform puts the robot at, in inches, given mm per inch.
+    public Pose2d toPose(Pose2d out, double mmPerInch) {
+        return out.set(getX() / mmPerInch, getY() / mmPerInch, getHeading());
+    }
+
+    private static void multiply(float[] a, float[] b, float[] out) {
+        for (int col = 0; col < 4; col++) {
+            float b0 = b[col * 4], b1 = b[col * 4 + 1], b2 = b[col * 4 + 2], b3 = b[col * 4 + 3];
+            for (int row = 0; row < 4; row++) {
+                out[col * 4 + row] = a[row] * b0 + a[4 + row] * b1 + a[8 + row] * b2
+                        + a[12 + row] * b3;
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.firstinspires.ftc.robotcore.external.matrices.OpenGLMatrix;
+import org.firstinspires.ftc.robotcore.external.navigation.VuforiaTrackable;
+import org.firstinspires.ftc.robotcore.external.navigation.VuforiaTrackableDefaultListener;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Polls Vuforia trackables on a thread of its own, so the opmode's drive loop never has to.
+ * Each time something changes, the tracker publishes a new, immutable Fix holding the newest
+ * robot location, the trackable it came from, and when it was seen. Reading it with getLatest()
+ * is a single volatile read: constant time, and it never waits on the tracker.
+ *
+ *     VuforiaTracker tracker = new VuforiaTracker(allTrackables);
+ *     targetsSkyStone.activate();
+ *     tracker.start();
+ *     ...
+ *     VuforiaTracker.Fix fix = tracker.getLatest();
+ *     if (fix.sequence != lastSequence && fix.location != null) { ... }
+ *     ...
+ *     tracker.stop();
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class VuforiaTracker implements Runnable {
+
+    //  What the tracker knew at one moment. Never changes once published.
+    public static final class Fix {
+        // Counts up by one with each new location, so readers can tell a fresh fix from one
+        // they have already used.
+        public final long sequence;
+        // True if some trackable was in view when this was published.
+        public final boolean targetVisible;
+        // Name of the trackable in view, or of the one that gave the last location.
+        public final String targetName;
+        // Newest robot location on the Field, or null if there has never been one.
+        // Treat as read only.
+        public final OpenGLMatrix location;
+        // System.nanoTime() when location was received.
+        public final long locationNanos;
+
+        Fix(long sequence, boolean targetVisible, String targetName,
+            OpenGLMatrix location, long locationNanos) {
+            this.sequence = sequence;
+            this.targetVisible = targetVisible;
+            this.targetName = targetName;
+            this.location = location;
+            this.locationNanos = locationNanos;
+        }
+    }
+
+    // Vuforia delivers camera frames at about 30 Hz; polling twice as often catches each one
+    // promptly without keeping a core busy.
+    public static final long POLL_PERIOD_MS = 15;
+
+    private final VuforiaTrackable[] trackables;
+    private final VuforiaTrackableDefaultListener[] listeners;
+    private final AtomicReference<Fix> latest =
+            new AtomicReference<Fix>(new Fix(0, false, "", null, 0));
+    private volatile boolean running = false;
+    private Thread thread = null;
+
+    /* Constructor. The trackables' locations and phone information must already be set. */
+    public VuforiaTracker(List<VuforiaTrackable> allTrackables) {
+        int count = allTrackables.size();
+        trackables = allTrackables.toArray(new VuforiaTrackable[count]);
+        // Cast the listeners once, here, instead of on every poll.
+        listeners = new VuforiaTrackableDefaultListener[count];
+        for (int i = 0; i < count; i++) {
+            listeners[i] = (VuforiaTrackableDefaultListener) trackables[i].getListener();
+        }
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "VuforiaTracker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //  Stop polling, and wait for the thread to finish.
+    public synchronized void stop() {
+        running = false;
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    //  The newest published fix. Never null; never blocks.
+    public Fix getLatest() {
+        return latest.get();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            poll();
+            try {
+                Thread.sleep(POLL_PERIOD_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    //  Check all the trackables once; publish if anything changed.
+    void poll() {
+        Fix previous = latest.get();
+        for (int i = 0; i < trackables.length; i++) {
+            if (listeners[i].isVisible()) {
+                // getUpdatedRobotLocation() will return null if no new information is available
+                // since the last time that call was made.
+                OpenGLMatrix location = listeners[i].getUpdatedRobotLocation();
+                String name = trackables[i].getName();
+                if (location != null) {
+                    latest.set(new Fix(previous.sequence + 1, true, name,
+                            location, System.nanoTime()));
+                } else if (!previous.targetVisible || !name.equals(previous.targetName)) {
+                    latest.set(new Fix(previous.sequence, true, name,
+                            previous.location, previous.locationNanos));
+                }
+                return;
+            }
+        }
+        if (previous.targetVisible) {
+            latest.set(new Fix(previous.sequence, false, previous.targetName,
+                    previous.location, previous.locationNanos));
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * This is NOT an opmode.
+ *
+ * A path across the Field floor through a list of waypoints, joined by straight lines, for a
+ * PurePursuitSegment to follow. Inches, in Field coordinates or whatever frame the follower's
+ * pose is in. A place on the path is given by s, the distance along it from the first point.
+ *
+ *     WaypointPath route = new WaypointPath(-36, -63)
+ *             .add(-36, -36)
+ *             .add(0, -36)
+ *             .add(24, -48);
+ *
+ * The corners don't have to be rounded: the follower cuts each one, by about its lookahead
+ * distance, and keeps going without slowing to a stop.
+ *
+ * Points and cumulative lengths are kept in primitive arrays, and the lookups a follower makes
+ * each cycle don't allocate. Build a path before the opmode starts; don't add to one being
+ * followed. Nothing here uses FTC SDK classes.
+ *
+ * Version history
+ * ======= =======
+ * v 0.1    initial version.
+ */
+
+public class WaypointPath {
+    private double[] xs = new double[8];
+    private double[] ys = new double[8];
+    private double[] lengths = new double[8];   // s at each point
+    private int count = 0;
+
+    /* Constructor. A path starts at its first point. */
+    public WaypointPath(double x, double y) {
+        xs[0] = x;
+        ys[0] = y;
+        lengths[0] = 0;
+        count = 1;
+    }
+
+    //  Append a point. One that repeats the last point is skipped. Returns this.
+    public WaypointPath add(double x, double y) {
+        double length = Math.hypot(x - xs[count - 1], y - ys[count - 1]);
+        if (length == 0) {
+            return this;
+        }
+        if (count == xs.length) {
+            xs = grow(xs);
+            ys = grow(ys);
+            lengths = grow(lengths);
+        }
+        xs[count] = x;
+        ys[count] = y;
+        lengths[count] = lengths[count - 1] + length;
+        count++;
+        return this;
+    }
+
+    //  A path through x, y pairs.
+    public static WaypointPath of(double... xy) {
+        if (xy.length < 2 || xy.length % 2 != 0) {
+            throw new IllegalArgumentException("need x, y pairs");
+        }
+        WaypointPath path = new WaypointPath(xy[0], xy[1]);
+        for (int i = 2; i < xy.length; i += 2) {
+            path.add(xy[i], xy[i + 1]);
+        }
+        return path;
+    }
+
+    //  This path moved from a robot's frame, x forward and y left of a robot at x, y facing
+    // heading, into the frame that robot's pose is in.
+    public WaypointPath transformed(double x, double y, double heading) {
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        WaypointPath moved = new WaypointPath(x + cos * xs[0] - sin * ys[0],
+                y + sin * xs[0] + cos * ys[0]);
+        for (int i = 1; i < count; i++) {
+            moved.add(x + cos * xs[i] - sin * ys[i], y + sin * xs[i] + cos * ys[i]);
+        }
+        return moved;
+    }
+
+    public int getPointCount() {
+        return count;
+    }
+
+    public double getPointX(int i) {
+        return xs[i];
+    }
+
+    public double getPointY(int i) {
+        return ys[i];
+    }
+
+    public double getLength() {
+        return lengths[count - 1];
+    }
+
+    //  The point s along the path. Before the start it is the start; past the end, the last
+    // line carries on straight.
+    public double getX(double s) {
+        int i = segmentAt(s);
+        return i < 0 ? xs[0] : xs[i] + (xs[i + 1] - xs[i]) * fraction(i, s);
+    }
+
+    public double getY(double s) {
+        int i = segmentAt(s);
+        return i < 0 ? ys[0] : ys[i] + (ys[i + 1] - ys[i]) * fraction(i, s);
+    }
+
+    //  Direction of travel at s, radians counterclockwise from the X axis.
+    public double getHeading(double s) {
+        int i = Math.max(0, segmentAt(s));
+        return count < 2 ? 0 : Math.atan2(ys[i + 1] - ys[i], xs[i + 1] - xs[i]);
+    }
+
+    //  The s of the point on the path, between fromS and toS, that is closest to x, y.
+    public double project(double x, double y, double fromS, double toS) {
+        fromS = Math.max(0, fromS);
+        toS = Math.min(getLength(), toS);
+        if (count < 2 || toS <= fromS) {
+            return Math.min(Math.max(fromS, 0), getLength());
+        }
+        double bestS = fromS;
+        double best = Double.MAX_VALUE;
+        for (int i = Math.max(0, segmentAt(fromS)); i < count - 1 && lengths[i] <= toS; i++) {
+            double dx = xs[i + 1] - xs[i];
+            double dy = ys[i + 1] - ys[i];
+            double length = lengths[i + 1] - lengths[i];
+            double along = ((x - xs[i]) * dx + (y - ys[i]) * dy) / length;
+            double s = Math.min(Math.max(lengths[i] + along, fromS), toS);
+            s = Math.min(Math.max(s, lengths[i]), lengths[i + 1]);
+            double t = (s - lengths[i]) / length;
+            double ex = xs[i] + dx * t - x;
+            double ey = ys[i] + dy * t - y;
+            double distance = ex * ex + ey * ey;
+            if (distance < best) {
+                best = distance;
+                bestS = s;
+            }
+        }
+        return bestS;
+    }
+
+    //  Index of the line s is on: -1 before the start, the last line past the end.
+    private int segmentAt(double s) {
+        if (count < 2 || s < 0) {
+            return -1;
+        }
+        // Binary search for the last point at or before s.
+        int low = 0;
+        int high = count - 2;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lengths[mid] <= s) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private double fraction(int i, double s) {
+        return (s - lengths[i]) / (lengths[i + 1] - lengths[i]);
+    }
+
+    private static double[] grow(double[] array) {
+        double[] bigger = new double[array.length * 2];
+        System.arraycopy(array, 0, bigger, 0, array.length);
+        return bigger;
+    }
+}
@@ -0,0 +1,162 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.hardware.ColorSensor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The RobotSnapshot layer on a SimHarness robot whose motors sit on a FakeHub: one read
+ * transaction per hub per control loop cycle, however many times drive code looks at the motors,
+ * and no color sensor traffic unless it is asked for.
+ */
+public class BulkReadTest {
+    static final int ARGB = 0xFF102030;
+
+    //  Binds a TrainerbotV2 to motors on a FakeHub, and a counted color sensor, then calls
+    // drive().
+    abstract static class HubOpMode extends LinearOpMode {
+        final FakeHub hub = new FakeHub();
+        final TrainerbotV2 robot = new TrainerbotV2(this) {
+            @Override
+            protected void clearBulkCaches() {
+                hub.clear();
+            }
+        };
+        int colorReads = 0;
+        long cycles;
+        int transactions;
+
+        @Override
+        public void runOpMode() {
+            hub.wrap(hardwareMap, "motor0");
+            hub.wrap(hardwareMap, "motor1");
+            hardwareMap.colorSensor.put("colorSensor", colorSensor());
+            try {
+                robot.initHardware(hardwareMap);
+                waitForStart();
+                long firstCycle = robot.updateSnapshot().getCycle();
+                hub.reset();
+                colorReads = 0;
+                drive();
+                cycles = robot.getSnapshot().getCycle() - firstCycle;
+                transactions = hub.getTransactions();
+            } finally {
+                robot.shutdown();
+            }
+        }
+
+        abstract void drive();
+
+        //  A color sensor that counts argb() calls, which are all the robot should make.
+        private ColorSensor colorSensor() {
+            return (ColorSensor) Proxy.newProxyInstance(ColorSensor.class.getClassLoader(),
+                    new Class<?>[] {ColorSensor.class}, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            Class<?> type = method.getReturnType();
+                            if (method.getName().equals("argb")) {
+                                colorReads++;
+                                return ARGB;
+                            } else if (method.getName().equals("equals")) {
+                                return proxy == args[0];
+                            } else if (method.getName().equals("hashCode")) {
+                                return System.identityHashCode(proxy);
+                            } else if (type == int.class) {
+                                return 0;
+                            } else if (type == boolean.class) {
+                                return false;
+                            } else if (type == String.class) {
+                                return "";
+                            }
+                            return null;
+                        }
+                    });
+        }
+    }
+
+    private SimHarness sim;
+
+    @Before
+    public void setUp() {
+        sim = new SimHarness(SimDrivetrain.trainerbotV2());
+    }
+
+    @Test(timeout = 10000)
+    public void oneTransactionPerCycleWhileDriving() {
+        final DriveSegment[] segments = new DriveSegment[2];
+        HubOpMode opMode = new HubOpMode() {
+            @Override
+            void drive() {
+                segments[0] = robot.driveStraight(0.5, 12.0);
+                segments[1] = robot.profiledStraight(12.0);
+                robot.awaitMotion(segments[1]);
+            }
+        };
+        sim.run(opMode, 30);
+
+        assertTrue(segments[0].isCompleted());
+        assertTrue(segments[1].isCompleted());
+        assertTrue(opMode.cycles > 0);
+        assertEquals(opMode.cycles, opMode.transactions);
+        assertEquals(0, opMode.colorReads);
+    }
+
+    @Test(timeout = 10000)
+    public void colorIsReadOnlyOnRequest() {
+        // What the snapshots said when they were new: a snapshot holds only until the second
+        // updateSnapshot after it.
+        final boolean[] hasColor = new boolean[2];
+        final int[] red = new int[1];
+        final int[] argb = new int[1];
+        HubOpMode opMode = new HubOpMode() {
+            @Override
+            void drive() {
+                robot.updateSnapshot();
+                argb[0] = robot.readColor();
+                RobotSnapshot next = robot.updateSnapshot();
+                hasColor[0] = next.hasColor();
+                red[0] = next.getRed();
+                hasColor[1] = robot.updateSnapshot().hasColor();
+            }
+        };
+        sim.run(opMode, 30);
+
+        assertEquals(1, opMode.colorReads);
+        assertEquals(ARGB, argb[0]);
+        assertTrue(hasColor[0]);
+        assertEquals(0x10, red[0]);
+        assertFalse(hasColor[1]);
+        assertEquals(opMode.cycles, opMode.transactions);
+    }
+
+    @Test(timeout = 10000)
+    public void snapshotsAreReusedInTurn() {
+        final RobotSnapshot[] snapshots = new RobotSnapshot[3];
+        HubOpMode opMode = new HubOpMode() {
+            @Override
+            void drive() {
+                for (int i = 0; i < snapshots.length; i++) {
+                    snapshots[i] = robot.updateSnapshot();
+                }
+            }
+        };
+        sim.run(opMode, 30);
+
+        assertNotSame(snapshots[0], snapshots[1]);
+        assertSame(snapshots[0], snapshots[2]);
+        assertNotSame(RobotSnapshot.EMPTY, snapshots[0]);
+        assertEquals(2, snapshots[0].getMotorCount());
+    }
+}
@@ -0,0 +1,86 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ControlLoop on a RobotClock that only moves when slept on, or when a task says it took time.
+ */
+public class ControlLoopTest {
+    private long now;
+
+    private final RobotClock.Source clock = new RobotClock.Source() {
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void sleepNanos(long nanos) {
+            now += nanos;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        now = 0;
+        RobotClock.setSource(clock);
+    }
+
+    @After
+    public void tearDown() {
+        RobotClock.setSource(RobotClock.SYSTEM);
+    }
+
+    @Test
+    public void withNoTasksItSleeps() {
+        ControlLoop loop = new ControlLoop();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(loop.runOnce());
+        }
+        assertEquals(10 * ControlLoop.IDLE_PERIOD_NANOS, now);
+    }
+
+    @Test
+    public void tasksRunAtTheirOwnRates() {
+        ControlLoop loop = new ControlLoop();
+        ControlLoop.TaskStats fast = loop.addTask("fast", 100, idle());
+        ControlLoop.TaskStats slow = loop.addTask("slow", 10, idle());
+        while (now < 1000000000L) {
+            loop.runOnce();
+        }
+        // Both run at time zero, then once a period.
+        assertEquals(101, fast.getTicks());
+        assertEquals(11, slow.getTicks());
+        assertEquals(0, fast.getOverruns());
+    }
+
+    @Test
+    public void aTaskThatFallsBehindSkipsTicks() {
+        ControlLoop loop = new ControlLoop();
+        ControlLoop.TaskStats stats = loop.addTask("slow task", 100, new ControlLoop.Task() {
+            @Override
+            public void run() {
+                now += 25000000;          // 25 ms, two and a half periods.
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            loop.runOnce();
+        }
+        assertEquals(10, stats.getTicks());
+        assertTrue(stats.getOverruns() >= 10);
+        assertEquals(25000000, stats.getMaxExecNanos());
+    }
+
+    private static ControlLoop.Task idle() {
+        return new ControlLoop.Task() {
+            @Override
+            public void run() {
+            }
+        };
+    }
+}
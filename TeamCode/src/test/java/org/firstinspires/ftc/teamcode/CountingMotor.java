@@ -0,0 +1,69 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A DcMotor that counts the calls made on it, by method name, and passes each one on to the
+ * motor it wraps. Wrap a SimHarness motor before the opmode binds it:
+ *
+ *     CountingMotor left = CountingMotor.wrap(hardwareMap, "motor0");
+ *     ...
+ *     assertTrue(left.count("isBusy") <= cycles);
+ */
+class CountingMotor implements InvocationHandler {
+    private final DcMotor motor;
+    private final DcMotor proxy;
+    private final Map<String, Integer> counts = new HashMap<String, Integer>();
+
+    CountingMotor(DcMotor motor) {
+        this.motor = motor;
+        this.proxy = (DcMotor) Proxy.newProxyInstance(DcMotor.class.getClassLoader(),
+                new Class<?>[] {DcMotor.class}, this);
+    }
+
+    //  Put a counting motor in hardwareMap in place of the one named name.
+    static CountingMotor wrap(HardwareMap hardwareMap, String name) {
+        CountingMotor counting = new CountingMotor(hardwareMap.dcMotor.get(name));
+        hardwareMap.dcMotor.put(name, counting.getMotor());
+        return counting;
+    }
+
+    //  The DcMotor to hand to the code under test.
+    DcMotor getMotor() {
+        return proxy;
+    }
+
+    //  Calls to method since the last reset.
+    synchronized int count(String method) {
+        Integer count = counts.get(method);
+        return count == null ? 0 : count;
+    }
+
+    synchronized void reset() {
+        counts.clear();
+    }
+
+    //  Counts the call, then makes it.
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        called(method.getName());
+        try {
+            return method.invoke(motor, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    //  Before each call is passed on.
+    protected synchronized void called(String method) {
+        counts.put(method, count(method) + 1);
+    }
+}
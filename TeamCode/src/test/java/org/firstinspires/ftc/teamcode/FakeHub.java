@@ -0,0 +1,69 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Stands in for a REV hub in MANUAL bulk caching mode, and counts the read transactions its
+ * motors would cost on the real thing. The first bulk read (position, velocity or busy flag of
+ * any motor) after clear() is one transaction for the whole hub; bulk reads after that come
+ * from the cache. Any other read, the power or mode say, is a transaction of its own every time.
+ * Writes aren't counted.
+ *
+ *     FakeHub hub = new FakeHub();
+ *     hub.wrap(hardwareMap, "motor0");
+ *     hub.wrap(hardwareMap, "motor1");
+ *     robot = new TrainerbotV2() {
+ *         protected void clearBulkCaches() { hub.clear(); }
+ *     };
+ */
+class FakeHub {
+    static final Set<String> BULK_READS = new HashSet<String>(Arrays.asList(
+            "getCurrentPosition", "getVelocity", "isBusy"));
+    static final Set<String> OTHER_READS = new HashSet<String>(Arrays.asList(
+            "getPower", "getMode", "getTargetPosition", "getZeroPowerBehavior", "getPowerFloat"));
+
+    private boolean cached = false;
+    private int transactions = 0;
+
+    //  Put a motor on this hub in place of the one named name in hardwareMap.
+    CountingMotor wrap(HardwareMap hardwareMap, String name) {
+        CountingMotor motor = new CountingMotor(hardwareMap.dcMotor.get(name)) {
+            @Override
+            protected synchronized void called(String method) {
+                super.called(method);
+                read(method);
+            }
+        };
+        hardwareMap.dcMotor.put(name, motor.getMotor());
+        return motor;
+    }
+
+    //  As LynxModule.clearBulkCache.
+    synchronized void clear() {
+        cached = false;
+    }
+
+    //  Read transactions since the last reset.
+    synchronized int getTransactions() {
+        return transactions;
+    }
+
+    synchronized void reset() {
+        transactions = 0;
+    }
+
+    private synchronized void read(String method) {
+        if (BULK_READS.contains(method)) {
+            if (!cached) {
+                transactions++;
+                cached = true;
+            }
+        } else if (OTHER_READS.contains(method)) {
+            transactions++;
+        }
+    }
+}
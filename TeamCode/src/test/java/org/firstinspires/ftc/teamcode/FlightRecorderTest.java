@@ -0,0 +1,150 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records written by a FlightRecorder and read back by FlightLog: the header, every field of
+ * every record, through several laps of the ring, and what is kept once the file is full.
+ */
+public class FlightRecorderTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("flight", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test(timeout = 10000)
+    public void recordsComeBackAsTheyWentIn() throws IOException, InterruptedException {
+        int capacity = 1000;
+        int count = 3 * FlightRecorder.RING_RECORDS + 5;
+        long before = System.currentTimeMillis();
+        FlightRecorder recorder = new FlightRecorder(file, capacity);
+        assertTrue(recorder.start());
+        FlightRecord record = new FlightRecord();
+        for (int i = 0; i < count; i++) {
+            fill(record, i);
+            // Faster than the flusher: wait for room, so the ring laps without dropping.
+            while (!recorder.record(record)) {
+                assertTrue(recorder.isRunning());
+                Thread.sleep(1);
+            }
+        }
+        recorder.stop();
+        long after = System.currentTimeMillis();
+
+        ByteBuffer header = readHeader();
+        assertEquals(FlightRecorder.MAGIC, header.getInt(FlightRecorder.HEADER_MAGIC));
+        assertEquals(FlightRecord.VERSION, header.getInt(FlightRecorder.HEADER_VERSION));
+        assertEquals(FlightRecord.SIZE, header.getInt(FlightRecorder.HEADER_RECORD_SIZE));
+        assertEquals(capacity, header.getInt(FlightRecorder.HEADER_CAPACITY));
+        assertEquals(count, header.getLong(FlightRecorder.HEADER_COUNT));
+        assertEquals(FlightRecorder.HEADER_SIZE + (long) capacity * FlightRecord.SIZE,
+                file.length());
+
+        FlightLog log = FlightLog.open(file);
+        assertEquals(count, log.getRecordCount());
+        assertTrue(log.getStartMillis() >= before && log.getStartMillis() <= after);
+        FlightRecord read = new FlightRecord();
+        for (int i = 0; i < count; i++) {
+            log.read(i, read);
+            assertRecord(i, read);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void aFullFileKeepsTheFirstRecords() throws IOException {
+        int capacity = 10;
+        int count = 25;
+        FlightRecorder recorder = new FlightRecorder(file, capacity);
+        assertTrue(recorder.start());
+        FlightRecord record = new FlightRecord();
+        // Fewer than the ring holds, so all go in; the file takes only capacity of them.
+        for (int i = 0; i < count; i++) {
+            fill(record, i);
+            assertTrue(recorder.record(record));
+        }
+        recorder.stop();
+
+        assertEquals(count - capacity, recorder.getDroppedCount());
+        FlightLog log = FlightLog.open(file);
+        assertEquals(capacity, log.getRecordCount());
+        FlightRecord read = new FlightRecord();
+        for (int i = 0; i < capacity; i++) {
+            log.read(i, read);
+            assertRecord(i, read);
+        }
+    }
+
+    private ByteBuffer readHeader() throws IOException {
+        byte[] bytes = new byte[FlightRecorder.HEADER_SIZE];
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    //  Record i: every field different, and different from its neighbours'.
+    private static void fill(FlightRecord r, int i) {
+        r.cycle = i;
+        r.nanos = (1L << 40) + i * 10000000L;
+        r.loopNanos = 10000000 + i;
+        r.opModeState = (byte) (i % 4);
+        r.segmentState = (byte) (i % 5 - 1);
+        r.pendingSegments = (short) (i % 3);
+        r.leftPosition = 3 * i;
+        r.rightPosition = -5 * i;
+        r.leftVelocity = i + 0.25f;
+        r.rightVelocity = -i - 0.5f;
+        r.leftPower = (i % 11) / 10f;
+        r.rightPower = -(i % 7) / 10f;
+        r.heading = i / 100f;
+        r.roll = i / 200f;
+        r.pitch = -i / 300f;
+        r.poseX = i * 0.125f;
+        r.poseY = -i * 0.0625f;
+        r.poseHeading = i / 400f;
+        r.fixX = i + 1;
+        r.fixY = i + 2;
+        r.fixHeading = i + 3;
+        r.leftStickX = (i % 3) / 4f;
+        r.leftStickY = -(i % 5) / 4f;
+        r.rightStickX = (i % 7) / 8f;
+        r.rightStickY = -(i % 9) / 8f;
+        r.leftTrigger = (i % 2) / 2f;
+        r.rightTrigger = (i % 4) / 4f;
+        r.buttons = i * 31;
+        r.argb = 0xFF000000 | i;
+        r.flags = i & 0xF;
+    }
+
+    private static void assertRecord(int i, FlightRecord r) {
+        FlightRecord expected = new FlightRecord();
+        fill(expected, i);
+        assertEquals("record " + i, expected.toCsv(), r.toCsv());
+        // toCsv rounds the floats; check some of them exactly.
+        assertEquals(expected.leftVelocity, r.leftVelocity, 0f);
+        assertEquals(expected.heading, r.heading, 0f);
+        assertEquals(expected.poseY, r.poseY, 0f);
+        assertEquals(expected.rightStickY, r.rightStickY, 0f);
+    }
+}
@@ -0,0 +1,74 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ImuSampler on a SimImu whose readings can be made to throw, as a real IMU's do once the
+ * opmode's hardware is closed: a dead IMU is given up on once, and start() tries it again.
+ */
+public class ImuSamplerTest {
+    //  A level body that counts readings, and throws while dead.
+    static class Body implements SimImu.Body {
+        volatile boolean dead = false;
+        volatile int reads = 0;
+
+        @Override
+        public double getHeading() {
+            reads++;
+            if (dead) {
+                throw new IllegalStateException("closed");
+            }
+            return 0.5;
+        }
+
+        @Override
+        public double getHeadingRate() {
+            return 0;
+        }
+    }
+
+    @Test
+    public void aDeadImuIsReadOnce() {
+        Body body = new Body();
+        ImuSampler sampler = new ImuSampler(new SimImu(body));
+        assertTrue(sampler.sample());
+
+        body.dead = true;
+        int reads = body.reads;
+        for (int i = 0; i < 10; i++) {
+            assertFalse(sampler.sample());
+        }
+        assertTrue(sampler.hasFailed());
+        assertEquals(reads + 1, body.reads);
+        assertEquals(1, sampler.getSampleCount());
+    }
+
+    @Test(timeout = 5000)
+    public void startWorksAfterTheThreadHasEnded() throws InterruptedException {
+        Body body = new Body();
+        body.dead = true;
+        ImuSampler sampler = new ImuSampler(new SimImu(body));
+        sampler.start();
+        while (sampler.isRunning()) {
+            Thread.sleep(1);
+        }
+        assertTrue(sampler.hasFailed());
+
+        body.dead = false;
+        sampler.start();
+        try {
+            assertTrue(sampler.isRunning());
+            assertFalse(sampler.hasFailed());
+            while (sampler.getSampleCount() == 0) {
+                Thread.sleep(1);
+            }
+        } finally {
+            sampler.stop();
+        }
+        assertFalse(sampler.isRunning());
+    }
+}
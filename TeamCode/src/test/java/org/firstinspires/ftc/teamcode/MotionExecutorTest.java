@@ -0,0 +1,195 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * DriveSegments run by the MotionExecutor: first segments that count their calls instead of
+ * driving motors, then TrainerbotV2.awaitMotion on a SimHarness robot whose motors count their
+ * calls. encoderDrive used to spin on isBusy() until the wheels stopped; under SimHarness a spin
+ * that never sleeps never lets simulated time pass, so it would hang these tests rather than
+ * fail them.
+ */
+public class MotionExecutorTest {
+    // Ticks a run may take beyond MOTION_RATE_HZ per simulated second: the first and last.
+    static final int SPARE_TICKS = 2;
+
+    //  A segment that finishes after a set number of updates, and counts its calls.
+    static class CountedSegment extends DriveSegment {
+        final int updatesToFinish;
+        int starts = 0;
+        int updates = 0;
+        int stops = 0;
+
+        CountedSegment(int updatesToFinish, double timeoutSeconds) {
+            super(timeoutSeconds);
+            this.updatesToFinish = updatesToFinish;
+        }
+
+        @Override
+        protected void start() {
+            starts++;
+        }
+
+        @Override
+        protected boolean update() {
+            return ++updates >= updatesToFinish;
+        }
+
+        @Override
+        protected void stop() {
+            stops++;
+        }
+    }
+
+    //  Binds a TrainerbotV2 to counted motors, then calls drive().
+    abstract static class CountedOpMode extends LinearOpMode {
+        final TrainerbotV2 robot = new TrainerbotV2(this);
+        CountingMotor left;
+        CountingMotor right;
+
+        @Override
+        public void runOpMode() {
+            left = CountingMotor.wrap(hardwareMap, "motor0");
+            right = CountingMotor.wrap(hardwareMap, "motor1");
+            try {
+                robot.initHardware(hardwareMap);
+                waitForStart();
+                left.reset();
+                right.reset();
+                drive();
+            } finally {
+                robot.shutdown();
+            }
+        }
+
+        abstract void drive();
+
+        //  Control loop cycles run by drive().
+        long cycles() {
+            return robot.getSnapshot().getCycle() + 1;
+        }
+    }
+
+    @Test
+    public void segmentsRunOneAfterAnother() {
+        MotionExecutor motion = new MotionExecutor();
+        CountedSegment first = new CountedSegment(3, 0);
+        CountedSegment second = new CountedSegment(2, 0);
+        assertSame(first, motion.submit(first));
+        motion.submit(second);
+
+        // The first tick starts the segment; each tick after that is one update.
+        for (int i = 0; i < 4; i++) {
+            motion.update();
+        }
+        assertEquals(DriveSegment.State.DONE, first.getState());
+        assertEquals(1, first.stops);
+        assertEquals(DriveSegment.State.PENDING, second.getState());
+        assertEquals(0, second.starts);
+
+        for (int i = 0; i < 3; i++) {
+            motion.update();
+        }
+        assertTrue(second.isCompleted());
+        assertEquals(1, second.starts);
+        assertEquals(1, second.stops);
+        assertTrue(motion.isIdle());
+        assertNull(motion.getCurrent());
+    }
+
+    @Test
+    public void cancelStopsTheRunningSegmentAndDropsTheQueue() {
+        MotionExecutor motion = new MotionExecutor();
+        CountedSegment running = new CountedSegment(100, 0);
+        CountedSegment queued = new CountedSegment(100, 0);
+        motion.submit(running);
+        motion.submit(queued);
+        motion.update();
+        motion.update();
+
+        motion.cancelAll();
+        assertFalse(running.isDone());
+        motion.update();
+
+        assertEquals(DriveSegment.State.CANCELLED, running.getState());
+        assertEquals(1, running.stops);
+        assertEquals(DriveSegment.State.CANCELLED, queued.getState());
+        assertEquals(0, queued.starts);
+        assertEquals(0, queued.stops);
+        assertTrue(motion.isIdle());
+    }
+
+    @Test
+    public void aSegmentStopsWhenItTimesOut() {
+        CountedSegment segment = new CountedSegment(100, 1.0);
+        assertFalse(segment.tick(0));
+        assertFalse(segment.tick(500000000L));
+        assertEquals(DriveSegment.State.RUNNING, segment.getState());
+        assertTrue(segment.tick(1500000000L));
+
+        assertEquals(DriveSegment.State.TIMED_OUT, segment.getState());
+        assertFalse(segment.isCompleted());
+        assertEquals(1, segment.stops);
+    }
+
+    @Test
+    public void aZeroTimeoutNeverTimesOut() {
+        CountedSegment segment = new CountedSegment(2, 0);
+        segment.tick(0);
+        assertFalse(segment.tick(3600000000000L));
+        assertTrue(segment.tick(7200000000000L));
+        assertTrue(segment.isCompleted());
+    }
+
+    @Test(timeout = 10000)
+    public void awaitMotionTicksAtTheMotionRate() {
+        final DriveSegment[] segment = new DriveSegment[1];
+        CountedOpMode opMode = new CountedOpMode() {
+            @Override
+            void drive() {
+                segment[0] = robot.driveStraight(0.5, 24.0);
+                robot.awaitMotion(segment[0]);
+            }
+        };
+        SimHarness sim = new SimHarness(SimDrivetrain.trainerbotV2());
+        SimHarness.Result result = sim.run(opMode, 30);
+
+        assertEquals(DriveSegment.State.DONE, segment[0].getState());
+        assertEquals(24.0, result.x, 0.5);
+        // One tick per period, sleeping in between, and one read of each motor per tick.
+        long cycles = opMode.cycles();
+        assertTrue("ticked " + cycles + " times in " + result.simSeconds + " s",
+                cycles <= result.simSeconds * TrainerbotV2.MOTION_RATE_HZ + SPARE_TICKS);
+        assertTrue(opMode.left.count("isBusy") > 0);
+        assertTrue(opMode.left.count("isBusy") <= cycles);
+        assertTrue(opMode.right.count("isBusy") <= cycles);
+        assertTrue(opMode.left.count("getCurrentPosition") <= cycles);
+        assertTrue(opMode.right.count("getCurrentPosition") <= cycles);
+    }
+
+    @Test(timeout = 10000)
+    public void stoppingTheOpModeCancelsTheSegment() {
+        final DriveSegment[] segment = new DriveSegment[1];
+        CountedOpMode opMode = new CountedOpMode() {
+            @Override
+            void drive() {
+                segment[0] = robot.driveStraight(0.3, 96.0);
+                robot.awaitMotion(segment[0]);
+            }
+        };
+        SimHarness sim = new SimHarness(SimDrivetrain.trainerbotV2());
+        SimHarness.Result result = sim.run(opMode, 1.0);
+
+        assertEquals(DriveSegment.State.CANCELLED, segment[0].getState());
+        assertEquals(1.0, result.simSeconds, SPARE_TICKS / TrainerbotV2.MOTION_RATE_HZ);
+        assertEquals(0.0, sim.getDrivetrain().left.getPower(), 0.0);
+    }
+}
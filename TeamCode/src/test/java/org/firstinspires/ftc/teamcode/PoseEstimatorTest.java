@@ -0,0 +1,135 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PoseEstimator fed synthetic encoder counts, IMU turns and vision fixes, with the pose checked
+ * along the way, cycle by cycle, against where the robot must be.
+ */
+public class PoseEstimatorTest {
+    static final double COUNTS_PER_INCH = 100;
+    static final double TRACK_WIDTH = 10;
+    // Inches and radians. Counts are whole, so a cycle's wheel travel is off by up to a count.
+    static final double TOLERANCE = 0.05;
+
+    @Test
+    public void theFirstUpdateOnlySetsTheBaseline() {
+        PoseEstimator pose = new PoseEstimator(COUNTS_PER_INCH, TRACK_WIDTH);
+        pose.update(5000, -3000);
+        assertPose(pose, 0, 0, 0);
+
+        // Encoders reset to zero: without a rebase, that would be a long drive backward.
+        pose.rebaseEncoders();
+        pose.update(0, 0);
+        assertPose(pose, 0, 0, 0);
+        pose.update(100, 100);
+        assertPose(pose, 1, 0, 0);
+    }
+
+    @Test
+    public void straightAheadAtAHeading() {
+        PoseEstimator pose = new PoseEstimator(COUNTS_PER_INCH, TRACK_WIDTH);
+        double heading = Math.PI / 6;
+        pose.setPose(10, -20, heading);
+        int left = 700, right = -400;
+        pose.update(left, right);
+        for (int i = 1; i <= 48; i++) {
+            left += 50;
+            right += 50;
+            pose.update(left, right);
+            double inches = i * 0.5;
+            assertPose(pose, 10 + inches * Math.cos(heading), -20 + inches * Math.sin(heading),
+                    heading);
+        }
+    }
+
+    @Test
+    public void aQuarterCircleOnTheEncoders() {
+        // Radius 20 inches to the robot's center, counterclockwise: the wheels run at 15 and
+        // 25 inches.
+        double radius = 20;
+        int cycles = 90;
+        double step = Math.PI / 2 / cycles;
+        PoseEstimator pose = new PoseEstimator(COUNTS_PER_INCH, TRACK_WIDTH);
+        pose.update(0, 0);
+        for (int i = 1; i <= cycles; i++) {
+            double angle = i * step;
+            pose.update(counts((radius - TRACK_WIDTH / 2) * angle),
+                    counts((radius + TRACK_WIDTH / 2) * angle));
+            assertPose(pose, radius * Math.sin(angle), radius * (1 - Math.cos(angle)), angle);
+        }
+    }
+
+    @Test
+    public void theImuTurnTakesOverFromTheEncoders() {
+        // Encoders that think the track is half as wide as it is: on their own, the pose would
+        // turn twice as far as the robot.
+        PoseEstimator pose = new PoseEstimator(COUNTS_PER_INCH, TRACK_WIDTH / 2);
+        double radius = 20;
+        int cycles = 90;
+        double step = Math.PI / 2 / cycles;
+        pose.update(0, 0, 0);
+        for (int i = 1; i <= cycles; i++) {
+            double angle = i * step;
+            pose.update(counts((radius - TRACK_WIDTH / 2) * angle),
+                    counts((radius + TRACK_WIDTH / 2) * angle), step);
+            assertPose(pose, radius * Math.sin(angle), radius * (1 - Math.cos(angle)), angle);
+        }
+    }
+
+    @Test
+    public void headingStaysInRangeThroughTurnsOnTheSpot() {
+        PoseEstimator pose = new PoseEstimator(COUNTS_PER_INCH, TRACK_WIDTH);
+        pose.update(0, 0, 0);
+        double step = 0.1;
+        for (int i = 1; i <= 200; i++) {
+            pose.update(0, 0, step);
+            double heading = pose.getHeading();
+            assertTrue(heading > -Math.PI && heading <= Math.PI);
+            assertEquals(0, PoseEstimator.normalize(heading - i * step), 1e-9);
+        }
+        assertEquals(0, pose.getX(), 0);
+        assertEquals(0, pose.getY(), 0);
+    }
+
+    @Test
+    public void fixesPullTheEstimatePartWay() {
+        PoseEstimator pose = new PoseEstimator(COUNTS_PER_INCH, TRACK_WIDTH);
+        pose.setGains(0.5, 0.25);
+
+        // The first fix is taken as it is.
+        pose.correct(30, 40, 3.0);
+        assertPose(pose, 30, 40, 3.0);
+        assertEquals(1, pose.getFixCount());
+
+        // Later ones close part of the gap; heading the short way, across +-pi.
+        pose.correct(40, 20, -3.0);
+        double gap = PoseEstimator.normalize(-3.0 - 3.0);
+        assertPose(pose, 35, 30, PoseEstimator.normalize(3.0 + 0.25 * gap));
+        assertTrue(pose.getHeading() < -Math.PI + 0.5 || pose.getHeading() > 3.0);
+        assertEquals(2, pose.getFixCount());
+    }
+
+    @Test
+    public void zeroGainsIgnoreFixesAfterTheFirst() {
+        PoseEstimator pose = new PoseEstimator(COUNTS_PER_INCH, TRACK_WIDTH);
+        pose.setGains(0, 0);
+        pose.correct(1, 2, 0.5);
+        pose.correct(50, 60, -1);
+        assertPose(pose, 1, 2, 0.5);
+    }
+
+    private static int counts(double inches) {
+        return (int) Math.round(inches * COUNTS_PER_INCH);
+    }
+
+    private static void assertPose(PoseEstimator pose, double x, double y, double heading) {
+        assertEquals("x", x, pose.getX(), TOLERANCE);
+        assertEquals("y", y, pose.getY(), TOLERANCE);
+        assertEquals("heading", 0,
+                PoseEstimator.normalize(pose.getHeading() - heading), TOLERANCE / 10);
+    }
+}
@@ -0,0 +1,111 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.Gamepad;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A Calibrate session recorded in SimHarness, then replayed into a new Calibrate: an unchanged
+ * opmode must command the powers it commanded when it was recorded, every cycle.
+ */
+public class ReplayHarnessTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("replay", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test(timeout = 20000)
+    public void aReplayOfAnUnchangedOpModeMatchesItsLog() throws IOException {
+        int recorded = record(file, 12);
+        FlightLog log = FlightLog.open(file);
+        assertEquals(recorded, log.getRecordCount());
+
+        ReplayHarness.Result result = new ReplayHarness(log).run(new Calibrate());
+        assertEquals(result.toString(), 0, result.mismatches);
+        assertTrue(result.cycles + " of " + recorded + " cycles", result.cycles >= recorded - 1);
+    }
+
+    @Test(timeout = 20000)
+    public void aReplayNeverRecords() throws IOException {
+        int recorded = record(file, 2);
+        File folder = new File(file.getPath() + ".settings");
+        assertTrue(folder.mkdir());
+        try {
+            RobotConstants constants = new RobotConstants();
+            constants.recordFlights = true;
+            assertTrue(constants.save(new File(folder, RobotConstants.FILE_NAME)));
+            ReplayHarness replay = new ReplayHarness(FlightLog.open(file));
+            replay.setSettingsFolder(folder);
+
+            ReplayHarness.Result result = replay.run(new Calibrate());
+            assertTrue(result.cycles >= recorded - 1);
+            assertFalse(new File(folder, TrainerbotV2.FLIGHT_LOG_FOLDER).exists());
+        } finally {
+            for (File settings : folder.listFiles()) {
+                settings.delete();
+            }
+            folder.delete();
+        }
+    }
+
+    //  Run Calibrate in SimHarness for seconds: a macro from a press, then stick driving, then
+    // another macro. Every cycle goes to a log in file. Returns the records kept.
+    static int record(File file, double seconds) {
+        SimHarness sim = new SimHarness(SimDrivetrain.trainerbotV2());
+        sim.setDriver(new SimHarness.Driver() {
+            @Override
+            public void drive(double seconds, Gamepad gamepad) {
+                gamepad.y = seconds >= 0.5 && seconds < 0.6;
+                boolean sticks = seconds >= 5.0 && seconds < 6.0;
+                gamepad.left_stick_y = sticks ? -0.6f : 0;
+                gamepad.right_stick_y = sticks ? -0.3f : 0;
+                gamepad.a = seconds >= 8.0 && seconds < 8.1;
+            }
+        });
+        Calibrate opMode = new Calibrate();
+        final FlightRecorder recorder = new FlightRecorder(file, 10000);
+        final long[] retries = new long[1];
+        assertTrue(recorder.start());
+        SimHarness.findRobot(opMode).setCycleListener(new TrainerbotV2.CycleListener() {
+            @Override
+            public void cycleStarting() {
+            }
+
+            @Override
+            public void cycleDone(FlightRecord record) {
+                // The simulation outruns the flusher; wait for room rather than lose a record.
+                while (!recorder.record(record)) {
+                    retries[0]++;
+                    assertTrue(recorder.isRunning());
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        });
+        sim.run(opMode, seconds);
+        recorder.stop();
+        // Every drop was a full ring that the record went in after; none fell off the file.
+        assertEquals(retries[0], recorder.getDroppedCount());
+        return (int) recorder.getFlushedCount();
+    }
+}
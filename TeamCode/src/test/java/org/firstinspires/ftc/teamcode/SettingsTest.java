@@ -0,0 +1,70 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TrainerbotV2.loadSettings and writeSettings on a settings folder of their own: loading only
+ * reads, and a constants file is written only when asked for, never over one already there.
+ */
+public class SettingsTest {
+    private File folder;
+    private File constantsFile;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = File.createTempFile("settings", "");
+        assertTrue(folder.delete() && folder.mkdir());
+        constantsFile = new File(folder, RobotConstants.FILE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : folder.listFiles()) {
+            file.delete();
+        }
+        folder.delete();
+    }
+
+    @Test
+    public void loadingWritesNothing() {
+        TrainerbotV2 robot = new TrainerbotV2(null);
+        robot.setSettingsFolder(folder);
+        robot.loadSettings();
+
+        assertEquals(0, folder.listFiles().length);
+        assertEquals("defaults, no " + RobotConstants.FILE_NAME, robot.getSettingsStatus());
+    }
+
+    @Test
+    public void writeSettingsWritesOnlyAMissingFile() {
+        TrainerbotV2 robot = new TrainerbotV2(null);
+        robot.setSettingsFolder(folder);
+        robot.loadSettings();
+        assertTrue(robot.writeSettings());
+        assertTrue(constantsFile.exists());
+
+        RobotConstants edited = new RobotConstants();
+        edited.driveSpeed = 0.5;
+        assertTrue(edited.save(constantsFile));
+        assertFalse(robot.writeSettings());
+        robot.loadSettings();
+        assertEquals(0.5, robot.getConstants().driveSpeed, 0.0);
+    }
+
+    @Test
+    public void withoutAFolderNothingIsWritten() {
+        TrainerbotV2 robot = new TrainerbotV2(null);
+        robot.setSettingsFolder(null);
+        robot.loadSettings();
+        assertFalse(robot.writeSettings());
+    }
+}
@@ -0,0 +1,86 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TrainerbotV2.shutdown as an opmode stopped during init calls it: before an init step on
+ * another thread has got as far as starting the IMU sampler or the flight recorder. Neither
+ * may start after it.
+ */
+public class ShutdownTest {
+    private File folder;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = File.createTempFile("settings", "");
+        assertTrue(folder.delete() && folder.mkdir());
+        RobotConstants constants = new RobotConstants();
+        constants.recordFlights = true;
+        assertTrue(constants.save(new File(folder, RobotConstants.FILE_NAME)));
+    }
+
+    @After
+    public void tearDown() {
+        delete(folder);
+    }
+
+    @Test
+    public void noImuSamplerStartsAfterShutdown() {
+        HardwareMap hardwareMap = new HardwareMap(null);
+        hardwareMap.put("imu", new SimImu(SimDrivetrain.trainerbotV2()));
+        TrainerbotV2 robot = new TrainerbotV2(null);
+        robot.shutdown();
+        robot.initImu(hardwareMap);
+
+        assertNotNull(robot.imuSampler);
+        assertFalse(robot.imuSampler.isRunning());
+    }
+
+    @Test
+    public void noRecorderStartsAfterShutdown() {
+        TrainerbotV2 robot = new TrainerbotV2(null);
+        robot.setSettingsFolder(folder);
+        robot.loadSettings();
+        robot.shutdown();
+        robot.startRecorder();
+
+        assertNull(robot.getRecorder());
+        assertFalse(new File(folder, TrainerbotV2.FLIGHT_LOG_FOLDER).exists());
+    }
+
+    @Test
+    public void theRecorderStartsBeforeShutdown() {
+        TrainerbotV2 robot = new TrainerbotV2(null);
+        robot.setSettingsFolder(folder);
+        robot.loadSettings();
+        robot.startRecorder();
+        try {
+            assertNotNull(robot.getRecorder());
+        } finally {
+            robot.shutdown();
+        }
+        assertNull(robot.getRecorder());
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,87 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.Gamepad;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * NavigateWall and Calibrate, run in SimHarness. Each segment's time and where it left the
+ * robot are pinned down, so a change that makes a movement slower or less accurate fails here
+ * instead of on the field.
+ */
+public class SimHarnessTest {
+    static final double POSITION_TOLERANCE = 0.5;                  // inches
+    static final double HEADING_TOLERANCE = Math.toRadians(2);
+
+    @Test(timeout = 10000)
+    public void navigateWallDrivesOneProfiledSegment() {
+        SimHarness sim = new SimHarness(SimDrivetrain.trainerbotV2());
+        SimHarness.Result result = sim.run(new NavigateWall(), 30);
+
+        assertEquals(1, result.segments.size());
+        SimHarness.SegmentRecord drive = result.segments.get(0);
+        assertEquals("ProfiledDriveSegment", drive.kind);
+        assertEquals(DriveSegment.State.DONE, drive.state);
+        // 32 inches at full profiled speed takes about 2.5 s.
+        assertTrue("took " + drive.elapsedSeconds + " s", drive.elapsedSeconds < 3.0);
+        assertEquals(32.0, drive.x, POSITION_TOLERANCE);
+        assertEquals(0.0, drive.y, POSITION_TOLERANCE);
+        assertEquals(0.0, drive.heading, HEADING_TOLERANCE);
+        assertTrue(result.getPositionError() < 0.1);
+        assertTrue("faster than real time", result.wallSeconds < result.simSeconds);
+    }
+
+    @Test(timeout = 10000)
+    public void calibrateRunsMacrosFromTheGamepad() {
+        SimHarness sim = new SimHarness(SimDrivetrain.trainerbotV2());
+        sim.setDriver(new SimHarness.Driver() {
+            @Override
+            public void drive(double seconds, Gamepad gamepad) {
+                // Forward one tile, then turn right on axis.
+                gamepad.y = seconds >= 0.5 && seconds < 0.6;
+                gamepad.a = seconds >= 6.0 && seconds < 6.1;
+            }
+        });
+        SimHarness.Result result = sim.run(new Calibrate(), 10);
+
+        assertEquals(2, result.segments.size());
+        SimHarness.SegmentRecord drive = result.segments.get(0);
+        assertEquals("EncoderDriveSegment", drive.kind);
+        assertEquals(DriveSegment.State.DONE, drive.state);
+        assertTrue("took " + drive.elapsedSeconds + " s", drive.elapsedSeconds < 5.0);
+        assertEquals(24.0, drive.x, POSITION_TOLERANCE);
+        assertEquals(0.0, drive.heading, HEADING_TOLERANCE);
+
+        SimHarness.SegmentRecord turn = result.segments.get(1);
+        assertEquals("ImuTurnSegment", turn.kind);
+        assertEquals(DriveSegment.State.DONE, turn.state);
+        assertTrue("took " + turn.elapsedSeconds + " s", turn.elapsedSeconds < 1.5);
+        assertEquals(-Math.PI / 2, turn.heading, HEADING_TOLERANCE);
+        assertEquals(24.0, turn.x, POSITION_TOLERANCE);
+
+        assertTrue(result.getPositionError() < 0.1);
+        assertEquals(result.heading, result.estimatedHeading, HEADING_TOLERANCE);
+    }
+
+    @Test(timeout = 10000)
+    public void theImuKeepsTheHeadingWhenTheTrackWidthIsWrong() {
+        // The real robot's wheels are an inch further apart than TrainerbotV2 thinks.
+        SimHarness sim = new SimHarness(new SimDrivetrain(TrainerbotV2.COUNTS_PER_INCH,
+                TrainerbotV2.DRIVE_WHEEL_SEPARATION + 1.0, 1.0 / TrainerbotV2.DRIVE_KV, 0.05));
+        sim.setDriver(new SimHarness.Driver() {
+            @Override
+            public void drive(double seconds, Gamepad gamepad) {
+                gamepad.a = seconds >= 0.5 && seconds < 0.6;
+            }
+        });
+        SimHarness.Result result = sim.run(new Calibrate(), 5);
+
+        assertEquals(1, result.segments.size());
+        assertEquals(DriveSegment.State.DONE, result.segments.get(0).state);
+        assertEquals(-Math.PI / 2, result.heading, HEADING_TOLERANCE);
+        assertEquals(result.heading, result.estimatedHeading, Math.toRadians(0.5));
+    }
+}
@@ -0,0 +1,86 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * TelemetryLines writes numbers as String.format would, sends a line only when its text
+ * changes, and refills a line without allocating, by LoopBenchmark's own telemetry cases.
+ */
+public class TelemetryLinesTest {
+    // No negative values that round to zero, and no ties that binary doubles round differently.
+    static final double[] VALUES = {0, 1, -1, 0.5, 2.75, -2.75, 3.14159, -99.987, 1234.5678};
+
+    @Test
+    public void fixedPointMatchesStringFormat() {
+        StringBuilder out = new StringBuilder();
+        for (double value : VALUES) {
+            for (int decimals = 0; decimals <= 3; decimals++) {
+                out.setLength(0);
+                TelemetryLines.appendFixed(out, value, decimals);
+                assertEquals(String.format(Locale.US, "%." + decimals + "f", value),
+                        out.toString());
+            }
+        }
+    }
+
+    @Test
+    public void widthPadsOnTheLeft() {
+        String[] sent = new String[1];
+        TelemetryLines.Line line = new TelemetryLines.Line(item(sent));
+        line.append('[').append(-3.14159, 7, 2).append(']').push();
+        assertEquals("[" + String.format(Locale.US, "%7.2f", -3.14159) + "]", sent[0]);
+    }
+
+    @Test
+    public void onlyChangedTextIsSent() {
+        String[] sent = new String[1];
+        TelemetryLines.Line line = new TelemetryLines.Line(item(sent));
+        assertTrue(line.clear().append(1.5, 1).push());
+        assertFalse(line.clear().append(1.5, 1).push());
+        assertTrue(line.clear().append(1.6, 1).push());
+        assertEquals("1.6", sent[0]);
+    }
+
+    @Test
+    public void refillingALineAllocatesNothing() {
+        MicroBenchmark bench = new MicroBenchmark(100, 200, 4);
+        LoopBenchmark.addCases(bench);
+        MicroBenchmark.Score lines = null;
+        MicroBenchmark.Score format = null;
+        for (int i = 0; i < bench.getCaseCount(); i++) {
+            if (bench.getName(i).equals("TelemetryLines format")) {
+                lines = bench.run(i);
+            } else if (bench.getName(i).equals("telemetry format")) {
+                format = bench.run(i);
+            }
+        }
+        assumeTrue("this JVM doesn't count allocations", !Double.isNaN(lines.bytesPerOp));
+        assertTrue(lines.bytesPerOp + " B/op", lines.bytesPerOp < 1);
+        assertTrue(format.bytesPerOp + " B/op", format.bytesPerOp > 100);
+    }
+
+    //  A Telemetry.Item that keeps the last value set on it in sent[0].
+    private static Telemetry.Item item(final String[] sent) {
+        return (Telemetry.Item) Proxy.newProxyInstance(Telemetry.Item.class.getClassLoader(),
+                new Class<?>[] {Telemetry.Item.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("setValue")) {
+                            sent[0] = String.valueOf(args[0]);
+                        }
+                        return method.getReturnType().isInstance(proxy) ? proxy : null;
+                    }
+                });
+    }
+}
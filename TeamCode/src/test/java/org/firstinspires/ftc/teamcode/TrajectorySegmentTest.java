@@ -0,0 +1,122 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TrajectorySegment, run in SimHarness: the Ramsete controller keeps the robot on an S curve
+ * all the way along it, and steers it back toward the curve when the robot starts off it.
+ */
+public class TrajectorySegmentTest {
+    static final double POSITION_TOLERANCE = TrajectorySegment.END_TOLERANCE;  // inches
+    static final double HEADING_TOLERANCE = Math.toRadians(5);
+
+    //  Follows an S curve from where the robot starts, after moving its pose estimate left by
+    // offset inches, as a bad fix would.
+    static class FollowOpMode extends LinearOpMode {
+        TrainerbotV2 robot = new TrainerbotV2(this);
+        final double offset;
+        Trajectory trajectory;
+
+        FollowOpMode(double offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void runOpMode() {
+            try {
+                robot.initHardware(hardwareMap);
+                trajectory = robot.trajectory("s curve", robot.newTrajectoryBuilder()
+                        .to(0, 0, 0).to(24, 12, 0).to(48, 24, 0));
+                waitForStart();
+                robot.pose.setPose(0, offset, 0);
+                robot.awaitMotion(robot.followTrajectory(trajectory));
+            } finally {
+                robot.shutdown();
+            }
+        }
+    }
+
+    //  The farthest the pose estimate gets from the trajectory, cycle by cycle.
+    static class CrossTrack implements TrainerbotV2.CycleListener {
+        final FollowOpMode opMode;
+        final Trajectory.Sample sample = new Trajectory.Sample();
+        double worst = 0;
+        double last = 0;
+
+        CrossTrack(FollowOpMode opMode) {
+            this.opMode = opMode;
+        }
+
+        @Override
+        public void cycleStarting() {
+        }
+
+        @Override
+        public void cycleDone(FlightRecord record) {
+            Trajectory trajectory = opMode.trajectory;
+            if (trajectory == null) {
+                return;
+            }
+            double nearest = Double.MAX_VALUE;
+            for (int i = 0; i < trajectory.getSampleCount(); i++) {
+                trajectory.readSample(i, sample);
+                nearest = Math.min(nearest,
+                        Math.hypot(record.poseX - sample.x, record.poseY - sample.y));
+            }
+            worst = Math.max(worst, nearest);
+            last = nearest;
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void theRobotStaysOnTheCurve() {
+        SimHarness sim = new SimHarness(SimDrivetrain.trainerbotV2());
+        FollowOpMode opMode = new FollowOpMode(0);
+        CrossTrack crossTrack = new CrossTrack(opMode);
+        SimHarness.findRobot(opMode).setCycleListener(crossTrack);
+        SimHarness.Result result = sim.run(opMode, 30);
+
+        SimHarness.SegmentRecord follow = assertFollowed(result);
+        // Done as soon as the trajectory runs out, close enough to its end not to settle.
+        assertTrue("took " + follow.elapsedSeconds + " s",
+                follow.elapsedSeconds < opMode.trajectory.getDuration() + 0.1);
+        assertTrue("ended " + Math.hypot(48.0 - follow.x, 24.0 - follow.y) + " in away",
+                Math.hypot(48.0 - follow.x, 24.0 - follow.y) < POSITION_TOLERANCE);
+        assertEquals(0.0, follow.heading, HEADING_TOLERANCE);
+        assertTrue("off by " + crossTrack.worst, crossTrack.worst < POSITION_TOLERANCE);
+        assertTrue(result.getPositionError() < 0.1);
+    }
+
+    @Test(timeout = 20000)
+    public void aRobotOffTheCurveIsDrivenBackOntoIt() {
+        SimHarness sim = new SimHarness(SimDrivetrain.trainerbotV2());
+        double offset = 3.0;
+        FollowOpMode opMode = new FollowOpMode(offset);
+        CrossTrack crossTrack = new CrossTrack(opMode);
+        SimHarness.findRobot(opMode).setCycleListener(crossTrack);
+        SimHarness.Result result = sim.run(opMode, 30);
+
+        SimHarness.SegmentRecord follow = assertFollowed(result);
+        assertTrue(follow.elapsedSeconds <= opMode.trajectory.getDuration()
+                + TrajectorySegment.SETTLE_SECONDS + 0.1);
+        assertEquals(offset, crossTrack.worst, 0.1);
+        // Steered most of the way back by the end: the reference stops, and so does the chase.
+        assertTrue("off by " + crossTrack.last, crossTrack.last < offset / 2);
+        assertEquals(0.0, result.estimatedHeading, HEADING_TOLERANCE);
+        // Only the estimate was moved; the robot went with it.
+        assertEquals(offset, result.estimatedY - result.y, 0.1);
+    }
+
+    private static SimHarness.SegmentRecord assertFollowed(SimHarness.Result result) {
+        assertEquals(result.toString(), 1, result.segments.size());
+        SimHarness.SegmentRecord follow = result.segments.get(0);
+        assertEquals("TrajectorySegment", follow.kind);
+        assertEquals(DriveSegment.State.DONE, follow.state);
+        return follow;
+    }
+}
@@ -0,0 +1,212 @@
+package org.firstinspires.ftc.teamcode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Trajectories built by TrajectoryBuilder: the splines pass through every waypoint at its
+ * heading, and the speeds keep to the limits. Then TrajectoryCache: built once, found again on
+ * file, and a save that fails says so.
+ */
+public class TrajectoryTest {
+    static final double MAX_VELOCITY = 20;
+    static final double MAX_ACCELERATION = 30;
+    static final double TRACK_WIDTH = 15;
+    // Samples are stored as floats.
+    static final double TOLERANCE = 1e-3;
+
+    private File folder;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = File.createTempFile("trajectories", "");
+        assertTrue(folder.delete());
+        assertTrue(folder.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        delete(folder);
+    }
+
+    @Test
+    public void theSplinesPassThroughEveryWaypoint() {
+        double[][] waypoints = {{0, 0, 0}, {30, 12, Math.PI / 4}, {36, 40, Math.PI / 2},
+                {10, 50, Math.PI}};
+        TrajectoryBuilder builder = builder();
+        for (double[] waypoint : waypoints) {
+            builder.to(waypoint[0], waypoint[1], waypoint[2]);
+        }
+        Trajectory trajectory = builder.build();
+
+        assertEquals((waypoints.length - 1) * TrajectoryBuilder.SAMPLES_PER_SPLINE + 1,
+                trajectory.getSampleCount());
+        Trajectory.Sample sample = new Trajectory.Sample();
+        for (int i = 0; i < waypoints.length; i++) {
+            trajectory.readSample(i * TrajectoryBuilder.SAMPLES_PER_SPLINE, sample);
+            assertEquals("x " + i, waypoints[i][0], sample.x, TOLERANCE);
+            assertEquals("y " + i, waypoints[i][1], sample.y, TOLERANCE);
+            assertHeading(waypoints[i][2], sample.heading);
+        }
+        trajectory.getSample(trajectory.getDuration(), sample);
+        assertEquals(10, sample.x, TOLERANCE);
+        assertEquals(50, sample.y, TOLERANCE);
+    }
+
+    @Test
+    public void speedsKeepToTheLimits() {
+        Trajectory trajectory = builder().to(0, 0, 0).to(30, 12, Math.PI / 4)
+                .to(36, 40, Math.PI / 2).build();
+        Trajectory.Sample sample = new Trajectory.Sample();
+        Trajectory.Sample previous = new Trajectory.Sample();
+        trajectory.readSample(0, previous);
+        assertEquals(0, previous.velocity, 0);
+        for (int i = 1; i < trajectory.getSampleCount(); i++) {
+            trajectory.readSample(i, sample);
+            assertTrue("time " + i, sample.t > previous.t);
+            assertTrue("distance " + i, sample.s > previous.s);
+            double limit = MAX_VELOCITY / (1 + Math.abs(sample.curvature) * TRACK_WIDTH / 2);
+            assertTrue("speed " + i, sample.velocity <= limit + TOLERANCE);
+            assertTrue("acceleration " + i,
+                    Math.abs(sample.acceleration) <= MAX_ACCELERATION + TOLERANCE);
+            trajectory.readSample(i, previous);
+        }
+        assertEquals(0, sample.velocity, 0);
+        assertEquals(sample.t, trajectory.getDuration(), 0);
+        assertEquals(sample.s, trajectory.getLength(), 0);
+    }
+
+    @Test
+    public void aStraightLineIsATrapezoid() {
+        double length = 48;
+        Trajectory trajectory = builder().to(0, 0, 0).to(length, 0, 0).build();
+        Trajectory.Sample sample = new Trajectory.Sample();
+        for (int i = 0; i < trajectory.getSampleCount(); i++) {
+            trajectory.readSample(i, sample);
+            assertEquals(0, sample.y, TOLERANCE);
+            assertEquals(0, sample.heading, TOLERANCE);
+            assertEquals(0, sample.curvature, TOLERANCE);
+        }
+        assertEquals(length, trajectory.getLength(), TOLERANCE);
+        // Up to speed, across at it, and down again.
+        double ramp = MAX_VELOCITY / MAX_ACCELERATION;
+        double expected = 2 * ramp + (length - MAX_VELOCITY * ramp) / MAX_VELOCITY;
+        assertEquals(expected, trajectory.getDuration(), 0.05);
+    }
+
+    @Test
+    public void leftTurnsCurveLeft() {
+        Trajectory trajectory = builder().to(0, 0, 0).to(24, 24, Math.PI / 2).build();
+        Trajectory.Sample sample = new Trajectory.Sample();
+        trajectory.readSample(TrajectoryBuilder.SAMPLES_PER_SPLINE / 2, sample);
+        assertTrue(sample.curvature > 0);
+        assertTrue(sample.velocity < MAX_VELOCITY);
+    }
+
+    @Test
+    public void reversedTrajectoriesTravelBackward() {
+        Trajectory trajectory = builder().reversed(true).to(0, 0, 0).to(-24, 0, 0).build();
+        assertTrue(trajectory.isReversed());
+        Trajectory.Sample sample = new Trajectory.Sample();
+        double x = 1;
+        for (int i = 0; i < trajectory.getSampleCount(); i++) {
+            trajectory.readSample(i, sample);
+            assertHeading(Math.PI, sample.heading);
+            assertTrue(sample.velocity >= 0);
+            assertTrue(sample.x < x);
+            x = sample.x;
+        }
+        assertEquals(-24, x, TOLERANCE);
+    }
+
+    @Test
+    public void theCacheBuildsEachTrajectoryOnce() {
+        File file = new File(folder, TrajectoryCache.FILE_NAME);
+        TrajectoryCache cache = TrajectoryCache.open(file);
+        Trajectory first = cache.get("first", builder().to(0, 0, 0).to(24, 0, 0));
+        assertSame(first, cache.get("first", builder().to(0, 0, 0).to(24, 0, 0)));
+        assertEquals(1, cache.getBuiltCount());
+        assertTrue(cache.isSaved());
+
+        // Another, saved over the file the first went in.
+        cache.get("second", builder().to(0, 0, 0).to(24, 24, Math.PI / 2));
+        assertEquals(2, cache.getBuiltCount());
+        assertTrue(cache.isSaved());
+
+        TrajectoryCache reopened = TrajectoryCache.open(file);
+        assertEquals(2, reopened.size());
+        Trajectory second = reopened.get("second",
+                builder().to(0, 0, 0).to(24, 24, Math.PI / 2));
+        reopened.get("first", builder().to(0, 0, 0).to(24, 0, 0));
+        assertEquals(0, reopened.getBuiltCount());
+        assertEquals(first.getDuration(), reopened.get("first", builder().to(0, 0, 0)
+                .to(24, 0, 0)).getDuration(), 0);
+        Trajectory.Sample sample = new Trajectory.Sample();
+        second.getSample(second.getDuration(), sample);
+        assertEquals(24, sample.x, TOLERANCE);
+        assertEquals(24, sample.y, TOLERANCE);
+
+        // New waypoints under an old name: built again.
+        reopened.get("first", builder().to(0, 0, 0).to(30, 0, 0));
+        assertEquals(1, reopened.getBuiltCount());
+        assertEquals(2, reopened.size());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void whatCantBeRenamedOverIsDeletedFirst() {
+        // rename() won't replace a directory, but an empty one can be deleted.
+        File file = new File(folder, TrajectoryCache.FILE_NAME);
+        assertTrue(file.mkdir());
+        TrajectoryCache cache = TrajectoryCache.open(file);
+        cache.get("first", builder().to(0, 0, 0).to(24, 0, 0));
+        assertTrue(cache.isSaved());
+        assertTrue(file.isFile());
+        assertEquals(1, TrajectoryCache.open(file).size());
+    }
+
+    @Test
+    public void aSaveThatFailsSaysSo() {
+        // A directory with something in it can't be replaced at all.
+        File file = new File(folder, TrajectoryCache.FILE_NAME);
+        assertTrue(new File(file, "in the way").mkdirs());
+        TrajectoryCache cache = TrajectoryCache.open(file);
+        Trajectory first = cache.get("first", builder().to(0, 0, 0).to(24, 0, 0));
+        assertFalse(cache.isSaved());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        // Still built only once.
+        assertSame(first, cache.get("first", builder().to(0, 0, 0).to(24, 0, 0)));
+
+        TrajectoryCache nowhere = TrajectoryCache.open(new File(folder, "missing/cache.bin"));
+        nowhere.get("first", builder().to(0, 0, 0).to(24, 0, 0));
+        assertFalse(nowhere.isSaved());
+        assertFalse(nowhere.save());
+    }
+
+    private static TrajectoryBuilder builder() {
+        return new TrajectoryBuilder(MAX_VELOCITY, MAX_ACCELERATION, TRACK_WIDTH);
+    }
+
+    private static void assertHeading(double expected, double heading) {
+        assertEquals("heading", 0, PoseEstimator.normalize(heading - expected), TOLERANCE);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}